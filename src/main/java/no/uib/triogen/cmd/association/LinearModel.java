@@ -152,6 +152,10 @@ public class LinearModel {
                 models,
                 bean.destinationFile,
                 bean.nVariants,
+                bean.shard,
+                bean.scoreTestThreshold,
+                bean.checkpointInterval,
+                bean.resume,
                 logger
         );
 
@@ -26,9 +26,13 @@ public enum LinearModelOptions implements CliOption {
     trio("f", "fam", "The trio identifiers file. Can be gzipped or not.", true, true),
     model("m", "model", "List of the names of the models to use. Default: h,cmf_mt,cmf. Available: " + Model.getCommandLineOptions() + ".", false, true),
     x0("x0", "x0", "If present the association results will only be reported when multiple values of x are available for the regression.", false, false),
+    scoreP("sp", "scoreP", "If provided, variants are first screened using a score test on the haplotypes and the genotypes of the child, mother, and father, and the models are only run for the phenotypes and alleles with a score test p-value lower or equal to the given threshold. Alleles not passing the threshold are listed in a summary file next to the results file. Variants listed using the variantId option are not screened. Default: no screening.", false, true),
     out("o", "out", "The file where to write the results.", true, true),
     nVariants("nv", "nVariants", "The number of variants to process in parallel. Default is 8.", false, true),
     timeOut("z", "timeOut", "The number of days before timeout, default is 365.", false, true),
+    checkpoint("cp", "checkpoint", "The interval in minutes between checkpoints allowing to resume an interrupted run. 0 disables checkpoints. Default: 30.", false, true),
+    shard("sh", "shard", "The shard of variants to process, either as 'i/n' to process the i-th of n shards balanced by data size, or as 'first-last' to process the variants at the given indexes in the bgen file (0-based, inclusive). Shard outputs can be merged using the Merge command. Default: process all variants.", false, true),
+    resume("re", "resume", "If present, resumes an interrupted run from the last checkpoint.", false, false),
     variantLog("vl", "variantLog", "If present, writes a log for every variant next to the results file.", false, false);
 
     /**
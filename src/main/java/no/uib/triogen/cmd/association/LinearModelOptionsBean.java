@@ -10,6 +10,7 @@ import no.uib.triogen.io.covariates.SpecificCovariatesFile;
 import no.uib.triogen.model.trio_genotypes.Model;
 import no.uib.triogen.model.phenotypes.PhenotypesHandler;
 import no.uib.triogen.processing.linear_model.LinearModelRunnable;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantShard;
 import no.uib.triogen.utils.cli.CliUtils;
 import org.apache.commons.cli.CommandLine;
 
@@ -64,6 +65,11 @@ public class LinearModelOptionsBean {
      * List of the names of the models to use.
      */
     public String[] modelNames = Model.getDefaultOption();
+    /**
+     * The p-value threshold of the score test used to screen variants, NaN if
+     * no screening.
+     */
+    public double scoreTestThreshold = Double.NaN;
     /**
      * The file where to write the output.
      */
@@ -76,6 +82,18 @@ public class LinearModelOptionsBean {
      * The number of days before timeout.
      */
     public int timeOut = 365;
+    /**
+     * The interval between checkpoints in minutes.
+     */
+    public int checkpointInterval = 30;
+    /**
+     * The shard of variants to process, null to process all variants.
+     */
+    public VariantShard shard = null;
+    /**
+     * Boolean indicating whether an interrupted run should be resumed.
+     */
+    public final boolean resume;
     /**
      * Variant log.
      */
@@ -379,6 +397,71 @@ public class LinearModelOptionsBean {
             }
         }
 
+        // Score test threshold
+        if (CliUtils.hasOption(aLine, LinearModelOptions.scoreP)) {
+
+            option = CliUtils.getOptionValue(aLine, LinearModelOptions.scoreP);
+
+            try {
+
+                scoreTestThreshold = Double.parseDouble(option);
+
+                if (scoreTestThreshold < 0.0 || scoreTestThreshold > 1.0) {
+
+                    throw new IllegalArgumentException(
+                            "Input for score test threshold (" + option + ") must be a number between 0 and 1."
+                    );
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new IllegalArgumentException(
+                        "Input for score test threshold could not be parsed as a number: " + option + "."
+                );
+
+            }
+        }
+
+        // Checkpoint interval
+        if (CliUtils.hasOption(aLine, LinearModelOptions.checkpoint)) {
+
+            option = CliUtils.getOptionValue(aLine, LinearModelOptions.checkpoint);
+
+            try {
+
+                checkpointInterval = Integer.parseInt(option);
+
+                if (checkpointInterval < 0) {
+
+                    throw new IllegalArgumentException(
+                            "Input for checkpoint interval (" + option + ") must be a positive number."
+                    );
+
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new IllegalArgumentException(
+                        "Input for checkpoint interval could not be parsed as a number: " + option + "."
+                );
+
+            }
+        }
+
+        // Shard
+        if (CliUtils.hasOption(aLine, LinearModelOptions.shard)) {
+
+            shard = VariantShard.parse(CliUtils.getOptionValue(aLine, LinearModelOptions.shard));
+
+        }
+
+        // Resume
+        resume = CliUtils.hasOption(aLine, LinearModelOptions.resume);
+
         // Variant log
         variantLog = CliUtils.hasOption(aLine, LinearModelOptions.variantLog);
 
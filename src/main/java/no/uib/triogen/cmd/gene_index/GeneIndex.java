@@ -0,0 +1,117 @@
+package no.uib.triogen.cmd.gene_index;
+
+import java.io.PrintWriter;
+import java.time.Instant;
+import no.uib.triogen.TrioGen;
+import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
+import no.uib.triogen.model.annotation.GeneCoordinatesIndex;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+
+/**
+ * Imports the genes of a GTF file in an index used for offline gene mapping.
+ *
+ * @author Marc Vaudel
+ */
+public class GeneIndex {
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        if (args.length == 0
+                || args.length == 1 && args[0].equals("-h")
+                || args.length == 1 && args[0].equals("--help")) {
+
+            printHelp();
+            return;
+
+        }
+
+        if (args.length == 1 && args[0].equals("-v")
+                || args.length == 1 && args[0].equals("--version")) {
+
+            System.out.println(TrioGen.getVersion());
+
+            return;
+
+        }
+
+        try {
+
+            Options lOptions = new Options();
+            GeneIndexOptions.createOptionsCLI(lOptions);
+            CommandLineParser parser = new DefaultParser();
+            CommandLine commandLine = parser.parse(lOptions, args);
+
+            GeneIndexOptionsBean bean = new GeneIndexOptionsBean(commandLine);
+
+            run(
+                    bean
+            );
+
+        } catch (Throwable e) {
+
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param bean the bean of command line parameters
+     */
+    private static void run(
+            GeneIndexOptionsBean bean
+    ) {
+
+        Instant begin = Instant.now();
+
+        System.out.println("Indexing the genes of " + bean.gtfFile + ".");
+
+        GeneCoordinatesIndex index = GeneCoordinatesIndex.importGtf(
+                bean.gtfFile,
+                bean.destinationFile
+        );
+
+        Instant end = Instant.now();
+
+        long timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+
+        System.out.println(index.getNGenes() + " genes on " + index.getContigs().length + " contigs indexed in " + bean.destinationFile + " (" + timeInSec + " s)");
+
+    }
+
+    /**
+     * Prints basic help
+     */
+    private static void printHelp() {
+
+        try (PrintWriter lPrintWriter = new PrintWriter(System.out)) {
+            lPrintWriter.print(LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print("              trioGen             " + LINE_SEPARATOR);
+            lPrintWriter.print("               ****               " + LINE_SEPARATOR);
+            lPrintWriter.print("            Gene Index            " + LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print(LINE_SEPARATOR
+                    + "The GeneIndex command line imports the genes of a GTF file in an index that can be used for gene mapping without connection to Ensembl." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "For documentation and bug report please refer to our code repository https://github.com/mvaudel/trioGen." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "----------------------"
+                    + LINE_SEPARATOR
+                    + "OPTIONS"
+                    + LINE_SEPARATOR
+                    + "----------------------" + LINE_SEPARATOR
+                    + LINE_SEPARATOR);
+            lPrintWriter.print(GeneIndexOptions.getOptionsAsString());
+            lPrintWriter.flush();
+        }
+    }
+}
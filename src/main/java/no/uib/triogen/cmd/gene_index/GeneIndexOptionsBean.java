@@ -0,0 +1,63 @@
+package no.uib.triogen.cmd.gene_index;
+
+import java.io.File;
+import no.uib.triogen.utils.cli.CliUtils;
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Parses and stores the command line options.
+ *
+ * @author Marc Vaudel
+ */
+public class GeneIndexOptionsBean {
+
+    /**
+     * The GTF file.
+     */
+    public final File gtfFile;
+    /**
+     * The file where to write the index.
+     */
+    public final File destinationFile;
+
+    /**
+     * Constructor. Parses the command line options and conducts minimal sanity
+     * check.
+     *
+     * @param aLine a command line
+     */
+    public GeneIndexOptionsBean(
+            CommandLine aLine
+    ) {
+
+        // Check that mandatory options are provided
+        for (GeneIndexOptions option : GeneIndexOptions.values()) {
+
+            if (option.mandatory && !CliUtils.hasOption(aLine, option)) {
+
+                throw new IllegalArgumentException("No value found for mandatory option " + option.opt + " (" + option.longOpt + ")");
+
+            }
+        }
+
+        // The GTF file
+        gtfFile = new File(CliUtils.getOptionValue(aLine, GeneIndexOptions.gtf));
+
+        if (!gtfFile.exists()) {
+
+            throw new IllegalArgumentException("GTF file (" + gtfFile + ") not found.");
+
+        }
+
+        // The output file
+        destinationFile = new File(CliUtils.getOptionValue(aLine, GeneIndexOptions.out));
+
+        File destinationFolder = destinationFile.getAbsoluteFile().getParentFile();
+
+        if (!destinationFolder.exists()) {
+
+            throw new IllegalArgumentException("Output folder (" + destinationFolder + ") not found.");
+
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package no.uib.triogen.cmd.haplotype_cache;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import no.uib.triogen.TrioGen;
+import no.uib.triogen.model.family.ChildToParentMap;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
+import no.uib.triogen.io.genotypes.InheritanceUtils;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils;
+import no.uib.triogen.processing.haplotype_cache.HaplotypeCacheComputer;
+
+/**
+ * Writes the haplotypes of the trios to a cache file next to the genotypes
+ * file, to be used by subsequent association and scoring runs.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCache {
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        if (args.length == 0
+                || args.length == 1 && args[0].equals("-h")
+                || args.length == 1 && args[0].equals("--help")) {
+
+            printHelp();
+            return;
+
+        }
+
+        if (args.length == 1 && args[0].equals("-v")
+                || args.length == 1 && args[0].equals("--version")) {
+
+            System.out.println(TrioGen.getVersion());
+
+            return;
+
+        }
+
+        try {
+
+            Options lOptions = new Options();
+            HaplotypeCacheOptions.createOptionsCLI(lOptions);
+            CommandLineParser parser = new DefaultParser();
+            CommandLine commandLine = parser.parse(lOptions, args);
+
+            HaplotypeCacheOptionsBean bean = new HaplotypeCacheOptionsBean(commandLine);
+
+            run(
+                    bean,
+                    String.join(" ", args)
+            );
+
+        } catch (Throwable e) {
+
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param bean the bean of command line parameters
+     */
+    private static void run(
+            HaplotypeCacheOptionsBean bean,
+            String command
+    ) {
+
+        File logFile = new File(HaplotypeCacheUtils.getDefaultCacheFile(bean.genotypesFile).getAbsolutePath() + ".log.gz");
+        SimpleCliLogger logger = new SimpleCliLogger(logFile, null);
+        logger.writeComment("Software", "TrioGen");
+        logger.writeComment("Version", TrioGen.getVersion());
+        logger.writeComment("Command", "HaplotypeCache");
+        logger.writeComment("Arguments", command);
+        logger.writeHeaders();
+
+        ChildToParentMap childToParentMap = ChildToParentMap.fromFile(bean.trioFile);
+
+        HashMap<Integer, char[]> inheritanceMap = InheritanceUtils.getDefaultInheritanceMap(bean.chromosome);
+
+        if (inheritanceMap == null) {
+
+            throw new IllegalArgumentException("Mode of inheritance not implemented for " + bean.chromosome + ".");
+
+        }
+        
+        int defaultMotherPlooidy = InheritanceUtils.getDefaultMotherPloidy(bean.chromosome);
+        int defaultFatherPlooidy = InheritanceUtils.getDefaultFatherPloidy(bean.chromosome);
+
+        HaplotypeCacheComputer computer = new HaplotypeCacheComputer(
+                bean.genotypesFile,
+                inheritanceMap,
+                defaultMotherPlooidy,
+                defaultFatherPlooidy,
+                childToParentMap,
+                bean.nVariants,
+                logger
+        );
+
+        try {
+
+            computer.run(
+                    bean.timeOut
+            );
+
+        } catch (Throwable t) {
+
+            t.printStackTrace();
+
+            logger.logError(t.getLocalizedMessage());
+
+        }
+
+        logger.close();
+
+    }
+
+    /**
+     * Prints basic help
+     */
+    private static void printHelp() {
+
+        try ( PrintWriter lPrintWriter = new PrintWriter(System.out)) {
+            lPrintWriter.print(LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print("              trioGen             " + LINE_SEPARATOR);
+            lPrintWriter.print("               ****               " + LINE_SEPARATOR);
+            lPrintWriter.print("          Haplotype Cache         " + LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print(LINE_SEPARATOR
+                    + "The haplotype cache command line iterates a bgen file and stores the transmitted and non-transmitted haplotypes of the trios next to it, speeding up subsequent association runs." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "For documentation and bug report please refer to our code repository https://github.com/mvaudel/trioGen." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "----------------------"
+                    + LINE_SEPARATOR
+                    + "OPTIONS"
+                    + LINE_SEPARATOR
+                    + "----------------------" + LINE_SEPARATOR
+                    + LINE_SEPARATOR);
+            lPrintWriter.print(HaplotypeCacheOptions.getOptionsAsString());
+            lPrintWriter.flush();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package no.uib.triogen.cmd.haplotype_cache;
+
+import java.io.File;
+import no.uib.triogen.utils.cli.CliUtils;
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Parses and stores the command line options.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheOptionsBean {
+
+    /**
+     * The genotypes file.
+     */
+    public final File genotypesFile;
+    /**
+     * The chromosome name.
+     */
+    public final String chromosome;
+    /**
+     * The trio file.
+     */
+    public final File trioFile;
+    /**
+     * The number of variants to process simultaneously.
+     */
+    public int nVariants = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of days before timeout.
+     */
+    public int timeOut = 365;
+
+    /**
+     * Constructor. Parses the command line options and conducts minimal sanity
+     * check.
+     *
+     * @param aLine a command line
+     */
+    public HaplotypeCacheOptionsBean(
+            CommandLine aLine
+    ) {
+
+        // Check that mandatory options are provided
+        for (HaplotypeCacheOptions option : HaplotypeCacheOptions.values()) {
+
+            if (option.mandatory && !CliUtils.hasOption(aLine, option)) {
+
+                throw new IllegalArgumentException("No value found for mandatory option " + option.opt + " (" + option.longOpt + ")");
+
+            }
+        }
+
+        // The genotypes file
+        String filePath = CliUtils.getOptionValue(aLine, HaplotypeCacheOptions.geno);
+
+        genotypesFile = new File(filePath);
+
+        if (!genotypesFile.exists()) {
+
+            throw new IllegalArgumentException("Genotypes file (" + genotypesFile + ") not found.");
+
+        }
+
+        // The chromosome name
+        chromosome = CliUtils.getOptionValue(aLine, HaplotypeCacheOptions.chromosome);
+
+        // The trio file
+        filePath = CliUtils.getOptionValue(aLine, HaplotypeCacheOptions.trio);
+
+        trioFile = new File(filePath);
+
+        if (!trioFile.exists()) {
+
+            throw new IllegalArgumentException("Trio file (" + trioFile + ") not found.");
+
+        }
+
+        // Number of variants to chew in parallel
+        if (CliUtils.hasOption(aLine, HaplotypeCacheOptions.nVariants)) {
+
+            String argString = CliUtils.getOptionValue(aLine, HaplotypeCacheOptions.nVariants);
+
+            try {
+
+                nVariants = Integer.parseInt(argString);
+
+                if (nVariants <= 0) {
+
+                    throw new IllegalArgumentException(
+                            "Input for number of variants must be a strictly positive number."
+                    );
+
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new IllegalArgumentException(
+                        "Input for number of variants could not be parsed as a number: " + argString + "."
+                );
+
+            }
+        }
+
+        // Timeout
+        if (CliUtils.hasOption(aLine, HaplotypeCacheOptions.timeOut)) {
+
+            String argString = CliUtils.getOptionValue(aLine, HaplotypeCacheOptions.timeOut);
+
+            try {
+
+                timeOut = Integer.parseInt(argString);
+
+                if (timeOut <= 0) {
+
+                    throw new IllegalArgumentException(
+                            "Input for timeout must be a positive number."
+                    );
+
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new IllegalArgumentException(
+                        "Input for timeout could not be parsed as a number: " + argString + "."
+                );
+
+            }
+        }
+
+    }
+}
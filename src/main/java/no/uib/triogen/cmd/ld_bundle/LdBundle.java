@@ -0,0 +1,120 @@
+package no.uib.triogen.cmd.ld_bundle;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import no.uib.triogen.TrioGen;
+import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
+import no.uib.triogen.io.ld.LdMatrixBundle;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+
+/**
+ * Indexes a directory of ld matrices, one per contig, as a bundle.
+ *
+ * @author Marc Vaudel
+ */
+public class LdBundle {
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        if (args.length == 0
+                || args.length == 1 && args[0].equals("-h")
+                || args.length == 1 && args[0].equals("--help")) {
+
+            printHelp();
+            return;
+
+        }
+
+        if (args.length == 1 && args[0].equals("-v")
+                || args.length == 1 && args[0].equals("--version")) {
+
+            System.out.println(TrioGen.getVersion());
+
+            return;
+
+        }
+
+        try {
+
+            Options lOptions = new Options();
+            LdBundleOptions.createOptionsCLI(lOptions);
+            CommandLineParser parser = new DefaultParser();
+            CommandLine commandLine = parser.parse(lOptions, args);
+
+            LdBundleOptionsBean bean = new LdBundleOptionsBean(commandLine);
+
+            run(
+                    bean
+            );
+
+        } catch (Throwable e) {
+
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param bean the bean of command line parameters
+     *
+     * @throws IOException Exception thrown if an error occurs while reading or
+     * writing a file.
+     */
+    private static void run(
+            LdBundleOptionsBean bean
+    ) throws IOException {
+
+        Instant begin = Instant.now();
+
+        System.out.println("Indexing the ld matrices of " + bean.directory + ".");
+
+        String[] contigs = LdMatrixBundle.writeManifest(
+                bean.directory
+        );
+
+        Instant end = Instant.now();
+
+        long timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+
+        System.out.println(contigs.length + " contigs indexed (" + timeInSec + " s)");
+
+    }
+
+    /**
+     * Prints basic help
+     */
+    private static void printHelp() {
+
+        try (PrintWriter lPrintWriter = new PrintWriter(System.out)) {
+            lPrintWriter.print(LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print("              trioGen             " + LINE_SEPARATOR);
+            lPrintWriter.print("               ****               " + LINE_SEPARATOR);
+            lPrintWriter.print("             LdBundle             " + LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print(LINE_SEPARATOR
+                    + "The LdBundle command line indexes a directory of ld matrices, one per contig, as a bundle that can be used in place of a single ld matrix." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "For documentation and bug report please refer to our code repository https://github.com/mvaudel/trioGen." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "----------------------"
+                    + LINE_SEPARATOR
+                    + "OPTIONS"
+                    + LINE_SEPARATOR
+                    + "----------------------" + LINE_SEPARATOR
+                    + LINE_SEPARATOR);
+            lPrintWriter.print(LdBundleOptions.getOptionsAsString());
+            lPrintWriter.flush();
+        }
+    }
+}
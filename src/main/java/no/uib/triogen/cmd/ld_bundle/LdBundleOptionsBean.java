@@ -0,0 +1,48 @@
+package no.uib.triogen.cmd.ld_bundle;
+
+import java.io.File;
+import no.uib.triogen.utils.cli.CliUtils;
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Parses and stores the command line options.
+ *
+ * @author Marc Vaudel
+ */
+public class LdBundleOptionsBean {
+
+    /**
+     * The directory of the bundle.
+     */
+    public final File directory;
+
+    /**
+     * Constructor. Parses the command line options and conducts minimal sanity
+     * check.
+     *
+     * @param aLine a command line
+     */
+    public LdBundleOptionsBean(
+            CommandLine aLine
+    ) {
+
+        // Check that mandatory options are provided
+        for (LdBundleOptions option : LdBundleOptions.values()) {
+
+            if (option.mandatory && !CliUtils.hasOption(aLine, option)) {
+
+                throw new IllegalArgumentException("No value found for mandatory option " + option.opt + " (" + option.longOpt + ")");
+
+            }
+        }
+
+        // The directory
+        directory = new File(CliUtils.getOptionValue(aLine, LdBundleOptions.directory));
+
+        if (!directory.isDirectory()) {
+
+            throw new IllegalArgumentException("Directory (" + directory + ") not found.");
+
+        }
+    }
+}
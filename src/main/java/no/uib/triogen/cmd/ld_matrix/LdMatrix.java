@@ -6,7 +6,10 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.stream.Collectors;
 import no.uib.triogen.TrioGen;
+import no.uib.triogen.model.annotation.RegionAnnotation;
 import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.model.genome.GeneticMap;
+import no.uib.triogen.model.trio_genotypes.VariantList;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -100,6 +103,42 @@ public class LdMatrix {
         logger.writeComment("Arguments", command);
         logger.writeHeaders();
 
+        VariantList targets = null;
+
+        if (bean.variantFile != null) {
+
+            targets = VariantList.getVariantList(
+                    bean.variantFile,
+                    bean.chromosome
+            );
+
+            if (targets.variantId.length == 0) {
+
+                logger.logMessage("No target variant on chromosome " + bean.chromosome + ".");
+
+            }
+        }
+
+        RegionAnnotation annotation = null;
+
+        if (bean.annotationFile != null) {
+
+            annotation = RegionAnnotation.parse(
+                    bean.annotationFile,
+                    bean.chromosome
+            );
+        }
+
+        GeneticMap geneticMap = null;
+
+        if (bean.geneticMapFile != null) {
+
+            geneticMap = GeneticMap.parse(
+                    bean.geneticMapFile,
+                    bean.chromosome
+            );
+        }
+
         LdMatrixComputer computer = new LdMatrixComputer(
                 bean.genotypesFile,
                 inheritanceMap,
@@ -111,6 +150,20 @@ public class LdMatrix {
                 bean.minR2,
                 bean.alleleFrequencyThreshold,
                 bean.nVariants,
+                bean.shard,
+                targets,
+                bean.checkpointInterval,
+                bean.resume,
+                bean.engine,
+                bean.hardCalls,
+                bean.r2Bits,
+                bean.ldScore,
+                annotation,
+                bean.writeMatrix,
+                geneticMap,
+                bean.maxCm,
+                bean.exitCm,
+                bean.exitRun,
                 logger
         );
 
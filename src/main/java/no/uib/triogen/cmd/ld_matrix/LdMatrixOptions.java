@@ -14,13 +14,27 @@ public enum LdMatrixOptions implements CliOption {
 
     geno("g", "geno", "The genotypes file.", true, true),
     chromosome("c", "chromosome", "The chromosome name.", true, true),
+    variantId("vi", "variantId", "File listing the target variants. If provided, LD is only computed between the target variants and the variants in their window, using the pairwise engine. Default: compute LD for all variants in the genotypes file.", false, true),
     maxDistance("d", "dist", "The maximum distance in bp to consider around a variant. Default: 500000.", false, true),
     trio("f", "fam", "The trio identifiers file. Can be gzipped or not. Consider including only unrelated samples and controling for admixture.", true, true),
     minR2("r", "minR2", "The minimal ld r2 to report (inclusive). Default: 1e-6.", false, true),
     af("af", "afThreshold", "Allele frequency threshold. 0.001 excludes all alleles of variants with frequency < 0.1% or > 99.9%. Only variants with at least two alleles passing the threshold will be inspected. Default: 0.001.", false, true),
     out("o", "out", "The file where to write the matrix. The extension '.tld' will be added if not present.", true, true),
     nVariants("nv", "nVariants", "The number of variants to process in parallel. Default is the number of cores on the machine.", false, true),
-    timeOut("z", "timeOut", "The number of days before timeout, default is 365.", false, true);
+    timeOut("z", "timeOut", "The number of days before timeout, default is 365.", false, true),
+    checkpoint("cp", "checkpoint", "The interval in minutes between checkpoints allowing to resume an interrupted run. 0 disables checkpoints. Default: 30.", false, true),
+    shard("sh", "shard", "The shard of variants to process, either as 'i/n' to process the i-th of n shards balanced by data size, or as 'first-last' to process the variants at the given indexes in the bgen file (0-based, inclusive). Shard outputs can be merged using the Merge command. Default: process all variants.", false, true),
+    resume("re", "resume", "If present, resumes an interrupted run from the last checkpoint.", false, false),
+    engine("e", "engine", "The engine to use to compute LD. 0: pairwise; 1: blocked matrix products, computing every pair of variants once. Default: 1.", false, true),
+    hardCalls("hc", "hardCalls", "If present, LD is computed on the best-guess genotypes of the parents instead of genotype probabilities.", false, false),
+    r2Bits("rb", "r2Bits", "The number of bits to use to store r2 values in the matrix: 8, 16, or 32 for lossless. Default: 16.", false, true),
+    ldScore("ls", "ldScore", "If present, the LD score of every variant, i.e. the sum of the r2 with all variants in its window, is written to an indexed table next to the matrix ('.ldscore.gz'). Disables checkpoints.", false, false),
+    annotation("an", "annotation", "Bed-like tab-separated file listing the regions of the annotations to use to partition the LD scores: contig, start (0-based, inclusive), end (exclusive), and optionally the name of the annotation. Requires --ldScore. Default: no partitioned LD score.", false, true),
+    noMatrix("nm", "noMatrix", "If present, only the LD scores are computed and the matrix is not written. Requires --ldScore.", false, false),
+    geneticMap("gm", "geneticMap", "The genetic map of the chromosome, e.g. from the 'resources/recombination_rates' folder. If provided, windows are bounded in genetic distance and the scan of a variant stops after a run of pairs below the minimal r2. Requires the blocked engine, cannot be used with shards, target variants, or checkpoints. Default: windows bounded in bp only.", false, true),
+    maxCm("cm", "maxCm", "The maximal genetic distance in cM to consider around a variant when using a genetic map. Default: 1.0.", false, true),
+    exitCm("ecm", "exitCm", "The genetic distance in cM beyond which the scan of a variant can stop when using a genetic map. Default: 0.1.", false, true),
+    exitRun("er", "exitRun", "The number of consecutive pairs with r2 below the minimal r2 beyond the exit distance after which the scan of a variant stops when using a genetic map. Default: 50.", false, true);
 
     /**
      * The short option.
@@ -1,6 +1,10 @@
 package no.uib.triogen.cmd.ld_matrix;
 
 import java.io.File;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantShard;
+import no.uib.triogen.io.ld.LdMatrixUtils;
+import no.uib.triogen.processing.ld.AdaptiveWindow;
+import no.uib.triogen.processing.ld.LdUtils.LdEngine;
 import no.uib.triogen.utils.cli.CliUtils;
 import org.apache.commons.cli.CommandLine;
 
@@ -19,6 +23,10 @@ public class LdMatrixOptionsBean {
      * The chromosome name.
      */
     public final String chromosome;
+    /**
+     * The file listing the target variants, null to process all variants.
+     */
+    public File variantFile = null;
     /**
      * The max distance between the snp and the target snp.
      */
@@ -47,6 +55,62 @@ public class LdMatrixOptionsBean {
      * The number of days before timeout.
      */
     public int timeOut = 365;
+    /**
+     * The interval between checkpoints in minutes.
+     */
+    public int checkpointInterval = 30;
+    /**
+     * The shard of variants to process, null to process all variants.
+     */
+    public VariantShard shard = null;
+    /**
+     * Boolean indicating whether an interrupted run should be resumed.
+     */
+    public final boolean resume;
+    /**
+     * The engine to use to compute LD.
+     */
+    public LdEngine engine = LdEngine.blocked;
+    /**
+     * Boolean indicating whether LD should be computed on hard calls.
+     */
+    public final boolean hardCalls;
+    /**
+     * The number of bits to use to store r2 values.
+     */
+    public int r2Bits = LdMatrixUtils.DEFAULT_R2_BITS;
+    /**
+     * Boolean indicating whether the LD scores of the variants should be
+     * computed.
+     */
+    public final boolean ldScore;
+    /**
+     * The file listing the regions of the annotations to use to partition the
+     * LD scores, null if none.
+     */
+    public File annotationFile = null;
+    /**
+     * Boolean indicating whether the matrix should be written.
+     */
+    public final boolean writeMatrix;
+    /**
+     * The genetic map to use to bound windows in genetic distance, null if
+     * windows are bounded in bp only.
+     */
+    public File geneticMapFile = null;
+    /**
+     * The maximal genetic distance between variants in cM.
+     */
+    public double maxCm = AdaptiveWindow.DEFAULT_MAX_CM;
+    /**
+     * The genetic distance in cM beyond which the scan of a variant can stop.
+     */
+    public double exitCm = AdaptiveWindow.DEFAULT_EXIT_CM;
+    /**
+     * The number of consecutive pairs below the minimal r2 after which the
+     * scan of a variant stops.
+     */
+    public int exitRun = AdaptiveWindow.DEFAULT_EXIT_RUN;
 
     /**
      * Constructor. Parses the command line options and conducts minimal sanity
@@ -82,6 +146,20 @@ public class LdMatrixOptionsBean {
         // The chromosome name
         chromosome = CliUtils.getOptionValue(aLine, LdMatrixOptions.chromosome);
 
+        // The target variants
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.variantId)) {
+
+            filePath = CliUtils.getOptionValue(aLine, LdMatrixOptions.variantId);
+
+            variantFile = new File(filePath);
+
+            if (!variantFile.exists()) {
+
+                throw new IllegalArgumentException("Variant file (" + variantFile + ") not found.");
+
+            }
+        }
+
         // The trio file
         filePath = CliUtils.getOptionValue(aLine, LdMatrixOptions.trio);
 
@@ -236,5 +314,245 @@ public class LdMatrixOptionsBean {
             }
         }
 
+        // Checkpoint interval
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.checkpoint)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdMatrixOptions.checkpoint);
+
+            try {
+
+                checkpointInterval = Integer.parseInt(argString);
+
+                if (checkpointInterval < 0) {
+
+                    throw new IllegalArgumentException(
+                            "Input for checkpoint interval must be a positive number."
+                    );
+
+                }
+
+            } catch (Exception e) {
+
+                e.printStackTrace();
+
+                throw new IllegalArgumentException(
+                        "Input for checkpoint interval could not be parsed as a number: " + argString + "."
+                );
+
+            }
+        }
+
+        // Shard
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.shard)) {
+
+            shard = VariantShard.parse(CliUtils.getOptionValue(aLine, LdMatrixOptions.shard));
+
+        }
+
+        // Resume
+        resume = CliUtils.hasOption(aLine, LdMatrixOptions.resume);
+
+        // The engine
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.engine)) {
+
+            String option = CliUtils.getOptionValue(aLine, LdMatrixOptions.engine);
+
+            int selectedOption;
+            try {
+
+                selectedOption = Integer.parseInt(option);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException("The value provided for the engine ('" + option + "') could not be parsed as a number.");
+
+            }
+
+            boolean found = false;
+
+            for (LdEngine engineOption : LdEngine.values()) {
+
+                if (engineOption.index == selectedOption) {
+
+                    engine = engineOption;
+                    found = true;
+
+                    break;
+
+                }
+            }
+
+            if (!found) {
+
+                throw new IllegalArgumentException("The value provided for the engine ('" + option + "') does not correspond to an engine.");
+
+            }
+        }
+
+        // Hard calls
+        hardCalls = CliUtils.hasOption(aLine, LdMatrixOptions.hardCalls);
+
+        // The number of bits to use to store r2 values
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.r2Bits)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdMatrixOptions.r2Bits);
+
+            try {
+
+                r2Bits = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException(
+                        "Input for the number of bits to use to store r2 values could not be parsed as a number: " + argString + "."
+                );
+
+            }
+
+            LdMatrixUtils.getR2Scale(r2Bits);
+
+        }
+
+        // LD scores
+        ldScore = CliUtils.hasOption(aLine, LdMatrixOptions.ldScore);
+
+        if (ldScore && resume) {
+
+            throw new IllegalArgumentException("Runs computing LD scores cannot be resumed.");
+
+        }
+
+        // The annotations
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.annotation)) {
+
+            if (!ldScore) {
+
+                throw new IllegalArgumentException("Annotations are only used to compute LD scores, please use --" + LdMatrixOptions.ldScore.longOpt + ".");
+
+            }
+
+            filePath = CliUtils.getOptionValue(aLine, LdMatrixOptions.annotation);
+
+            annotationFile = new File(filePath);
+
+            if (!annotationFile.exists()) {
+
+                throw new IllegalArgumentException("Annotation file (" + annotationFile + ") not found.");
+
+            }
+        }
+
+        // Matrix
+        writeMatrix = !CliUtils.hasOption(aLine, LdMatrixOptions.noMatrix);
+
+        if (!writeMatrix && !ldScore) {
+
+            throw new IllegalArgumentException("Nothing to compute: the matrix is not written and LD scores are not computed, please use --" + LdMatrixOptions.ldScore.longOpt + ".");
+
+        }
+
+        // The genetic map
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.geneticMap)) {
+
+            filePath = CliUtils.getOptionValue(aLine, LdMatrixOptions.geneticMap);
+
+            geneticMapFile = new File(filePath);
+
+            if (!geneticMapFile.exists()) {
+
+                throw new IllegalArgumentException("Genetic map (" + geneticMapFile + ") not found.");
+
+            }
+
+            if (engine != LdEngine.blocked || shard != null || variantFile != null || resume) {
+
+                throw new IllegalArgumentException("Adaptive windows require the blocked engine and cannot be used with shards, target variants, or resumed runs.");
+
+            }
+
+        } else if (CliUtils.hasOption(aLine, LdMatrixOptions.maxCm) || CliUtils.hasOption(aLine, LdMatrixOptions.exitCm) || CliUtils.hasOption(aLine, LdMatrixOptions.exitRun)) {
+
+            throw new IllegalArgumentException("Genetic distances are only used with a genetic map, please use --" + LdMatrixOptions.geneticMap.longOpt + ".");
+
+        }
+
+        // The maximal genetic distance
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.maxCm)) {
+
+            maxCm = parsePositive(CliUtils.getOptionValue(aLine, LdMatrixOptions.maxCm), "maximal genetic distance");
+
+        }
+
+        // The exit genetic distance
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.exitCm)) {
+
+            exitCm = parsePositive(CliUtils.getOptionValue(aLine, LdMatrixOptions.exitCm), "exit genetic distance");
+
+        }
+
+        // The exit run
+        if (CliUtils.hasOption(aLine, LdMatrixOptions.exitRun)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdMatrixOptions.exitRun);
+
+            try {
+
+                exitRun = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException(
+                        "Input for the number of pairs after which the scan of a variant stops could not be parsed as a number: " + argString + "."
+                );
+
+            }
+
+            if (exitRun <= 0) {
+
+                throw new IllegalArgumentException(
+                        "Input for the number of pairs after which the scan of a variant stops must be a strictly positive number."
+                );
+
+            }
+        }
+    }
+
+    /**
+     * Parses a strictly positive number.
+     *
+     * @param argString The argument to parse.
+     * @param name The name of the option for the error messages.
+     *
+     * @return The number.
+     */
+    private static double parsePositive(
+            String argString,
+            String name
+    ) {
+
+        double value;
+
+        try {
+
+            value = Double.parseDouble(argString);
+
+        } catch (Exception e) {
+
+            throw new IllegalArgumentException(
+                    "Input for the " + name + " could not be parsed as a number: " + argString + "."
+            );
+
+        }
+
+        if (value <= 0.0) {
+
+            throw new IllegalArgumentException(
+                    "Input for the " + name + " must be a strictly positive number."
+            );
+
+        }
+
+        return value;
+
     }
 }
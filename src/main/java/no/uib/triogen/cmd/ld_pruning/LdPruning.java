@@ -2,12 +2,19 @@ package no.uib.triogen.cmd.ld_pruning;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import no.uib.triogen.TrioGen;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
 import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
+import no.uib.triogen.io.ld.LdRowCache;
+import no.uib.triogen.model.annotation.proxies.CachedProxySource;
+import no.uib.triogen.model.annotation.proxies.EnsemblProxySource;
+import no.uib.triogen.model.annotation.proxies.LdLinkProxySource;
+import no.uib.triogen.model.annotation.proxies.ProxyCache;
+import no.uib.triogen.model.annotation.proxies.ProxySource;
 import no.uib.triogen.processing.ld.pruning.SimpleLdPruner;
 
 /**
@@ -73,6 +80,34 @@ public class LdPruning {
             LdPruningOptionsBean bean
     ) throws IOException {
 
+        ProxyCache proxyCache = bean.proxyCacheFile == null ? null : new ProxyCache(bean.proxyCacheFile, bean.proxyCacheTtl);
+
+        ArrayList<ProxySource> proxySources = new ArrayList<>(2);
+
+        if (bean.ensemblPopulation != null) {
+
+            proxySources.add(
+                    new CachedProxySource(
+                            new EnsemblProxySource(bean.ensemblPopulation, bean.minR2, bean.buildNumber),
+                            proxyCache,
+                            bean.proxyQueries,
+                            bean.proxyDelay
+                    )
+            );
+        }
+
+        if (bean.ldLinkPopulation != null) {
+
+            proxySources.add(
+                    new CachedProxySource(
+                            new LdLinkProxySource(bean.ldLinkPopulation, bean.minR2, bean.ldLinkToken),
+                            proxyCache,
+                            1,
+                            bean.proxyDelay
+                    )
+            );
+        }
+
         SimpleLdPruner pruner = new SimpleLdPruner(
                 bean.ldMatrixFilePath,
                 bean.resultsFile,
@@ -85,14 +120,20 @@ public class LdPruning {
                 bean.phenoColName,
                 bean.contigColName,
                 bean.separator,
-                bean.buildNumber,
-                bean.ensemblPopulation,
-                bean.ldLinkPopulation,
-                bean.ldLinkToken
+                proxySources.toArray(new ProxySource[proxySources.size()]),
+                bean.ldCacheSize > 0 ? new LdRowCache(bean.ldCacheSize * 1024L * 1024L) : null
         );
 
         pruner.run();
 
+        if (proxyCache != null) {
+
+            System.out.println(proxyCache.getReport());
+
+            proxyCache.close();
+
+        }
+
     }
 
     /**
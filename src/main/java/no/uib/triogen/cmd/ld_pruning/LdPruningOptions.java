@@ -3,6 +3,8 @@ package no.uib.triogen.cmd.ld_pruning;
 import java.util.Arrays;
 import org.apache.commons.cli.Options;
 import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
+import no.uib.triogen.model.annotation.proxies.CachedProxySource;
+import no.uib.triogen.model.annotation.proxies.ProxyCache;
 import no.uib.triogen.utils.Utils;
 import no.uib.triogen.utils.cli.CliOption;
 
@@ -14,11 +16,15 @@ import no.uib.triogen.utils.cli.CliOption;
 public enum LdPruningOptions implements CliOption {
 
     results("res", "results", "The results file to prune.", true, true),
-    ldMatrix("l", "ld_matrix", "The ld matrix file as generated using the LdMatrix command. If LD matrix files are computed per contig, replace the chromosome name with '" + Utils.CHROMOSOME_WILDCARD + "'. Ignored if not provided.", false, true),
+    ldMatrix("l", "ld_matrix", "The ld matrix file as generated using the LdMatrix command. If LD matrix files are computed per contig, replace the chromosome name with '" + Utils.CHROMOSOME_WILDCARD + "'. Ld matrix bundles can be provided as the directory of the bundle. Ignored if not provided.", false, true),
     build("b", "build", "The build to use when querying Ensembl as a number 37: grch37, 38: grch38. Default: 37.", false, true),
     ensemblPopulation("ep", "ensembl_population", "The reference population for Ensembl. See https://rest.ensembl.org/documentation/info/variation_populations for details. Ensembl is not used if not provided.", false, true),
     ldlinkPopulation("lp", "ldlink_population", "The reference population to use for LDlink. LDlink is not used if not provided.", false, true),
     ldlinkToken("lt", "ldlink_token", "The token to use for LDlink. Mandatory when using LDlink.", false, true),
+    proxyCache("pc", "proxy_cache", "SQLite file where to cache the proxies from Ensembl and LDlink, created if it does not exist. Proxies are not cached if not provided.", false, true),
+    proxyCacheTtl("pct", "proxy_cache_ttl", "The number of days after which cached proxies are queried again, 0 for never. Default: " + ProxyCache.DEFAULT_TTL_DAYS + ".", false, true),
+    proxyQueries("pq", "proxy_queries", "The maximal number of concurrent queries to Ensembl. LDlink is queried one variant at a time. Default: " + CachedProxySource.DEFAULT_N_QUERIES + ".", false, true),
+    proxyDelay("pd", "proxy_delay", "The minimal delay in milliseconds between the start of two queries to a proxy source. Default: " + CachedProxySource.DEFAULT_DELAY + ".", false, true),
     minR2("r", "min_r2", "The minimal ld r2 to consider two markers in LD. Default: 0.05.", false, true),
     maxP("p", "max_p", "The maximal p-value to consider. Default: 1e-6.", false, true),
     idColName("id", "id_col_name", "The name of the variant id column. Default: 'variantId'.", false, true),
@@ -27,6 +33,7 @@ public enum LdPruningOptions implements CliOption {
     contigColName("cn", "contig_col_name", "The name of the contig column. Default: 'contig'.", false, true),
     phenoColName("phn", "pheno_col_name", "The name of the phenotype column. Ignored if not provided.", false, true),
     separator("s", "separator", "Separator for the columns. Default: '\t'.", false, true),
+    ldCache("lc", "ld_cache", "The size in MB of the cache of decoded LD rows shared between threads. 0 disables the cache. Default: 512.", false, true),
     out("o", "out", "The file where to write the results.", true, true);
 
     /**
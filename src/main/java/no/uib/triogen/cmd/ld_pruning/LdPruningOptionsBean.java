@@ -1,6 +1,8 @@
 package no.uib.triogen.cmd.ld_pruning;
 
 import java.io.File;
+import no.uib.triogen.model.annotation.proxies.CachedProxySource;
+import no.uib.triogen.model.annotation.proxies.ProxyCache;
 import no.uib.triogen.utils.cli.CliUtils;
 import org.apache.commons.cli.CommandLine;
 
@@ -71,6 +73,28 @@ public class LdPruningOptionsBean {
      * The token to use for LDlink.
      */
     public String ldLinkToken = null;
+    /**
+     * The SQLite file where to cache proxies, null if proxies are not cached.
+     */
+    public File proxyCacheFile = null;
+    /**
+     * The number of days after which cached proxies are queried again, 0 for
+     * never.
+     */
+    public int proxyCacheTtl = ProxyCache.DEFAULT_TTL_DAYS;
+    /**
+     * The maximal number of concurrent queries to Ensembl.
+     */
+    public int proxyQueries = CachedProxySource.DEFAULT_N_QUERIES;
+    /**
+     * The minimal delay in milliseconds between the start of two queries to a
+     * proxy source.
+     */
+    public long proxyDelay = CachedProxySource.DEFAULT_DELAY;
+    /**
+     * The size of the cache of decoded LD rows in MB, 0 disables the cache.
+     */
+    public int ldCacheSize = 512;
     
     /**
      * Constructor. Parses the command line options and conducts minimal sanity
@@ -254,5 +278,107 @@ public class LdPruningOptionsBean {
             ldLinkToken = CliUtils.getOptionValue(aLine, LdPruningOptions.ldlinkToken);
 
         }
+
+        // The cache of proxies
+        if (CliUtils.hasOption(aLine, LdPruningOptions.proxyCache)) {
+
+            proxyCacheFile = new File(CliUtils.getOptionValue(aLine, LdPruningOptions.proxyCache));
+
+            File proxyCacheFolder = proxyCacheFile.getAbsoluteFile().getParentFile();
+
+            if (!proxyCacheFolder.exists()) {
+
+                throw new IllegalArgumentException("Folder of the proxy cache (" + proxyCacheFolder + ") not found.");
+
+            }
+        }
+
+        // The time to live of the cached proxies
+        if (CliUtils.hasOption(aLine, LdPruningOptions.proxyCacheTtl)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdPruningOptions.proxyCacheTtl);
+
+            try {
+
+                proxyCacheTtl = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException("Input for the time to live of the proxy cache (" + argString + ") cannot be parsed as a number.");
+
+            }
+
+            if (proxyCacheTtl < 0) {
+
+                throw new IllegalArgumentException("Input for the time to live of the proxy cache (" + argString + ") must be positive.");
+
+            }
+        }
+
+        // The number of concurrent queries for proxies
+        if (CliUtils.hasOption(aLine, LdPruningOptions.proxyQueries)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdPruningOptions.proxyQueries);
+
+            try {
+
+                proxyQueries = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException("Input for the number of concurrent proxy queries (" + argString + ") cannot be parsed as a number.");
+
+            }
+
+            if (proxyQueries <= 0) {
+
+                throw new IllegalArgumentException("Input for the number of concurrent proxy queries (" + argString + ") must be strictly positive.");
+
+            }
+        }
+
+        // The delay between queries for proxies
+        if (CliUtils.hasOption(aLine, LdPruningOptions.proxyDelay)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdPruningOptions.proxyDelay);
+
+            try {
+
+                proxyDelay = Long.parseLong(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException("Input for the delay between proxy queries (" + argString + ") cannot be parsed as a number.");
+
+            }
+
+            if (proxyDelay < 0) {
+
+                throw new IllegalArgumentException("Input for the delay between proxy queries (" + argString + ") must be positive.");
+
+            }
+        }
+
+        // The size of the cache of LD rows
+        if (CliUtils.hasOption(aLine, LdPruningOptions.ldCache)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdPruningOptions.ldCache);
+
+            try {
+
+                ldCacheSize = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException("Input for the size of the LD cache (" + argString + ") cannot be parsed as a number.");
+
+            }
+
+            if (ldCacheSize < 0) {
+
+                throw new IllegalArgumentException("Input for the size of the LD cache (" + argString + ") must be positive.");
+
+            }
+        }
     }
 }
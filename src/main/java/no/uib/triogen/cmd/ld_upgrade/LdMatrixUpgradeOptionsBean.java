@@ -0,0 +1,103 @@
+package no.uib.triogen.cmd.ld_upgrade;
+
+import java.io.File;
+import no.uib.triogen.io.ld.LdMatrixUtils;
+import no.uib.triogen.utils.cli.CliUtils;
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Parses and stores the command line options.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixUpgradeOptionsBean {
+
+    /**
+     * The ld matrix to upgrade.
+     */
+    public final File inputFile;
+    /**
+     * File where to write the output.
+     */
+    public final File destinationFile;
+    /**
+     * The number of bits to use to store r2 values.
+     */
+    public int r2Bits = LdMatrixUtils.DEFAULT_R2_BITS;
+
+    /**
+     * Constructor. Parses the command line options and conducts minimal sanity
+     * check.
+     *
+     * @param aLine a command line
+     */
+    public LdMatrixUpgradeOptionsBean(
+            CommandLine aLine
+    ) {
+
+        // Check that mandatory options are provided
+        for (LdMatrixUpgradeOptions option : LdMatrixUpgradeOptions.values()) {
+
+            if (option.mandatory && !CliUtils.hasOption(aLine, option)) {
+
+                throw new IllegalArgumentException("No value found for mandatory option " + option.opt + " (" + option.longOpt + ")");
+
+            }
+        }
+
+        // The input file
+        inputFile = new File(CliUtils.getOptionValue(aLine, LdMatrixUpgradeOptions.input));
+
+        if (!inputFile.exists()) {
+
+            throw new IllegalArgumentException("Ld matrix (" + inputFile + ") not found.");
+
+        }
+
+        // The output file
+        String filePath = CliUtils.getOptionValue(aLine, LdMatrixUpgradeOptions.out);
+
+        if (!filePath.endsWith(LdMatrixUtils.EXTENSION)) {
+
+            filePath = filePath + LdMatrixUtils.EXTENSION;
+
+        }
+
+        destinationFile = new File(filePath);
+
+        File destinationFolder = destinationFile.getAbsoluteFile().getParentFile();
+
+        if (!destinationFolder.exists()) {
+
+            throw new IllegalArgumentException("Output folder (" + destinationFolder + ") not found.");
+
+        }
+
+        if (inputFile.getAbsoluteFile().equals(destinationFile.getAbsoluteFile())) {
+
+            throw new IllegalArgumentException("The output file must be different from the matrix to upgrade.");
+
+        }
+
+        // The number of bits to use to store r2 values
+        if (CliUtils.hasOption(aLine, LdMatrixUpgradeOptions.r2Bits)) {
+
+            String argString = CliUtils.getOptionValue(aLine, LdMatrixUpgradeOptions.r2Bits);
+
+            try {
+
+                r2Bits = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException(
+                        "Input for the number of bits to use to store r2 values could not be parsed as a number: " + argString + "."
+                );
+
+            }
+
+            LdMatrixUtils.getR2Scale(r2Bits);
+
+        }
+    }
+}
@@ -6,10 +6,11 @@ import java.io.PrintWriter;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import no.uib.triogen.TrioGen;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -17,6 +18,7 @@ import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
 import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
 import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.ld.LdMatrixBundle;
 import no.uib.triogen.io.ld.LdMatrixReader;
 import no.uib.triogen.model.ld.R2;
 import no.uib.triogen.model.trio_genotypes.VariantList;
@@ -102,7 +104,25 @@ public class LdValue {
                         Collectors.toCollection(HashSet::new)
                 );
 
-        if (wildCard) {
+        if (LdMatrixBundle.isBundle(new File(bean.ldMatrixFilePath))) {
+
+            LdMatrixBundle ldMatrixBundle = LdMatrixBundle.getBundle(new File(bean.ldMatrixFilePath));
+
+            for (String contig : contigs) {
+
+                LdMatrixReader ldMatrixReader = ldMatrixBundle.getReader(contig);
+
+                if (ldMatrixReader == null) {
+
+                    throw new IllegalArgumentException("LD matrix not found for contig " + contig + " in " + bean.ldMatrixFilePath + ".");
+
+                }
+
+                ldMatrixReaderMap.put(contig, ldMatrixReader);
+
+            }
+
+        } else if (wildCard) {
 
             contigs.parallelStream()
                     .forEach(
@@ -150,34 +170,42 @@ public class LdValue {
 
         begin = Instant.now();
 
-        ConcurrentHashMap<String, ArrayList<R2>> results = new ConcurrentHashMap<>(variantList.variantId.length);
+        HashMap<String, ArrayList<String>> contigVariants = new HashMap<>(contigs.size());
 
-        IntStream.range(0, variantList.variantId.length)
-                .parallel()
-                .forEach(
-                        i -> {
-                            String variantId = variantList.variantId[i];
-                            String contig = variantList.chromosome[i];
-                            LdMatrixReader ldMatrixReader = ldMatrixReaderMap.get(contig);
-                            ArrayList<R2> result = ldMatrixReader.getR2(variantId);
+        for (int i = 0; i < variantList.variantId.length; i++) {
 
-                            if (result != null) {
+            contigVariants.computeIfAbsent(variantList.chromosome[i], contig -> new ArrayList<>())
+                    .add(variantList.variantId[i]);
 
-                                for (R2 r2 : result) {
+        }
 
-                                    String variantB = ldMatrixReader.getId(r2.variantB);
-                                    r2.setVariantBId(variantB);
+        HashMap<String, ArrayList<R2>> results = new HashMap<>(variantList.variantId.length);
 
-                                    String rsidB = ldMatrixReader.getRsId(variantB);
-                                    r2.setVariantBRsid(rsidB);
+        for (Entry<String, ArrayList<String>> entry : contigVariants.entrySet()) {
 
-                                }
+            LdMatrixReader ldMatrixReader = ldMatrixReaderMap.get(entry.getKey());
+            HashMap<String, ArrayList<R2>> contigResults = ldMatrixReader.getR2(entry.getValue());
+
+            contigResults.values()
+                    .parallelStream()
+                    .flatMap(
+                            result -> result.stream()
+                    )
+                    .forEach(
+                            r2 -> {
+
+                                String variantB = ldMatrixReader.getId(r2.variantB);
+                                r2.setVariantBId(variantB);
 
-                                results.put(variantId, result);
+                                String rsidB = ldMatrixReader.getRsId(variantB);
+                                r2.setVariantBRsid(rsidB);
 
                             }
-                        }
-                );
+                    );
+
+            results.putAll(contigResults);
+
+        }
 
         end = Instant.now();
 
@@ -13,7 +13,7 @@ import no.uib.triogen.utils.cli.CliOption;
  */
 public enum LdValueOptions implements CliOption {
 
-    ldMatrix("l", "ldMatrix", "The ld matrix file as generated using the LdMatrix command. If ld matrix files are computed per contig, replace the chromosome name with '" + Utils.CHROMOSOME_WILDCARD + "'.", true, true),
+    ldMatrix("l", "ldMatrix", "The ld matrix file as generated using the LdMatrix command. If ld matrix files are computed per contig, replace the chromosome name with '" + Utils.CHROMOSOME_WILDCARD + "'. Ld matrix bundles can be provided as the directory of the bundle.", true, true),
     variantId("vi", "variantId", "File listing the variants to query.", true, true),
     out("o", "out", "The file where to write the results.", true, true);
 
@@ -11,6 +11,7 @@ import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
 import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
 import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.annotation.GeneCoordinatesIndex;
 import no.uib.triogen.model.trio_genotypes.VariantList;
 
 /**
@@ -82,6 +83,8 @@ public class LocusZoom {
 
         VariantList variantList = VariantList.getVariantList(bean.variantFile);
 
+        GeneCoordinatesIndex geneIndex = bean.geneIndexFile == null ? null : GeneCoordinatesIndex.read(bean.geneIndexFile);
+
         try {
 
             LocusZoomExtractor.writeData(
@@ -89,6 +92,7 @@ public class LocusZoom {
                     variantList,
                     bean.maxDistance,
                     bean.buildNumber,
+                    geneIndex,
                     bean.resultsFile,
                     bean.ldMatrixFile,
                     bean.outputFileStem,
@@ -20,6 +20,7 @@ public enum LocusZoomOptions implements CliOption {
     buildNumber("b", "buildNumber", "The number of the build to use if gene mapping is conducted. e.g. 38 for GRCh38. Default: 38.", false, true),
     out("o", "out", "The file where to write the data needed to build a locus zoom plot.", true, true),
     geneCoordinates("g", "geneCoordinates", "The file where to write the gene coordinates. If none provided gene mapping will be skipped.", false, true),
+    geneIndex("gi", "geneIndex", "The gene index built using the GeneIndex command. If provided, genes are mapped using the index, and Ensembl is only queried for the contigs absent from the index.", false, true),
     log("log", "log", "The file where to write the log. Default: next to the output.", false, true);
 
     /**
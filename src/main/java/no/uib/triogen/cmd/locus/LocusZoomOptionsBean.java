@@ -43,6 +43,10 @@ public class LocusZoomOptionsBean {
      * Stem for the gene coordinates file.
      */
     public String geneCoordinatesFileStem = null;
+    /**
+     * The gene index file, null if not provided.
+     */
+    public File geneIndexFile = null;
     /**
      * Path for the file where to write the log.
      */
@@ -149,6 +153,18 @@ public class LocusZoomOptionsBean {
             
         }
 
+        // The gene index
+        if (CliUtils.hasOption(aLine, LocusZoomOptions.geneIndex)) {
+
+            geneIndexFile = new File(CliUtils.getOptionValue(aLine, LocusZoomOptions.geneIndex));
+
+            if (!geneIndexFile.exists()) {
+
+                throw new IllegalArgumentException("Gene index (" + geneIndexFile + ") not found.");
+
+            }
+        }
+
         // The log file
         if (CliUtils.hasOption(aLine, LocusZoomOptions.log)) {
 
@@ -0,0 +1,133 @@
+package no.uib.triogen.cmd.merge;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import no.uib.triogen.TrioGen;
+import static no.uib.triogen.io.IoUtils.LINE_SEPARATOR;
+import no.uib.triogen.io.flat.indexed.IndexedGzMerger;
+import no.uib.triogen.io.ld.LdMatrixMerger;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+
+/**
+ * Merges the results of commands run in shards.
+ *
+ * @author Marc Vaudel
+ */
+public class Merge {
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        if (args.length == 0
+                || args.length == 1 && args[0].equals("-h")
+                || args.length == 1 && args[0].equals("--help")) {
+
+            printHelp();
+            return;
+
+        }
+
+        if (args.length == 1 && args[0].equals("-v")
+                || args.length == 1 && args[0].equals("--version")) {
+
+            System.out.println(TrioGen.getVersion());
+
+            return;
+
+        }
+
+        try {
+
+            Options lOptions = new Options();
+            MergeOptions.createOptionsCLI(lOptions);
+            CommandLineParser parser = new DefaultParser();
+            CommandLine commandLine = parser.parse(lOptions, args);
+
+            MergeOptionsBean bean = new MergeOptionsBean(commandLine);
+
+            run(
+                    bean
+            );
+
+        } catch (Throwable e) {
+
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param bean the bean of command line parameters
+     *
+     * @throws IOException Exception thrown if an error occurs while reading or
+     * writing a file.
+     */
+    private static void run(
+            MergeOptionsBean bean
+    ) throws IOException {
+
+        Instant begin = Instant.now();
+
+        System.out.println("Merging " + bean.inputFiles.length + " files to " + bean.destinationFile + ".");
+
+        if (bean.ldMatrix) {
+
+            LdMatrixMerger.merge(
+                    bean.inputFiles,
+                    bean.destinationFile
+            );
+
+        } else {
+
+            IndexedGzMerger.merge(
+                    bean.inputFiles,
+                    bean.destinationFile
+            );
+
+        }
+
+        Instant end = Instant.now();
+
+        long timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+
+        System.out.println("Merging finished (" + timeInSec + " s)");
+
+    }
+
+    /**
+     * Prints basic help
+     */
+    private static void printHelp() {
+
+        try (PrintWriter lPrintWriter = new PrintWriter(System.out)) {
+            lPrintWriter.print(LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print("              trioGen             " + LINE_SEPARATOR);
+            lPrintWriter.print("               ****               " + LINE_SEPARATOR);
+            lPrintWriter.print("               Merge              " + LINE_SEPARATOR);
+            lPrintWriter.print("==================================" + LINE_SEPARATOR);
+            lPrintWriter.print(LINE_SEPARATOR
+                    + "The Merge command line merges the results of the LinearModel or LdMatrix command lines run in shards." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "For documentation and bug report please refer to our code repository https://github.com/mvaudel/trioGen." + LINE_SEPARATOR
+                    + LINE_SEPARATOR
+                    + "----------------------"
+                    + LINE_SEPARATOR
+                    + "OPTIONS"
+                    + LINE_SEPARATOR
+                    + "----------------------" + LINE_SEPARATOR
+                    + LINE_SEPARATOR);
+            lPrintWriter.print(MergeOptions.getOptionsAsString());
+            lPrintWriter.flush();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package no.uib.triogen.cmd.merge;
+
+import java.io.File;
+import java.util.Arrays;
+import no.uib.triogen.io.ld.LdMatrixUtils;
+import no.uib.triogen.utils.cli.CliUtils;
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Parses and stores the command line options.
+ *
+ * @author Marc Vaudel
+ */
+public class MergeOptionsBean {
+
+    /**
+     * The files to merge.
+     */
+    public final File[] inputFiles;
+    /**
+     * Boolean indicating whether the files to merge are ld matrices.
+     */
+    public final boolean ldMatrix;
+    /**
+     * File where to write the output.
+     */
+    public final File destinationFile;
+
+    /**
+     * Constructor. Parses the command line options and conducts minimal sanity
+     * check.
+     *
+     * @param aLine a command line
+     */
+    public MergeOptionsBean(
+            CommandLine aLine
+    ) {
+
+        // Check that mandatory options are provided
+        for (MergeOptions option : MergeOptions.values()) {
+
+            if (option.mandatory && !CliUtils.hasOption(aLine, option)) {
+
+                throw new IllegalArgumentException("No value found for mandatory option " + option.opt + " (" + option.longOpt + ")");
+
+            }
+        }
+
+        // The input files
+        String option = CliUtils.getOptionValue(aLine, MergeOptions.input);
+
+        inputFiles = Arrays.stream(option.split(","))
+                .map(
+                        filePath -> new File(filePath.trim())
+                )
+                .toArray(File[]::new);
+
+        for (File inputFile : inputFiles) {
+
+            if (!inputFile.exists()) {
+
+                throw new IllegalArgumentException("File to merge (" + inputFile + ") not found.");
+
+            }
+        }
+
+        ldMatrix = inputFiles[0].getName().endsWith(LdMatrixUtils.EXTENSION);
+
+        for (File inputFile : inputFiles) {
+
+            if (inputFile.getName().endsWith(LdMatrixUtils.EXTENSION) != ldMatrix) {
+
+                throw new IllegalArgumentException("Ld matrices and association results cannot be merged together.");
+
+            }
+        }
+
+        // The output file
+        String filePath = CliUtils.getOptionValue(aLine, MergeOptions.out);
+
+        if (ldMatrix && !filePath.endsWith(LdMatrixUtils.EXTENSION)) {
+
+            filePath = filePath + LdMatrixUtils.EXTENSION;
+
+        } else if (!ldMatrix && !filePath.endsWith(".gz")) {
+
+            filePath = filePath + ".gz";
+
+        }
+
+        destinationFile = new File(filePath);
+
+        File destinationFolder = destinationFile.getAbsoluteFile().getParentFile();
+
+        if (!destinationFolder.exists()) {
+
+            throw new IllegalArgumentException("Output folder (" + destinationFolder + ") not found.");
+
+        }
+
+        if (Arrays.stream(inputFiles).anyMatch(inputFile -> inputFile.getAbsoluteFile().equals(destinationFile.getAbsoluteFile()))) {
+
+            throw new IllegalArgumentException("The output file must be different from the files to merge.");
+
+        }
+    }
+}
@@ -3,6 +3,7 @@ package no.uib.triogen.cmd.prs_prune;
 import java.io.File;
 import java.io.PrintWriter;
 import no.uib.triogen.TrioGen;
+import no.uib.triogen.io.ld.LdRowCache;
 import no.uib.triogen.log.SimpleCliLogger;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -112,6 +113,7 @@ public class PrsPrune {
                     bean.pValueThreshold,
                     bean.afThreshold,
                     bean.afColumn,
+                    bean.ldCacheSize > 0 ? new LdRowCache(bean.ldCacheSize * 1024L * 1024L) : null,
                     logger
             );
 
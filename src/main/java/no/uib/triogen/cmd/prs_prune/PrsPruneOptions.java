@@ -16,7 +16,7 @@ import no.uib.triogen.utils.cli.CliOption;
 public enum PrsPruneOptions implements CliOption {
 
     trainingFile("t", "trainingFile", "File listing the summary statistics to use for training.", true, true),
-    ldMatrix("l", "ldMatrix", "The ld matrix file as generated using the LdMatrix command. If LD matrix files are computed per contig, replace the chromosome name with '" + Utils.CHROMOSOME_WILDCARD + "'.", true, true),
+    ldMatrix("l", "ldMatrix", "The ld matrix file as generated using the LdMatrix command. If LD matrix files are computed per contig, replace the chromosome name with '" + Utils.CHROMOSOME_WILDCARD + "'. Ld matrix bundles can be provided as the directory of the bundle.", true, true),
     snpId("sc", "snpId", "Name of the variant identifier column in the training file. Default: 'variantId'.", false, true),
     chrColumn("cc", "chrColumn", "Name of the contig column in the training file. Default: 'contig'.", true, true),
     posColumn("pc", "posColumn", "Name of the position column in the training file. Default: 'position'.", true, true),
@@ -32,7 +32,8 @@ public enum PrsPruneOptions implements CliOption {
     ldLocusThreshold("ldl", "ldLocusThreshold", "LD R2 value over which two hits cannot be considered independent. Default: '0.05'.", false, true),
     ldTopHitThreshold("ldh", "ldTopHitThreshold", "LD R2 value over which two hits are considered identical. Default: '0.8'.", false, true),
     pValueThreshold("pv", "pValueThreshold", "The highest p-value to consider. Default: '0.05'.", false, true),
-    nSnpPerLocusThreshold("ldn", "nSnpPerLocusThreshold", "The minimal number of variants required for a locus. Default: '5'.", false, true);
+    nSnpPerLocusThreshold("ldn", "nSnpPerLocusThreshold", "The minimal number of variants required for a locus. Default: '5'.", false, true),
+    ldCache("lc", "ldCache", "The size in MB of the cache of decoded LD rows shared between threads. 0 disables the cache. Default: 512.", false, true);
 
     /**
      * The short option.
@@ -87,6 +87,10 @@ public class PrsPruneOptionsBean {
      * Column containing the allele frequency.
      */
     public String afColumn = null;
+    /**
+     * The size of the cache of decoded LD rows in MB, 0 disables the cache.
+     */
+    public int ldCacheSize = 512;
 
     /**
      * Constructor. Parses the command line options and conducts minimal sanity
@@ -330,6 +334,28 @@ public class PrsPruneOptionsBean {
             
         }
 
+        // The size of the cache of LD rows
+        if (CliUtils.hasOption(aLine, PrsPruneOptions.ldCache)) {
+
+            String argString = CliUtils.getOptionValue(aLine, PrsPruneOptions.ldCache);
+
+            try {
+
+                ldCacheSize = Integer.parseInt(argString);
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException("Input for the size of the LD cache (" + argString + ") cannot be parsed as a number.");
+
+            }
+
+            if (ldCacheSize < 0) {
+
+                throw new IllegalArgumentException("Input for the size of the LD cache (" + argString + ") must be positive.");
+
+            }
+        }
+
         // The output file
         filePath = CliUtils.getOptionValue(aLine, PrsPruneOptions.out);
 
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import no.uib.triogen.io.IoUtils;
@@ -13,6 +14,7 @@ import no.uib.triogen.io.flat.indexed.IndexedGzReader;
 import no.uib.triogen.io.flat.indexed.IndexedGzWriter;
 import no.uib.triogen.io.ld.LdMatrixReader;
 import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.annotation.GeneCoordinatesIndex;
 import no.uib.triogen.model.annotation.ensembl.EnsemblAPI;
 import no.uib.triogen.model.annotation.ensembl.GeneCoordinates;
 import no.uib.triogen.model.ld.R2;
@@ -32,6 +34,8 @@ public class LocusZoomExtractor {
      * @param variantList The ids of the variant of interest.
      * @param maxDistance The maximum distance from the variant in bp.
      * @param buildNumber The number of the build, e.g. 38 for GRCh38.
+     * @param geneIndex The index to use for gene mapping, Ensembl is queried
+     * for the contigs not in the index. Ignored if null.
      * @param resultFile The file containing the results of the linear
      * association.
      * @param ldFile The file containing the ld matrix.
@@ -47,6 +51,7 @@ public class LocusZoomExtractor {
             VariantList variantList,
             int maxDistance,
             int buildNumber,
+            GeneCoordinatesIndex geneIndex,
             File resultFile,
             File ldFile,
             String destinationFileStem,
@@ -251,6 +256,8 @@ public class LocusZoomExtractor {
 
             logger.logMessage("Getting gene mapping");
 
+            String ensemblVersion = null;
+
             for (int variantI : variantsFound) {
 
                 String targetContig = variantList.chromosome[variantI];
@@ -262,23 +269,42 @@ public class LocusZoomExtractor {
 
                 try ( SimpleFileWriter writer = new SimpleFileWriter(geneFile, true)) {
 
-                    String ensemblVersion = EnsemblAPI.getEnsemblVersion(buildNumber);
+                    ArrayList<GeneCoordinates> geneCoordinatesList = geneIndex == null ? null
+                            : geneIndex.getGeneCoordinates(
+                                    targetContig,
+                                    targetBpStart - maxDistance,
+                                    targetBpEnd + maxDistance
+                            );
 
-                    writer.writeLine("# Ensembl version: " + ensemblVersion);
-                    writer.writeLine("biotype", "name", "start", "end");
+                    if (geneCoordinatesList != null) {
 
-                    if (maxDistance > 2.5e6) {
+                        writer.writeLine("# Gene annotation: " + geneIndex.source);
+                        writer.writeLine("biotype", "name", "start", "end");
 
-                        throw new IllegalArgumentException("Maximal window size for gene coordinates is 5e6.");
+                    } else {
 
-                    }
+                        if (ensemblVersion == null) {
+
+                            ensemblVersion = EnsemblAPI.getEnsemblVersion(buildNumber);
+
+                        }
+
+                        writer.writeLine("# Ensembl version: " + ensemblVersion);
+                        writer.writeLine("biotype", "name", "start", "end");
+
+                        if (maxDistance > 2.5e6) {
+
+                            throw new IllegalArgumentException("Maximal window size for gene coordinates is 5e6.");
+
+                        }
 
-                    ArrayList<GeneCoordinates> geneCoordinatesList = EnsemblAPI.getGeneCoordinates(
-                            targetContig,
-                            targetBpStart - maxDistance,
-                            targetBpEnd + maxDistance,
-                            buildNumber
-                    );
+                        geneCoordinatesList = EnsemblAPI.getGeneCoordinates(
+                                targetContig,
+                                targetBpStart - maxDistance,
+                                targetBpEnd + maxDistance,
+                                buildNumber
+                        );
+                    }
 
                     for (GeneCoordinates geneCoordinates : geneCoordinatesList) {
 
@@ -309,21 +335,11 @@ public class LocusZoomExtractor {
             LdMatrixReader ldMatrixReader
     ) throws IOException {
 
-        HashMap<String,  ArrayList<R2>> result = new HashMap<>(variantList.variantId.length);
-
-        for (int i = 0; i < variantList.variantId.length; i++) {
-
-            String variantId = variantList.variantId[i];
+        HashMap<String, ArrayList<R2>> result = ldMatrixReader.getR2(Arrays.asList(variantList.variantId));
 
-            ArrayList<R2> r2s = ldMatrixReader.getR2(variantId);
-
-            if (r2s == null) {
-
-                r2s = new ArrayList<>(0);
-
-            }
+        for (String variantId : variantList.variantId) {
 
-            result.put(variantId, r2s);
+            result.putIfAbsent(variantId, new ArrayList<>(0));
 
         }
 
@@ -0,0 +1,568 @@
+package no.uib.triogen.io.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+
+/**
+ * Checkpoint of a long running process iterating the variants of a bgen file.
+ * The checkpoint keeps track of the variants completed and of the length of
+ * the output at the time of the checkpoint. When saving, the output must be
+ * flushed and the threads writing to it must be blocked so that the
+ * checkpoint, output, and index are consistent. Note that unless otherwise
+ * specified, io exceptions are thrown as runtime exceptions.
+ *
+ * @author Marc Vaudel
+ */
+public class Checkpoint {
+
+    /**
+     * The first line of the checkpoint file.
+     */
+    public final static String FIRST_LINE = "# TrioGen_checkpoint_v.1.0.0";
+    /**
+     * The file where to save the checkpoint.
+     */
+    private final File file;
+    /**
+     * The interval between checkpoints in milliseconds.
+     */
+    private final long intervalMillis;
+    /**
+     * The time of the last checkpoint in milliseconds.
+     */
+    private long lastCheckpoint;
+    /**
+     * The indexes of the variants completed.
+     */
+    private final BitSet completed;
+    /**
+     * The length of the output file in bytes at the time of the checkpoint.
+     */
+    private long outputLength;
+    /**
+     * The number of records written in the index of the output file.
+     */
+    private int nRecords;
+    /**
+     * The number of records written in the summary of the variants screened
+     * out, if any.
+     */
+    private int nSummaryRecords = 0;
+    /**
+     * The number of bits used to store r2 values in the ld matrix, -1 if not
+     * applicable.
+     */
+    private int r2Bits = -1;
+    /**
+     * The scale used to quantise r2 values in the ld matrix, NaN if not
+     * applicable.
+     */
+    private float r2Scale = Float.NaN;
+    /**
+     * The ids of the variants in the ld matrix, null if not applicable.
+     */
+    private ArrayList<String> variantIds = null;
+    /**
+     * The rsids of the variants in the ld matrix, null if not applicable.
+     */
+    private ArrayList<String> rsIds = null;
+    /**
+     * The index in the ld matrix of the variants having a row written, null
+     * if not applicable.
+     */
+    private ArrayList<Integer> rowVariantIndexes = null;
+    /**
+     * The index of the rows in the ld matrix, null if not applicable.
+     */
+    private ArrayList<Long> rowIndexesInFile = null;
+
+    /**
+     * Constructor for a new checkpoint.
+     *
+     * @param file The file where to save the checkpoint.
+     * @param intervalMinutes The interval between checkpoints in minutes.
+     */
+    public Checkpoint(
+            File file,
+            int intervalMinutes
+    ) {
+
+        this(file, intervalMinutes, new BitSet(), 0l, 0);
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file The file where to save the checkpoint.
+     * @param intervalMinutes The interval between checkpoints in minutes.
+     * @param completed The indexes of the variants completed.
+     * @param outputLength The length of the output file in bytes.
+     * @param nRecords The number of records written in the index of the
+     * output file.
+     */
+    private Checkpoint(
+            File file,
+            int intervalMinutes,
+            BitSet completed,
+            long outputLength,
+            int nRecords
+    ) {
+
+        this.file = file;
+        this.intervalMillis = 60000l * intervalMinutes;
+        this.completed = completed;
+        this.outputLength = outputLength;
+        this.nRecords = nRecords;
+        this.lastCheckpoint = Instant.now().toEpochMilli();
+
+    }
+
+    /**
+     * Returns the checkpoint file to use for the given output file.
+     *
+     * @param outputFile The output file.
+     *
+     * @return The checkpoint file.
+     */
+    public static File getCheckpointFile(
+            File outputFile
+    ) {
+
+        return new File(outputFile.getAbsolutePath() + ".checkpoint.gz");
+
+    }
+
+    /**
+     * Marks the given variant as completed. The caller must hold the lock
+     * synchronizing the writing of the output.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     */
+    public void complete(
+            int variantIndex
+    ) {
+
+        completed.set(variantIndex);
+
+    }
+
+    /**
+     * Registers records written to the index of the output file. The caller
+     * must hold the lock synchronizing the writing of the output.
+     *
+     * @param nRecords The number of records written.
+     */
+    public void addRecords(
+            int nRecords
+    ) {
+
+        this.nRecords += nRecords;
+
+    }
+
+    /**
+     * Registers records written to the summary of the variants screened out.
+     * The caller must hold the lock synchronizing the writing of the output.
+     *
+     * @param nRecords The number of records written.
+     */
+    public void addSummaryRecords(
+            int nRecords
+    ) {
+
+        this.nSummaryRecords += nRecords;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether a checkpoint should be saved.
+     *
+     * @return A boolean indicating whether a checkpoint should be saved.
+     */
+    public boolean isDue() {
+
+        return intervalMillis > 0 && Instant.now().toEpochMilli() - lastCheckpoint >= intervalMillis;
+
+    }
+
+    /**
+     * Returns the indexes of the variants completed.
+     *
+     * @return The indexes of the variants completed.
+     */
+    public BitSet getCompleted() {
+
+        return completed;
+
+    }
+
+    /**
+     * Returns the length of the output file in bytes at the time of the
+     * checkpoint.
+     *
+     * @return The length of the output file in bytes.
+     */
+    public long getOutputLength() {
+
+        return outputLength;
+
+    }
+
+    /**
+     * Returns the number of records written in the index of the output file.
+     *
+     * @return The number of records written in the index of the output file.
+     */
+    public int getnRecords() {
+
+        return nRecords;
+
+    }
+
+    /**
+     * Returns the number of records written in the summary of the variants
+     * screened out.
+     *
+     * @return The number of records written in the summary of the variants
+     * screened out.
+     */
+    public int getnSummaryRecords() {
+
+        return nSummaryRecords;
+
+    }
+
+    /**
+     * Returns the number of bits used to store r2 values in the ld matrix, -1
+     * if not applicable.
+     *
+     * @return The number of bits used to store r2 values in the ld matrix.
+     */
+    public int getR2Bits() {
+
+        return r2Bits;
+
+    }
+
+    /**
+     * Returns the scale used to quantise r2 values in the ld matrix, NaN if
+     * not applicable.
+     *
+     * @return The scale used to quantise r2 values in the ld matrix.
+     */
+    public float getR2Scale() {
+
+        return r2Scale;
+
+    }
+
+    /**
+     * Returns the ids of the variants in the ld matrix, null if not
+     * applicable.
+     *
+     * @return The ids of the variants in the ld matrix.
+     */
+    public ArrayList<String> getVariantIds() {
+
+        return variantIds;
+
+    }
+
+    /**
+     * Returns the rsids of the variants in the ld matrix, null if not
+     * applicable.
+     *
+     * @return The rsids of the variants in the ld matrix.
+     */
+    public ArrayList<String> getRsIds() {
+
+        return rsIds;
+
+    }
+
+    /**
+     * Returns the index in the ld matrix of the variants having a row
+     * written, null if not applicable.
+     *
+     * @return The index in the ld matrix of the variants having a row
+     * written.
+     */
+    public ArrayList<Integer> getRowVariantIndexes() {
+
+        return rowVariantIndexes;
+
+    }
+
+    /**
+     * Returns the index of the rows in the ld matrix, null if not applicable.
+     *
+     * @return The index of the rows in the ld matrix.
+     */
+    public ArrayList<Long> getRowIndexesInFile() {
+
+        return rowIndexesInFile;
+
+    }
+
+    /**
+     * Saves a checkpoint for an output where the records are listed in a
+     * separate index. The caller must hold the lock synchronizing the writing
+     * of the output, and output and index must be flushed.
+     *
+     * @param outputLength The length of the output file in bytes.
+     */
+    public void save(
+            long outputLength
+    ) {
+
+        save(outputLength, -1, Float.NaN, null, null, null, null);
+
+    }
+
+    /**
+     * Saves a checkpoint. The caller must hold the lock synchronizing the
+     * writing of the output, and the output must be flushed.
+     *
+     * @param outputLength The length of the output file in bytes.
+     * @param r2Bits The number of bits used to store r2 values in the ld
+     * matrix, ignored if the variants are null.
+     * @param r2Scale The scale used to quantise r2 values in the ld matrix,
+     * ignored if the variants are null.
+     * @param variantIds The ids of the variants in the ld matrix, ignored if
+     * null.
+     * @param rsIds The rsids of the variants in the ld matrix, ignored if
+     * null.
+     * @param rowVariantIndexes The index in the ld matrix of the variants
+     * having a row written, ignored if null.
+     * @param rowIndexesInFile The index of the rows in the ld matrix, ignored
+     * if null.
+     */
+    public void save(
+            long outputLength,
+            int r2Bits,
+            float r2Scale,
+            String[] variantIds,
+            String[] rsIds,
+            ArrayList<Integer> rowVariantIndexes,
+            ArrayList<Long> rowIndexesInFile
+    ) {
+
+        this.outputLength = outputLength;
+
+        File tempFile = new File(file.getAbsolutePath() + ".tmp");
+
+        try (SimpleFileWriter writer = new SimpleFileWriter(tempFile, true)) {
+
+            writer.writeLine(FIRST_LINE);
+            writer.writeLine("# Output length:", Long.toString(outputLength));
+            writer.writeLine("# Records:", Integer.toString(nRecords));
+            writer.writeLine("# Summary records:", Integer.toString(nSummaryRecords));
+            writer.writeLine("# Completed:", getRangesAsString(completed));
+
+            if (variantIds != null) {
+
+                writer.writeLine("# R2 bits:", Integer.toString(r2Bits));
+                writer.writeLine("# R2 scale:", Float.toString(r2Scale));
+                writer.writeLine("# Variants:", Integer.toString(variantIds.length));
+
+                for (int i = 0; i < variantIds.length; i++) {
+
+                    writer.writeLine(variantIds[i], rsIds[i]);
+
+                }
+
+                writer.writeLine("# Rows:", Integer.toString(rowVariantIndexes.size()));
+
+                for (int i = 0; i < rowVariantIndexes.size(); i++) {
+
+                    writer.writeLine(
+                            Integer.toString(rowVariantIndexes.get(i)),
+                            Long.toString(rowIndexesInFile.get(i))
+                    );
+                }
+            }
+        }
+
+        try {
+
+            Files.move(
+                    tempFile.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+            );
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        }
+
+        lastCheckpoint = Instant.now().toEpochMilli();
+
+    }
+
+    /**
+     * Deletes the checkpoint file, typically upon successful completion.
+     */
+    public void delete() {
+
+        if (file.exists()) {
+
+            file.delete();
+
+        }
+    }
+
+    /**
+     * Reads a checkpoint from the given file.
+     *
+     * @param file The checkpoint file.
+     * @param intervalMinutes The interval between checkpoints in minutes.
+     *
+     * @return The checkpoint.
+     */
+    public static Checkpoint read(
+            File file,
+            int intervalMinutes
+    ) {
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(file, false)) {
+
+            String line = reader.readLine();
+
+            if (line == null || !line.equals(FIRST_LINE)) {
+
+                throw new IllegalArgumentException("File " + file + " could not be parsed as TrioGen checkpoint.");
+
+            }
+
+            long outputLength = Long.parseLong(reader.readLine().split(IoUtils.SEPARATOR)[1]);
+            int nRecords = Integer.parseInt(reader.readLine().split(IoUtils.SEPARATOR)[1]);
+            int nSummaryRecords = Integer.parseInt(reader.readLine().split(IoUtils.SEPARATOR)[1]);
+
+            String[] lineSplit = reader.readLine().split(IoUtils.SEPARATOR);
+            BitSet completed = lineSplit.length > 1 ? parseRanges(lineSplit[1]) : new BitSet();
+
+            Checkpoint checkpoint = new Checkpoint(file, intervalMinutes, completed, outputLength, nRecords);
+            checkpoint.nSummaryRecords = nSummaryRecords;
+
+            line = reader.readLine();
+
+            if (line != null) {
+
+                checkpoint.r2Bits = Integer.parseInt(line.split(IoUtils.SEPARATOR)[1]);
+                checkpoint.r2Scale = Float.parseFloat(reader.readLine().split(IoUtils.SEPARATOR)[1]);
+
+                line = reader.readLine();
+
+                int nVariants = Integer.parseInt(line.split(IoUtils.SEPARATOR)[1]);
+
+                checkpoint.variantIds = new ArrayList<>(nVariants);
+                checkpoint.rsIds = new ArrayList<>(nVariants);
+
+                for (int i = 0; i < nVariants; i++) {
+
+                    lineSplit = reader.readLine().split(IoUtils.SEPARATOR, -1);
+
+                    checkpoint.variantIds.add(lineSplit[0]);
+                    checkpoint.rsIds.add(lineSplit[1]);
+
+                }
+
+                int nRows = Integer.parseInt(reader.readLine().split(IoUtils.SEPARATOR)[1]);
+
+                checkpoint.rowVariantIndexes = new ArrayList<>(nRows);
+                checkpoint.rowIndexesInFile = new ArrayList<>(nRows);
+
+                for (int i = 0; i < nRows; i++) {
+
+                    lineSplit = reader.readLine().split(IoUtils.SEPARATOR);
+
+                    checkpoint.rowVariantIndexes.add(Integer.parseInt(lineSplit[0]));
+                    checkpoint.rowIndexesInFile.add(Long.parseLong(lineSplit[1]));
+
+                }
+            }
+
+            return checkpoint;
+
+        }
+    }
+
+    /**
+     * Returns the given set of indexes as comma-separated ranges, e.g.
+     * '0-1234,1240-1300'.
+     *
+     * @param bitSet The set of indexes.
+     *
+     * @return The ranges as string.
+     */
+    public static String getRangesAsString(
+            BitSet bitSet
+    ) {
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        int start = bitSet.nextSetBit(0);
+
+        while (start >= 0) {
+
+            int end = bitSet.nextClearBit(start) - 1;
+
+            if (stringBuilder.length() > 0) {
+
+                stringBuilder.append(',');
+
+            }
+
+            stringBuilder.append(start).append('-').append(end);
+
+            start = bitSet.nextSetBit(end + 1);
+
+        }
+
+        return stringBuilder.toString();
+
+    }
+
+    /**
+     * Parses comma-separated ranges of indexes, e.g. '0-1234,1240-1300'.
+     *
+     * @param rangesString The ranges as string.
+     *
+     * @return The set of indexes.
+     */
+    public static BitSet parseRanges(
+            String rangesString
+    ) {
+
+        BitSet bitSet = new BitSet();
+
+        for (String range : rangesString.split(",")) {
+
+            if (range.length() > 0) {
+
+                String[] rangeSplit = range.split("-");
+
+                int start = Integer.parseInt(rangeSplit[0]);
+                int end = rangeSplit.length > 1 ? Integer.parseInt(rangeSplit[1]) : start;
+
+                bitSet.set(start, end + 1);
+
+            }
+        }
+
+        return bitSet;
+
+    }
+}
@@ -44,7 +44,7 @@ public class SimpleFileWriter implements AutoCloseable {
             if (gz) {
 
                 FileOutputStream fileStream = new FileOutputStream(file);
-                GZIPOutputStream gzipStream = new GZIPOutputStream(fileStream);
+                GZIPOutputStream gzipStream = new GZIPOutputStream(fileStream, true);
                 OutputStreamWriter encoder = new OutputStreamWriter(gzipStream, ENCODING);
                 bw = new BufferedWriter(encoder);
 
@@ -133,6 +133,26 @@ public class SimpleFileWriter implements AutoCloseable {
         }
     }
 
+    /**
+     * Flushes the content written so far to the file.
+     */
+    public void flush() {
+
+        try {
+
+            mutex.acquire();
+
+            bw.flush();
+
+            mutex.release();
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
     @Override
     public void close() {
 
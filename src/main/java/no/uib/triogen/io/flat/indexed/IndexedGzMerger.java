@@ -0,0 +1,330 @@
+package no.uib.triogen.io.flat.indexed;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import static no.uib.triogen.utils.CompressionUtils.crc32Combine;
+
+/**
+ * This class merges indexed gz files written in shards, e.g. by the linear
+ * model command, into a single indexed gz file. The compressed content of the
+ * shards is copied without decompression, only the headers are decompressed
+ * to check that the shards are compatible. Note that unless otherwise
+ * specified, io exceptions are thrown as runtime exceptions.
+ *
+ * @author Marc Vaudel
+ */
+public class IndexedGzMerger {
+
+    /**
+     * The size of the buffer to use when copying the content.
+     */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Merges the given files in the given order. The headers of the first file
+     * are used for the merged file, the headers of the other files must match.
+     *
+     * @param inputFiles The files to merge, in the order of the shards.
+     * @param destinationFile The file where to write the merged content.
+     */
+    public static void merge(
+            File[] inputFiles,
+            File destinationFile
+    ) {
+
+        File destinationIndexFile = IoUtils.getIndexFile(destinationFile);
+
+        long crc = 0l;
+        long uncompressedLength = 0l;
+        String columnHeader = null;
+
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(destinationFile), BUFFER_SIZE)) {
+
+            try (SimpleFileWriter indexWriter = new SimpleFileWriter(destinationIndexFile, true)) {
+
+                outputStream.write(IndexedGzWriter.getHeader());
+
+                for (int fileI = 0; fileI < inputFiles.length; fileI++) {
+
+                    File inputFile = inputFiles[fileI];
+                    File indexFile = IoUtils.getIndexFile(inputFile);
+
+                    if (!indexFile.exists()) {
+
+                        throw new IllegalArgumentException("Index file " + indexFile + " not found for " + inputFile + ".");
+
+                    }
+
+                    // Parse the index
+                    String indexHeader;
+                    ArrayList<String> headerRecords = new ArrayList<>(2);
+                    ArrayList<String> records = new ArrayList<>();
+                    long headerCompressedLength = 0l;
+                    long headerUncompressedLength = 0l;
+                    long contentCompressedLength = 0l;
+                    long contentUncompressedLength = 0l;
+
+                    try (SimpleFileReader indexReader = SimpleFileReader.getFileReader(indexFile)) {
+
+                        indexHeader = indexReader.readLine();
+
+                        String line;
+                        while ((line = indexReader.readLine()) != null) {
+
+                            String[] lineSplit = line.split(IoUtils.SEPARATOR);
+                            int compressedLength = Integer.parseInt(lineSplit[lineSplit.length - 2]);
+                            int recordUncompressedLength = Integer.parseInt(lineSplit[lineSplit.length - 1]);
+
+                            if (lineSplit[0].equals("Header")) {
+
+                                if (!records.isEmpty()) {
+
+                                    throw new IllegalArgumentException("Header found after content in " + indexFile + ".");
+
+                                }
+
+                                headerRecords.add(line);
+                                headerCompressedLength += compressedLength;
+                                headerUncompressedLength += recordUncompressedLength;
+
+                            } else {
+
+                                records.add(line);
+                                contentCompressedLength += compressedLength;
+                                contentUncompressedLength += recordUncompressedLength;
+
+                            }
+                        }
+                    }
+
+                    try (RandomAccessFile raf = new RandomAccessFile(inputFile, "r")) {
+
+                        // Check the trailer
+                        raf.seek(raf.length() - 8);
+                        long fileCrc = Integer.reverseBytes(raf.readInt()) & 0xffffffffL;
+                        int fileUncompressedLength = Integer.reverseBytes(raf.readInt());
+
+                        if (raf.length() < IndexedGzWriter.HEADER_LENGTH + headerCompressedLength + contentCompressedLength + 8
+                                || fileUncompressedLength != (int) (headerUncompressedLength + contentUncompressedLength)) {
+
+                            throw new IllegalArgumentException("File " + inputFile + " does not match its index, the shard might not be completed.");
+
+                        }
+
+                        // Check the headers
+                        String header = readHeader(inputFile, headerRecords);
+
+                        if (fileI == 0) {
+
+                            columnHeader = header;
+
+                            indexWriter.writeLine(indexHeader);
+
+                            for (String headerRecord : headerRecords) {
+
+                                indexWriter.writeLine(headerRecord);
+
+                            }
+
+                            raf.seek(IndexedGzWriter.HEADER_LENGTH);
+                            copy(raf, outputStream, headerCompressedLength + contentCompressedLength);
+
+                            crc = fileCrc;
+
+                        } else {
+
+                            if (!header.equals(columnHeader)) {
+
+                                throw new IllegalArgumentException("The header of " + inputFile + " does not match the header of " + inputFiles[0] + ".");
+
+                            }
+
+                            // Remove the headers from the crc of the shard
+                            CRC32 headerCrc = new CRC32();
+                            headerCrc.update(readAll(inputFile, headerRecords).getBytes(IoUtils.ENCODING));
+
+                            long contentCrc = fileCrc ^ crc32Combine(headerCrc.getValue(), 0l, contentUncompressedLength);
+
+                            raf.seek(IndexedGzWriter.HEADER_LENGTH + headerCompressedLength);
+                            copy(raf, outputStream, contentCompressedLength);
+
+                            crc = crc32Combine(crc, contentCrc, contentUncompressedLength);
+
+                        }
+                    }
+
+                    if (fileI == 0) {
+
+                        uncompressedLength += headerUncompressedLength;
+
+                    }
+
+                    uncompressedLength += contentUncompressedLength;
+
+                    for (String record : records) {
+
+                        indexWriter.writeLine(record);
+
+                    }
+                }
+
+                outputStream.write(getFinalBlock());
+                outputStream.write(IndexedGzWriter.getTrailer((int) crc, (int) uncompressedLength));
+
+            }
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    /**
+     * Returns the column header of the given file.
+     *
+     * @param file The indexed gz file.
+     * @param headerRecords The index records of the headers.
+     *
+     * @return The column header.
+     */
+    private static String readHeader(
+            File file,
+            ArrayList<String> headerRecords
+    ) throws IOException {
+
+        long position = IndexedGzWriter.HEADER_LENGTH;
+
+        try (IndexedGzReader reader = new IndexedGzReader(file)) {
+
+            for (String record : headerRecords) {
+
+                String[] lineSplit = record.split(IoUtils.SEPARATOR);
+                int compressedLength = Integer.parseInt(lineSplit[lineSplit.length - 2]);
+                int uncompressedLength = Integer.parseInt(lineSplit[lineSplit.length - 1]);
+
+                if (lineSplit[lineSplit.length - 3].equals("Header")) {
+
+                    return reader.read(position, compressedLength, uncompressedLength);
+
+                }
+
+                position += compressedLength;
+
+            }
+        }
+
+        throw new IllegalArgumentException("No header found in " + file + ".");
+
+    }
+
+    /**
+     * Returns the uncompressed content of the given records.
+     *
+     * @param file The indexed gz file.
+     * @param records The index records, in the order of the file, starting at
+     * the beginning of the file.
+     *
+     * @return The uncompressed content of the records.
+     */
+    private static String readAll(
+            File file,
+            ArrayList<String> records
+    ) throws IOException {
+
+        StringBuilder stringBuilder = new StringBuilder();
+        long position = IndexedGzWriter.HEADER_LENGTH;
+
+        try (IndexedGzReader reader = new IndexedGzReader(file)) {
+
+            for (String record : records) {
+
+                String[] lineSplit = record.split(IoUtils.SEPARATOR);
+                int compressedLength = Integer.parseInt(lineSplit[lineSplit.length - 2]);
+                int uncompressedLength = Integer.parseInt(lineSplit[lineSplit.length - 1]);
+
+                stringBuilder.append(reader.read(position, compressedLength, uncompressedLength));
+
+                position += compressedLength;
+
+            }
+        }
+
+        return stringBuilder.toString();
+
+    }
+
+    /**
+     * Copies the given number of bytes from the current position of the
+     * random access file to the output stream.
+     *
+     * @param raf The random access file to copy from.
+     * @param outputStream The output stream to copy to.
+     * @param length The number of bytes to copy.
+     *
+     * @throws IOException Exception thrown if an i/o error occurs.
+     */
+    private static void copy(
+            RandomAccessFile raf,
+            OutputStream outputStream,
+            long length
+    ) throws IOException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+
+        while (remaining > 0) {
+
+            int bytesRead = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+            if (bytesRead <= 0) {
+
+                throw new IllegalArgumentException("Unexpected end of file.");
+
+            }
+
+            outputStream.write(buffer, 0, bytesRead);
+            remaining -= bytesRead;
+
+        }
+    }
+
+    /**
+     * Returns the final empty deflate block terminating the compressed
+     * content.
+     *
+     * @return The final empty deflate block.
+     */
+    private static byte[] getFinalBlock() {
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        try {
+
+            deflater.finish();
+
+            byte[] buffer = new byte[64];
+            int length = deflater.deflate(buffer);
+
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+
+            return result;
+
+        } finally {
+
+            deflater.end();
+
+        }
+    }
+}
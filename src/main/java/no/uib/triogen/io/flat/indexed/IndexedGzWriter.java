@@ -4,7 +4,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import no.uib.triogen.io.IoUtils;
 import no.uib.triogen.utils.SimpleSemaphore;
 import static no.uib.triogen.utils.Utils.mergeArrays;
@@ -57,6 +59,10 @@ public class IndexedGzWriter implements AutoCloseable {
      * A mutex to synchronize the writing.
      */
     private final SimpleSemaphore mutex = new SimpleSemaphore(1);
+    /**
+     * The number of uncompressed bytes written.
+     */
+    private long uncompressedLength = 0l;
 
     /**
      * Constructor.
@@ -70,14 +76,51 @@ public class IndexedGzWriter implements AutoCloseable {
             File file,
             int compressionLevel
     ) throws IOException {
+
+        this(file, compressionLevel, -1l);
+
+    }
+
+    /**
+     * Constructor. If a length is given, the content of the existing file is
+     * truncated to this length and new content is appended. The content
+     * before this length is expected to have been written by this class.
+     *
+     * @param file The file to write to.
+     * @param compressionLevel The compression level to use.
+     * @param resumeLength The length at which to truncate and resume writing
+     * an existing file. Ignored if -1.
+     *
+     * @throws IOException Exception thrown if an i/o error occurs.
+     */
+    public IndexedGzWriter(
+            File file,
+            int compressionLevel,
+            long resumeLength
+    ) throws IOException {
         
         this.file = file;
 
+        if (resumeLength == -1l && file.exists()) {
+
+            file.delete();
+
+        }
+
         raf = new RandomAccessFile(file, "rw");
 
-        writeHeader();
         crc.reset();
 
+        if (resumeLength == -1l) {
+
+            writeHeader();
+
+        } else {
+
+            resume(resumeLength);
+
+        }
+
         deflater = new Deflater(compressionLevel, true);
 
     }
@@ -99,27 +142,150 @@ public class IndexedGzWriter implements AutoCloseable {
 
     /**
      * Writes GZIP member header.
+     */
+    private void writeHeader() throws IOException {
+
+        raf.write(getHeader());
+
+    }
+
+    /**
+     * Returns the GZIP member header.
      *
      * Adapted from java.util.zip.GZIPOutputStream by David Connelly. Copyright
      * (c) 1996, 2013, Oracle and/or its affiliates. No copyright infringement
      * intended.
+     *
+     * @return The GZIP member header.
      */
-    private void writeHeader() throws IOException {
+    static byte[] getHeader() {
+
+        return new byte[]{
+            (byte) GZIP_MAGIC, // Magic number (short)
+            (byte) (GZIP_MAGIC >> 8), // Magic number (short)
+            Deflater.DEFLATED, // Compression method (CM)
+            0, // Flags (FLG)
+            0, // Modification time MTIME (int)
+            0, // Modification time MTIME (int)
+            0, // Modification time MTIME (int)
+            0, // Modification time MTIME (int)
+            0, // Extra flags (XFLG)
+            0 // Operating system (OS)
+        };
+    }
+
+    /**
+     * Returns the GZIP member trailer.
+     *
+     * @param crcValue The CRC-32 of the uncompressed data.
+     * @param uncompressedLength The number of uncompressed bytes modulo 2^32.
+     *
+     * @return The GZIP member trailer.
+     */
+    static byte[] getTrailer(
+            int crcValue,
+            int uncompressedLength
+    ) {
+
+        byte[] trailer = new byte[8];
+        writeInt(crcValue, trailer, 0); // CRC-32 of uncompr. data
+        writeInt(uncompressedLength, trailer, 4); // Number of uncompr. bytes
+
+        return trailer;
+
+    }
+
+    /**
+     * Truncates the file to the given length and restores the checksum and
+     * length of the uncompressed content written so far.
+     *
+     * @param resumeLength The length at which to truncate the file.
+     *
+     * @throws IOException Exception thrown if an i/o error occurs.
+     */
+    private void resume(
+            long resumeLength
+    ) throws IOException {
+
+        if (resumeLength < HEADER_LENGTH || resumeLength > raf.length()) {
+
+            throw new IllegalArgumentException("Cannot resume " + file + " at " + resumeLength + ", file length: " + raf.length() + ".");
+
+        }
+
+        raf.setLength(resumeLength);
+        raf.seek(HEADER_LENGTH);
+
+        Inflater inflater = new Inflater(true);
+
+        try {
+
+            byte[] compressedBytes = new byte[64 * 1024];
+            byte[] uncompressedBytes = new byte[256 * 1024];
+
+            long remaining = resumeLength - HEADER_LENGTH;
+
+            while (remaining > 0) {
+
+                int bytesRead = raf.read(compressedBytes, 0, (int) Math.min(compressedBytes.length, remaining));
+
+                if (bytesRead <= 0) {
+
+                    throw new IllegalArgumentException("Unexpected end of file " + file + ".");
 
-        raf.write(
-                new byte[]{
-                    (byte) GZIP_MAGIC, // Magic number (short)
-                    (byte) (GZIP_MAGIC >> 8), // Magic number (short)
-                    Deflater.DEFLATED, // Compression method (CM)
-                    0, // Flags (FLG)
-                    0, // Modification time MTIME (int)
-                    0, // Modification time MTIME (int)
-                    0, // Modification time MTIME (int)
-                    0, // Modification time MTIME (int)
-                    0, // Extra flags (XFLG)
-                    0 // Operating system (OS)
                 }
-        );
+
+                remaining -= bytesRead;
+
+                inflater.setInput(compressedBytes, 0, bytesRead);
+
+                int bytesUncompressed;
+
+                while ((bytesUncompressed = inflater.inflate(uncompressedBytes)) > 0) {
+
+                    crc.update(uncompressedBytes, 0, bytesUncompressed);
+                    uncompressedLength += bytesUncompressed;
+
+                }
+            }
+
+        } catch (DataFormatException e) {
+
+            throw new IllegalArgumentException("Cannot resume " + file + ", content could not be uncompressed.", e);
+
+        } finally {
+
+            inflater.end();
+
+        }
+
+        raf.seek(resumeLength);
+
+    }
+
+    /**
+     * Returns the length of the content written so far in bytes. Note that
+     * all content appended is flushed to the file.
+     *
+     * @return The length of the content written so far in bytes.
+     */
+    public long getLength() {
+
+        mutex.acquire();
+
+        try {
+
+            return raf.getFilePointer();
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        } finally {
+
+            mutex.release();
+
+        }
     }
 
     /**
@@ -164,6 +330,7 @@ public class IndexedGzWriter implements AutoCloseable {
             }
 
             crc.update(inputBytes);
+            uncompressedLength += inputBytes.length;
 
             return new IndexedGzCoordinates(
                     compressedDataLength,
@@ -214,14 +381,10 @@ public class IndexedGzWriter implements AutoCloseable {
             }
 
             int crcValue = (int) crc.getValue();
-            int deflaterInput = deflater.getTotalIn();
+            int deflaterInput = (int) uncompressedLength;
             deflater.end();
 
-            byte[] trailer = new byte[8];
-            writeInt(crcValue, trailer, 0); // CRC-32 of uncompr. data
-            writeInt(deflaterInput, trailer, 4); // Number of uncompr. bytes
-
-            raf.write(trailer);
+            raf.write(getTrailer(crcValue, deflaterInput));
             raf.close();
 
         } catch (Exception e) {
@@ -240,7 +403,7 @@ public class IndexedGzWriter implements AutoCloseable {
      * (c) 1996, 2013, Oracle and/or its affiliates. No copyright infringement
      * intended.
      */
-    private void writeInt(
+    private static void writeInt(
             int i,
             byte[] buf,
             int offset
@@ -259,7 +422,7 @@ public class IndexedGzWriter implements AutoCloseable {
      * (c) 1996, 2013, Oracle and/or its affiliates. No copyright infringement
      * intended.
      */
-    private void writeShort(
+    private static void writeShort(
             int s,
             byte[] buf,
             int offset
@@ -9,12 +9,11 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import no.uib.triogen.io.IoUtils;
-import no.uib.triogen.io.ld.LdMatrixWriter;
-import no.uib.triogen.utils.SimpleSemaphore;
 
 /**
  * This class maps a file to memory using evenly distributed blocks of the given
- * block size. Threads accessing the file block by block.
+ * block size. Threads access the file block by block through independent views
+ * of the blocks, so that concurrent reads never block each other.
  *
  * @author Marc Vaudel
  */
@@ -33,11 +32,8 @@ public class MemoryMappedFile implements AutoCloseable {
      */
     private final FileChannel fc;
     /**
-     * Semaphore to synchronize threads.
-     */
-    private final SimpleSemaphore[] bufferSemaphores;
-    /**
-     * The mapped byte buffer.
+     * The mapped byte buffers. Their position is never changed, threads read
+     * through duplicates.
      */
     private final MappedByteBuffer[] mappedByteBuffers;
 
@@ -76,14 +72,11 @@ public class MemoryMappedFile implements AutoCloseable {
 
             }
 
-            bufferSemaphores = new SimpleSemaphore[nBuffers];
             mappedByteBuffers = new MappedByteBuffer[nBuffers];
 
             for (int i = 0; i < nBuffers; i++) {
 
-                bufferSemaphores[i] = new SimpleSemaphore(1);
-
-                long begin = i * blockSize + LdMatrixWriter.HEADER_LENGTH;
+                long begin = i * blockSize + offset;
                 long bufferSizeI = i < nBuffers - 1 || rest == 0 ? blockSize : rest;
 
                 mappedByteBuffers[i] = fc.map(
@@ -127,7 +120,8 @@ public class MemoryMappedFile implements AutoCloseable {
     }
 
     /**
-     * Buffer iterating over the blocks of the file.
+     * Buffer iterating over the blocks of the file. A buffer must be used by
+     * a single thread.
      */
     public class MiniBuffer implements AutoCloseable {
 
@@ -136,9 +130,9 @@ public class MemoryMappedFile implements AutoCloseable {
          */
         private int blockIndex;
         /**
-         * Mapped byte buffer being buffered.
+         * View of the mapped byte buffer being buffered.
          */
-        private MappedByteBuffer mappedByteBuffer;
+        private ByteBuffer mappedByteBuffer;
         /**
          * Placeholder for the array of bytes used to decode overlapping
          * primitive data types.
@@ -162,10 +156,7 @@ public class MemoryMappedFile implements AutoCloseable {
             blockIndex = (int) (index / blockSize);
             int indexInBuffer = (int) (index - blockIndex * blockSize);
 
-            mappedByteBuffer = mappedByteBuffers[blockIndex];
-            SimpleSemaphore bufferSemaphore = bufferSemaphores[blockIndex];
-
-            bufferSemaphore.acquire();
+            mappedByteBuffer = mappedByteBuffers[blockIndex].duplicate();
 
             ((Buffer) mappedByteBuffer).position(indexInBuffer);
 
@@ -370,24 +361,16 @@ public class MemoryMappedFile implements AutoCloseable {
          */
         private void nextBlock() {
 
-            SimpleSemaphore bufferSemaphore = bufferSemaphores[blockIndex];
-            bufferSemaphore.release();
-
             blockIndex++;
 
-            mappedByteBuffer = mappedByteBuffers[blockIndex];
-            bufferSemaphore = bufferSemaphores[blockIndex];
-
-            bufferSemaphore.acquire();
-            ((Buffer) mappedByteBuffer).position(0);
+            mappedByteBuffer = mappedByteBuffers[blockIndex].duplicate();
 
         }
 
         @Override
         public void close() {
 
-            SimpleSemaphore bufferSemaphore = bufferSemaphores[blockIndex];
-            bufferSemaphore.release();
+            mappedByteBuffer = null;
 
         }
 
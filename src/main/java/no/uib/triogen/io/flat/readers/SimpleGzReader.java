@@ -1,6 +1,7 @@
 package no.uib.triogen.io.flat.readers;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -42,13 +43,32 @@ public class SimpleGzReader implements SimpleFileReader {
             File file,
             boolean skipComments
     ) {
+
+        this(file, skipComments, false);
+
+    }
+
+    /**
+     * Constructor. If truncated, the file is read until the end of the
+     * content flushed to the file, allowing the reading of files that were not
+     * closed, e.g. by an interrupted process.
+     *
+     * @param file The file to read.
+     * @param skipComments Boolean indicating whether comments should be skipped.
+     * @param truncated Boolean indicating whether the file can be truncated.
+     */
+    public SimpleGzReader(
+            File file,
+            boolean skipComments,
+            boolean truncated
+    ) {
         
         this.skipComments = skipComments;
 
         try {
 
             InputStream fileStream = new FileInputStream(file);
-            InputStream gzipStream = new GZIPInputStream(fileStream);
+            InputStream gzipStream = truncated ? new TruncatedGzInputStream(fileStream) : new GZIPInputStream(fileStream);
             Reader decoder = new InputStreamReader(gzipStream, ENCODING);
 
             br = new BufferedReader(decoder);
@@ -94,4 +114,46 @@ public class SimpleGzReader implements SimpleFileReader {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Gz input stream returning the end of the stream where the compressed
+     * content ends, without requiring the gzip trailer.
+     */
+    private static class TruncatedGzInputStream extends GZIPInputStream {
+
+        /**
+         * Constructor.
+         *
+         * @param inputStream The input stream to read.
+         *
+         * @throws IOException Exception thrown if an error occurred while
+         * reading the gzip header.
+         */
+        public TruncatedGzInputStream(
+                InputStream inputStream
+        ) throws IOException {
+
+            super(inputStream);
+
+        }
+
+        @Override
+        public int read(
+                byte[] buffer,
+                int offset,
+                int length
+        ) throws IOException {
+
+            try {
+
+                return super.read(buffer, offset, length);
+
+            } catch (EOFException e) {
+
+                // The content flushed is returned before reaching the end of the file
+                return -1;
+
+            }
+        }
+    }
 }
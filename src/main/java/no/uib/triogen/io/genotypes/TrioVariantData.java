@@ -0,0 +1,124 @@
+package no.uib.triogen.io.genotypes;
+
+import no.uib.triogen.model.genome.VariantInformation;
+
+/**
+ * Interface for the genotypes of a variant in trios.
+ *
+ * @author Marc Vaudel
+ */
+public interface TrioVariantData {
+
+    /**
+     * Returns a boolean indicating whether genotyping information is available
+     * for the given sample.
+     *
+     * @param sampleId The id of the sample.
+     *
+     * @return A boolean indicating whether genotyping information is available
+     * for the give sample is missing.
+     */
+    public boolean contains(
+            String sampleId
+    );
+
+    /**
+     * Returns the ploidy for the given sample.
+     *
+     * @param sampleId The id of the sample.
+     *
+     * @return The ploidy for the given sample.
+     */
+    public int getPloidy(
+            String sampleId
+    );
+
+    /**
+     * Indicate that children alleles should be swapped.
+     */
+    public void swapChildrenAlleles();
+
+    /**
+     * Returns a boolean indicating whether the given allele should be swapped
+     * in children.
+     *
+     * @return A boolean indicating whether the given allele is swapped in
+     * children.
+     */
+    public boolean isSwappedChildrenAlleles();
+
+    /**
+     * Returns the sum of probabilities for the given allele and sample over all
+     * contigs.
+     *
+     * @param sampleId The id of the sample.
+     * @param alleleIndex The index of the allele.
+     *
+     * @return The sum of probabilities for the given allele and sample over all
+     * contigs.
+     */
+    public double getSummedProbability(
+            String sampleId,
+            int alleleIndex
+    );
+
+    /**
+     * Returns information on the variant.
+     *
+     * @return Information on the variant.
+     */
+    public VariantInformation getVariantInformation();
+
+    /**
+     * Returns the haplotypes in an array: {motherNonTransmitted,
+     * motherTransmitted, fatherTransmitted, fatherNonTransmitted}. If a parent
+     * is missing, haplotypes are distributed according to the maf.
+     *
+     * @param childId The child id.
+     * @param motherId The mother id.
+     * @param fatherId The father id.
+     * @param testedAlleleIndex The index of the allele tested in the variant
+     * information.
+     *
+     * @return The haplotypes in an array.
+     */
+    public double[] getHaplotypes(
+            String childId,
+            String motherId,
+            String fatherId,
+            int testedAlleleIndex
+    );
+
+    /**
+     * Returns the estimate of the frequency of the given allele.
+     *
+     * @param testedAlleleIndex The index of the allele of interest.
+     *
+     * @return The estimate of the frequency of the given allele.
+     */
+    public double getAlleleFrequency(
+            int testedAlleleIndex
+    );
+
+    /**
+     * Returns the allele frequencies.
+     *
+     * @return the allele frequencies
+     */
+    public double[] getAlleleFrequency();
+
+    /**
+     * Returns the indexes of the alleles ordered by decreasing frequency.
+     *
+     * @return The indexes of the alleles ordered by decreasing frequency.
+     */
+    public int[] getOrderedAlleles();
+
+    /**
+     * Returns the number of genotyped children.
+     *
+     * @return the number of genotyped children
+     */
+    public int getnChildrenGenotyped();
+
+}
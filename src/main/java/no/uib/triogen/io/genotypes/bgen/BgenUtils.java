@@ -1,7 +1,9 @@
 package no.uib.triogen.io.genotypes.bgen;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.util.concurrent.ConcurrentHashMap;
+import no.uib.triogen.io.IoUtils;
 import static no.uib.triogen.io.IoUtils.ENCODING;
 
 /**
@@ -149,4 +151,23 @@ public class BgenUtils {
         return true;
         
     }
+
+    /**
+     * Returns a fingerprint of the given bgen file based on its length and
+     * modification time, allowing to verify that files derived from the bgen
+     * file are up to date.
+     *
+     * @param bgenFile The bgen file.
+     *
+     * @return A fingerprint of the bgen file.
+     */
+    public static String getFingerprint(
+            File bgenFile
+    ) {
+
+        return String.join(IoUtils.SEPARATOR,
+                Long.toString(bgenFile.length()),
+                Long.toString(bgenFile.lastModified())
+        );
+    }
 }
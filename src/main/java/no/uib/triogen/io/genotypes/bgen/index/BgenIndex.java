@@ -242,6 +242,77 @@ public class BgenIndex {
         }
     }
 
+    /**
+     * Returns the range of variants of the given shard when splitting the
+     * file in the given number of shards. Shards are balanced by the length of
+     * the variant blocks, and therefore by the amount of data to read, rather
+     * than by the number of variants.
+     *
+     * @param shardIndex The index of the shard (0-based).
+     * @param nShards The number of shards.
+     *
+     * @return The index of the first variant of the shard (inclusive) and the
+     * index of the last variant of the shard (exclusive).
+     */
+    public int[] getShardRange(
+            int shardIndex,
+            int nShards
+    ) {
+
+        if (shardIndex < 0 || shardIndex >= nShards) {
+
+            throw new IllegalArgumentException("Shard " + shardIndex + " out of range (" + nShards + " shards).");
+
+        }
+
+        long totalLength = 0l;
+
+        for (long blockLength : variantBlockLengthArray) {
+
+            totalLength += blockLength;
+
+        }
+
+        long startLength = totalLength * shardIndex / nShards;
+        long endLength = totalLength * (shardIndex + 1) / nShards;
+
+        int start = shardIndex == 0 ? 0 : -1;
+        int end = shardIndex == nShards - 1 ? variantBlockLengthArray.length : -1;
+
+        long cumulativeLength = 0l;
+
+        for (int i = 0; i < variantBlockLengthArray.length && (start == -1 || end == -1); i++) {
+
+            if (start == -1 && cumulativeLength >= startLength) {
+
+                start = i;
+
+            }
+            if (end == -1 && cumulativeLength >= endLength) {
+
+                end = i;
+
+            }
+
+            cumulativeLength += variantBlockLengthArray[i];
+
+        }
+
+        if (start == -1) {
+
+            start = variantBlockLengthArray.length;
+
+        }
+        if (end == -1) {
+
+            end = variantBlockLengthArray.length;
+
+        }
+
+        return new int[]{start, end};
+
+    }
+
     /**
      * Returns the default index file for the given bgen file.
      * 
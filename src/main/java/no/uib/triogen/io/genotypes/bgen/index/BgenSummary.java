@@ -0,0 +1,521 @@
+package no.uib.triogen.io.genotypes.bgen.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.genotypes.bgen.BgenUtils;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.model.family.ChildToParentMap;
+
+/**
+ * Summary statistics on the variants of a bgen file for a given set of trios:
+ * allele frequencies in parents, missingness, and imputation info. The
+ * summary is filled as variants are parsed and saved next to the bgen index,
+ * allowing subsequent runs to skip variants not passing the allele frequency
+ * threshold without decoding their genotypes. The summary is discarded when
+ * the bgen file or the trios change. Note that unless otherwise specified, io
+ * exceptions are thrown as runtime exceptions.
+ *
+ * @author Marc Vaudel
+ */
+public class BgenSummary {
+
+    /**
+     * The first line of the summary file.
+     */
+    public final static String FIRST_LINE = "# TrioGen_bgen_summary_v.1.0.0";
+    /**
+     * The file where the summary is saved.
+     */
+    private final File file;
+    /**
+     * The index of the bgen file.
+     */
+    private final BgenIndex bgenIndex;
+    /**
+     * Fingerprint of the bgen file.
+     */
+    private final String bgenFingerprint;
+    /**
+     * Fingerprint of the trios.
+     */
+    private final String trioFingerprint;
+    /**
+     * The ids of the samples of the trios present in the bgen file.
+     */
+    private final String[] trioSampleIds;
+    /**
+     * The allele frequencies in parents, null if not available.
+     */
+    private final double[][] alleleFrequencies;
+    /**
+     * The share of samples of the trios with missing genotypes.
+     */
+    private final double[] missingness;
+    /**
+     * The imputation info of every allele.
+     */
+    private final double[][] info;
+    /**
+     * Boolean indicating whether variants were registered since the summary
+     * was loaded.
+     */
+    private volatile boolean modified = false;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file where the summary is saved.
+     * @param bgenFile The bgen file.
+     * @param bgenIndex The index of the bgen file.
+     * @param childToParentMap The map of trios.
+     */
+    private BgenSummary(
+            File file,
+            File bgenFile,
+            BgenIndex bgenIndex,
+            ChildToParentMap childToParentMap
+    ) {
+
+        this.file = file;
+        this.bgenIndex = bgenIndex;
+        this.bgenFingerprint = BgenUtils.getFingerprint(bgenFile);
+        this.trioFingerprint = childToParentMap.getFingerprint();
+
+        trioSampleIds = Arrays.stream(bgenIndex.sampleIds)
+                .filter(
+                        sampleId -> childToParentMap.sampleIds.contains(sampleId)
+                )
+                .toArray(String[]::new);
+
+        int nVariants = bgenIndex.variantIdArray.length;
+
+        alleleFrequencies = new double[nVariants][];
+        missingness = new double[nVariants];
+        info = new double[nVariants][];
+
+    }
+
+    /**
+     * Returns the summary of the given bgen file for the given trios. The
+     * summary is loaded from the default summary file if available and up to
+     * date, an empty summary is returned otherwise.
+     *
+     * @param bgenFile The bgen file.
+     * @param bgenIndex The index of the bgen file.
+     * @param childToParentMap The map of trios.
+     *
+     * @return The summary.
+     */
+    public static BgenSummary getBgenSummary(
+            File bgenFile,
+            BgenIndex bgenIndex,
+            ChildToParentMap childToParentMap
+    ) {
+
+        return getBgenSummary(
+                bgenFile,
+                bgenIndex,
+                childToParentMap,
+                getDefaultSummaryFile(bgenFile)
+        );
+
+    }
+
+    /**
+     * Returns the summary of the given bgen file for the given trios. The
+     * summary is loaded from the given file if available and up to date, an
+     * empty summary is returned otherwise.
+     *
+     * @param bgenFile The bgen file.
+     * @param bgenIndex The index of the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param summaryFile The file where the summary is saved.
+     *
+     * @return The summary.
+     */
+    public static BgenSummary getBgenSummary(
+            File bgenFile,
+            BgenIndex bgenIndex,
+            ChildToParentMap childToParentMap,
+            File summaryFile
+    ) {
+
+        BgenSummary bgenSummary = new BgenSummary(
+                summaryFile,
+                bgenFile,
+                bgenIndex,
+                childToParentMap
+        );
+
+        if (summaryFile.exists()) {
+
+            bgenSummary.read();
+
+        }
+
+        return bgenSummary;
+
+    }
+
+    /**
+     * Returns the default summary file for the given bgen file, next to the
+     * default index file.
+     *
+     * @param bgenFile The bgen file.
+     *
+     * @return The default file where to save the summary.
+     */
+    public static File getDefaultSummaryFile(
+            File bgenFile
+    ) {
+
+        return new File(bgenFile.getAbsolutePath() + ".summary.gz");
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the summary of the given variant is
+     * available.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the summary of the given variant is
+     * available.
+     */
+    public boolean contains(
+            int variantIndex
+    ) {
+
+        return alleleFrequencies[variantIndex] != null;
+
+    }
+
+    /**
+     * Returns the allele frequencies of the given variant as estimated by
+     * BgenVariantTrioData, null if not available.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The allele frequencies of the given variant.
+     */
+    public double[] getAlleleFrequencies(
+            int variantIndex
+    ) {
+
+        return alleleFrequencies[variantIndex];
+
+    }
+
+    /**
+     * Returns the share of samples of the trios with missing genotypes for the
+     * given variant. Only available if the variant is contained in the
+     * summary.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The missingness.
+     */
+    public double getMissingness(
+            int variantIndex
+    ) {
+
+        return missingness[variantIndex];
+
+    }
+
+    /**
+     * Returns the imputation info of the given allele of the given variant,
+     * estimated from the variance of the haplotype probabilities. Only
+     * available if the variant is contained in the summary.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param alleleIndex The index of the allele.
+     *
+     * @return The imputation info.
+     */
+    public double getInfo(
+            int variantIndex,
+            int alleleIndex
+    ) {
+
+        return info[variantIndex][alleleIndex];
+
+    }
+
+    /**
+     * Returns a boolean indicating whether a non-reference allele of the given
+     * variant has a frequency within the given threshold and its complement
+     * (exclusive), as done prior to association. Only available if the
+     * variant is contained in the summary.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param alleleFrequencyThreshold The allele frequency threshold.
+     *
+     * @return A boolean indicating whether an allele passes the threshold.
+     */
+    public boolean passesFrequencyThreshold(
+            int variantIndex,
+            double alleleFrequencyThreshold
+    ) {
+
+        double[] frequencies = alleleFrequencies[variantIndex];
+
+        for (int alleleI = 1; alleleI < frequencies.length; alleleI++) {
+
+            if (frequencies[alleleI] > alleleFrequencyThreshold && frequencies[alleleI] < 1.0 - alleleFrequencyThreshold) {
+
+                return true;
+
+            }
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Registers the summary of the given variant if not already available.
+     * The variant data must be parsed using the trios of this summary.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param variantData The parsed data of the variant.
+     */
+    public void register(
+            int variantIndex,
+            BgenVariantTrioData variantData
+    ) {
+
+        double[] variantFrequencies = variantData.getAlleleFrequency();
+
+        if (alleleFrequencies[variantIndex] != null || variantFrequencies == null) {
+
+            return;
+
+        }
+
+        int nAlleles = variantFrequencies.length;
+        int nMissing = 0;
+        double[] sumP = new double[nAlleles];
+        double[] sumVariance = new double[nAlleles];
+        int nHaplotypes = 0;
+
+        for (String sampleId : trioSampleIds) {
+
+            if (!variantData.contains(sampleId)) {
+
+                nMissing++;
+
+            } else {
+
+                int ploidy = variantData.getPloidy(sampleId);
+
+                for (int z = 0; z < ploidy; z++) {
+
+                    for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+                        double p = variantData.getProbability(sampleId, z, alleleI);
+
+                        sumP[alleleI] += p;
+                        sumVariance[alleleI] += p * (1.0 - p);
+
+                    }
+                }
+
+                nHaplotypes += ploidy;
+
+            }
+        }
+
+        double[] variantInfo = new double[nAlleles];
+
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            double frequency = sumP[alleleI] / nHaplotypes;
+
+            variantInfo[alleleI] = nHaplotypes == 0 || frequency <= 0.0 || frequency >= 1.0 ? 1.0
+                    : 1.0 - sumVariance[alleleI] / (nHaplotypes * frequency * (1.0 - frequency));
+
+        }
+
+        missingness[variantIndex] = trioSampleIds.length == 0 ? 0.0 : ((double) nMissing) / trioSampleIds.length;
+        info[variantIndex] = variantInfo;
+        alleleFrequencies[variantIndex] = Arrays.copyOf(variantFrequencies, nAlleles);
+
+        modified = true;
+
+    }
+
+    /**
+     * Saves the summary if variants were registered. Entries saved in the
+     * meantime by other processes are kept.
+     */
+    public void save() {
+
+        if (!modified) {
+
+            return;
+
+        }
+
+        if (file.exists()) {
+
+            read();
+
+        }
+
+        try {
+
+            File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+
+            try (SimpleFileWriter writer = new SimpleFileWriter(tempFile, true)) {
+
+                writer.writeLine(FIRST_LINE);
+                writer.writeLine("# Bgen:", bgenFingerprint);
+                writer.writeLine("# Trios:", trioFingerprint);
+                writer.writeLine("# Variants:", Integer.toString(bgenIndex.variantIdArray.length));
+                writer.writeLine("index", "variantId", "missingness", "alleleFrequencies", "info");
+
+                for (int variantI = 0; variantI < alleleFrequencies.length; variantI++) {
+
+                    if (alleleFrequencies[variantI] != null) {
+
+                        writer.writeLine(
+                                Integer.toString(variantI),
+                                bgenIndex.variantIdArray[variantI],
+                                Double.toString(missingness[variantI]),
+                                toString(alleleFrequencies[variantI]),
+                                toString(info[variantI])
+                        );
+                    }
+                }
+            }
+
+            Files.move(
+                    tempFile.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+            );
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        }
+
+        modified = false;
+
+    }
+
+    /**
+     * Reads the summary file and fills the variants not yet available. The
+     * file is ignored if it was written for another bgen file or other trios.
+     */
+    private void read() {
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(file, false)) {
+
+            String line = reader.readLine();
+
+            if (line == null || !line.equals(FIRST_LINE)) {
+
+                throw new IllegalArgumentException("Summary file " + file + " could not be parsed as TrioGen summary file. Please remove the file.");
+
+            }
+
+            String bgenLine = reader.readLine();
+            String trioLine = reader.readLine();
+            String variantsLine = reader.readLine();
+
+            if (bgenLine == null || trioLine == null || variantsLine == null
+                    || !bgenLine.split(IoUtils.SEPARATOR, 2)[1].equals(bgenFingerprint)
+                    || !trioLine.split(IoUtils.SEPARATOR, 2)[1].equals(trioFingerprint)
+                    || Integer.parseInt(variantsLine.split(IoUtils.SEPARATOR)[1]) != alleleFrequencies.length) {
+
+                // Summary of another version of the bgen file or of other trios, rebuilt upon saving
+                return;
+
+            }
+
+            reader.readLine();
+
+            while ((line = reader.readLine()) != null) {
+
+                if (line.length() > 0) {
+
+                    String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                    int variantI = Integer.parseInt(lineSplit[0]);
+
+                    if (!lineSplit[1].equals(bgenIndex.variantIdArray[variantI])) {
+
+                        throw new IllegalArgumentException("Variant " + lineSplit[1] + " in summary file " + file + " does not match variant " + bgenIndex.variantIdArray[variantI] + " in the bgen index. Please remove the file.");
+
+                    }
+
+                    if (alleleFrequencies[variantI] == null) {
+
+                        missingness[variantI] = Double.parseDouble(lineSplit[2]);
+                        info[variantI] = parseDoubles(lineSplit[4]);
+                        alleleFrequencies[variantI] = parseDoubles(lineSplit[3]);
+
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the given values as comma-separated string.
+     *
+     * @param values The values.
+     *
+     * @return The values as string.
+     */
+    private static String toString(
+            double[] values
+    ) {
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (int i = 0; i < values.length; i++) {
+
+            if (i > 0) {
+
+                stringBuilder.append(',');
+
+            }
+
+            stringBuilder.append(values[i]);
+
+        }
+
+        return stringBuilder.toString();
+
+    }
+
+    /**
+     * Parses comma-separated values.
+     *
+     * @param valuesString The values as string.
+     *
+     * @return The values.
+     */
+    private static double[] parseDoubles(
+            String valuesString
+    ) {
+
+        return Arrays.stream(valuesString.split(","))
+                .mapToDouble(
+                        value -> Double.parseDouble(value)
+                )
+                .toArray();
+
+    }
+}
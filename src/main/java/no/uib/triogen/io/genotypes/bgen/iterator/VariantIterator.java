@@ -1,9 +1,9 @@
 package no.uib.triogen.io.genotypes.bgen.iterator;
 
 import java.time.Instant;
+import java.util.BitSet;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
 import no.uib.triogen.log.SimpleCliLogger;
-import no.uib.triogen.model.genome.VariantInformation;
 import no.uib.triogen.utils.SimpleSemaphore;
 
 /**
@@ -54,6 +54,11 @@ public class VariantIterator {
      * given.
      */
     private final boolean estimateTime;
+    /**
+     * The indexes of the variants to skip, e.g. variants already completed in
+     * a previous run. Ignored if null.
+     */
+    private final BitSet skipped;
 
     /**
      * Constructor.
@@ -65,6 +70,7 @@ public class VariantIterator {
      * @param logPrefix The prefix to use for the log.
      * @param estimateTime Boolean indicating whether estimates for time of
      * completion should be given.
+     * @param skipped The indexes of the variants to skip. Ignored if null.
      */
     public VariantIterator(
             BgenIndex bgenIndex,
@@ -72,7 +78,8 @@ public class VariantIterator {
             int end,
             SimpleCliLogger logger,
             String logPrefix,
-            boolean estimateTime
+            boolean estimateTime,
+            BitSet skipped
     ) {
 
         this.bgenIndex = bgenIndex;
@@ -81,6 +88,31 @@ public class VariantIterator {
         this.logger = logger;
         this.logPrefix = logPrefix;
         this.estimateTime = estimateTime;
+        this.skipped = skipped;
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param bgenIndex The index of the bgen file to iterate.
+     * @param start The position to start the iteration. Ignored if -1.
+     * @param end The position to end the iteration. Ignored if -1.
+     * @param logger The logger to use. Ignored if null.
+     * @param logPrefix The prefix to use for the log.
+     * @param estimateTime Boolean indicating whether estimates for time of
+     * completion should be given.
+     */
+    public VariantIterator(
+            BgenIndex bgenIndex,
+            int start,
+            int end,
+            SimpleCliLogger logger,
+            String logPrefix,
+            boolean estimateTime
+    ) {
+
+        this(bgenIndex, start, end, logger, logPrefix, estimateTime, null);
 
     }
 
@@ -172,24 +204,10 @@ public class VariantIterator {
             }
         }
 
-        if ((start != -1 || end != -1) && currentVariantIndex < bgenIndex.variantInformationArray.length) {
-
-            VariantInformation variantInformation = bgenIndex.variantInformationArray[currentVariantIndex];
-
-            while (start != -1 && variantInformation.position < start || end != -1 && variantInformation.position > end) {
-
-                currentVariantIndex++;
-
-                if (currentVariantIndex != bgenIndex.variantInformationArray.length) {
-
-                    variantInformation = bgenIndex.variantInformationArray[currentVariantIndex];
-
-                } else {
+        while (currentVariantIndex < bgenIndex.variantInformationArray.length && isExcluded(currentVariantIndex)) {
 
-                    break;
+            currentVariantIndex++;
 
-                }
-            }
         }
 
         int index = currentVariantIndex;
@@ -202,4 +220,25 @@ public class VariantIterator {
 
     }
 
+    /**
+     * Returns a boolean indicating whether the variant at the given index
+     * should not be returned, i.e. whether it is outside the [start, end]
+     * range or should be skipped.
+     *
+     * @param variantIndex The index of the variant.
+     *
+     * @return A boolean indicating whether the variant should not be
+     * returned.
+     */
+    private boolean isExcluded(
+            int variantIndex
+    ) {
+
+        int position = bgenIndex.variantInformationArray[variantIndex].position;
+
+        return start != -1 && position < start
+                || end != -1 && position > end
+                || skipped != null && skipped.get(variantIndex);
+
+    }
 }
@@ -0,0 +1,170 @@
+package no.uib.triogen.io.genotypes.bgen.iterator;
+
+import java.util.BitSet;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+
+/**
+ * A shard of the variants of a bgen file, defined either as one of n shards
+ * balanced by the length of the variant blocks, or as an explicit range of
+ * variant indexes.
+ *
+ * @author Marc Vaudel
+ */
+public class VariantShard {
+
+    /**
+     * The index of the shard (0-based), -1 if the shard is an explicit range.
+     */
+    public final int shardIndex;
+    /**
+     * The number of shards, -1 if the shard is an explicit range.
+     */
+    public final int nShards;
+    /**
+     * The index of the first variant of an explicit range (inclusive).
+     */
+    private final int firstVariant;
+    /**
+     * The index of the last variant of an explicit range (inclusive).
+     */
+    private final int lastVariant;
+
+    /**
+     * Constructor.
+     *
+     * @param shardIndex The index of the shard (0-based), -1 if the shard is
+     * an explicit range.
+     * @param nShards The number of shards, -1 if the shard is an explicit
+     * range.
+     * @param firstVariant The index of the first variant of an explicit range
+     * (inclusive).
+     * @param lastVariant The index of the last variant of an explicit range
+     * (inclusive).
+     */
+    private VariantShard(
+            int shardIndex,
+            int nShards,
+            int firstVariant,
+            int lastVariant
+    ) {
+
+        this.shardIndex = shardIndex;
+        this.nShards = nShards;
+        this.firstVariant = firstVariant;
+        this.lastVariant = lastVariant;
+
+    }
+
+    /**
+     * Parses a shard from the command line, either as 'i/n' where i is the
+     * index of the shard (1-based) and n the number of shards, or as
+     * 'first-last' where first and last are the indexes of the first and last
+     * variants in the bgen file (0-based, inclusive).
+     *
+     * @param shardString The shard as string.
+     *
+     * @return The shard.
+     */
+    public static VariantShard parse(
+            String shardString
+    ) {
+
+        try {
+
+            if (shardString.contains("/")) {
+
+                String[] split = shardString.split("/");
+
+                int shardIndex = Integer.parseInt(split[0].trim()) - 1;
+                int nShards = Integer.parseInt(split[1].trim());
+
+                if (nShards <= 0 || shardIndex < 0 || shardIndex >= nShards) {
+
+                    throw new IllegalArgumentException("Invalid shard " + shardString + ", expected i/n with 1 <= i <= n.");
+
+                }
+
+                return new VariantShard(shardIndex, nShards, -1, -1);
+
+            } else if (shardString.contains("-")) {
+
+                String[] split = shardString.split("-");
+
+                int firstVariant = Integer.parseInt(split[0].trim());
+                int lastVariant = Integer.parseInt(split[1].trim());
+
+                if (firstVariant < 0 || lastVariant < firstVariant) {
+
+                    throw new IllegalArgumentException("Invalid variant range " + shardString + ".");
+
+                }
+
+                return new VariantShard(-1, -1, firstVariant, lastVariant);
+
+            }
+
+        } catch (NumberFormatException e) {
+
+            throw new IllegalArgumentException("Shard '" + shardString + "' could not be parsed.", e);
+
+        }
+
+        throw new IllegalArgumentException("Shard '" + shardString + "' could not be parsed, expected 'i/n' or 'first-last'.");
+
+    }
+
+    /**
+     * Returns the range of variants of this shard in the given bgen file.
+     *
+     * @param bgenIndex The index of the bgen file.
+     *
+     * @return The index of the first variant of the shard (inclusive) and the
+     * index of the last variant of the shard (exclusive).
+     */
+    public int[] getRange(
+            BgenIndex bgenIndex
+    ) {
+
+        if (shardIndex != -1) {
+
+            return bgenIndex.getShardRange(shardIndex, nShards);
+
+        }
+
+        int nVariants = bgenIndex.variantInformationArray.length;
+
+        return new int[]{
+            Math.min(firstVariant, nVariants),
+            Math.min(lastVariant + 1, nVariants)
+        };
+    }
+
+    /**
+     * Returns the indexes of the variants of the given bgen file outside this
+     * shard, to be skipped by the variant iterator.
+     *
+     * @param bgenIndex The index of the bgen file.
+     *
+     * @return The indexes of the variants outside this shard.
+     */
+    public BitSet getSkipped(
+            BgenIndex bgenIndex
+    ) {
+
+        int[] range = getRange(bgenIndex);
+
+        BitSet skipped = new BitSet(bgenIndex.variantInformationArray.length);
+        skipped.set(0, range[0]);
+        skipped.set(range[1], bgenIndex.variantInformationArray.length);
+
+        return skipped;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return shardIndex != -1 ? (shardIndex + 1) + "/" + nShards : firstVariant + "-" + lastVariant;
+
+    }
+}
@@ -11,6 +11,7 @@ import java.util.TreeMap;
 import java.util.zip.Inflater;
 import no.uib.triogen.io.IoUtils;
 import no.uib.triogen.io.genotypes.InheritanceUtils;
+import no.uib.triogen.io.genotypes.TrioVariantData;
 import static no.uib.triogen.io.genotypes.InheritanceUtils.FATHER;
 import static no.uib.triogen.io.genotypes.InheritanceUtils.MOTHER;
 import no.uib.triogen.io.genotypes.bgen.BgenUtils;
@@ -23,7 +24,7 @@ import no.uib.triogen.utils.CompressionUtils;
  *
  * @author Marc Vaudel
  */
-public class BgenVariantTrioData {
+public class BgenVariantTrioData implements TrioVariantData {
 
     /**
      * Array of the samples included.
@@ -472,6 +473,7 @@ public class BgenVariantTrioData {
      * @return A boolean indicating whether genotyping information is available
      * for the give sample is missing.
      */
+    @Override
     public boolean contains(String sampleId) {
 
         return haplotypeProbabilities.containsKey(sampleId);
@@ -485,6 +487,7 @@ public class BgenVariantTrioData {
      *
      * @return The ploidy for the given sample.
      */
+    @Override
     public int getPloidy(
             String sampleId
     ) {
@@ -497,6 +500,7 @@ public class BgenVariantTrioData {
     /**
      * Indicate that children alleles should be swapped.
      */
+    @Override
     public void swapChildrenAlleles() {
 
         swappedChildrenAllele = !swappedChildrenAllele;
@@ -510,6 +514,7 @@ public class BgenVariantTrioData {
      * @return A boolean indicating whether the given allele is swapped in
      * children.
      */
+    @Override
     public boolean isSwappedChildrenAlleles() {
 
         return swappedChildrenAllele;
@@ -568,6 +573,7 @@ public class BgenVariantTrioData {
      * @return The sum of probabilities for the given allele and sample over all
      * contigs.
      */
+    @Override
     public double getSummedProbability(
             String sampleId,
             int alleleIndex
@@ -583,6 +589,7 @@ public class BgenVariantTrioData {
      *
      * @return Information on the variant.
      */
+    @Override
     public VariantInformation getVariantInformation() {
 
         return variantInformation;
@@ -603,6 +610,7 @@ public class BgenVariantTrioData {
      *
      * @return The haplotypes in an array.
      */
+    @Override
     public double[] getHaplotypes(
             String childId,
             String motherId,
@@ -663,6 +671,7 @@ public class BgenVariantTrioData {
      *
      * @return The estimate of the frequency of the given allele.
      */
+    @Override
     public double getAlleleFrequency(
             int testedAlleleIndex
     ) {
@@ -674,6 +683,7 @@ public class BgenVariantTrioData {
      * 
      * @return the allele frequencies
      */
+    @Override
     public double[] getAlleleFrequency() {
         return alleleFrequency;
     }
@@ -683,6 +693,7 @@ public class BgenVariantTrioData {
      *
      * @return The indexes of the alleles ordered by decreasing frequency.
      */
+    @Override
     public int[] getOrderedAlleles() {
 
         return orderedAlleleIndex;
@@ -694,6 +705,7 @@ public class BgenVariantTrioData {
      *
      * @return the number of genotyped children
      */
+    @Override
     public int getnChildrenGenotyped() {
         return nChildrenGenotyped;
     }
@@ -0,0 +1,305 @@
+package no.uib.triogen.io.genotypes.cache;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import no.uib.triogen.io.IoUtils;
+import static no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils.HEADER_LENGTH;
+import static no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils.MAGIC_NUMBER;
+import no.uib.triogen.io.genotypes.bgen.BgenUtils;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+import static no.uib.triogen.utils.CompressionUtils.zstdDecompress;
+
+/**
+ * Reader for a haplotype cache file.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheReader implements AutoCloseable {
+
+    /**
+     * The index of the bgen file.
+     */
+    private final BgenIndex bgenIndex;
+    /**
+     * The random access file.
+     */
+    private final RandomAccessFile raf;
+    /**
+     * The channel to the file.
+     */
+    private final FileChannel fc;
+    /**
+     * The fingerprint of the data used to build the cache.
+     */
+    private final String fingerprint;
+    /**
+     * The number of trios.
+     */
+    private final int nTrios;
+    /**
+     * The position of the block of every variant relative to the end of the
+     * header, -1 if not in the cache.
+     */
+    private final long[] blockPositions;
+    /**
+     * The compressed length of the block of every variant.
+     */
+    private final int[] compressedLengths;
+    /**
+     * The uncompressed length of the block of every variant.
+     */
+    private final int[] uncompressedLengths;
+    /**
+     * The trio index and role of every sample.
+     */
+    private final HashMap<String, int[]> sampleRoles;
+
+    /**
+     * Constructor.
+     *
+     * @param cacheFile The cache file.
+     * @param bgenIndex The index of the bgen file.
+     * @param childToParentMap The map of trios.
+     *
+     * @throws IOException Exception thrown if an error occurred while reading
+     * the file.
+     */
+    public HaplotypeCacheReader(
+            File cacheFile,
+            BgenIndex bgenIndex,
+            ChildToParentMap childToParentMap
+    ) throws IOException {
+
+        this.bgenIndex = bgenIndex;
+
+        raf = new RandomAccessFile(cacheFile, "r");
+        fc = raf.getChannel();
+
+        byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+        raf.readFully(magicNumber);
+
+        if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
+
+            close();
+
+            throw new IllegalArgumentException("File format of " + cacheFile + " not supported.");
+
+        }
+
+        long footerPosition = raf.readLong();
+        raf.seek(footerPosition);
+
+        int compressedLength = raf.readInt();
+        int uncompressedLength = raf.readInt();
+
+        byte[] compressedFooter = new byte[compressedLength];
+        raf.readFully(compressedFooter);
+
+        ByteBuffer buffer = ByteBuffer.wrap(zstdDecompress(compressedFooter, uncompressedLength));
+
+        byte[] fingerprintBytes = new byte[buffer.getInt()];
+        buffer.get(fingerprintBytes);
+        fingerprint = new String(fingerprintBytes, IoUtils.ENCODING);
+
+        nTrios = buffer.getInt();
+        int nVariants = buffer.getInt();
+
+        blockPositions = new long[nVariants];
+        compressedLengths = new int[nVariants];
+        uncompressedLengths = new int[nVariants];
+
+        for (int variantI = 0; variantI < nVariants; variantI++) {
+
+            blockPositions[variantI] = buffer.getLong();
+            compressedLengths[variantI] = buffer.getInt();
+            uncompressedLengths[variantI] = buffer.getInt();
+
+        }
+
+        String[] children = childToParentMap.children;
+        sampleRoles = new HashMap<>(3 * children.length);
+
+        for (int trioI = children.length - 1; trioI >= 0; trioI--) {
+
+            String childId = children[trioI];
+
+            sampleRoles.putIfAbsent(childToParentMap.getMother(childId), new int[]{trioI, HaplotypeCacheUtils.MOTHER});
+            sampleRoles.putIfAbsent(childToParentMap.getFather(childId), new int[]{trioI, HaplotypeCacheUtils.FATHER});
+
+        }
+        for (int trioI = 0; trioI < children.length; trioI++) {
+
+            sampleRoles.put(children[trioI], new int[]{trioI, HaplotypeCacheUtils.CHILD});
+
+        }
+    }
+
+    /**
+     * Returns the haplotype cache next to the given bgen file if available
+     * and built for the same bgen file, trios, and mode of inheritance, null
+     * otherwise.
+     *
+     * @param bgenFile The bgen file.
+     * @param bgenIndex The index of the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param inheritanceMap The allele inheritance map.
+     * @param defaultMotherPloidy The default ploidy for mothers.
+     * @param defaultFatherPloidy The default ploidy for fathers.
+     * @param logger The logger.
+     *
+     * @return The haplotype cache reader, null if no cache is usable.
+     */
+    public static HaplotypeCacheReader getHaplotypeCacheReader(
+            File bgenFile,
+            BgenIndex bgenIndex,
+            ChildToParentMap childToParentMap,
+            HashMap<Integer, char[]> inheritanceMap,
+            int defaultMotherPloidy,
+            int defaultFatherPloidy,
+            SimpleCliLogger logger
+    ) {
+
+        File cacheFile = HaplotypeCacheUtils.getDefaultCacheFile(bgenFile);
+
+        if (!cacheFile.exists()) {
+
+            return null;
+
+        }
+
+        try {
+
+            HaplotypeCacheReader reader = new HaplotypeCacheReader(cacheFile, bgenIndex, childToParentMap);
+
+            String expectedFingerprint = getFingerprint(
+                    bgenFile,
+                    childToParentMap,
+                    inheritanceMap,
+                    defaultMotherPloidy,
+                    defaultFatherPloidy
+            );
+
+            if (!reader.fingerprint.equals(expectedFingerprint)
+                    || reader.nTrios != childToParentMap.children.length
+                    || reader.blockPositions.length != bgenIndex.variantIdArray.length) {
+
+                reader.close();
+
+                logger.logMessage("Haplotype cache " + cacheFile + " was built for another bgen file, trios, or chromosome, genotypes will be read from the bgen file.");
+
+                return null;
+
+            }
+
+            logger.logMessage("Using haplotype cache " + cacheFile + ".");
+
+            return reader;
+
+        } catch (Exception e) {
+
+            logger.logMessage("Failed to read haplotype cache " + cacheFile + " (" + e.getMessage() + "), genotypes will be read from the bgen file.");
+
+            return null;
+
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the data used to build a cache.
+     *
+     * @param bgenFile The bgen file.
+     * @param childToParentMap The map of trios.
+     * @param inheritanceMap The allele inheritance map.
+     * @param defaultMotherPloidy The default ploidy for mothers.
+     * @param defaultFatherPloidy The default ploidy for fathers.
+     *
+     * @return The fingerprint of the data used to build a cache.
+     */
+    public static String getFingerprint(
+            File bgenFile,
+            ChildToParentMap childToParentMap,
+            HashMap<Integer, char[]> inheritanceMap,
+            int defaultMotherPloidy,
+            int defaultFatherPloidy
+    ) {
+
+        return String.join("\n",
+                BgenUtils.getFingerprint(bgenFile),
+                childToParentMap.getFingerprint(),
+                HaplotypeCacheUtils.getInheritanceFingerprint(inheritanceMap, defaultMotherPloidy, defaultFatherPloidy)
+        );
+    }
+
+    /**
+     * Returns a boolean indicating whether the given variant is in the cache.
+     *
+     * @param i The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the given variant is in the cache.
+     */
+    public boolean contains(
+            int i
+    ) {
+
+        return blockPositions[i] >= 0;
+
+    }
+
+    /**
+     * Returns the data of the given variant.
+     *
+     * @param i The index of the variant in the bgen file.
+     * @param decompressor The decompressor to use.
+     *
+     * @return The data of the given variant.
+     */
+    public HaplotypeCacheVariantData getVariantData(
+            int i,
+            ZstdDecompressor decompressor
+    ) {
+
+        try {
+
+            MappedByteBuffer buffer = fc.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    HEADER_LENGTH + blockPositions[i],
+                    compressedLengths[i]
+            );
+
+            byte[] compressedData = new byte[compressedLengths[i]];
+            buffer.get(compressedData);
+            IoUtils.closeBuffer(buffer);
+
+            byte[] uncompressedData = zstdDecompress(decompressor, compressedData, uncompressedLengths[i]);
+
+            return new HaplotypeCacheVariantData(
+                    bgenIndex.variantInformationArray[i],
+                    sampleRoles,
+                    nTrios,
+                    uncompressedData
+            );
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        raf.close();
+        fc.close();
+
+    }
+}
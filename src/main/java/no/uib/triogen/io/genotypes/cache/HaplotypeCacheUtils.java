@@ -0,0 +1,201 @@
+package no.uib.triogen.io.genotypes.cache;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.TreeMap;
+import static no.uib.triogen.io.IoUtils.ENCODING;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.genotypes.TrioVariantData;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
+import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.model.family.ChildToParentMap;
+
+/**
+ * Utils for the reading and writing of haplotype caches.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheUtils {
+
+    /**
+     * The file extension.
+     */
+    public static final String EXTENSION = ".thc";
+    /**
+     * The magic number of to use to identify the supported files.
+     */
+    public static final byte[] MAGIC_NUMBER = getMagicNumber();
+    /**
+     * The length of the header: magic number and position of the footer.
+     */
+    public static final int HEADER_LENGTH = MAGIC_NUMBER.length + Long.BYTES;
+    /**
+     * The offset used to quantise haplotype values.
+     */
+    public static final double QUANTISATION_OFFSET = 2.0;
+    /**
+     * The scale used to quantise haplotype values, the range [-2, 3] is
+     * covered by 16 bits with integer values encoded exactly.
+     */
+    public static final double QUANTISATION_SCALE = 13107.0;
+    /**
+     * Flag indicating that the child is genotyped.
+     */
+    public static final byte CHILD = 0b1;
+    /**
+     * Flag indicating that the mother is genotyped.
+     */
+    public static final byte MOTHER = 0b10;
+    /**
+     * Flag indicating that the father is genotyped.
+     */
+    public static final byte FATHER = 0b100;
+
+    /**
+     * Returns the magic number.
+     *
+     * @return The magic number.
+     */
+    public static byte[] getMagicNumber() {
+
+        try {
+
+            String magicName = "Triogen.haplotypeCache.1.0";
+            return magicName.getBytes(ENCODING);
+
+        } catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    /**
+     * Returns the default cache file for the given bgen file.
+     *
+     * @param bgenFile The bgen file.
+     *
+     * @return The default file where to save the cache.
+     */
+    public static File getDefaultCacheFile(
+            File bgenFile
+    ) {
+
+        return new File(bgenFile.getAbsolutePath() + EXTENSION);
+
+    }
+
+    /**
+     * Quantises the given haplotype value on 16 bits.
+     *
+     * @param value The haplotype value.
+     *
+     * @return The quantised value.
+     */
+    public static short quantise(
+            double value
+    ) {
+
+        double scaled = Math.round((value + QUANTISATION_OFFSET) * QUANTISATION_SCALE);
+
+        return (short) Math.max(0, Math.min(0xffff, scaled));
+
+    }
+
+    /**
+     * Returns the haplotype value of the given quantised value.
+     *
+     * @param quantised The quantised value.
+     *
+     * @return The haplotype value.
+     */
+    public static double dequantise(
+            short quantised
+    ) {
+
+        return Short.toUnsignedInt(quantised) / QUANTISATION_SCALE - QUANTISATION_OFFSET;
+
+    }
+
+    /**
+     * Returns a fingerprint of the mode of inheritance, allowing to verify
+     * that a cache was built for the same chromosome.
+     *
+     * @param inheritanceMap The allele inheritance map.
+     * @param defaultMotherPloidy The default ploidy for mothers.
+     * @param defaultFatherPloidy The default ploidy for fathers.
+     *
+     * @return A fingerprint of the mode of inheritance.
+     */
+    public static String getInheritanceFingerprint(
+            HashMap<Integer, char[]> inheritanceMap,
+            int defaultMotherPloidy,
+            int defaultFatherPloidy
+    ) {
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        new TreeMap<>(inheritanceMap).forEach(
+                (ploidy, inheritance) -> stringBuilder
+                        .append(ploidy)
+                        .append(':')
+                        .append(inheritance)
+                        .append(',')
+        );
+
+        return String.join(IoUtils.SEPARATOR,
+                stringBuilder.toString(),
+                Integer.toString(defaultMotherPloidy),
+                Integer.toString(defaultFatherPloidy)
+        );
+    }
+
+    /**
+     * Returns the data of the given variant, from the haplotype cache if
+     * available, parsed from the bgen file otherwise.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param haplotypeCacheReader The reader for the haplotype cache. Ignored
+     * if null.
+     * @param bgenFileReader The reader for the bgen file.
+     * @param bgenSummary The summary where to register variants parsed from
+     * the bgen file. Ignored if null.
+     * @param childToParentMap The map of trios.
+     * @param decompressor The decompressor to use.
+     *
+     * @return The data of the given variant.
+     */
+    public static TrioVariantData getVariantData(
+            int variantIndex,
+            HaplotypeCacheReader haplotypeCacheReader,
+            BgenFileReader bgenFileReader,
+            BgenSummary bgenSummary,
+            ChildToParentMap childToParentMap,
+            ZstdDecompressor decompressor
+    ) {
+
+        if (haplotypeCacheReader != null && haplotypeCacheReader.contains(variantIndex)) {
+
+            return haplotypeCacheReader.getVariantData(variantIndex, decompressor);
+
+        }
+
+        BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
+        variantData.parse(
+                childToParentMap,
+                decompressor
+        );
+
+        if (bgenSummary != null) {
+
+            bgenSummary.register(variantIndex, variantData);
+
+        }
+
+        return variantData;
+
+    }
+}
@@ -0,0 +1,313 @@
+package no.uib.triogen.io.genotypes.cache;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import no.uib.triogen.io.genotypes.TrioVariantData;
+import no.uib.triogen.model.genome.VariantInformation;
+
+/**
+ * The haplotypes of the trios at a given variant as stored in a haplotype
+ * cache.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheVariantData implements TrioVariantData {
+
+    /**
+     * Index of the mother non-transmitted haplotype.
+     */
+    private static final int MNT = 0;
+    /**
+     * Index of the mother transmitted haplotype.
+     */
+    private static final int MT = 1;
+    /**
+     * Index of the father transmitted haplotype.
+     */
+    private static final int FT = 2;
+    /**
+     * Index of the father non-transmitted haplotype.
+     */
+    private static final int FNT = 3;
+    /**
+     * Information on the variant.
+     */
+    private final VariantInformation variantInformation;
+    /**
+     * The trio index and role of every sample.
+     */
+    private final HashMap<String, int[]> sampleRoles;
+    /**
+     * The allele frequencies.
+     */
+    private final double[] alleleFrequency;
+    /**
+     * The indexes of the alleles ordered by decreasing frequency.
+     */
+    private final int[] orderedAlleleIndex;
+    /**
+     * The number of genotyped children.
+     */
+    private final int nChildrenGenotyped;
+    /**
+     * The flags indicating the members of every trio that are genotyped.
+     */
+    private final byte[] genotypedFlags;
+    /**
+     * The ploidy of every child.
+     */
+    private final byte[] childrenPloidy;
+    /**
+     * The quantised haplotypes: allele, haplotype, trio.
+     */
+    private final short[][][] haplotypes;
+    /**
+     * Boolean indicating whether the children alleles are swapped.
+     */
+    private boolean swappedChildrenAllele = false;
+
+    /**
+     * Constructor.
+     *
+     * @param variantInformation Information on the variant.
+     * @param sampleRoles The trio index and role of every sample.
+     * @param nTrios The number of trios.
+     * @param block The uncompressed block of the variant.
+     */
+    public HaplotypeCacheVariantData(
+            VariantInformation variantInformation,
+            HashMap<String, int[]> sampleRoles,
+            int nTrios,
+            byte[] block
+    ) {
+
+        this.variantInformation = variantInformation;
+        this.sampleRoles = sampleRoles;
+
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+
+        int nAlleles = buffer.getShort();
+
+        alleleFrequency = new double[nAlleles];
+
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            alleleFrequency[alleleI] = buffer.getDouble();
+
+        }
+
+        orderedAlleleIndex = new int[nAlleles];
+
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            orderedAlleleIndex[alleleI] = buffer.getShort();
+
+        }
+
+        nChildrenGenotyped = buffer.getInt();
+
+        genotypedFlags = new byte[nTrios];
+        buffer.get(genotypedFlags);
+
+        childrenPloidy = new byte[nTrios];
+        buffer.get(childrenPloidy);
+
+        haplotypes = new short[nAlleles][4][nTrios];
+
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            for (int haplotypeI = 0; haplotypeI < 4; haplotypeI++) {
+
+                buffer.asShortBuffer().get(haplotypes[alleleI][haplotypeI]);
+                buffer.position(buffer.position() + nTrios * Short.BYTES);
+
+            }
+        }
+    }
+
+    /**
+     * Returns the trio index and role of the given sample, null if not in a
+     * genotyped trio.
+     *
+     * @param sampleId The id of the sample.
+     *
+     * @return The trio index and role of the given sample.
+     */
+    private int[] getRole(
+            String sampleId
+    ) {
+
+        int[] role = sampleRoles.get(sampleId);
+
+        if (role == null || (genotypedFlags[role[0]] & role[1]) == 0) {
+
+            return null;
+
+        }
+
+        return role;
+
+    }
+
+    @Override
+    public boolean contains(
+            String sampleId
+    ) {
+
+        return getRole(sampleId) != null;
+
+    }
+
+    @Override
+    public int getPloidy(
+            String sampleId
+    ) {
+
+        int[] role = getRole(sampleId);
+
+        if (role == null || role[1] != HaplotypeCacheUtils.CHILD) {
+
+            throw new IllegalArgumentException("Ploidy of sample " + sampleId + " not available in the haplotype cache for variant " + variantInformation.id + ".");
+
+        }
+
+        return childrenPloidy[role[0]];
+
+    }
+
+    @Override
+    public void swapChildrenAlleles() {
+
+        swappedChildrenAllele = !swappedChildrenAllele;
+
+    }
+
+    @Override
+    public boolean isSwappedChildrenAlleles() {
+
+        return swappedChildrenAllele;
+
+    }
+
+    /**
+     * Returns the dequantised value of the given haplotype.
+     *
+     * @param alleleIndex The index of the allele.
+     * @param haplotypeIndex The index of the haplotype.
+     * @param trioIndex The index of the trio.
+     *
+     * @return The value of the haplotype.
+     */
+    private double getHaplotype(
+            int alleleIndex,
+            int haplotypeIndex,
+            int trioIndex
+    ) {
+
+        return HaplotypeCacheUtils.dequantise(haplotypes[alleleIndex][haplotypeIndex][trioIndex]);
+
+    }
+
+    @Override
+    public double getSummedProbability(
+            String sampleId,
+            int alleleIndex
+    ) {
+
+        int[] role = getRole(sampleId);
+
+        if (role == null) {
+
+            throw new IllegalArgumentException("Sample " + sampleId + " not available in the haplotype cache for variant " + variantInformation.id + ".");
+
+        }
+
+        int trioI = role[0];
+
+        switch (role[1]) {
+
+            case HaplotypeCacheUtils.CHILD:
+                return getHaplotype(alleleIndex, MT, trioI) + getHaplotype(alleleIndex, FT, trioI);
+
+            case HaplotypeCacheUtils.MOTHER:
+                return getHaplotype(alleleIndex, MNT, trioI) + getHaplotype(alleleIndex, MT, trioI);
+
+            case HaplotypeCacheUtils.FATHER:
+                return getHaplotype(alleleIndex, FT, trioI) + getHaplotype(alleleIndex, FNT, trioI);
+
+            default:
+                throw new IllegalArgumentException("Unsupported role " + role[1] + ".");
+
+        }
+    }
+
+    @Override
+    public VariantInformation getVariantInformation() {
+
+        return variantInformation;
+
+    }
+
+    @Override
+    public double[] getHaplotypes(
+            String childId,
+            String motherId,
+            String fatherId,
+            int testedAlleleIndex
+    ) {
+
+        int trioI = sampleRoles.get(childId)[0];
+
+        double motherNonTransmitted = getHaplotype(testedAlleleIndex, MNT, trioI);
+        double motherTransmitted = getHaplotype(testedAlleleIndex, MT, trioI);
+        double fatherTransmitted = getHaplotype(testedAlleleIndex, FT, trioI);
+        double fatherNonTransmitted = getHaplotype(testedAlleleIndex, FNT, trioI);
+
+        if (swappedChildrenAllele && childrenPloidy[trioI] == 2) {
+
+            double mother = motherNonTransmitted + motherTransmitted;
+            double father = fatherTransmitted + fatherNonTransmitted;
+
+            double temp = motherTransmitted;
+            motherTransmitted = fatherTransmitted;
+            fatherTransmitted = temp;
+
+            motherNonTransmitted = mother - motherTransmitted;
+            fatherNonTransmitted = father - fatherTransmitted;
+
+        }
+
+        return new double[]{motherNonTransmitted, motherTransmitted, fatherTransmitted, fatherNonTransmitted};
+
+    }
+
+    @Override
+    public double getAlleleFrequency(
+            int testedAlleleIndex
+    ) {
+
+        return alleleFrequency[testedAlleleIndex];
+
+    }
+
+    @Override
+    public double[] getAlleleFrequency() {
+
+        return alleleFrequency;
+
+    }
+
+    @Override
+    public int[] getOrderedAlleles() {
+
+        return orderedAlleleIndex;
+
+    }
+
+    @Override
+    public int getnChildrenGenotyped() {
+
+        return nChildrenGenotyped;
+
+    }
+}
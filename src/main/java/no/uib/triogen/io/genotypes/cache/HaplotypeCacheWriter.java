@@ -0,0 +1,298 @@
+package no.uib.triogen.io.genotypes.cache;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import no.uib.triogen.io.IoUtils;
+import static no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils.HEADER_LENGTH;
+import static no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils.MAGIC_NUMBER;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.utils.SimpleSemaphore;
+import no.uib.triogen.utils.TempByteArray;
+import static no.uib.triogen.utils.CompressionUtils.zstdCompress;
+
+/**
+ * Writes the haplotypes of trios to a cache file. For every variant, the
+ * transmitted and non-transmitted haplotypes of every trio and allele are
+ * quantised on 16 bits and compressed. The file is indexed by variant, the
+ * index is written in the footer.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheWriter implements AutoCloseable {
+
+    /**
+     * The random access file to write to.
+     */
+    private final RandomAccessFile raf;
+    /**
+     * The map of trios.
+     */
+    private final ChildToParentMap childToParentMap;
+    /**
+     * The fingerprint of the data used to build the cache.
+     */
+    private final String fingerprint;
+    /**
+     * The position of the block of every variant relative to the end of the
+     * header, -1 if not written.
+     */
+    private final long[] blockPositions;
+    /**
+     * The compressed length of the block of every variant.
+     */
+    private final int[] compressedLengths;
+    /**
+     * The uncompressed length of the block of every variant.
+     */
+    private final int[] uncompressedLengths;
+    /**
+     * Semaphore to synchronize writing to the file.
+     */
+    private final SimpleSemaphore semaphore = new SimpleSemaphore(1);
+
+    /**
+     * Constructor.
+     *
+     * @param destinationFile The file where to write the cache.
+     * @param nVariants The number of variants in the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param fingerprint The fingerprint of the data used to build the cache.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to the file.
+     */
+    public HaplotypeCacheWriter(
+            File destinationFile,
+            int nVariants,
+            ChildToParentMap childToParentMap,
+            String fingerprint
+    ) throws IOException {
+
+        this.childToParentMap = childToParentMap;
+        this.fingerprint = fingerprint;
+
+        blockPositions = new long[nVariants];
+        Arrays.fill(blockPositions, -1l);
+        compressedLengths = new int[nVariants];
+        uncompressedLengths = new int[nVariants];
+
+        raf = new RandomAccessFile(destinationFile, "rw");
+        raf.setLength(0);
+        raf.seek(HEADER_LENGTH);
+
+    }
+
+    /**
+     * Adds a variant to the cache.
+     *
+     * @param bgenVariantIndex The index of the variant in the bgen file.
+     * @param variantData The data of the variant, parsed with the trios of
+     * this cache and with children alleles not swapped.
+     * @param compressor The compressor to use.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to the file.
+     */
+    public void addVariant(
+            int bgenVariantIndex,
+            BgenVariantTrioData variantData,
+            ZstdCompressor compressor
+    ) throws IOException {
+
+        byte[] uncompressedData = getVariantBlock(variantData);
+        TempByteArray compressedData = zstdCompress(compressor, uncompressedData);
+
+        semaphore.acquire();
+
+        try {
+
+            blockPositions[bgenVariantIndex] = raf.getFilePointer() - HEADER_LENGTH;
+            compressedLengths[bgenVariantIndex] = compressedData.length;
+            uncompressedLengths[bgenVariantIndex] = uncompressedData.length;
+
+            raf.write(compressedData.array, 0, compressedData.length);
+
+        } finally {
+
+            semaphore.release();
+
+        }
+    }
+
+    /**
+     * Returns the uncompressed block of the given variant.
+     *
+     * @param variantData The data of the variant.
+     *
+     * @return The uncompressed block.
+     */
+    private byte[] getVariantBlock(
+            BgenVariantTrioData variantData
+    ) {
+
+        String[] children = childToParentMap.children;
+        int nTrios = children.length;
+        double[] alleleFrequency = variantData.getAlleleFrequency();
+        int[] orderedAlleles = variantData.getOrderedAlleles();
+        int nAlleles = alleleFrequency.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+                Short.BYTES
+                + nAlleles * (Double.BYTES + Short.BYTES)
+                + Integer.BYTES
+                + 2 * nTrios
+                + nAlleles * 4 * nTrios * Short.BYTES
+        );
+
+        buffer.putShort((short) nAlleles);
+
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            buffer.putDouble(alleleFrequency[alleleI]);
+
+        }
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            buffer.putShort((short) orderedAlleles[alleleI]);
+
+        }
+
+        buffer.putInt(variantData.getnChildrenGenotyped());
+
+        // Genotyped members of the trio
+        for (String childId : children) {
+
+            byte flags = 0;
+
+            if (variantData.contains(childId)) {
+
+                flags |= HaplotypeCacheUtils.CHILD;
+
+            }
+            if (variantData.contains(childToParentMap.getMother(childId))) {
+
+                flags |= HaplotypeCacheUtils.MOTHER;
+
+            }
+            if (variantData.contains(childToParentMap.getFather(childId))) {
+
+                flags |= HaplotypeCacheUtils.FATHER;
+
+            }
+
+            buffer.put(flags);
+
+        }
+
+        // Ploidy of the children
+        for (String childId : children) {
+
+            buffer.put(variantData.contains(childId) ? (byte) variantData.getPloidy(childId) : 0);
+
+        }
+
+        // Haplotypes, for trios where the child is missing the non-transmitted haplotypes contain the parental genotypes
+        short[][] haplotypes = new short[4][nTrios];
+
+        for (int alleleI = 0; alleleI < nAlleles; alleleI++) {
+
+            for (int trioI = 0; trioI < nTrios; trioI++) {
+
+                String childId = children[trioI];
+                String motherId = childToParentMap.getMother(childId);
+                String fatherId = childToParentMap.getFather(childId);
+
+                double[] trioHaplotypes;
+
+                if (variantData.contains(childId)) {
+
+                    trioHaplotypes = variantData.getHaplotypes(childId, motherId, fatherId, alleleI);
+
+                } else {
+
+                    trioHaplotypes = new double[]{
+                        variantData.contains(motherId) ? variantData.getSummedProbability(motherId, alleleI) : 0.0,
+                        0.0,
+                        0.0,
+                        variantData.contains(fatherId) ? variantData.getSummedProbability(fatherId, alleleI) : 0.0
+                    };
+                }
+
+                for (int haplotypeI = 0; haplotypeI < 4; haplotypeI++) {
+
+                    haplotypes[haplotypeI][trioI] = HaplotypeCacheUtils.quantise(trioHaplotypes[haplotypeI]);
+
+                }
+            }
+
+            for (int haplotypeI = 0; haplotypeI < 4; haplotypeI++) {
+
+                for (int trioI = 0; trioI < nTrios; trioI++) {
+
+                    buffer.putShort(haplotypes[haplotypeI][trioI]);
+
+                }
+            }
+        }
+
+        return buffer.array();
+
+    }
+
+    /**
+     * Writes the header and footer to the file.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    private void writeHeaderAndFooter() throws IOException {
+
+        long footerPosition = raf.getFilePointer();
+
+        byte[] fingerprintBytes = fingerprint.getBytes(IoUtils.ENCODING);
+        int nVariants = blockPositions.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + fingerprintBytes.length + nVariants * (Long.BYTES + 2 * Integer.BYTES));
+
+        buffer
+                .putInt(fingerprintBytes.length)
+                .put(fingerprintBytes)
+                .putInt(childToParentMap.children.length)
+                .putInt(nVariants);
+
+        for (int variantI = 0; variantI < nVariants; variantI++) {
+
+            buffer
+                    .putLong(blockPositions[variantI])
+                    .putInt(compressedLengths[variantI])
+                    .putInt(uncompressedLengths[variantI]);
+
+        }
+
+        byte[] uncompressedData = buffer.array();
+        TempByteArray compressedData = zstdCompress(uncompressedData);
+
+        raf.writeInt(compressedData.length);
+        raf.writeInt(uncompressedData.length);
+        raf.write(compressedData.array, 0, compressedData.length);
+
+        raf.seek(0);
+        raf.write(MAGIC_NUMBER);
+        raf.writeLong(footerPosition);
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        writeHeaderAndFooter();
+
+        raf.close();
+
+    }
+}
@@ -0,0 +1,894 @@
+package no.uib.triogen.io.ld;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.mapping.MemoryMappedFile;
+import no.uib.triogen.utils.SimpleSemaphore;
+
+/**
+ * A genome-wide ld matrix stored as a directory of ld matrices, one per
+ * contig, named after the contig, and a manifest indexing all variants. The
+ * manifest is memory mapped when opening the bundle, and the reader of every
+ * contig is created from the manifest without reading the footer of its ld
+ * matrix, upon first use. Bundles and their readers are shared by all
+ * threads of the process.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixBundle {
+
+    /**
+     * The name of the manifest file.
+     */
+    public static final String MANIFEST_FILE = "manifest.tldm";
+    /**
+     * The magic number of the manifest.
+     */
+    public static final byte[] MAGIC_NUMBER = getMagicNumber("Triogen.ldBundle.1.0");
+    /**
+     * The block size to use when mapping the manifest.
+     */
+    private static final long BLOCK_SIZE = 1l << 30;
+    /**
+     * The bundles opened, indexed by canonical path of the directory.
+     */
+    private static final ConcurrentHashMap<String, LdMatrixBundle> bundles = new ConcurrentHashMap<>();
+    /**
+     * The directory of the bundle.
+     */
+    private final File directory;
+    /**
+     * The memory mapped manifest.
+     */
+    private final MemoryMappedFile manifest;
+    /**
+     * The contig of every shard.
+     */
+    private final String[] shardContigs;
+    /**
+     * The ld matrix file of every shard.
+     */
+    private final File[] shardFiles;
+    /**
+     * The version of the format of every shard.
+     */
+    private final int[] shardVersions;
+    /**
+     * The number of bits used to store r2 values in every shard.
+     */
+    private final int[] shardR2Bits;
+    /**
+     * The scale used to quantise r2 values in every shard.
+     */
+    private final float[] shardR2Scales;
+    /**
+     * The position of the footer of every shard.
+     */
+    private final long[] shardFooterPositions;
+    /**
+     * The index of the first variant of every shard in the bundle, the last
+     * element is the number of variants.
+     */
+    private final int[] shardStarts;
+    /**
+     * The number of rows of every shard.
+     */
+    private final int[] shardNRows;
+    /**
+     * Boolean indicating whether the positions of the variants of every shard
+     * are stored.
+     */
+    private final boolean[] shardLocations;
+    /**
+     * Contig to shard index.
+     */
+    private final HashMap<String, Integer> contigIndexes;
+    /**
+     * The number of keys in the index of ids.
+     */
+    private final int nKeys;
+    /**
+     * The position of the index of ids in the manifest: hash of the id or
+     * rsid in the upper 32 bits, index of the variant in the bundle in the
+     * lower 32 bits, sorted.
+     */
+    private final long keysPosition;
+    /**
+     * The position of the indexes of the rows in the manifest, -1 for
+     * variants without row.
+     */
+    private final long rowsPosition;
+    /**
+     * The position of the positions of the variants in the manifest.
+     */
+    private final long positionsPosition;
+    /**
+     * The position of the offsets of the ids of the variants in the manifest.
+     */
+    private final long idOffsetsPosition;
+    /**
+     * The position of the ids in the manifest.
+     */
+    private final long idsPosition;
+    /**
+     * The readers of the shards, created upon first use.
+     */
+    private final LdMatrixReader[] readers;
+    /**
+     * Mutex for the creation of readers.
+     */
+    private final SimpleSemaphore readersMutex = new SimpleSemaphore(1);
+
+    /**
+     * Constructor.
+     *
+     * @param directory The directory of the bundle.
+     *
+     * @throws IOException Exception thrown if an error occurred while reading
+     * the manifest.
+     */
+    private LdMatrixBundle(
+            File directory
+    ) throws IOException {
+
+        this.directory = directory;
+
+        File manifestFile = new File(directory, MANIFEST_FILE);
+
+        manifest = new MemoryMappedFile(manifestFile, 0, manifestFile.length(), BLOCK_SIZE);
+
+        MemoryMappedFile.MiniBuffer buffer = manifest.getBuffer(0);
+
+        byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+        buffer.get(magicNumber);
+
+        if (!Arrays.equals(MAGIC_NUMBER, magicNumber)) {
+
+            throw new IOException("File format of " + manifestFile + " not supported.");
+
+        }
+
+        long position = MAGIC_NUMBER.length;
+
+        int nShards = buffer.getInt();
+        position += Integer.BYTES;
+
+        shardContigs = new String[nShards];
+        shardFiles = new File[nShards];
+        shardVersions = new int[nShards];
+        shardR2Bits = new int[nShards];
+        shardR2Scales = new float[nShards];
+        shardFooterPositions = new long[nShards];
+        shardStarts = new int[nShards + 1];
+        shardNRows = new int[nShards];
+        shardLocations = new boolean[nShards];
+        contigIndexes = new HashMap<>(nShards);
+
+        for (int i = 0; i < nShards; i++) {
+
+            byte[] contigBytes = new byte[buffer.getInt()];
+            buffer.get(contigBytes);
+            byte[] fileNameBytes = new byte[buffer.getInt()];
+            buffer.get(fileNameBytes);
+
+            shardContigs[i] = new String(contigBytes, IoUtils.ENCODING);
+            shardFiles[i] = new File(directory, new String(fileNameBytes, IoUtils.ENCODING));
+
+            long fileLength = buffer.getLong();
+
+            if (shardFiles[i].length() != fileLength) {
+
+                throw new IllegalArgumentException("The length of " + shardFiles[i] + " does not match the manifest of the bundle, please rebuild the manifest.");
+
+            }
+
+            shardVersions[i] = buffer.getInt();
+            shardR2Bits[i] = buffer.getInt();
+            shardR2Scales[i] = buffer.getFloat();
+            shardFooterPositions[i] = buffer.getLong();
+            shardStarts[i + 1] = shardStarts[i] + buffer.getInt();
+            shardNRows[i] = buffer.getInt();
+            shardLocations[i] = buffer.getInt() == 1;
+
+            contigIndexes.put(shardContigs[i], i);
+
+            position += 2 * Integer.BYTES + contigBytes.length + fileNameBytes.length + 2 * Long.BYTES + 6 * Integer.BYTES;
+
+        }
+
+        int nVariants = buffer.getInt();
+        nKeys = buffer.getInt();
+        position += 2 * Integer.BYTES;
+
+        if (nVariants != shardStarts[nShards]) {
+
+            throw new IOException("Manifest " + manifestFile + " corrupted.");
+
+        }
+
+        keysPosition = position;
+        rowsPosition = keysPosition + (long) nKeys * Long.BYTES;
+        positionsPosition = rowsPosition + (long) nVariants * Long.BYTES;
+        idOffsetsPosition = positionsPosition + (long) nVariants * Integer.BYTES;
+        idsPosition = idOffsetsPosition + (long) nVariants * Long.BYTES;
+
+        readers = new LdMatrixReader[nShards];
+
+    }
+
+    /**
+     * Returns the magic number for the given name.
+     *
+     * @param magicName The name of the format.
+     *
+     * @return The magic number.
+     */
+    private static byte[] getMagicNumber(
+            String magicName
+    ) {
+
+        try {
+
+            return magicName.getBytes(IoUtils.ENCODING);
+
+        } catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the given file is the directory of
+     * a bundle.
+     *
+     * @param file The file.
+     *
+     * @return A boolean indicating whether the given file is a bundle.
+     */
+    public static boolean isBundle(
+            File file
+    ) {
+
+        return file.isDirectory() && new File(file, MANIFEST_FILE).exists();
+
+    }
+
+    /**
+     * Returns the bundle in the given directory. The bundle is opened upon
+     * first call and shared by all subsequent calls.
+     *
+     * @param directory The directory of the bundle.
+     *
+     * @return The bundle.
+     */
+    public static LdMatrixBundle getBundle(
+            File directory
+    ) {
+
+        try {
+
+            return bundles.computeIfAbsent(
+                    directory.getCanonicalPath(),
+                    path -> {
+
+                        try {
+
+                            return new LdMatrixBundle(directory);
+
+                        } catch (IOException e) {
+
+                            throw new RuntimeException(e);
+
+                        }
+                    }
+            );
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    /**
+     * Returns the directory of the bundle.
+     *
+     * @return The directory of the bundle.
+     */
+    public File getDirectory() {
+
+        return directory;
+
+    }
+
+    /**
+     * Returns the contigs of the bundle.
+     *
+     * @return The contigs of the bundle.
+     */
+    public String[] getContigs() {
+
+        return shardContigs.clone();
+
+    }
+
+    /**
+     * Returns the number of variants in the bundle.
+     *
+     * @return The number of variants in the bundle.
+     */
+    public int getNVariants() {
+
+        return shardStarts[shardStarts.length - 1];
+
+    }
+
+    /**
+     * Returns the index of the given variant in the bundle, -1 if not found.
+     *
+     * @param variantId The id or rsid of the variant.
+     *
+     * @return The index of the given variant in the bundle.
+     */
+    public int getIndex(
+            String variantId
+    ) {
+
+        if (variantId == null || variantId.equals("")) {
+
+            return -1;
+
+        }
+
+        int hash = variantId.hashCode();
+        long indexKey = (long) hash << 32;
+
+        int low = 0;
+        int high = nKeys;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (getKey(mid) < indexKey) {
+
+                low = mid + 1;
+
+            } else {
+
+                high = mid;
+
+            }
+        }
+
+        for (int i = low; i < nKeys; i++) {
+
+            long key = getKey(i);
+
+            if ((int) (key >> 32) != hash) {
+
+                break;
+
+            }
+
+            int variantIndex = (int) key;
+            String[] ids = getIds(variantIndex);
+
+            if (ids[0].equals(variantId) || ids[1].equals(variantId)) {
+
+                return variantIndex;
+
+            }
+        }
+
+        return -1;
+
+    }
+
+    /**
+     * Returns the contig of the given variant, null if not found.
+     *
+     * @param variantId The id or rsid of the variant.
+     *
+     * @return The contig of the given variant.
+     */
+    public String getContig(
+            String variantId
+    ) {
+
+        int variantIndex = getIndex(variantId);
+
+        return variantIndex == -1 ? null : shardContigs[getShard(variantIndex)];
+
+    }
+
+    /**
+     * Returns the index of the row of the given variant relative to the end
+     * of the header of the ld matrix of its contig, -1 if not found or if the
+     * variant has no row.
+     *
+     * @param variantId The id or rsid of the variant.
+     *
+     * @return The index of the row of the given variant.
+     */
+    public long getRowIndexInFile(
+            String variantId
+    ) {
+
+        int variantIndex = getIndex(variantId);
+
+        return variantIndex == -1 ? -1 : manifest.getBuffer(rowsPosition + (long) variantIndex * Long.BYTES).getLong();
+
+    }
+
+    /**
+     * Returns the reader for the ld matrix of the given contig, null if the
+     * contig is not in the bundle. The reader is created upon first call and
+     * shared by all subsequent calls, the given cache is used only when the
+     * reader is created.
+     *
+     * @param contig The contig.
+     * @param cache The cache of decoded rows to use, can be shared between
+     * readers. Ignored if null.
+     *
+     * @return The reader for the ld matrix of the given contig.
+     */
+    public LdMatrixReader getReader(
+            String contig,
+            LdRowCache cache
+    ) {
+
+        Integer shard = contigIndexes.get(contig);
+
+        if (shard == null) {
+
+            return null;
+
+        }
+
+        LdMatrixReader reader = readers[shard];
+
+        if (reader == null) {
+
+            readersMutex.acquire();
+
+            try {
+
+                reader = readers[shard];
+
+                if (reader == null) {
+
+                    reader = new LdMatrixReader(shardFiles[shard], getFooter(shard), cache);
+                    readers[shard] = reader;
+
+                }
+
+            } catch (IOException e) {
+
+                throw new RuntimeException(e);
+
+            } finally {
+
+                readersMutex.release();
+
+            }
+        }
+
+        return reader;
+
+    }
+
+    /**
+     * Returns the reader for the ld matrix of the given contig, null if the
+     * contig is not in the bundle.
+     *
+     * @param contig The contig.
+     *
+     * @return The reader for the ld matrix of the given contig.
+     */
+    public LdMatrixReader getReader(
+            String contig
+    ) {
+
+        return getReader(contig, null);
+
+    }
+
+    /**
+     * Returns the footer of the given shard as stored in the manifest.
+     *
+     * @param shard The index of the shard.
+     *
+     * @return The footer of the shard.
+     */
+    private LdMatrixFooter getFooter(
+            int shard
+    ) {
+
+        int start = shardStarts[shard];
+        int nVariants = shardStarts[shard + 1] - start;
+
+        String[] variantIds = new String[nVariants];
+        String[] rsIds = new String[nVariants];
+        int[] rowVariantIndexes = new int[shardNRows[shard]];
+        long[] rowIndexesInFile = new long[shardNRows[shard]];
+        String[] contigs = null;
+        int[] positions = null;
+
+        MemoryMappedFile.MiniBuffer idOffsetBuffer = manifest.getBuffer(idOffsetsPosition + (long) start * Long.BYTES);
+        MemoryMappedFile.MiniBuffer idBuffer = manifest.getBuffer(idsPosition + idOffsetBuffer.getLong());
+
+        for (int i = 0; i < nVariants; i++) {
+
+            variantIds[i] = getString(idBuffer);
+            rsIds[i] = getString(idBuffer);
+
+        }
+
+        MemoryMappedFile.MiniBuffer rowBuffer = manifest.getBuffer(rowsPosition + (long) start * Long.BYTES);
+        int rowI = 0;
+
+        for (int i = 0; i < nVariants; i++) {
+
+            long rowIndex = rowBuffer.getLong();
+
+            if (rowIndex != -1) {
+
+                rowVariantIndexes[rowI] = i;
+                rowIndexesInFile[rowI] = rowIndex;
+                rowI++;
+
+            }
+        }
+
+        if (shardLocations[shard]) {
+
+            contigs = new String[nVariants];
+            Arrays.fill(contigs, shardContigs[shard]);
+
+            positions = new int[nVariants];
+
+            MemoryMappedFile.MiniBuffer positionBuffer = manifest.getBuffer(positionsPosition + (long) start * Integer.BYTES);
+
+            for (int i = 0; i < nVariants; i++) {
+
+                positions[i] = positionBuffer.getInt();
+
+            }
+        }
+
+        return new LdMatrixFooter(
+                shardVersions[shard],
+                shardFooterPositions[shard],
+                shardR2Bits[shard],
+                shardR2Scales[shard],
+                variantIds,
+                rsIds,
+                rowVariantIndexes,
+                rowIndexesInFile,
+                contigs,
+                positions
+        );
+    }
+
+    /**
+     * Returns the key at the given index of the index of ids.
+     *
+     * @param i The index of the key.
+     *
+     * @return The key.
+     */
+    private long getKey(
+            int i
+    ) {
+
+        return manifest.getBuffer(keysPosition + (long) i * Long.BYTES).getLong();
+
+    }
+
+    /**
+     * Returns the id and rsid of the given variant.
+     *
+     * @param variantIndex The index of the variant in the bundle.
+     *
+     * @return The id and rsid of the variant.
+     */
+    private String[] getIds(
+            int variantIndex
+    ) {
+
+        long idOffset = manifest.getBuffer(idOffsetsPosition + (long) variantIndex * Long.BYTES).getLong();
+        MemoryMappedFile.MiniBuffer buffer = manifest.getBuffer(idsPosition + idOffset);
+
+        return new String[]{getString(buffer), getString(buffer)};
+
+    }
+
+    /**
+     * Returns the index of the shard of the given variant.
+     *
+     * @param variantIndex The index of the variant in the bundle.
+     *
+     * @return The index of the shard.
+     */
+    private int getShard(
+            int variantIndex
+    ) {
+
+        int shard = Arrays.binarySearch(shardStarts, variantIndex);
+
+        if (shard < 0) {
+
+            return -shard - 2;
+
+        }
+
+        // Skip the empty shards starting at this index
+        while (shardStarts[shard + 1] == variantIndex) {
+
+            shard++;
+
+        }
+
+        return shard;
+
+    }
+
+    /**
+     * Reads a string stored as length and bytes.
+     *
+     * @param buffer The buffer to read from.
+     *
+     * @return The string.
+     */
+    private static String getString(
+            MemoryMappedFile.MiniBuffer buffer
+    ) {
+
+        byte[] bytes = new byte[buffer.getInt()];
+
+        if (bytes.length > 0) {
+
+            buffer.get(bytes);
+
+        }
+
+        try {
+
+            return new String(bytes, IoUtils.ENCODING);
+
+        } catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    /**
+     * Writes the manifest of the bundle in the given directory, indexing all
+     * ld matrices of the directory. The contig of a matrix is the contig
+     * stored in its footer, or the name of the file if the locations of the
+     * variants are not stored.
+     *
+     * @param directory The directory of the bundle.
+     *
+     * @return The contigs indexed.
+     *
+     * @throws IOException Exception thrown if an error occurred while reading
+     * or writing a file.
+     */
+    public static String[] writeManifest(
+            File directory
+    ) throws IOException {
+
+        File[] ldFiles = directory.listFiles((dir, name) -> name.endsWith(LdMatrixUtils.EXTENSION));
+
+        if (ldFiles == null || ldFiles.length == 0) {
+
+            throw new IllegalArgumentException("No ld matrix found in " + directory + ".");
+
+        }
+
+        Arrays.sort(ldFiles);
+
+        int nShards = ldFiles.length;
+        LdMatrixFooter[] footers = new LdMatrixFooter[nShards];
+        String[] contigs = new String[nShards];
+        HashMap<String, File> contigFiles = new HashMap<>(nShards);
+        long nVariantsTotal = 0;
+
+        for (int shard = 0; shard < nShards; shard++) {
+
+            File ldFile = ldFiles[shard];
+
+            try (RandomAccessFile raf = new RandomAccessFile(ldFile, "r")) {
+
+                footers[shard] = new LdMatrixFooter(ldFile, raf);
+
+            }
+
+            String[] footerContigs = footers[shard].contigs;
+
+            if (footerContigs != null && footerContigs.length > 0) {
+
+                contigs[shard] = footerContigs[0];
+
+                for (String contig : footerContigs) {
+
+                    if (!contig.equals(contigs[shard])) {
+
+                        throw new IllegalArgumentException("Multiple contigs found in " + ldFile + ", bundles must contain one ld matrix per contig.");
+
+                    }
+                }
+
+            } else {
+
+                String fileName = ldFile.getName();
+                contigs[shard] = fileName.substring(0, fileName.length() - LdMatrixUtils.EXTENSION.length());
+
+            }
+
+            File otherFile = contigFiles.put(contigs[shard], ldFile);
+
+            if (otherFile != null) {
+
+                throw new IllegalArgumentException("Contig " + contigs[shard] + " found in both " + otherFile + " and " + ldFile + ".");
+
+            }
+
+            nVariantsTotal += footers[shard].variantIds.length;
+
+        }
+
+        if (nVariantsTotal > Integer.MAX_VALUE) {
+
+            throw new IllegalArgumentException("Bundles are limited to " + Integer.MAX_VALUE + " variants.");
+
+        }
+
+        int nVariants = (int) nVariantsTotal;
+
+        // Index of the ids and rsids of all variants
+        long[] keys = new long[2 * nVariants];
+        int nKeys = 0;
+        int variantIndex = 0;
+
+        for (LdMatrixFooter footer : footers) {
+
+            for (int i = 0; i < footer.variantIds.length; i++) {
+
+                if (!footer.variantIds[i].equals("")) {
+
+                    keys[nKeys++] = ((long) footer.variantIds[i].hashCode() << 32) | variantIndex;
+
+                }
+
+                if (!footer.rsIds[i].equals("") && !footer.rsIds[i].equals(footer.variantIds[i])) {
+
+                    keys[nKeys++] = ((long) footer.rsIds[i].hashCode() << 32) | variantIndex;
+
+                }
+
+                variantIndex++;
+
+            }
+        }
+
+        keys = Arrays.copyOf(keys, nKeys);
+        Arrays.sort(keys);
+
+        File manifestFile = new File(directory, MANIFEST_FILE);
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifestFile), 1 << 20))) {
+
+            outputStream.write(MAGIC_NUMBER);
+            outputStream.writeInt(nShards);
+
+            for (int shard = 0; shard < nShards; shard++) {
+
+                LdMatrixFooter footer = footers[shard];
+
+                byte[] contigBytes = contigs[shard].getBytes(IoUtils.ENCODING);
+                byte[] fileNameBytes = ldFiles[shard].getName().getBytes(IoUtils.ENCODING);
+
+                outputStream.writeInt(contigBytes.length);
+                outputStream.write(contigBytes);
+                outputStream.writeInt(fileNameBytes.length);
+                outputStream.write(fileNameBytes);
+                outputStream.writeLong(ldFiles[shard].length());
+                outputStream.writeInt(footer.version);
+                outputStream.writeInt(footer.r2Bits);
+                outputStream.writeFloat(footer.r2Scale);
+                outputStream.writeLong(footer.footerPosition);
+                outputStream.writeInt(footer.variantIds.length);
+                outputStream.writeInt(footer.rowVariantIndexes.length);
+                outputStream.writeInt(footer.positions == null ? 0 : 1);
+
+            }
+
+            outputStream.writeInt(nVariants);
+            outputStream.writeInt(nKeys);
+
+            for (long key : keys) {
+
+                outputStream.writeLong(key);
+
+            }
+
+            // Rows
+            for (LdMatrixFooter footer : footers) {
+
+                long[] rowIndexes = new long[footer.variantIds.length];
+                Arrays.fill(rowIndexes, -1);
+
+                for (int i = 0; i < footer.rowVariantIndexes.length; i++) {
+
+                    rowIndexes[footer.rowVariantIndexes[i]] = footer.rowIndexesInFile[i];
+
+                }
+
+                for (long rowIndex : rowIndexes) {
+
+                    outputStream.writeLong(rowIndex);
+
+                }
+            }
+
+            // Positions
+            for (LdMatrixFooter footer : footers) {
+
+                for (int i = 0; i < footer.variantIds.length; i++) {
+
+                    outputStream.writeInt(footer.positions == null ? 0 : footer.positions[i]);
+
+                }
+            }
+
+            // Offsets of the ids
+            long idOffset = 0;
+
+            for (LdMatrixFooter footer : footers) {
+
+                for (int i = 0; i < footer.variantIds.length; i++) {
+
+                    outputStream.writeLong(idOffset);
+
+                    idOffset += 2 * Integer.BYTES
+                            + footer.variantIds[i].getBytes(IoUtils.ENCODING).length
+                            + footer.rsIds[i].getBytes(IoUtils.ENCODING).length;
+
+                }
+            }
+
+            // Ids
+            for (LdMatrixFooter footer : footers) {
+
+                for (int i = 0; i < footer.variantIds.length; i++) {
+
+                    byte[] idBytes = footer.variantIds[i].getBytes(IoUtils.ENCODING);
+                    outputStream.writeInt(idBytes.length);
+                    outputStream.write(idBytes);
+
+                    byte[] rsIdBytes = footer.rsIds[i].getBytes(IoUtils.ENCODING);
+                    outputStream.writeInt(rsIdBytes.length);
+                    outputStream.write(rsIdBytes);
+
+                }
+            }
+        }
+
+        return contigs;
+
+    }
+}
@@ -0,0 +1,110 @@
+package no.uib.triogen.io.ld;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.trio_genotypes.VariantIndex;
+
+/**
+ * This class converts ld matrices to the latest version of the format,
+ * typically to upgrade matrices of the first version or to change the number
+ * of bits used to store r2 values.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixConverter {
+
+    /**
+     * Converts the given ld matrix to the latest version of the format.
+     *
+     * @param inputFile The ld matrix to convert.
+     * @param destinationFile The file where to write the converted matrix.
+     * @param r2Bits The number of bits to use to store r2 values: 8, 16, or
+     * 32 for lossless.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read or write a file.
+     */
+    public static void convert(
+            File inputFile,
+            File destinationFile,
+            int r2Bits
+    ) throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        try (RandomAccessFile raf = new RandomAccessFile(inputFile, "r")) {
+
+            LdMatrixFooter footer = new LdMatrixFooter(inputFile, raf);
+
+            for (int i = 0; i < footer.variantIds.length; i++) {
+
+                variantIndex.add(footer.variantIds[i], footer.rsIds[i]);
+
+                if (footer.contigs != null) {
+
+                    variantIndex.setLocation(footer.variantIds[i], footer.contigs[i], footer.positions[i]);
+
+                }
+            }
+
+            try (LdMatrixWriter writer = new LdMatrixWriter(variantIndex, destinationFile, null, r2Bits)) {
+
+                transcodeRows(raf, footer, writer);
+
+            }
+        }
+    }
+
+    /**
+     * Decodes the rows of an ld matrix and writes them using the given writer.
+     * The variant indexes of the rows must refer to the variant index of the
+     * writer.
+     *
+     * @param raf The file to read the rows from.
+     * @param footer The footer of the file.
+     * @param writer The writer to use.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read or write a file.
+     */
+    public static void transcodeRows(
+            RandomAccessFile raf,
+            LdMatrixFooter footer,
+            LdMatrixWriter writer
+    ) throws IOException {
+
+        ZstdCompressor compressor = new ZstdCompressor();
+        ZstdDecompressor decompressor = new ZstdDecompressor();
+
+        // Read the rows in the order of the file
+        Integer[] rowOrder = new Integer[footer.rowVariantIndexes.length];
+
+        for (int i = 0; i < rowOrder.length; i++) {
+
+            rowOrder[i] = i;
+
+        }
+
+        Arrays.sort(rowOrder, Comparator.comparingLong(i -> footer.rowIndexesInFile[i]));
+
+        for (int i : rowOrder) {
+
+            raf.seek(LdMatrixWriter.HEADER_LENGTH + footer.rowIndexesInFile[i]);
+
+            ArrayList<R2> r2s = LdMatrixUtils.readRow(raf, footer, decompressor).getR2s();
+
+            writer.addVariant(
+                    footer.rowVariantIndexes[i],
+                    r2s,
+                    compressor
+            );
+        }
+    }
+}
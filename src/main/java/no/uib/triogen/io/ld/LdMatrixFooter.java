@@ -0,0 +1,329 @@
+package no.uib.triogen.io.ld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import no.uib.triogen.io.IoUtils;
+import static no.uib.triogen.io.IoUtils.ENCODING;
+import static no.uib.triogen.utils.CompressionUtils.zstdDecompress;
+
+/**
+ * The footer of an ld matrix, supporting all versions of the format.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixFooter {
+
+    /**
+     * The version of the format.
+     */
+    public final int version;
+    /**
+     * The position of the footer in the file.
+     */
+    public final long footerPosition;
+    /**
+     * The number of bits used to store r2 values.
+     */
+    public final int r2Bits;
+    /**
+     * The scale used to quantise r2 values.
+     */
+    public final float r2Scale;
+    /**
+     * The ids of the variants.
+     */
+    public final String[] variantIds;
+    /**
+     * The rsids of the variants, empty if not set.
+     */
+    public final String[] rsIds;
+    /**
+     * The indexes of the variants having a row.
+     */
+    public final int[] rowVariantIndexes;
+    /**
+     * The indexes of the rows relative to the end of the header.
+     */
+    public final long[] rowIndexesInFile;
+    /**
+     * The contigs of the variants, null if the locations of the variants are
+     * not stored in the file.
+     */
+    public final String[] contigs;
+    /**
+     * The positions of the variants, null if the locations of the variants
+     * are not stored in the file.
+     */
+    public final int[] positions;
+
+    /**
+     * Constructor from the content of a footer read elsewhere, e.g. from the
+     * manifest of a bundle.
+     *
+     * @param version The version of the format.
+     * @param footerPosition The position of the footer in the file.
+     * @param r2Bits The number of bits used to store r2 values.
+     * @param r2Scale The scale used to quantise r2 values.
+     * @param variantIds The ids of the variants.
+     * @param rsIds The rsids of the variants, empty if not set.
+     * @param rowVariantIndexes The indexes of the variants having a row.
+     * @param rowIndexesInFile The indexes of the rows relative to the end of
+     * the header.
+     * @param contigs The contigs of the variants, null if not stored.
+     * @param positions The positions of the variants, null if not stored.
+     */
+    public LdMatrixFooter(
+            int version,
+            long footerPosition,
+            int r2Bits,
+            float r2Scale,
+            String[] variantIds,
+            String[] rsIds,
+            int[] rowVariantIndexes,
+            long[] rowIndexesInFile,
+            String[] contigs,
+            int[] positions
+    ) {
+
+        this.version = version;
+        this.footerPosition = footerPosition;
+        this.r2Bits = r2Bits;
+        this.r2Scale = r2Scale;
+        this.variantIds = variantIds;
+        this.rsIds = rsIds;
+        this.rowVariantIndexes = rowVariantIndexes;
+        this.rowIndexesInFile = rowIndexesInFile;
+        this.contigs = contigs;
+        this.positions = positions;
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to read.
+     * @param raf The random access file opened on this file.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read the file.
+     */
+    public LdMatrixFooter(
+            File file,
+            RandomAccessFile raf
+    ) throws IOException {
+
+        raf.seek(0);
+
+        byte[] fileMagicNumber = new byte[LdMatrixUtils.MAGIC_NUMBER.length];
+        raf.readFully(fileMagicNumber);
+
+        version = LdMatrixUtils.getVersion(fileMagicNumber);
+
+        if (version == -1) {
+
+            throw new IOException("File format of " + file + " not supported.");
+
+        }
+
+        footerPosition = raf.readLong();
+
+        raf.seek(footerPosition);
+
+        if (version >= 2) {
+
+            // Settings and contigs
+            ByteBuffer byteBuffer = readChunk(raf);
+
+            r2Bits = byteBuffer.getInt();
+            r2Scale = byteBuffer.getFloat();
+
+            int chunkSize = byteBuffer.getInt();
+            int nIds = byteBuffer.getInt();
+            int nRows = byteBuffer.getInt();
+            // The number of contigs is -1 if the locations of the variants are not stored
+            int nContigs = byteBuffer.getInt();
+
+            if (nContigs < -1) {
+
+                throw new IOException("Invalid number of contigs (" + nContigs + ") in the footer of " + file + ".");
+
+            }
+
+            String[] contigNames = nContigs == -1 ? null : new String[nContigs];
+
+            for (int i = 0; i < nContigs; i++) {
+
+                byte[] contigBytes = new byte[byteBuffer.getInt()];
+                byteBuffer.get(contigBytes);
+                contigNames[i] = new String(contigBytes, ENCODING);
+
+            }
+
+            // Ids
+            variantIds = new String[nIds];
+            rsIds = new String[nIds];
+
+            for (int chunkStart = 0; chunkStart < nIds; chunkStart += chunkSize) {
+
+                byteBuffer = readChunk(raf);
+
+                int chunkEnd = Math.min(chunkStart + chunkSize, nIds);
+
+                for (int i = chunkStart; i < chunkEnd; i++) {
+
+                    variantIds[i] = getString(byteBuffer);
+                    rsIds[i] = getString(byteBuffer);
+
+                }
+            }
+
+            // Rows
+            rowVariantIndexes = new int[nRows];
+            rowIndexesInFile = new long[nRows];
+
+            int variantI = 0;
+            long index = 0;
+
+            for (int chunkStart = 0; chunkStart < nRows; chunkStart += chunkSize) {
+
+                byteBuffer = readChunk(raf);
+
+                int chunkEnd = Math.min(chunkStart + chunkSize, nRows);
+
+                for (int i = chunkStart; i < chunkEnd; i++) {
+
+                    variantI += LdMatrixUtils.getVarInt(byteBuffer);
+                    index += LdMatrixUtils.zigZagDecode(LdMatrixUtils.getVarLong(byteBuffer));
+
+                    rowVariantIndexes[i] = variantI;
+                    rowIndexesInFile[i] = index;
+
+                }
+            }
+
+            // Locations
+            if (contigNames != null) {
+
+                contigs = new String[nIds];
+                positions = new int[nIds];
+
+                int position = 0;
+
+                for (int chunkStart = 0; chunkStart < nIds; chunkStart += chunkSize) {
+
+                    byteBuffer = readChunk(raf);
+
+                    int chunkEnd = Math.min(chunkStart + chunkSize, nIds);
+
+                    for (int i = chunkStart; i < chunkEnd; i++) {
+
+                        contigs[i] = contigNames[LdMatrixUtils.getVarInt(byteBuffer)];
+                        position += (int) LdMatrixUtils.zigZagDecode(LdMatrixUtils.getVarLong(byteBuffer));
+                        positions[i] = position;
+
+                    }
+                }
+
+            } else {
+
+                contigs = null;
+                positions = null;
+
+            }
+
+            return;
+
+        }
+
+        // First version, footer in a single chunk without locations
+        ByteBuffer byteBuffer = readChunk(raf);
+
+        r2Bits = LdMatrixUtils.R2_BITS_LOSSLESS;
+        r2Scale = 1f;
+
+        int idsByteLength = byteBuffer.getInt();
+        byte[] idsBytes = new byte[idsByteLength];
+        byteBuffer.get(idsBytes);
+
+        String idsString = new String(idsBytes, 0, idsByteLength, ENCODING);
+        String[] allIds = idsString.equals(IoUtils.SEPARATOR) ? new String[0] : idsString.split(IoUtils.SEPARATOR, -1);
+        int nIds = allIds.length / 2;
+
+        variantIds = new String[nIds];
+        rsIds = new String[nIds];
+
+        for (int i = 0; i < nIds; i++) {
+
+            variantIds[i] = allIds[i];
+            rsIds[i] = allIds[i + nIds];
+
+        }
+
+        int nRows = byteBuffer.getInt();
+
+        rowVariantIndexes = new int[nRows];
+        rowIndexesInFile = new long[nRows];
+
+        for (int i = 0; i < nRows; i++) {
+
+            rowVariantIndexes[i] = byteBuffer.getInt();
+            rowIndexesInFile[i] = byteBuffer.getLong();
+
+        }
+
+        contigs = null;
+        positions = null;
+
+    }
+
+    /**
+     * Reads a chunk of the footer at the current position of the given file:
+     * compressed length, uncompressed length, and compressed data.
+     *
+     * @param raf The file to read from.
+     *
+     * @return The uncompressed data of the chunk.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read the file.
+     */
+    private static ByteBuffer readChunk(
+            RandomAccessFile raf
+    ) throws IOException {
+
+        int compressedLength = raf.readInt();
+        int uncompressedLength = raf.readInt();
+
+        byte[] compressedData = new byte[compressedLength];
+        raf.readFully(compressedData);
+
+        return ByteBuffer.wrap(
+                zstdDecompress(
+                        compressedData,
+                        uncompressedLength
+                )
+        );
+    }
+
+    /**
+     * Reads a string stored as length and bytes from the given buffer.
+     *
+     * @param byteBuffer The buffer to read from.
+     *
+     * @return The string.
+     *
+     * @throws IOException Exception thrown if the encoding is not supported.
+     */
+    private static String getString(
+            ByteBuffer byteBuffer
+    ) throws IOException {
+
+        byte[] bytes = new byte[LdMatrixUtils.getVarInt(byteBuffer)];
+        byteBuffer.get(bytes);
+
+        return new String(bytes, ENCODING);
+
+    }
+}
@@ -0,0 +1,123 @@
+package no.uib.triogen.io.ld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import no.uib.triogen.model.trio_genotypes.VariantIndex;
+
+/**
+ * This class merges ld matrices computed in shards into a single ld matrix.
+ * The shards must share the same variant index, as is the case when computed
+ * using the shard option of the LdMatrix command. Rows are copied without
+ * decompression, only the footers are parsed and rewritten, except for rows
+ * in a different version of the format or with r2 values stored on a
+ * different number of bits than the first shard, which are converted.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixMerger {
+
+    /**
+     * Merges the given ld matrices in the given order.
+     *
+     * @param inputFiles The ld matrices to merge, in the order of the shards.
+     * @param destinationFile The file where to write the merged matrix.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read or write a file.
+     */
+    public static void merge(
+            File[] inputFiles,
+            File destinationFile
+    ) throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+        BitSet rowsWritten = new BitSet();
+
+        LdMatrixFooter[] footers = new LdMatrixFooter[inputFiles.length];
+
+        for (int fileI = 0; fileI < inputFiles.length; fileI++) {
+
+            try (RandomAccessFile raf = new RandomAccessFile(inputFiles[fileI], "r")) {
+
+                footers[fileI] = new LdMatrixFooter(inputFiles[fileI], raf);
+
+            }
+
+            if (fileI > 0 && (!Arrays.equals(footers[0].variantIds, footers[fileI].variantIds) || !Arrays.equals(footers[0].rsIds, footers[fileI].rsIds))) {
+
+                throw new IllegalArgumentException("The variants of " + inputFiles[fileI] + " do not match the variants of " + inputFiles[0] + ". Please compute the shards using the shard option.");
+
+            }
+
+            for (int variantI : footers[fileI].rowVariantIndexes) {
+
+                if (rowsWritten.get(variantI)) {
+
+                    throw new IllegalArgumentException("Variant " + footers[fileI].variantIds[variantI] + " found in multiple shards.");
+
+                }
+
+                rowsWritten.set(variantI);
+
+            }
+        }
+
+        if (footers.length > 0) {
+
+            for (int i = 0; i < footers[0].variantIds.length; i++) {
+
+                variantIndex.add(footers[0].variantIds[i], footers[0].rsIds[i]);
+
+                if (footers[0].contigs != null) {
+
+                    variantIndex.setLocation(footers[0].variantIds[i], footers[0].contigs[i], footers[0].positions[i]);
+
+                }
+            }
+        }
+
+        int r2Bits = footers.length > 0 && footers[0].version >= 2 ? footers[0].r2Bits : LdMatrixUtils.R2_BITS_LOSSLESS;
+
+        try (LdMatrixWriter writer = new LdMatrixWriter(variantIndex, destinationFile, null, r2Bits)) {
+
+            for (int fileI = 0; fileI < inputFiles.length; fileI++) {
+
+                LdMatrixFooter footer = footers[fileI];
+
+                try (RandomAccessFile raf = new RandomAccessFile(inputFiles[fileI], "r")) {
+
+                    if (footer.version >= 2 && footer.r2Bits == r2Bits) {
+
+                        ArrayList<Integer> rowVariantIndexes = new ArrayList<>(footer.rowVariantIndexes.length);
+                        ArrayList<Long> rowIndexesInFile = new ArrayList<>(footer.rowVariantIndexes.length);
+
+                        for (int i = 0; i < footer.rowVariantIndexes.length; i++) {
+
+                            rowVariantIndexes.add(footer.rowVariantIndexes[i]);
+                            rowIndexesInFile.add(footer.rowIndexesInFile[i]);
+
+                        }
+
+                        raf.seek(LdMatrixWriter.HEADER_LENGTH);
+
+                        writer.appendRows(
+                                raf,
+                                footer.footerPosition - LdMatrixWriter.HEADER_LENGTH,
+                                rowVariantIndexes,
+                                rowIndexesInFile
+                        );
+
+                    } else {
+
+                        LdMatrixConverter.transcodeRows(raf, footer, writer);
+
+                    }
+                }
+            }
+        }
+    }
+}
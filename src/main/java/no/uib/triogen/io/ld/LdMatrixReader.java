@@ -4,18 +4,23 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
-import no.uib.triogen.io.IoUtils;
-import static no.uib.triogen.io.IoUtils.ENCODING;
+import java.util.Map.Entry;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 import no.uib.triogen.io.flat.mapping.MemoryMappedFile;
+import no.uib.triogen.model.ld.LdRow;
 import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.ld.SparseLdMatrix;
+import no.uib.triogen.utils.SimpleSemaphore;
 import static no.uib.triogen.utils.CompressionUtils.zstdDecompress;
 
 /**
- * Reader for an ld matrix.
+ * Reader for an ld matrix. Both versions of the format are supported.
  *
  * @author Marc Vaudel
  */
@@ -30,21 +35,78 @@ public class LdMatrixReader implements AutoCloseable {
      */
     public final String[] variantIds;
     /**
-     * The index of the variants.
+     * The rsids of the variants, empty if not set.
      */
-    private final HashMap<String, Long> indexMap;
+    private final String[] rsIds;
     /**
-     * rsid to variant id map.
+     * The index of the variant ids: the hash code of the id in the upper 32
+     * bits and the index of the variant in the lower 32 bits, sorted.
      */
-    private final HashMap<String, ArrayList<String>> rsidToVariantIdMap;
+    private final long[] idIndex;
     /**
-     * variant id to rsid map.
+     * The index of the row of every variant in the footer, -1 if the variant
+     * has no row.
      */
-    private final HashMap<String, String> variantIdtoRsIdMap;
+    private final int[] variantRows;
+    /**
+     * The indexes of the rows in the file relative to the end of the header.
+     */
+    private final long[] rowIndexesInFile;
+    /**
+     * The cache of decoded rows, ignored if null.
+     */
+    private final LdRowCache cache;
+    /**
+     * The index of the file in the cache.
+     */
+    private final int fileIndex;
+    /**
+     * The index of the rsids built upon first lookup, same layout as the
+     * index of the variant ids.
+     */
+    private volatile long[] rsIdIndex = null;
+    /**
+     * Mutex for the building of the rsid index.
+     */
+    private final SimpleSemaphore rsIdIndexMutex = new SimpleSemaphore(1);
+    /**
+     * The contigs of the variants, null if not stored in the file.
+     */
+    private final String[] contigs;
+    /**
+     * The positions of the variants, null if not stored in the file.
+     */
+    private final int[] positions;
+    /**
+     * The index of the locations built upon first region query: for every
+     * contig, the position of the variant in the upper 32 bits and the index
+     * of the variant in the lower 32 bits, sorted.
+     */
+    private volatile HashMap<String, long[]> locationIndex = null;
+    /**
+     * Mutex for the building of the location index.
+     */
+    private final SimpleSemaphore locationIndexMutex = new SimpleSemaphore(1);
+    /**
+     * The file read.
+     */
+    private final File file;
     /**
      * The memory mapped file.
      */
     private final MemoryMappedFile memoryMappedFile;
+    /**
+     * The version of the format of the file.
+     */
+    private final int version;
+    /**
+     * The number of bits used to store r2 values.
+     */
+    private final int r2Bits;
+    /**
+     * The scale used to quantise r2 values.
+     */
+    private final float r2Scale;
 
     /**
      * Constructor.
@@ -59,143 +121,515 @@ public class LdMatrixReader implements AutoCloseable {
             File file
     ) throws FileNotFoundException, IOException {
 
-        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        this(file, null);
 
-        try {
+    }
 
-            byte[] fileMagicNumber = new byte[LdMatrixUtils.MAGIC_NUMBER.length];
-            raf.read(fileMagicNumber);
+    /**
+     * Constructor.
+     *
+     * @param file The file to read.
+     * @param cache The cache of decoded rows to use, can be shared between
+     * readers. Ignored if null.
+     *
+     * @throws FileNotFoundException Exception thrown if the file was not found.
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read the file.
+     */
+    public LdMatrixReader(
+            File file,
+            LdRowCache cache
+    ) throws FileNotFoundException, IOException {
 
-            if (!Arrays.equals(LdMatrixUtils.MAGIC_NUMBER, fileMagicNumber)) {
+        this(file, readFooter(file), cache);
 
-                raf.close();
-                throw new IOException("File format of " + file + " not supported.");
+    }
 
-            }
+    /**
+     * Constructor using a footer read elsewhere, e.g. from the manifest of a
+     * bundle.
+     *
+     * @param file The file to read.
+     * @param footer The footer of the file.
+     * @param cache The cache of decoded rows to use, can be shared between
+     * readers. Ignored if null.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to map the file.
+     */
+    public LdMatrixReader(
+            File file,
+            LdMatrixFooter footer,
+            LdRowCache cache
+    ) throws IOException {
 
-            long footerPosition = raf.readLong();
+        this.file = file;
+        this.cache = cache;
+        this.fileIndex = cache == null ? -1 : cache.getFileIndex(file);
 
-            raf.seek(footerPosition);
-            int compressedLength = raf.readInt();
-            int uncompressedLength = raf.readInt();
+        version = footer.version;
+        r2Bits = footer.r2Bits;
+        r2Scale = footer.r2Scale;
 
-            byte[] compressedFooter = new byte[compressedLength];
-            raf.read(compressedFooter);
+        variantIds = footer.variantIds;
+        rsIds = footer.rsIds;
+        contigs = footer.contigs;
+        positions = footer.positions;
+        idIndex = buildIndex(variantIds);
 
-            byte[] footer = zstdDecompress(
-                    compressedFooter, 
-                    uncompressedLength
-            );
+        variantRows = new int[variantIds.length];
+        Arrays.fill(variantRows, -1);
 
-            ByteBuffer byteBuffer = ByteBuffer.wrap(footer);
-            int idsByteLength = byteBuffer.getInt();
-            byte[] idsBytes = new byte[idsByteLength];
-            byteBuffer.get(idsBytes);
-            String idsString = new String(idsBytes, 0, idsByteLength, ENCODING);
-            String[] allIds = idsString.split(IoUtils.SEPARATOR);
-            int nIds = allIds.length / 2;
-            variantIds = new String[nIds];
-            variantIdtoRsIdMap = new HashMap<>(nIds);
-            rsidToVariantIdMap = new HashMap<>(nIds);
+        for (int i = 0; i < footer.rowVariantIndexes.length; i++) {
 
-            for (int i = 0; i < nIds; i++) {
+            variantRows[footer.rowVariantIndexes[i]] = i;
 
-                String id = allIds[i];
-                String rsId = allIds[i + nIds];
+        }
 
-                variantIds[i] = id;
+        rowIndexesInFile = footer.rowIndexesInFile;
 
-                if (!rsId.equals("")) {
+        long footerPosition = footer.footerPosition;
+        long offset = LdMatrixWriter.HEADER_LENGTH;
+        long length = footerPosition - offset;
 
-                    variantIdtoRsIdMap.put(id, rsId);
+        this.memoryMappedFile = new MemoryMappedFile(
+                file,
+                offset,
+                length,
+                BLOCK_SIZE
+        );
+    }
 
-                    ArrayList<String> variantIdsForRsId = rsidToVariantIdMap.get(rsId);
+    /**
+     * Reads the footer of the given file.
+     *
+     * @param file The file to read.
+     *
+     * @return The footer of the file.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read the file.
+     */
+    private static LdMatrixFooter readFooter(
+            File file
+    ) throws IOException {
 
-                    if (variantIdsForRsId == null) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
 
-                        variantIdsForRsId = new ArrayList<>(1);
-                        rsidToVariantIdMap.put(rsId, variantIdsForRsId);
+            return new LdMatrixFooter(file, raf);
 
-                    }
+        }
+    }
+
+    /**
+     * Returns a map containing the ids of the variants B in LD with variant A
+     * and the corresponding r2.
+     *
+     * @param variantA The id of variant A. It can be the id or the rsid.
+     *
+     * @return The id to r2 map.
+     */
+    public ArrayList<R2> getR2(
+            String variantA
+    ) {
+
+        LdRow row = getRow(variantA);
+
+        return row == null ? null : row.getR2s();
+
+    }
+
+    /**
+     * Returns the row of variant A containing the variants B in LD and the
+     * corresponding r2 as primitive arrays. If a cache is set, the row is
+     * taken from the cache when possible. Rows must not be modified.
+     *
+     * @param variantA The id of variant A. It can be the id or the rsid.
+     *
+     * @return The row of variant A, null if not found.
+     */
+    public LdRow getRow(
+            String variantA
+    ) {
+
+        int[] rowIndexes = getRowIndexes(variantA);
+
+        return rowIndexes == null ? null : getRow(rowIndexes, this::getRow);
+
+    }
+
+    /**
+     * Returns the row of the variant at the given index. If a cache is set,
+     * the row is taken from the cache when possible. Rows must not be
+     * modified.
+     *
+     * @param variantIndex The index of the variant.
+     *
+     * @return The row of the variant, null if the variant has no row.
+     */
+    public LdRow getVariantRow(
+            int variantIndex
+    ) {
+
+        int rowIndex = variantRows[variantIndex];
+
+        return rowIndex == -1 ? null : getRow(rowIndex);
+
+    }
+
+    /**
+     * Returns the rows of the given variants. The rows are read in the order
+     * of the file, in parallel. If a cache is set, rows are taken from the
+     * cache when possible. Rows must not be modified.
+     *
+     * @param variantIds The ids of the variants. They can be ids or rsids.
+     *
+     * @return The rows of the variants found, indexed by the id used in the
+     * query.
+     */
+    public HashMap<String, LdRow> getRows(
+            Collection<String> variantIds
+    ) {
 
-                    variantIdsForRsId.add(id);
+        HashMap<String, int[]> queryRowIndexes = new HashMap<>(variantIds.size());
+
+        for (String variantId : variantIds) {
+
+            if (!queryRowIndexes.containsKey(variantId)) {
+
+                int[] rowIndexes = getRowIndexes(variantId);
+
+                if (rowIndexes != null) {
+
+                    queryRowIndexes.put(variantId, rowIndexes);
 
                 }
             }
+        }
+
+        int[] sortedRowIndexes = queryRowIndexes.values().stream()
+                .flatMapToInt(Arrays::stream)
+                .distinct()
+                .boxed()
+                .sorted(Comparator.comparingLong(rowIndex -> rowIndexesInFile[rowIndex]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        LdRow[] rows = new LdRow[sortedRowIndexes.length];
+
+        IntStream.range(0, sortedRowIndexes.length)
+                .parallel()
+                .forEach(
+                        i -> rows[i] = getRow(sortedRowIndexes[i])
+                );
+
+        HashMap<Integer, LdRow> rowsMap = new HashMap<>(rows.length);
+
+        for (int i = 0; i < rows.length; i++) {
+
+            rowsMap.put(sortedRowIndexes[i], rows[i]);
 
-            int nVariants = byteBuffer.getInt();
+        }
+
+        HashMap<String, LdRow> result = new HashMap<>(queryRowIndexes.size());
+
+        for (Entry<String, int[]> entry : queryRowIndexes.entrySet()) {
 
-            indexMap = new HashMap<>(nVariants);
+            LdRow row = getRow(entry.getValue(), rowsMap::get);
 
-            for (int i = 0; i < nVariants; i++) {
-                
-                int variantI = byteBuffer.getInt();
-                String variantId = variantIds[variantI];
-                long index = byteBuffer.getLong();
-                indexMap.put(variantId, index);
+            if (row != null) {
+
+                result.put(entry.getKey(), row);
 
             }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Returns the variants B in LD with the given variants A and the
+     * corresponding r2. The rows are read in the order of the file, in
+     * parallel.
+     *
+     * @param variantIds The ids of the variants A. They can be ids or rsids.
+     *
+     * @return The r2s of the variants found, indexed by the id used in the
+     * query.
+     */
+    public HashMap<String, ArrayList<R2>> getR2(
+            Collection<String> variantIds
+    ) {
+
+        HashMap<String, LdRow> rows = getRows(variantIds);
 
-            long offset = LdMatrixWriter.HEADER_LENGTH;
-            long length = footerPosition - offset;
+        HashMap<String, ArrayList<R2>> result = new HashMap<>(rows.size());
 
-            this.memoryMappedFile = new MemoryMappedFile(
-                    file,
-                    offset,
-                    length,
-                    BLOCK_SIZE
-            );
+        for (Entry<String, LdRow> entry : rows.entrySet()) {
+
+            result.put(entry.getKey(), entry.getValue().getR2s());
 
-        } finally {
-            raf.close();
         }
+
+        return result;
+
     }
 
     /**
-     * Returns a map containing the ids of the variants B in LD with variant A
-     * and the corresponding r2.
+     * Returns the r2 values stored between the variants located in the given
+     * region as a sparse matrix. The locations of the variants must be stored
+     * in the file. The index of the locations is built upon first call.
      *
-     * @param variantA The id of variant A. It can be the id or the rsid.
+     * @param contig The contig.
+     * @param start The start of the region (inclusive).
+     * @param end The end of the region (inclusive).
      *
-     * @return The id to r2 map.
+     * @return The r2 values stored between the variants of the region.
      */
-    public ArrayList<R2> getR2(
-            String variantA
+    public SparseLdMatrix getR2InRegion(
+            String contig,
+            int start,
+            int end
     ) {
 
-        Long index = indexMap.get(variantA);
+        if (positions == null) {
 
-        if (index == null) {
+            throw new IllegalArgumentException("The locations of the variants are not stored in " + file + ". Please recompute the LD matrix to query regions.");
 
-            ArrayList<String> tempIds = getVariantIds(variantA); // See if it can be an rsid
+        }
+
+        if (locationIndex == null) {
+
+            locationIndexMutex.acquire();
+
+            if (locationIndex == null) {
+
+                locationIndex = buildLocationIndex();
+
+            }
+
+            locationIndexMutex.release();
+
+        }
+
+        long[] contigIndex = locationIndex.get(contig);
+
+        if (contigIndex == null) {
 
-            if (tempIds != null) {
+            contigIndex = new long[0];
 
-                ArrayList<R2> result = new ArrayList<>(0);
+        }
+
+        int first = getFirstIndex(contigIndex, start);
+        int last = end == Integer.MAX_VALUE ? contigIndex.length : getFirstIndex(contigIndex, end + 1);
+
+        int nVariants = Math.max(last - first, 0);
+
+        String[] regionVariantIds = new String[nVariants];
+        int[] regionPositions = new int[nVariants];
+        HashMap<Integer, Integer> variantToColumn = new HashMap<>(nVariants);
+
+        for (int i = 0; i < nVariants; i++) {
 
-                for (String variantId : tempIds) {
+            int variantIndex = (int) contigIndex[first + i];
 
-                    ArrayList<R2> tempResult = getR2(variantId);
+            regionVariantIds[i] = variantIds[variantIndex];
+            regionPositions[i] = positions[variantIndex];
+            variantToColumn.put(variantIndex, i);
+
+        }
+
+        HashMap<String, LdRow> rows = getRows(Arrays.asList(regionVariantIds));
+
+        int[] rowStarts = new int[nVariants + 1];
+        ArrayList<LdRow> regionRows = new ArrayList<>(nVariants);
+
+        for (int i = 0; i < nVariants; i++) {
 
-                    if (tempResult != null) {
+            LdRow row = rows.get(regionVariantIds[i]);
+            regionRows.add(row);
 
-                        result.addAll(tempResult);
+            int nPairs = 0;
+
+            if (row != null) {
+
+                for (int variantB : row.variantB) {
+
+                    if (variantToColumn.containsKey(variantB)) {
+
+                        nPairs++;
 
                     }
                 }
+            }
+
+            rowStarts[i + 1] = rowStarts[i] + nPairs;
+
+        }
+
+        int nPairs = rowStarts[nVariants];
+        int[] columns = new int[nPairs];
+        short[] alleleA = new short[nPairs];
+        short[] alleleB = new short[nPairs];
+        float[] r2Values = new float[nPairs];
+
+        int k = 0;
+
+        for (LdRow row : regionRows) {
+
+            if (row != null) {
 
-                if (!result.isEmpty()) {
+                for (int j = 0; j < row.size(); j++) {
 
-                    return result;
+                    Integer column = variantToColumn.get(row.variantB[j]);
 
+                    if (column != null) {
+
+                        columns[k] = column;
+                        alleleA[k] = row.alleleA[j];
+                        alleleB[k] = row.alleleB[j];
+                        r2Values[k] = row.r2Values[j];
+                        k++;
+
+                    }
                 }
             }
+        }
+
+        return new SparseLdMatrix(
+                regionVariantIds,
+                regionPositions,
+                rowStarts,
+                columns,
+                alleleA,
+                alleleB,
+                r2Values
+        );
+    }
+
+    /**
+     * Returns the indexes in the footer of the rows of the given variant.
+     *
+     * @param variantA The id of variant A. It can be the id or the rsid, in
+     * which case the rows of all variants with this rsid are returned.
+     *
+     * @return The indexes in the footer of the rows, null if not found.
+     */
+    private int[] getRowIndexes(
+            String variantA
+    ) {
+
+        int variantIndex = getIndex(variantA);
+
+        if (variantIndex != -1 && variantRows[variantIndex] != -1) {
+
+            return new int[]{variantRows[variantIndex]};
+
+        }
+
+        ArrayList<String> tempIds = getVariantIds(variantA); // See if it can be an rsid
+
+        if (tempIds == null) {
 
             return null;
 
         }
 
+        int[] rowIndexes = tempIds.stream()
+                .mapToInt(
+                        variantId -> variantRows[getIndex(variantId)]
+                )
+                .filter(
+                        rowIndex -> rowIndex != -1
+                )
+                .toArray();
+
+        return rowIndexes.length == 0 ? null : rowIndexes;
+
+    }
+
+    /**
+     * Returns the row corresponding to the given row indexes, concatenating
+     * the rows if multiple.
+     *
+     * @param rowIndexes The indexes of the rows in the footer.
+     * @param rowProvider The function providing the row at a given index.
+     *
+     * @return The row, null if multiple rows are concatenated to an empty row.
+     */
+    private LdRow getRow(
+            int[] rowIndexes,
+            IntFunction<LdRow> rowProvider
+    ) {
+
+        if (rowIndexes.length == 1) {
+
+            return rowProvider.apply(rowIndexes[0]);
+
+        }
+
+        ArrayList<LdRow> rows = new ArrayList<>(rowIndexes.length);
+
+        for (int rowIndex : rowIndexes) {
+
+            rows.add(rowProvider.apply(rowIndex));
+
+        }
+
+        LdRow result = LdRow.concatenate(rows);
+
+        return result.size() > 0 ? result : null;
+
+    }
+
+    /**
+     * Returns the row at the given index in the footer, from the cache if
+     * possible.
+     *
+     * @param rowIndex The index of the row in the footer.
+     *
+     * @return The row.
+     */
+    private LdRow getRow(
+            int rowIndex
+    ) {
+
+        if (cache == null) {
+
+            return readRow(rowIndexesInFile[rowIndex]);
+
+        }
+
+        long key = LdRowCache.getKey(fileIndex, rowIndex);
+
+        LdRow row = cache.get(key);
+
+        if (row == null) {
+
+            row = readRow(rowIndexesInFile[rowIndex]);
+
+            cache.put(key, row);
+
+        }
+
+        return row;
+
+    }
+
+    /**
+     * Reads and decodes the row at the given index in the file.
+     *
+     * @param index The index of the row relative to the end of the header.
+     *
+     * @return The row.
+     */
+    private LdRow readRow(
+            long index
+    ) {
+
         int nVariants;
+        int uncompressedLength;
         byte[] compressedData;
 
         try (MemoryMappedFile.MiniBuffer buffer = memoryMappedFile.getBuffer(index)) {
@@ -204,42 +638,38 @@ public class LdMatrixReader implements AutoCloseable {
 
             if (nVariants == 0) {
 
-                return new ArrayList<>(0);
+                return new LdRow();
 
             }
 
-            int compressedLength = buffer.getInt();
-
-            compressedData = new byte[compressedLength];
-            buffer.get(compressedData);
+            int compressedLength;
 
-        }
+            if (version == 1) {
 
-        int uncompressedLength = nVariants * Integer.BYTES + 2 * nVariants * Short.BYTES + nVariants * Float.BYTES;
+                compressedLength = buffer.getInt();
+                uncompressedLength = LdMatrixUtils.getUncompressedLengthV1(nVariants);
 
-        byte[] uncompressedData = zstdDecompress(compressedData, uncompressedLength);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(uncompressedData);
+            } else {
 
-        ArrayList<R2> r2s = new ArrayList<>(nVariants);
+                uncompressedLength = buffer.getInt();
+                compressedLength = buffer.getInt();
 
-        for (int i = 0; i < nVariants; i++) {
+            }
 
-            int variantIndex = byteBuffer.getInt();
-            short alleleA = byteBuffer.getShort();
-            short alleleB = byteBuffer.getShort();
-            float r2 = byteBuffer.getFloat();
+            compressedData = new byte[compressedLength];
+            buffer.get(compressedData);
 
-            r2s.add(
-                    new R2(
-                            variantIndex,
-                            alleleA,
-                            alleleB,
-                            r2
-                    )
-            );
         }
 
-        return r2s;
+        byte[] uncompressedData = zstdDecompress(compressedData, uncompressedLength);
+
+        return LdMatrixUtils.decodeRow(
+                uncompressedData,
+                nVariants,
+                version,
+                r2Bits,
+                r2Scale
+        );
 
     }
 
@@ -258,6 +688,40 @@ public class LdMatrixReader implements AutoCloseable {
 
     }
 
+    /**
+     * Returns the index of the given variant, -1 if not found.
+     *
+     * @param variantId The id of the variant.
+     *
+     * @return The index of the variant.
+     */
+    public int getIndex(
+            String variantId
+    ) {
+
+        if (variantId == null) {
+
+            return -1;
+
+        }
+
+        int hash = variantId.hashCode();
+
+        for (int i = getFirstIndex(idIndex, hash); i < idIndex.length && (int) (idIndex[i] >> 32) == hash; i++) {
+
+            int variantIndex = (int) idIndex[i];
+
+            if (variantIds[variantIndex].equals(variantId)) {
+
+                return variantIndex;
+
+            }
+        }
+
+        return -1;
+
+    }
+
     /**
      * Returns the rsid for the given variant, null if none set.
      *
@@ -269,12 +733,21 @@ public class LdMatrixReader implements AutoCloseable {
             String variantId
     ) {
 
-        return variantIdtoRsIdMap.get(variantId);
+        int variantIndex = getIndex(variantId);
+
+        if (variantIndex == -1 || rsIds[variantIndex].equals("")) {
+
+            return null;
+
+        }
+
+        return rsIds[variantIndex];
 
     }
 
     /**
-     * Returns the variant ids for the given rsId, null if none set.
+     * Returns the variant ids for the given rsId, null if none set. The index
+     * of the rsids is built upon first call.
      *
      * @param rsid The rsid of the variant.
      *
@@ -284,7 +757,165 @@ public class LdMatrixReader implements AutoCloseable {
             String rsid
     ) {
 
-        return rsidToVariantIdMap.get(rsid);
+        if (rsid == null) {
+
+            return null;
+
+        }
+
+        if (rsIdIndex == null) {
+
+            rsIdIndexMutex.acquire();
+
+            if (rsIdIndex == null) {
+
+                rsIdIndex = buildIndex(rsIds);
+
+            }
+
+            rsIdIndexMutex.release();
+
+        }
+
+        int hash = rsid.hashCode();
+        ArrayList<String> result = null;
+
+        for (int i = getFirstIndex(rsIdIndex, hash); i < rsIdIndex.length && (int) (rsIdIndex[i] >> 32) == hash; i++) {
+
+            int variantIndex = (int) rsIdIndex[i];
+
+            if (rsIds[variantIndex].equals(rsid)) {
+
+                if (result == null) {
+
+                    result = new ArrayList<>(1);
+
+                }
+
+                result.add(variantIds[variantIndex]);
+
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Builds the index of the locations of the variants.
+     *
+     * @return The index of the locations of the variants.
+     */
+    private HashMap<String, long[]> buildLocationIndex() {
+
+        HashMap<String, Integer> contigSizes = new HashMap<>(1);
+
+        for (String contig : contigs) {
+
+            contigSizes.merge(contig, 1, Integer::sum);
+
+        }
+
+        HashMap<String, long[]> result = new HashMap<>(contigSizes.size());
+        HashMap<String, Integer> contigCounts = new HashMap<>(contigSizes.size());
+
+        for (Entry<String, Integer> entry : contigSizes.entrySet()) {
+
+            result.put(entry.getKey(), new long[entry.getValue()]);
+            contigCounts.put(entry.getKey(), 0);
+
+        }
+
+        for (int i = 0; i < contigs.length; i++) {
+
+            int count = contigCounts.get(contigs[i]);
+            result.get(contigs[i])[count] = ((long) positions[i] << 32) | i;
+            contigCounts.put(contigs[i], count + 1);
+
+        }
+
+        for (long[] contigIndex : result.values()) {
+
+            Arrays.sort(contigIndex);
+
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Builds a sorted index of the given ids, the hash code of the id in the
+     * upper 32 bits and the index of the id in the lower 32 bits. Empty ids
+     * are not indexed.
+     *
+     * @param ids The ids to index.
+     *
+     * @return The index.
+     */
+    private static long[] buildIndex(
+            String[] ids
+    ) {
+
+        long[] index = new long[ids.length];
+        int nIndexed = 0;
+
+        for (int i = 0; i < ids.length; i++) {
+
+            if (!ids[i].equals("")) {
+
+                index[nIndexed++] = ((long) ids[i].hashCode() << 32) | i;
+
+            }
+        }
+
+        if (nIndexed < ids.length) {
+
+            index = Arrays.copyOf(index, nIndexed);
+
+        }
+
+        Arrays.sort(index);
+
+        return index;
+
+    }
+
+    /**
+     * Returns the first position in the given index where the key in the
+     * upper 32 bits is greater than or equal to the given key.
+     *
+     * @param index The index.
+     * @param key The key, hash code or position.
+     *
+     * @return The first position.
+     */
+    private static int getFirstIndex(
+            long[] index,
+            int key
+    ) {
+
+        long indexKey = (long) key << 32;
+
+        int low = 0;
+        int high = index.length;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (index[mid] < indexKey) {
+
+                low = mid + 1;
+
+            } else {
+
+                high = mid;
+
+            }
+        }
+
+        return low;
 
     }
 
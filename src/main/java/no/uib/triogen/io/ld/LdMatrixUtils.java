@@ -1,7 +1,16 @@
 package no.uib.triogen.io.ld;
 
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import static no.uib.triogen.io.IoUtils.ENCODING;
+import no.uib.triogen.model.ld.LdRow;
+import no.uib.triogen.model.ld.R2;
+import static no.uib.triogen.utils.CompressionUtils.zstdDecompress;
 
 /**
  * Utils for the reading and writing of ld matrices.
@@ -15,20 +24,50 @@ public class LdMatrixUtils {
      */
     public static final String EXTENSION = ".tld";
     /**
-     * The magic number of to use to identify the supported files.
+     * The magic number of to use to identify the files in the first version of
+     * the format.
      */
-    public static final byte[] MAGIC_NUMBER = getMagicNumber();
+    public static final byte[] MAGIC_NUMBER = getMagicNumber("Triogen.ldMatrix.1.1");
+    /**
+     * The magic number of to use to identify the files in the second version
+     * of the format, where the footer is written in compressed chunks.
+     */
+    public static final byte[] MAGIC_NUMBER_V2 = getMagicNumber("Triogen.ldMatrix.2.0");
+    /**
+     * The default maximal number of records per chunk of the footer.
+     */
+    public static final int FOOTER_CHUNK_SIZE = 65536;
+    /**
+     * The number of bits to use to store r2 values without loss of precision.
+     */
+    public static final int R2_BITS_LOSSLESS = 32;
+    /**
+     * The default number of bits to use to store r2 values.
+     */
+    public static final int DEFAULT_R2_BITS = 16;
+    /**
+     * Code for rows where all pairs share the allele of the first variant and
+     * the second variants are biallelic.
+     */
+    private static final byte BIALLELIC_ROW = 0;
+    /**
+     * Code for rows where the alleles of every pair are stored.
+     */
+    private static final byte MULTIALLELIC_ROW = 1;
 
     /**
-     * Returns the magic number.
+     * Returns the magic number for the given name.
+     *
+     * @param magicName The name of the format.
      *
      * @return The magic number.
      */
-    public static byte[] getMagicNumber() {
+    private static byte[] getMagicNumber(
+            String magicName
+    ) {
 
         try {
 
-            String magicName = "Triogen.ldMatrix.1.1";
             return magicName.getBytes(ENCODING);
 
         } catch (UnsupportedEncodingException e) {
@@ -38,4 +77,437 @@ public class LdMatrixUtils {
         }
     }
 
+    /**
+     * Returns the version of the format corresponding to the given magic
+     * number, -1 if not supported.
+     *
+     * @param fileMagicNumber The magic number read from the file.
+     *
+     * @return The version of the format.
+     */
+    public static int getVersion(
+            byte[] fileMagicNumber
+    ) {
+
+        if (Arrays.equals(MAGIC_NUMBER, fileMagicNumber)) {
+
+            return 1;
+
+        } else if (Arrays.equals(MAGIC_NUMBER_V2, fileMagicNumber)) {
+
+            return 2;
+
+        }
+
+        return -1;
+
+    }
+
+    /**
+     * Returns the scale to use to quantise r2 values on the given number of
+     * bits, r2 = scale * quantised value.
+     *
+     * @param r2Bits The number of bits to use: 8, 16, or 32 for lossless.
+     *
+     * @return The scale to use to quantise r2 values.
+     */
+    public static float getR2Scale(
+            int r2Bits
+    ) {
+
+        switch (r2Bits) {
+
+            case 8:
+            case 16:
+                return 1f / ((1 << r2Bits) - 1);
+
+            case R2_BITS_LOSSLESS:
+                return 1f;
+
+            default:
+                throw new IllegalArgumentException("Storing r2 values on " + r2Bits + " bits is not supported. Supported: 8, 16, or 32.");
+
+        }
+    }
+
+    /**
+     * Returns the length of a row of the first version of the format once
+     * decompressed.
+     *
+     * @param nVariants The number of variants in the row.
+     *
+     * @return The uncompressed length of the row.
+     */
+    public static int getUncompressedLengthV1(
+            int nVariants
+    ) {
+
+        return nVariants * Integer.BYTES + 2 * nVariants * Short.BYTES + nVariants * Float.BYTES;
+
+    }
+
+    /**
+     * Encodes a row in the second version of the format: the indexes of the
+     * variants as deltas stored as variable-length integers, then the alleles,
+     * omitted when all pairs share the allele of the first variant and the
+     * second variants are biallelic, and finally the quantised r2 values.
+     *
+     * @param r2s The r2s of the row, sorted by index of the second variant.
+     * @param r2Bits The number of bits to use to store r2 values.
+     * @param r2Scale The scale to use to quantise r2 values.
+     *
+     * @return The encoded row.
+     */
+    public static byte[] encodeRow(
+            ArrayList<R2> r2s,
+            int r2Bits,
+            float r2Scale
+    ) {
+
+        int nVariants = r2s.size();
+
+        ByteBuffer buffer = ByteBuffer.allocate(nVariants * (5 + 6 + r2Bits / 8) + 2);
+
+        // Variants
+        int previousVariant = 0;
+
+        for (R2 r2 : r2s) {
+
+            putVarInt(buffer, r2.variantB - previousVariant);
+            previousVariant = r2.variantB;
+
+        }
+
+        // Alleles
+        short alleleA = r2s.get(0).alleleA;
+        boolean biallelic = alleleA >= 0 && alleleA <= 255;
+
+        for (int i = 0; i < nVariants && biallelic; i++) {
+
+            R2 r2 = r2s.get(i);
+
+            biallelic = r2.alleleA == alleleA && (r2.alleleB == 0 || r2.alleleB == 1);
+
+        }
+
+        if (biallelic) {
+
+            buffer.put(BIALLELIC_ROW);
+            buffer.put((byte) alleleA);
+
+            byte[] allelesB = new byte[(nVariants + 7) / 8];
+
+            for (int i = 0; i < nVariants; i++) {
+
+                if (r2s.get(i).alleleB == 1) {
+
+                    allelesB[i / 8] |= 1 << (i % 8);
+
+                }
+            }
+
+            buffer.put(allelesB);
+
+        } else {
+
+            buffer.put(MULTIALLELIC_ROW);
+
+            for (R2 r2 : r2s) {
+
+                putVarInt(buffer, r2.alleleA & 0xFFFF);
+                putVarInt(buffer, r2.alleleB & 0xFFFF);
+
+            }
+        }
+
+        // r2s
+        int maxValue = (int) ((1L << r2Bits) - 1);
+
+        for (R2 r2 : r2s) {
+
+            if (r2Bits == R2_BITS_LOSSLESS) {
+
+                buffer.putFloat(r2.r2Value);
+
+            } else {
+
+                int value = Math.max(0, Math.min(Math.round(r2.r2Value / r2Scale), maxValue));
+
+                if (r2Bits == 8) {
+
+                    buffer.put((byte) value);
+
+                } else {
+
+                    buffer.putShort((short) value);
+
+                }
+            }
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+
+    }
+
+    /**
+     * Decodes a row.
+     *
+     * @param uncompressedData The uncompressed data of the row.
+     * @param nVariants The number of variants in the row.
+     * @param version The version of the format.
+     * @param r2Bits The number of bits used to store r2 values, ignored for
+     * the first version of the format.
+     * @param r2Scale The scale used to quantise r2 values, ignored for the
+     * first version of the format.
+     *
+     * @return The row.
+     */
+    public static LdRow decodeRow(
+            byte[] uncompressedData,
+            int nVariants,
+            int version,
+            int r2Bits,
+            float r2Scale
+    ) {
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(uncompressedData);
+
+        int[] variants = new int[nVariants];
+        short[] allelesA = new short[nVariants];
+        short[] allelesB = new short[nVariants];
+        float[] r2Values = new float[nVariants];
+
+        if (version == 1) {
+
+            for (int i = 0; i < nVariants; i++) {
+
+                variants[i] = byteBuffer.getInt();
+                allelesA[i] = byteBuffer.getShort();
+                allelesB[i] = byteBuffer.getShort();
+                r2Values[i] = byteBuffer.getFloat();
+
+            }
+
+            return new LdRow(variants, allelesA, allelesB, r2Values);
+
+        }
+
+        int variant = 0;
+
+        for (int i = 0; i < nVariants; i++) {
+
+            variant += getVarInt(byteBuffer);
+            variants[i] = variant;
+
+        }
+
+        if (byteBuffer.get() == BIALLELIC_ROW) {
+
+            Arrays.fill(allelesA, (short) (byteBuffer.get() & 0xFF));
+
+            byte[] allelesBBits = new byte[(nVariants + 7) / 8];
+            byteBuffer.get(allelesBBits);
+
+            for (int i = 0; i < nVariants; i++) {
+
+                allelesB[i] = (short) ((allelesBBits[i / 8] >> (i % 8)) & 1);
+
+            }
+
+        } else {
+
+            for (int i = 0; i < nVariants; i++) {
+
+                allelesA[i] = (short) getVarInt(byteBuffer);
+                allelesB[i] = (short) getVarInt(byteBuffer);
+
+            }
+        }
+
+        for (int i = 0; i < nVariants; i++) {
+
+            if (r2Bits == R2_BITS_LOSSLESS) {
+
+                r2Values[i] = byteBuffer.getFloat();
+
+            } else if (r2Bits == 8) {
+
+                r2Values[i] = (byteBuffer.get() & 0xFF) * r2Scale;
+
+            } else {
+
+                r2Values[i] = (byteBuffer.getShort() & 0xFFFF) * r2Scale;
+
+            }
+        }
+
+        return new LdRow(variants, allelesA, allelesB, r2Values);
+
+    }
+
+    /**
+     * Reads the row at the current position of the given file.
+     *
+     * @param raf The file to read from.
+     * @param footer The footer of the file.
+     * @param decompressor The decompressor to use.
+     *
+     * @return The row.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read the file.
+     */
+    public static LdRow readRow(
+            RandomAccessFile raf,
+            LdMatrixFooter footer,
+            ZstdDecompressor decompressor
+    ) throws IOException {
+
+        int nVariants = raf.readInt();
+
+        if (nVariants == 0) {
+
+            if (footer.version == 1) {
+
+                raf.readInt();
+
+            }
+
+            return new LdRow();
+
+        }
+
+        int compressedLength;
+        int uncompressedLength;
+
+        if (footer.version == 1) {
+
+            compressedLength = raf.readInt();
+            uncompressedLength = getUncompressedLengthV1(nVariants);
+
+        } else {
+
+            uncompressedLength = raf.readInt();
+            compressedLength = raf.readInt();
+
+        }
+
+        byte[] compressedData = new byte[compressedLength];
+        raf.readFully(compressedData);
+
+        byte[] uncompressedData = zstdDecompress(decompressor, compressedData, uncompressedLength);
+
+        return decodeRow(uncompressedData, nVariants, footer.version, footer.r2Bits, footer.r2Scale);
+
+    }
+
+    /**
+     * Writes an unsigned variable-length integer to the given buffer.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The value to write.
+     */
+    public static void putVarInt(
+            ByteBuffer buffer,
+            int value
+    ) {
+
+        putVarLong(buffer, value & 0xFFFFFFFFL);
+
+    }
+
+    /**
+     * Reads an unsigned variable-length integer from the given buffer.
+     *
+     * @param buffer The buffer to read from.
+     *
+     * @return The value read.
+     */
+    public static int getVarInt(
+            ByteBuffer buffer
+    ) {
+
+        return (int) getVarLong(buffer);
+
+    }
+
+    /**
+     * Writes an unsigned variable-length long to the given buffer.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The value to write.
+     */
+    public static void putVarLong(
+            ByteBuffer buffer,
+            long value
+    ) {
+
+        while ((value & ~0x7FL) != 0) {
+
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+
+        }
+
+        buffer.put((byte) value);
+
+    }
+
+    /**
+     * Reads an unsigned variable-length long from the given buffer.
+     *
+     * @param buffer The buffer to read from.
+     *
+     * @return The value read.
+     */
+    public static long getVarLong(
+            ByteBuffer buffer
+    ) {
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+
+        } while ((b & 0x80) != 0);
+
+        return value;
+
+    }
+
+    /**
+     * Encodes a signed long so that values close to zero are stored on few
+     * bytes as variable-length long.
+     *
+     * @param value The value to encode.
+     *
+     * @return The encoded value.
+     */
+    public static long zigZagEncode(
+            long value
+    ) {
+
+        return (value << 1) ^ (value >> 63);
+
+    }
+
+    /**
+     * Decodes a value encoded using zigZagEncode.
+     *
+     * @param value The encoded value.
+     *
+     * @return The decoded value.
+     */
+    public static long zigZagDecode(
+            long value
+    ) {
+
+        return (value >>> 1) ^ -(value & 1);
+
+    }
 }
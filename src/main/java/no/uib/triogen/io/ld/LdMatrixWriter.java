@@ -6,20 +6,26 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import no.uib.triogen.io.IoUtils;
-import static no.uib.triogen.io.IoUtils.SEPARATOR;
+import no.uib.triogen.io.checkpoint.Checkpoint;
 import no.uib.triogen.utils.TempByteArray;
-import static no.uib.triogen.io.ld.LdMatrixUtils.MAGIC_NUMBER;
+import static no.uib.triogen.io.ld.LdMatrixUtils.FOOTER_CHUNK_SIZE;
+import static no.uib.triogen.io.ld.LdMatrixUtils.MAGIC_NUMBER_V2;
 import no.uib.triogen.model.ld.R2;
 import no.uib.triogen.model.trio_genotypes.VariantIndex;
 import no.uib.triogen.utils.SimpleSemaphore;
 import static no.uib.triogen.utils.CompressionUtils.zstdCompress;
 
 /**
- * Writer for an ld matrix.
+ * Writer for an ld matrix. Matrices are written in the second version of the
+ * format. Rows are compressed by the calling threads and handed to a writer
+ * thread that appends them to the file through a buffer.
  *
  * @author Marc Vaudel
  */
@@ -28,11 +34,33 @@ public class LdMatrixWriter implements AutoCloseable {
     /**
      * The length of the file header.
      */
-    public static final int HEADER_LENGTH = MAGIC_NUMBER.length + Long.BYTES;
+    public static final int HEADER_LENGTH = MAGIC_NUMBER_V2.length + Long.BYTES;
+    /**
+     * The size of the buffer used to write rows.
+     */
+    public static final int BUFFER_SIZE = 8 * 1024 * 1024;
+    /**
+     * The number of rows that can be waiting to be written before the threads
+     * adding rows wait for the writer thread.
+     */
+    private static final int QUEUE_SIZE = 4096;
+    /**
+     * Marker requesting the writer thread to write its buffer to the file.
+     */
+    private static final byte[] FLUSH = new byte[0];
+    /**
+     * Marker requesting the writer thread to write its buffer to the file and
+     * stop.
+     */
+    private static final byte[] END = new byte[0];
     /**
      * The random access file to write to.
      */
     private final RandomAccessFile raf;
+    /**
+     * The channel of the file to write to.
+     */
+    private final FileChannel channel;
     /**
      * Index for the variants.
      */
@@ -46,12 +74,51 @@ public class LdMatrixWriter implements AutoCloseable {
      */
     private final ArrayList<Long> indexesInFile = new ArrayList<>();
     /**
-     * Semaphore to synchronize threads writing to the file.
+     * Semaphore to synchronize threads adding rows.
      */
     private final SimpleSemaphore semaphore = new SimpleSemaphore(1);
+    /**
+     * The checkpoint where to register the variants completed. Ignored if
+     * null.
+     */
+    private final Checkpoint checkpoint;
+    /**
+     * The number of bits to use to store r2 values.
+     */
+    private final int r2Bits;
+    /**
+     * The scale to use to quantise r2 values.
+     */
+    private final float r2Scale;
+    /**
+     * The rows waiting to be written, in the order of their position in the
+     * file.
+     */
+    private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    /**
+     * Semaphore released by the writer thread when its buffer is written
+     * after a flush.
+     */
+    private final SimpleSemaphore flushed = new SimpleSemaphore(0);
+    /**
+     * The thread writing the rows.
+     */
+    private final Thread writerThread;
+    /**
+     * The position in the file of the next row added.
+     */
+    private long position;
+    /**
+     * The exception encountered by the writer thread, null if none.
+     */
+    private volatile IOException writeException = null;
+    /**
+     * The maximal number of records per chunk of the footer.
+     */
+    private int footerChunkSize = FOOTER_CHUNK_SIZE;
 
     /**
-     * Constructor.
+     * Constructor. r2 values are stored without loss of precision.
      *
      * @param outputFile the output file.
      * @param variantIndex The index to use for the variants.
@@ -66,17 +133,320 @@ public class LdMatrixWriter implements AutoCloseable {
             File outputFile
     ) throws FileNotFoundException, IOException {
 
-        if (outputFile.exists()) {
+        this(variantIndex, outputFile, null);
 
-            outputFile.delete();
+    }
 
-        }
+    /**
+     * Constructor. r2 values are stored without loss of precision.
+     *
+     * @param outputFile the output file.
+     * @param variantIndex The index to use for the variants.
+     * @param checkpoint The checkpoint where to register the variants
+     * completed. Ignored if null.
+     *
+     * @throws FileNotFoundException Exception thrown if the output file was not
+     * found.
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    public LdMatrixWriter(
+            VariantIndex variantIndex,
+            File outputFile,
+            Checkpoint checkpoint
+    ) throws FileNotFoundException, IOException {
+
+        this(variantIndex, outputFile, checkpoint, LdMatrixUtils.R2_BITS_LOSSLESS);
+
+    }
+
+    /**
+     * Constructor. If the checkpoint was read from a previous run, the output
+     * file is truncated to the length at the time of the checkpoint, the
+     * variant index and rows are restored, and new rows are appended. The
+     * number of bits used to store r2 values must then be the same as in the
+     * previous run, an IllegalArgumentException is thrown otherwise.
+     *
+     * @param outputFile the output file.
+     * @param variantIndex The index to use for the variants.
+     * @param checkpoint The checkpoint where to register the variants
+     * completed. Ignored if null.
+     * @param r2Bits The number of bits to use to store r2 values: 8, 16, or
+     * 32 for lossless.
+     *
+     * @throws FileNotFoundException Exception thrown if the output file was not
+     * found.
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    public LdMatrixWriter(
+            VariantIndex variantIndex,
+            File outputFile,
+            Checkpoint checkpoint,
+            int r2Bits
+    ) throws FileNotFoundException, IOException {
 
         this.variantIndex = variantIndex;
+        this.checkpoint = checkpoint;
+        this.r2Bits = r2Bits;
+        this.r2Scale = LdMatrixUtils.getR2Scale(r2Bits);
+
+        if (checkpoint != null && checkpoint.getRowVariantIndexes() != null) {
+
+            if (!outputFile.exists() || outputFile.length() < checkpoint.getOutputLength()) {
+
+                throw new IllegalArgumentException("Cannot resume " + outputFile + ", file shorter than at the last checkpoint.");
+
+            }
+
+            if (checkpoint.getR2Bits() != r2Bits || Float.compare(checkpoint.getR2Scale(), r2Scale) != 0) {
+
+                throw new IllegalArgumentException("Cannot resume " + outputFile + ", r2 values stored on " + r2Bits + " bits (scale " + r2Scale + ") while the previous run used " + checkpoint.getR2Bits() + " bits (scale " + checkpoint.getR2Scale() + ").");
+
+            }
+
+            for (int i = 0; i < checkpoint.getVariantIds().size(); i++) {
+
+                variantIndex.add(
+                        checkpoint.getVariantIds().get(i),
+                        checkpoint.getRsIds().get(i)
+                );
+            }
+
+            variantIndexes.addAll(checkpoint.getRowVariantIndexes());
+            indexesInFile.addAll(checkpoint.getRowIndexesInFile());
+
+            raf = new RandomAccessFile(outputFile, "rw");
+            raf.setLength(checkpoint.getOutputLength());
+            position = checkpoint.getOutputLength();
+
+        } else {
+
+            if (outputFile.exists()) {
+
+                outputFile.delete();
+
+            }
+
+            raf = new RandomAccessFile(outputFile, "rw");
+            position = HEADER_LENGTH;
+
+        }
+
+        channel = raf.getChannel();
+
+        long startPosition = position;
+        writerThread = new Thread(() -> writeRows(startPosition), "LdMatrixWriter " + outputFile.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+    }
+
+    /**
+     * Writes the rows handed over in the queue to the file until the end
+     * marker is received.
+     *
+     * @param startPosition The position in the file of the first row.
+     */
+    private void writeRows(
+            long startPosition
+    ) {
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long filePosition = startPosition;
+
+        while (true) {
+
+            byte[] row;
+
+            try {
+
+                row = queue.take();
+
+            } catch (InterruptedException e) {
+
+                writeException = new IOException("Writer thread interrupted.", e);
+
+                return;
+
+            }
+
+            try {
+
+                if (row == FLUSH || row == END) {
+
+                    if (writeException == null) {
+
+                        filePosition = writeBuffer(buffer, filePosition);
+
+                    }
+
+                    if (row == END) {
 
-        raf = new RandomAccessFile(outputFile, "rw");
-        raf.seek(HEADER_LENGTH);
+                        return;
 
+                    }
+
+                    flushed.release();
+
+                } else if (writeException == null) {
+
+                    if (row.length > buffer.remaining()) {
+
+                        filePosition = writeBuffer(buffer, filePosition);
+
+                    }
+
+                    if (row.length > buffer.capacity()) {
+
+                        filePosition = write(ByteBuffer.wrap(row), filePosition);
+
+                    } else {
+
+                        buffer.put(row);
+
+                    }
+                }
+
+            } catch (IOException e) {
+
+                // Keep consuming the queue so that the threads adding rows are not blocked, the exception is thrown to them
+                writeException = e;
+
+                if (row == FLUSH) {
+
+                    flushed.release();
+
+                } else if (row == END) {
+
+                    return;
+
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the content of the given buffer to the file at the given
+     * position and clears the buffer.
+     *
+     * @param buffer The buffer to write, positioned at the end of the content.
+     * @param filePosition The position in the file where to write.
+     *
+     * @return The position in the file after the content written.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    private long writeBuffer(
+            ByteBuffer buffer,
+            long filePosition
+    ) throws IOException {
+
+        buffer.flip();
+
+        filePosition = write(buffer, filePosition);
+
+        buffer.clear();
+
+        return filePosition;
+
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to the file at the given
+     * position.
+     *
+     * @param buffer The buffer to write.
+     * @param filePosition The position in the file where to write.
+     *
+     * @return The position in the file after the bytes written.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    private long write(
+            ByteBuffer buffer,
+            long filePosition
+    ) throws IOException {
+
+        while (buffer.hasRemaining()) {
+
+            filePosition += channel.write(buffer, filePosition);
+
+        }
+
+        return filePosition;
+
+    }
+
+    /**
+     * Hands a row over to the writer thread. The row is written at the
+     * current position, which is advanced past the row. The semaphore must be
+     * acquired by the caller.
+     *
+     * @param row The bytes of the row.
+     *
+     * @throws IOException Exception thrown if the writer thread encountered
+     * an error.
+     */
+    private void enqueue(
+            byte[] row
+    ) throws IOException {
+
+        checkWriteException();
+
+        try {
+
+            queue.put(row);
+
+        } catch (InterruptedException e) {
+
+            throw new IOException("Interrupted while waiting for the writer thread.", e);
+
+        }
+
+        position += row.length;
+
+    }
+
+    /**
+     * Waits for the writer thread to write all rows handed over so far. The
+     * semaphore must be acquired by the caller.
+     *
+     * @throws IOException Exception thrown if the writer thread encountered
+     * an error.
+     */
+    private void flush() throws IOException {
+
+        try {
+
+            queue.put(FLUSH);
+
+        } catch (InterruptedException e) {
+
+            throw new IOException("Interrupted while waiting for the writer thread.", e);
+
+        }
+
+        flushed.acquire();
+
+        checkWriteException();
+
+    }
+
+    /**
+     * Throws the exception encountered by the writer thread, if any.
+     *
+     * @throws IOException The exception encountered by the writer thread.
+     */
+    private void checkWriteException() throws IOException {
+
+        if (writeException != null) {
+
+            throw new IOException("An error occurred while writing the ld matrix.", writeException);
+
+        }
     }
 
     /**
@@ -95,53 +465,192 @@ public class LdMatrixWriter implements AutoCloseable {
             ZstdCompressor compressor
     ) throws IOException {
 
-        int nVariants = r2s.size();
+        addVariant(variantIndex, r2s, compressor, -1);
 
-        if (nVariants == 0) {
+    }
 
-            semaphore.acquire();
+    /**
+     * Writes a variant to the file and marks the corresponding variant of the
+     * bgen file as completed in the checkpoint.
+     *
+     * @param variantIndex The index of the variant.
+     * @param r2s The ld r2s between the variant and the other variants.
+     * @param compressor The compressor to use.
+     * @param bgenVariantIndex The index of the variant in the bgen file.
+     * Ignored if -1.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    public void addVariant(
+            int variantIndex,
+            ArrayList<R2> r2s,
+            ZstdCompressor compressor,
+            int bgenVariantIndex
+    ) throws IOException {
 
-            long index = raf.getFilePointer() - HEADER_LENGTH;
+        int nVariants = r2s.size();
 
-            variantIndexes.add(variantIndex);
-            indexesInFile.add(index);
+        byte[] row;
 
-            raf.writeInt(nVariants);
-            raf.writeInt(0);
+        if (nVariants == 0) {
 
-            semaphore.release();
+            row = new byte[Integer.BYTES];
 
         } else {
 
-            ByteBuffer buffer = ByteBuffer.allocate(nVariants * Integer.BYTES + 2 * nVariants * Short.BYTES + nVariants * Float.BYTES);
-
-            for (int i = 0; i < nVariants; i++) {
-
-                R2 r2 = r2s.get(i);
+            if (!isSorted(r2s)) {
 
-                buffer.putInt(r2.variantB);
-                buffer.putShort(r2.alleleA);
-                buffer.putShort(r2.alleleB);
-                buffer.putFloat(r2.r2Value);
+                r2s = new ArrayList<>(r2s);
+                r2s.sort(Comparator.comparingInt(r2 -> r2.variantB));
 
             }
 
-            byte[] uncompressedData = buffer.array();
+            byte[] uncompressedData = LdMatrixUtils.encodeRow(
+                    r2s,
+                    r2Bits,
+                    r2Scale
+            );
             TempByteArray compressedData = zstdCompress(
                     compressor,
                     uncompressedData
             );
 
-            semaphore.acquire();
+            row = ByteBuffer.allocate(3 * Integer.BYTES + compressedData.length)
+                    .putInt(nVariants)
+                    .putInt(uncompressedData.length)
+                    .putInt(compressedData.length)
+                    .put(compressedData.array, 0, compressedData.length)
+                    .array();
+
+        }
+
+        semaphore.acquire();
 
-            long index = raf.getFilePointer() - HEADER_LENGTH;
+        try {
 
             variantIndexes.add(variantIndex);
-            indexesInFile.add(index);
+            indexesInFile.add(position - HEADER_LENGTH);
+
+            enqueue(row);
+
+            registerCompleted(bgenVariantIndex);
+
+        } finally {
+
+            semaphore.release();
+
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the given r2s are sorted by index of
+     * the second variant.
+     *
+     * @param r2s The r2s.
+     *
+     * @return A boolean indicating whether the given r2s are sorted.
+     */
+    private static boolean isSorted(
+            ArrayList<R2> r2s
+    ) {
+
+        for (int i = 1; i < r2s.size(); i++) {
+
+            if (r2s.get(i).variantB < r2s.get(i - 1).variantB) {
+
+                return false;
+
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the number of bits used to store r2 values.
+     *
+     * @return The number of bits used to store r2 values.
+     */
+    public int getR2Bits() {
+
+        return r2Bits;
+
+    }
+
+    /**
+     * Sets the maximal number of records per chunk of the footer, the
+     * default being FOOTER_CHUNK_SIZE. Must be set before closing the writer.
+     *
+     * @param footerChunkSize The maximal number of records per chunk of the
+     * footer.
+     */
+    void setFooterChunkSize(
+            int footerChunkSize
+    ) {
+
+        if (footerChunkSize <= 0) {
+
+            throw new IllegalArgumentException("The size of the chunks of the footer must be positive, " + footerChunkSize + " found.");
+
+        }
+
+        this.footerChunkSize = footerChunkSize;
+
+    }
+
+    /**
+     * Appends rows copied as they are from another ld matrix file, typically
+     * when merging matrices computed in shards. The variant indexes of the
+     * rows must refer to the variant index of this writer, and the rows must
+     * be in the second version of the format with r2 values stored
+     * on the same number of bits as this writer.
+     *
+     * @param source The file to copy the rows from, positioned at the start
+     * of the rows.
+     * @param length The number of bytes to copy.
+     * @param rowVariantIndexes The indexes of the variants of the rows.
+     * @param rowIndexesInFile The indexes of the rows relative to the start
+     * of the rows in the source file.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to read or write a file.
+     */
+    public void appendRows(
+            RandomAccessFile source,
+            long length,
+            ArrayList<Integer> rowVariantIndexes,
+            ArrayList<Long> rowIndexesInFile
+    ) throws IOException {
+
+        semaphore.acquire();
+
+        try {
+
+            long offset = position - HEADER_LENGTH;
+
+            long remaining = length;
+
+            while (remaining > 0) {
 
-            raf.writeInt(nVariants);
-            raf.writeInt(compressedData.length);
-            raf.write(compressedData.array, 0, compressedData.length);
+                byte[] buffer = new byte[(int) Math.min(remaining, BUFFER_SIZE)];
+                source.readFully(buffer);
+
+                enqueue(buffer);
+                remaining -= buffer.length;
+
+            }
+
+            variantIndexes.addAll(rowVariantIndexes);
+
+            for (long index : rowIndexesInFile) {
+
+                indexesInFile.add(index + offset);
+
+            }
+
+        } finally {
 
             semaphore.release();
 
@@ -149,67 +658,327 @@ public class LdMatrixWriter implements AutoCloseable {
     }
 
     /**
-     * Writes the header and footer to the file.
+     * Marks a variant of the bgen file for which no row is written as
+     * completed in the checkpoint.
+     *
+     * @param bgenVariantIndex The index of the variant in the bgen file.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    public void complete(
+            int bgenVariantIndex
+    ) throws IOException {
+
+        if (checkpoint != null) {
+
+            semaphore.acquire();
+
+            try {
+
+                registerCompleted(bgenVariantIndex);
+
+            } finally {
+
+                semaphore.release();
+
+            }
+        }
+    }
+
+    /**
+     * Marks a variant as completed and saves the checkpoint if due. The
+     * semaphore must be acquired by the caller.
+     *
+     * @param bgenVariantIndex The index of the variant in the bgen file.
+     * Ignored if -1.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    private void registerCompleted(
+            int bgenVariantIndex
+    ) throws IOException {
+
+        if (checkpoint != null && bgenVariantIndex != -1) {
+
+            checkpoint.complete(bgenVariantIndex);
+
+            if (checkpoint.isDue()) {
+
+                writeCheckpoint();
+
+            }
+        }
+    }
+
+    /**
+     * Saves the checkpoint now.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    public void saveCheckpoint() throws IOException {
+
+        if (checkpoint != null) {
+
+            semaphore.acquire();
+
+            try {
+
+                writeCheckpoint();
+
+            } finally {
+
+                semaphore.release();
+
+            }
+        }
+    }
+
+    /**
+     * Writes the checkpoint once the rows added so far are written. The
+     * semaphore must be acquired by the caller.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    private void writeCheckpoint() throws IOException {
+
+        flush();
+
+        channel.force(false);
+
+        checkpoint.save(
+                position,
+                r2Bits,
+                r2Scale,
+                variantIndex.getVariantIds(),
+                variantIndex.getRsIds(),
+                variantIndexes,
+                indexesInFile
+        );
+    }
+
+    /**
+     * Writes the footer after the rows, then the header. The footer is
+     * written in chunks compressed independently: a first chunk with the
+     * settings, the size of the chunks, the numbers of variants and rows,
+     * and the contigs, -1 if the locations of the variants are not set,
+     * followed by the chunks of ids, the chunks of rows, and the chunks of
+     * locations if set.
      *
      * @throws IOException Exception thrown if an error occurred while
      * attempting to write to output file.
      */
     private void writeHeaderAndFooter() throws IOException {
 
-        long footerPosition = raf.getFilePointer();
+        long chunkPosition = position;
 
         String[] variantIds = variantIndex.getVariantIds();
         String[] rsIds = variantIndex.getRsIds();
+        String[] contigs = variantIndex.getContigs();
+        int[] positions = variantIndex.getPositions();
 
-        String variantIdsString = Arrays.stream(variantIds)
-                .collect(
-                        Collectors.joining(SEPARATOR)
-                );
-        String rsIdsString = Arrays.stream(rsIds)
-                .collect(
-                        Collectors.joining(SEPARATOR)
-                );
-        String ids = variantIdsString + SEPARATOR + rsIdsString;
+        int nIds = variantIds.length;
+        int nRows = variantIndexes.size();
+
+        // Settings and contigs
+        ArrayList<byte[]> contigNames = new ArrayList<>(1);
+        HashMap<String, Integer> contigIndexes = new HashMap<>(1);
+        int contigsLength = 0;
 
-        byte[] titleBytes = ids.getBytes(IoUtils.ENCODING);
+        if (contigs != null) {
 
-        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + titleBytes.length + indexesInFile.size() * Integer.BYTES + indexesInFile.size() * Long.BYTES);
+            for (String contig : contigs) {
 
-        buffer
-                .putInt(titleBytes.length)
-                .put(titleBytes)
-                .putInt(variantIndexes.size());
+                if (!contigIndexes.containsKey(contig)) {
 
-        for (int i = 0; i < variantIndexes.size(); i++) {
+                    byte[] contigBytes = contig.getBytes(IoUtils.ENCODING);
 
-            int variantI = variantIndexes.get(i);
-            buffer.putInt(variantI);
+                    contigIndexes.put(contig, contigNames.size());
+                    contigNames.add(contigBytes);
+                    contigsLength += Integer.BYTES + contigBytes.length;
 
-            long index = indexesInFile.get(i);
-            buffer.putLong(index);
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + contigsLength)
+                .putInt(r2Bits)
+                .putFloat(r2Scale)
+                .putInt(footerChunkSize)
+                .putInt(nIds)
+                .putInt(nRows)
+                .putInt(contigs == null ? -1 : contigNames.size());
+
+        for (byte[] contigBytes : contigNames) {
+
+            buffer.putInt(contigBytes.length)
+                    .put(contigBytes);
 
         }
 
-        byte[] uncompressedData = buffer.array();
+        chunkPosition = writeFooterChunk(buffer, chunkPosition);
+
+        // Ids, length and bytes of the variant id and rsid of every variant
+        for (int chunkStart = 0; chunkStart < nIds; chunkStart += footerChunkSize) {
+
+            int chunkEnd = Math.min(chunkStart + footerChunkSize, nIds);
+
+            byte[][] idsBytes = new byte[2 * (chunkEnd - chunkStart)][];
+            int length = 0;
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+
+                idsBytes[2 * (i - chunkStart)] = variantIds[i].getBytes(IoUtils.ENCODING);
+                idsBytes[2 * (i - chunkStart) + 1] = rsIds[i].getBytes(IoUtils.ENCODING);
+
+            }
+
+            for (byte[] idBytes : idsBytes) {
+
+                length += 5 + idBytes.length;
+
+            }
+
+            buffer = ByteBuffer.allocate(length);
+
+            for (byte[] idBytes : idsBytes) {
+
+                LdMatrixUtils.putVarInt(buffer, idBytes.length);
+                buffer.put(idBytes);
+
+            }
+
+            chunkPosition = writeFooterChunk(buffer, chunkPosition);
+
+        }
+
+        // Rows sorted by variant, variants and indexes stored as deltas
+        long[] rowOrder = new long[nRows];
+
+        for (int i = 0; i < nRows; i++) {
+
+            rowOrder[i] = ((long) variantIndexes.get(i) << 32) | i;
+
+        }
+
+        Arrays.sort(rowOrder);
+
+        int previousVariantI = 0;
+        long previousIndex = 0;
+
+        for (int chunkStart = 0; chunkStart < nRows; chunkStart += footerChunkSize) {
+
+            int chunkEnd = Math.min(chunkStart + footerChunkSize, nRows);
+
+            buffer = ByteBuffer.allocate((chunkEnd - chunkStart) * (5 + 10));
+
+            for (int rowI = chunkStart; rowI < chunkEnd; rowI++) {
+
+                int i = (int) rowOrder[rowI];
+
+                int variantI = variantIndexes.get(i);
+                LdMatrixUtils.putVarInt(buffer, variantI - previousVariantI);
+                previousVariantI = variantI;
+
+                long index = indexesInFile.get(i);
+                LdMatrixUtils.putVarLong(buffer, LdMatrixUtils.zigZagEncode(index - previousIndex));
+                previousIndex = index;
+
+            }
+
+            chunkPosition = writeFooterChunk(buffer, chunkPosition);
+
+        }
+
+        // Locations of the variants, contig indexes and positions stored as deltas
+        if (contigs != null) {
+
+            int previousPosition = 0;
+
+            for (int chunkStart = 0; chunkStart < nIds; chunkStart += footerChunkSize) {
+
+                int chunkEnd = Math.min(chunkStart + footerChunkSize, nIds);
+
+                buffer = ByteBuffer.allocate((chunkEnd - chunkStart) * (5 + 10));
+
+                for (int i = chunkStart; i < chunkEnd; i++) {
+
+                    LdMatrixUtils.putVarInt(buffer, contigIndexes.get(contigs[i]));
+                    LdMatrixUtils.putVarLong(buffer, LdMatrixUtils.zigZagEncode(positions[i] - previousPosition));
+                    previousPosition = positions[i];
+
+                }
+
+                chunkPosition = writeFooterChunk(buffer, chunkPosition);
+
+            }
+        }
+
+        buffer = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC_NUMBER_V2)
+                .putLong(position);
+
+        writeBuffer(buffer, 0);
+
+    }
+
+    /**
+     * Compresses the content of the given buffer and writes it at the given
+     * position as a chunk of the footer: compressed length, uncompressed
+     * length, and compressed data.
+     *
+     * @param buffer The buffer, positioned at the end of the content.
+     * @param filePosition The position in the file where to write the chunk.
+     *
+     * @return The position in the file after the chunk.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * attempting to write to output file.
+     */
+    private long writeFooterChunk(
+            ByteBuffer buffer,
+            long filePosition
+    ) throws IOException {
+
+        byte[] uncompressedData = Arrays.copyOf(buffer.array(), buffer.position());
         TempByteArray compressedData = zstdCompress(uncompressedData);
 
-        raf.writeInt(compressedData.length);
-        raf.writeInt(uncompressedData.length);
-        raf.write(compressedData.array, 0, compressedData.length);
+        ByteBuffer chunk = ByteBuffer.allocate(2 * Integer.BYTES + compressedData.length)
+                .putInt(compressedData.length)
+                .putInt(uncompressedData.length)
+                .put(compressedData.array, 0, compressedData.length);
 
-        raf.seek(0);
-        raf.write(MAGIC_NUMBER);
-        raf.writeLong(footerPosition);
+        return writeBuffer(chunk, filePosition);
 
     }
 
     @Override
     public void close() throws IOException {
 
-        writeHeaderAndFooter();
+        try {
 
-        raf.close();
+            try {
 
-    }
+                queue.put(END);
+                writerThread.join();
+
+            } catch (InterruptedException e) {
+
+                throw new IOException("Interrupted while waiting for the writer thread.", e);
+
+            }
 
+            checkWriteException();
+
+            writeHeaderAndFooter();
+
+        } finally {
+
+            raf.close();
+
+        }
+    }
 }
@@ -0,0 +1,236 @@
+package no.uib.triogen.io.ld;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import no.uib.triogen.model.ld.LdRow;
+import no.uib.triogen.utils.SimpleSemaphore;
+
+/**
+ * Cache of decoded ld matrix rows, bounded by size in bytes, evicting the least
+ * recently used rows. The cache can be shared by readers of different files
+ * and by different threads.
+ *
+ * @author Marc Vaudel
+ */
+public class LdRowCache {
+
+    /**
+     * The maximal size of the cache in bytes.
+     */
+    private final long maxSizeInBytes;
+    /**
+     * The current size of the cache in bytes.
+     */
+    private long sizeInBytes = 0;
+    /**
+     * The rows in access order.
+     */
+    private final LinkedHashMap<Long, LdRow> rows = new LinkedHashMap<>(1024, 0.75f, true);
+    /**
+     * The index of the files.
+     */
+    private final HashMap<String, Integer> fileIndexes = new HashMap<>();
+    /**
+     * Semaphore to synchronize threads.
+     */
+    private final SimpleSemaphore semaphore = new SimpleSemaphore(1);
+    /**
+     * The number of rows found in the cache.
+     */
+    private final AtomicLong hits = new AtomicLong(0);
+    /**
+     * The number of rows not found in the cache.
+     */
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Constructor.
+     *
+     * @param maxSizeInBytes The maximal size of the cache in bytes.
+     */
+    public LdRowCache(
+            long maxSizeInBytes
+    ) {
+
+        this.maxSizeInBytes = maxSizeInBytes;
+
+    }
+
+    /**
+     * Returns the index to use for the rows of the given file.
+     *
+     * @param file The ld matrix file.
+     *
+     * @return The index to use for the rows of the given file.
+     */
+    public int getFileIndex(
+            File file
+    ) {
+
+        semaphore.acquire();
+
+        try {
+
+            return fileIndexes.computeIfAbsent(file.getAbsolutePath(), path -> fileIndexes.size());
+
+        } finally {
+
+            semaphore.release();
+
+        }
+    }
+
+    /**
+     * Returns the key to use for the given row.
+     *
+     * @param fileIndex The index of the file.
+     * @param rowIndex The index of the row in the file.
+     *
+     * @return The key to use for the given row.
+     */
+    public static long getKey(
+            int fileIndex,
+            int rowIndex
+    ) {
+
+        return ((long) fileIndex << 32) | (rowIndex & 0xFFFFFFFFL);
+
+    }
+
+    /**
+     * Returns the row for the given key, null if not in cache.
+     *
+     * @param key The key of the row.
+     *
+     * @return The row for the given key.
+     */
+    public LdRow get(
+            long key
+    ) {
+
+        semaphore.acquire();
+
+        LdRow row = rows.get(key);
+
+        semaphore.release();
+
+        if (row == null) {
+
+            misses.incrementAndGet();
+
+        } else {
+
+            hits.incrementAndGet();
+
+        }
+
+        return row;
+
+    }
+
+    /**
+     * Adds a row to the cache and evicts the least recently used rows if the
+     * cache is full. Rows larger than the cache are not added.
+     *
+     * @param key The key of the row.
+     * @param row The row.
+     */
+    public void put(
+            long key,
+            LdRow row
+    ) {
+
+        long rowSize = row.getSizeInBytes();
+
+        if (rowSize > maxSizeInBytes) {
+
+            return;
+
+        }
+
+        semaphore.acquire();
+
+        LdRow previousRow = rows.put(key, row);
+
+        sizeInBytes += rowSize;
+
+        if (previousRow != null) {
+
+            sizeInBytes -= previousRow.getSizeInBytes();
+
+        }
+
+        Iterator<Entry<Long, LdRow>> iterator = rows.entrySet().iterator();
+
+        while (sizeInBytes > maxSizeInBytes) {
+
+            LdRow evictedRow = iterator.next().getValue();
+
+            iterator.remove();
+
+            sizeInBytes -= evictedRow.getSizeInBytes();
+
+        }
+
+        semaphore.release();
+
+    }
+
+    /**
+     * Returns the number of rows found in the cache.
+     *
+     * @return The number of rows found in the cache.
+     */
+    public long getHits() {
+
+        return hits.get();
+
+    }
+
+    /**
+     * Returns the number of rows not found in the cache.
+     *
+     * @return The number of rows not found in the cache.
+     */
+    public long getMisses() {
+
+        return misses.get();
+
+    }
+
+    /**
+     * Returns the current size of the cache in bytes.
+     *
+     * @return The current size of the cache in bytes.
+     */
+    public long getSizeInBytes() {
+
+        semaphore.acquire();
+
+        long result = sizeInBytes;
+
+        semaphore.release();
+
+        return result;
+
+    }
+
+    /**
+     * Returns a summary of the cache usage for logging.
+     *
+     * @return A summary of the cache usage.
+     */
+    public String getReport() {
+
+        long nHits = getHits();
+        long nQueries = nHits + getMisses();
+        double hitRate = nQueries == 0 ? 0.0 : ((double) Math.round(1000.0 * nHits / nQueries)) / 10;
+
+        return "LD row cache: " + nHits + " hits of " + nQueries + " queries (" + hitRate + "%), " + getSizeInBytes() / (1024 * 1024) + " MB used of " + maxSizeInBytes / (1024 * 1024) + " MB.";
+
+    }
+}
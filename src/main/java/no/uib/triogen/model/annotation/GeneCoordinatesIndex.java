@@ -0,0 +1,572 @@
+package no.uib.triogen.model.annotation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.model.annotation.ensembl.GeneCoordinates;
+
+/**
+ * Index of the coordinates of the genes of a GTF file. For every contig, the
+ * genes are sorted by start, and the maximal end of the genes up to every
+ * gene is kept, so that the genes overlapping a region are found by binary
+ * search followed by a scan of the overlapping genes only.
+ *
+ * @author Marc Vaudel
+ */
+public class GeneCoordinatesIndex {
+
+    /**
+     * The magic number of the index files.
+     */
+    public static final byte[] MAGIC_NUMBER = getMagicNumber("Triogen.geneIndex.1.0");
+    /**
+     * The biotype to use when not available.
+     */
+    public static final String NOT_AVAILABLE = "Not Available";
+    /**
+     * The description of the annotation indexed.
+     */
+    public final String source;
+    /**
+     * The genes of every contig.
+     */
+    private final HashMap<String, ContigGenes> contigGenes;
+
+    /**
+     * Constructor.
+     *
+     * @param source The description of the annotation indexed.
+     * @param contigGenes The genes of every contig.
+     */
+    private GeneCoordinatesIndex(
+            String source,
+            HashMap<String, ContigGenes> contigGenes
+    ) {
+
+        this.source = source;
+        this.contigGenes = contigGenes;
+
+    }
+
+    /**
+     * Returns the magic number for the given name.
+     *
+     * @param magicName The name of the format.
+     *
+     * @return The magic number.
+     */
+    private static byte[] getMagicNumber(
+            String magicName
+    ) {
+
+        try {
+
+            return magicName.getBytes(IoUtils.ENCODING);
+
+        } catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+
+    /**
+     * Returns the coordinates of the genes overlapping the given region,
+     * sorted by start, null if the contig is not in the index.
+     *
+     * @param contig The contig, the 'chr' prefix is ignored.
+     * @param start The start of the region.
+     * @param end The end of the region.
+     *
+     * @return The coordinates of the genes overlapping the region.
+     */
+    public ArrayList<GeneCoordinates> getGeneCoordinates(
+            String contig,
+            int start,
+            int end
+    ) {
+
+        ContigGenes genes = contigGenes.get(stripPrefix(contig));
+
+        if (genes == null) {
+
+            return null;
+
+        }
+
+        // Index of the first gene starting after the region
+        int low = 0;
+        int high = genes.starts.length;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (genes.starts[mid] <= end) {
+
+                low = mid + 1;
+
+            } else {
+
+                high = mid;
+
+            }
+        }
+
+        ArrayList<GeneCoordinates> result = new ArrayList<>();
+
+        for (int i = low - 1; i >= 0 && genes.maxEnds[i] >= start; i--) {
+
+            if (genes.ends[i] >= start) {
+
+                result.add(
+                        new GeneCoordinates(
+                                genes.biotypes[i],
+                                genes.names[i],
+                                genes.starts[i],
+                                genes.ends[i]
+                        )
+                );
+            }
+        }
+
+        ArrayList<GeneCoordinates> sortedResult = new ArrayList<>(result.size());
+
+        for (int i = result.size() - 1; i >= 0; i--) {
+
+            sortedResult.add(result.get(i));
+
+        }
+
+        return sortedResult;
+
+    }
+
+    /**
+     * Returns the contigs of the index.
+     *
+     * @return The contigs of the index.
+     */
+    public String[] getContigs() {
+
+        return contigGenes.keySet().stream()
+                .sorted()
+                .toArray(String[]::new);
+
+    }
+
+    /**
+     * Returns the number of genes in the index.
+     *
+     * @return The number of genes in the index.
+     */
+    public int getNGenes() {
+
+        return contigGenes.values().stream()
+                .mapToInt(
+                        genes -> genes.starts.length
+                )
+                .sum();
+
+    }
+
+    /**
+     * Imports the genes of a GTF file, as provided by Ensembl or GENCODE, and
+     * writes them as index. The name of a gene is its 'gene_name' attribute,
+     * or its 'gene_id' if not available, and its biotype the 'gene_biotype' or
+     * 'gene_type' attribute. The description of the annotation is built from
+     * the name of the file and its header.
+     *
+     * @param gtfFile The GTF file, gzipped or not.
+     * @param indexFile The file where to write the index.
+     *
+     * @return The index.
+     */
+    public static GeneCoordinatesIndex importGtf(
+            File gtfFile,
+            File indexFile
+    ) {
+
+        StringBuilder source = new StringBuilder(gtfFile.getName());
+        TreeMap<String, ArrayList<GeneCoordinates>> genesMap = new TreeMap<>();
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(gtfFile, false)) {
+
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+
+                lineNumber++;
+
+                if (line.startsWith("#")) {
+
+                    String comment = line.replaceFirst("^#+!?", "").trim();
+
+                    if (comment.length() > 0) {
+
+                        source.append("; ").append(comment);
+
+                    }
+
+                    continue;
+
+                }
+
+                String[] lineSplit = line.split("\t");
+
+                if (lineSplit.length < 9) {
+
+                    throw new IllegalArgumentException(
+                            lineSplit.length + " elements found at line " + lineNumber + " of " + gtfFile + " where 9 expected. Please make sure that the file is in the GTF format.\n" + line
+                    );
+                }
+
+                if (!lineSplit[2].equals("gene")) {
+
+                    continue;
+
+                }
+
+                int start;
+                int end;
+
+                try {
+
+                    start = Integer.parseInt(lineSplit[3]);
+                    end = Integer.parseInt(lineSplit[4]);
+
+                } catch (Exception e) {
+
+                    throw new IllegalArgumentException("Start (" + lineSplit[3] + ") or end (" + lineSplit[4] + ") could not be parsed as a number at line " + lineNumber + " of " + gtfFile + ".");
+
+                }
+
+                HashMap<String, String> attributes = parseAttributes(lineSplit[8]);
+
+                String name = attributes.containsKey("gene_name") ? attributes.get("gene_name")
+                        : attributes.containsKey("gene_id") ? attributes.get("gene_id")
+                        : NOT_AVAILABLE;
+
+                String biotype = attributes.containsKey("gene_biotype") ? attributes.get("gene_biotype")
+                        : attributes.containsKey("gene_type") ? attributes.get("gene_type")
+                        : NOT_AVAILABLE;
+
+                String contig = stripPrefix(lineSplit[0]);
+
+                ArrayList<GeneCoordinates> genes = genesMap.get(contig);
+
+                if (genes == null) {
+
+                    genes = new ArrayList<>();
+                    genesMap.put(contig, genes);
+
+                }
+
+                genes.add(new GeneCoordinates(biotype, name, start, end));
+
+            }
+        }
+
+        HashMap<String, ContigGenes> contigGenes = new HashMap<>(genesMap.size());
+
+        for (String contig : genesMap.keySet()) {
+
+            ArrayList<GeneCoordinates> genes = genesMap.get(contig);
+
+            genes.sort(
+                    Comparator.<GeneCoordinates>comparingInt(gene -> gene.start)
+                            .thenComparingInt(gene -> gene.end)
+            );
+
+            int nGenes = genes.size();
+
+            int[] starts = new int[nGenes];
+            int[] ends = new int[nGenes];
+            String[] biotypes = new String[nGenes];
+            String[] names = new String[nGenes];
+
+            for (int i = 0; i < nGenes; i++) {
+
+                GeneCoordinates gene = genes.get(i);
+
+                starts[i] = gene.start;
+                ends[i] = gene.end;
+                biotypes[i] = gene.biotype;
+                names[i] = gene.name;
+
+            }
+
+            contigGenes.put(contig, new ContigGenes(starts, ends, biotypes, names));
+
+        }
+
+        GeneCoordinatesIndex index = new GeneCoordinatesIndex(source.toString(), contigGenes);
+
+        index.write(indexFile);
+
+        return index;
+
+    }
+
+    /**
+     * Writes the index to the given file.
+     *
+     * @param indexFile The file where to write the index.
+     */
+    private void write(
+            File indexFile
+    ) {
+
+        String[] biotypes = contigGenes.values().stream()
+                .flatMap(
+                        genes -> Arrays.stream(genes.biotypes)
+                )
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+
+        HashMap<String, Integer> biotypeIndexes = new HashMap<>(biotypes.length);
+
+        for (int i = 0; i < biotypes.length; i++) {
+
+            biotypeIndexes.put(biotypes[i], i);
+
+        }
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(indexFile))))) {
+
+            outputStream.write(MAGIC_NUMBER);
+            outputStream.writeUTF(source);
+
+            outputStream.writeInt(biotypes.length);
+
+            for (String biotype : biotypes) {
+
+                outputStream.writeUTF(biotype);
+
+            }
+
+            String[] contigs = getContigs();
+
+            outputStream.writeInt(contigs.length);
+
+            for (String contig : contigs) {
+
+                ContigGenes genes = contigGenes.get(contig);
+
+                outputStream.writeUTF(contig);
+                outputStream.writeInt(genes.starts.length);
+
+                for (int i = 0; i < genes.starts.length; i++) {
+
+                    outputStream.writeInt(genes.starts[i]);
+                    outputStream.writeInt(genes.ends[i]);
+                    outputStream.writeShort(biotypeIndexes.get(genes.biotypes[i]));
+                    outputStream.writeUTF(genes.names[i]);
+
+                }
+            }
+
+        } catch (IOException e) {
+
+            throw new RuntimeException("An error occurred while writing the gene index to " + indexFile + ".", e);
+
+        }
+    }
+
+    /**
+     * Reads an index from a file.
+     *
+     * @param indexFile The index file.
+     *
+     * @return The index.
+     */
+    public static GeneCoordinatesIndex read(
+            File indexFile
+    ) {
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(indexFile))))) {
+
+            byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+            inputStream.readFully(magicNumber);
+
+            if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
+
+                throw new IllegalArgumentException("File format of " + indexFile + " not supported, please make sure that the file was built using the GeneIndex command.");
+
+            }
+
+            String source = inputStream.readUTF();
+
+            String[] biotypes = new String[inputStream.readInt()];
+
+            for (int i = 0; i < biotypes.length; i++) {
+
+                biotypes[i] = inputStream.readUTF();
+
+            }
+
+            int nContigs = inputStream.readInt();
+
+            HashMap<String, ContigGenes> contigGenes = new HashMap<>(nContigs);
+
+            for (int contigI = 0; contigI < nContigs; contigI++) {
+
+                String contig = inputStream.readUTF();
+                int nGenes = inputStream.readInt();
+
+                int[] starts = new int[nGenes];
+                int[] ends = new int[nGenes];
+                String[] geneBiotypes = new String[nGenes];
+                String[] names = new String[nGenes];
+
+                for (int i = 0; i < nGenes; i++) {
+
+                    starts[i] = inputStream.readInt();
+                    ends[i] = inputStream.readInt();
+                    geneBiotypes[i] = biotypes[inputStream.readShort()];
+                    names[i] = inputStream.readUTF();
+
+                }
+
+                contigGenes.put(contig, new ContigGenes(starts, ends, geneBiotypes, names));
+
+            }
+
+            return new GeneCoordinatesIndex(source, contigGenes);
+
+        } catch (IOException e) {
+
+            throw new RuntimeException("An error occurred while reading the gene index " + indexFile + ".", e);
+
+        }
+    }
+
+    /**
+     * Parses the attributes column of a GTF file.
+     *
+     * @param attributesColumn The attributes column.
+     *
+     * @return The attributes, name to value.
+     */
+    private static HashMap<String, String> parseAttributes(
+            String attributesColumn
+    ) {
+
+        HashMap<String, String> attributes = new HashMap<>();
+
+        for (String attribute : attributesColumn.split(";")) {
+
+            String trimmed = attribute.trim();
+            int separatorIndex = trimmed.indexOf(' ');
+
+            if (separatorIndex > 0) {
+
+                String key = trimmed.substring(0, separatorIndex);
+                String value = trimmed.substring(separatorIndex + 1).trim();
+
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+
+                    value = value.substring(1, value.length() - 1);
+
+                }
+
+                attributes.putIfAbsent(key, value);
+
+            }
+        }
+
+        return attributes;
+
+    }
+
+    /**
+     * Returns the contig name without 'chr' prefix.
+     *
+     * @param contig The contig name.
+     *
+     * @return The contig name without prefix.
+     */
+    private static String stripPrefix(
+            String contig
+    ) {
+
+        return contig.startsWith("chr") ? contig.substring(3) : contig;
+
+    }
+
+    /**
+     * The genes of a contig sorted by start.
+     */
+    private static class ContigGenes {
+
+        /**
+         * The start of the genes.
+         */
+        private final int[] starts;
+        /**
+         * The end of the genes.
+         */
+        private final int[] ends;
+        /**
+         * The maximal end of the genes up to every gene.
+         */
+        private final int[] maxEnds;
+        /**
+         * The biotype of the genes.
+         */
+        private final String[] biotypes;
+        /**
+         * The name of the genes.
+         */
+        private final String[] names;
+
+        /**
+         * Constructor.
+         *
+         * @param starts The start of the genes, sorted.
+         * @param ends The end of the genes.
+         * @param biotypes The biotype of the genes.
+         * @param names The name of the genes.
+         */
+        private ContigGenes(
+                int[] starts,
+                int[] ends,
+                String[] biotypes,
+                String[] names
+        ) {
+
+            this.starts = starts;
+            this.ends = ends;
+            this.biotypes = biotypes;
+            this.names = names;
+
+            maxEnds = new int[ends.length];
+
+            int maxEnd = Integer.MIN_VALUE;
+
+            for (int i = 0; i < ends.length; i++) {
+
+                maxEnd = Math.max(maxEnd, ends[i]);
+                maxEnds[i] = maxEnd;
+
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package no.uib.triogen.model.annotation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeMap;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.model.genome.VariantInformation;
+
+/**
+ * Genomic regions grouped by annotation, parsed from a bed-like file.
+ *
+ * @author Marc Vaudel
+ */
+public class RegionAnnotation {
+
+    /**
+     * The name used for the regions of files without name column.
+     */
+    public static final String DEFAULT_NAME = "annotation";
+    /**
+     * The names of the annotations in the order of the file.
+     */
+    public final String[] names;
+    /**
+     * Annotation name to contig to sorted starts (0-based, inclusive) and ends
+     * (exclusive) of the regions.
+     */
+    private final HashMap<String, HashMap<String, int[][]>> regions;
+
+    /**
+     * Constructor.
+     *
+     * @param names The names of the annotations in the order of the file.
+     * @param regions Annotation name to contig to sorted starts and ends of
+     * the regions.
+     */
+    private RegionAnnotation(
+            String[] names,
+            HashMap<String, HashMap<String, int[][]>> regions
+    ) {
+
+        this.names = names;
+        this.regions = regions;
+
+    }
+
+    /**
+     * Parses the regions from a tab-separated bed-like file: contig, start
+     * (0-based, inclusive), end (exclusive), and optionally the name of the
+     * annotation. Lines starting with '#', 'track', or 'browser' are ignored.
+     *
+     * @param file The file to parse.
+     * @param chromosome The chromosome to load, ignored if null.
+     *
+     * @return The regions of the file.
+     */
+    public static RegionAnnotation parse(
+            File file,
+            String chromosome
+    ) {
+
+        ArrayList<String> names = new ArrayList<>();
+        HashMap<String, HashMap<String, TreeMap<Integer, Integer>>> regionMap = new HashMap<>();
+
+        int lineNumber = 0;
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(file)) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                lineNumber++;
+
+                line = line.trim();
+
+                if (line.length() == 0 || line.charAt(0) == '#' || line.startsWith("track") || line.startsWith("browser")) {
+
+                    continue;
+
+                }
+
+                String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                if (lineSplit.length < 3) {
+
+                    throw new IllegalArgumentException(
+                            lineSplit.length + " elements found at line " + lineNumber + " of " + file + " where at least 3 expected. Please make sure that the file is tab-separated.\n" + line
+                    );
+                }
+
+                String contig = lineSplit[0];
+                String name = lineSplit.length > 3 ? lineSplit[3] : DEFAULT_NAME;
+
+                if (!regionMap.containsKey(name)) {
+
+                    names.add(name);
+                    regionMap.put(name, new HashMap<>());
+
+                }
+
+                if (chromosome != null && !contig.equals(chromosome)) {
+
+                    continue;
+
+                }
+
+                int start, end;
+
+                try {
+
+                    start = Integer.parseInt(lineSplit[1]);
+                    end = Integer.parseInt(lineSplit[2]);
+
+                } catch (Exception e) {
+
+                    throw new IllegalArgumentException("Start (" + lineSplit[1] + ") or end (" + lineSplit[2] + ") could not be parsed as integer at line " + lineNumber + " of " + file + ".");
+
+                }
+
+                if (end <= start) {
+
+                    throw new IllegalArgumentException("End (" + end + ") must be larger than start (" + start + ") at line " + lineNumber + " of " + file + ".");
+
+                }
+
+                // Merge with the overlapping regions so that the regions of a contig are disjoint
+                TreeMap<Integer, Integer> contigRegions = regionMap.get(name).computeIfAbsent(contig, c -> new TreeMap<>());
+
+                Integer previousStart = contigRegions.floorKey(start);
+
+                if (previousStart != null && contigRegions.get(previousStart) >= start) {
+
+                    start = previousStart;
+                    end = Math.max(end, contigRegions.remove(previousStart));
+
+                }
+
+                Integer nextStart;
+                while ((nextStart = contigRegions.ceilingKey(start)) != null && nextStart <= end) {
+
+                    end = Math.max(end, contigRegions.remove(nextStart));
+
+                }
+
+                contigRegions.put(start, end);
+
+            }
+        }
+
+        HashMap<String, HashMap<String, int[][]>> regions = new HashMap<>(regionMap.size());
+
+        for (String name : names) {
+
+            HashMap<String, int[][]> contigMap = new HashMap<>();
+
+            for (String contig : regionMap.get(name).keySet()) {
+
+                TreeMap<Integer, Integer> contigRegions = regionMap.get(name).get(contig);
+
+                int[][] startsEnds = new int[2][contigRegions.size()];
+                int i = 0;
+
+                for (Integer start : contigRegions.keySet()) {
+
+                    startsEnds[0][i] = start;
+                    startsEnds[1][i] = contigRegions.get(start);
+                    i++;
+
+                }
+
+                contigMap.put(contig, startsEnds);
+
+            }
+
+            regions.put(name, contigMap);
+
+        }
+
+        return new RegionAnnotation(names.toArray(new String[names.size()]), regions);
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the given position is in a region
+     * of the given annotation.
+     *
+     * @param name The name of the annotation.
+     * @param contig The contig.
+     * @param position The position (1-based).
+     *
+     * @return A boolean indicating whether the given position is annotated.
+     */
+    public boolean contains(
+            String name,
+            String contig,
+            int position
+    ) {
+
+        int[][] startsEnds = regions.get(name).get(contig);
+
+        if (startsEnds == null) {
+
+            return false;
+
+        }
+
+        // Last region starting before the position
+        int i = Arrays.binarySearch(startsEnds[0], position - 1);
+
+        if (i < 0) {
+
+            i = -i - 2;
+
+        }
+
+        return i >= 0 && position - 1 < startsEnds[1][i];
+
+    }
+
+    /**
+     * Returns the variants annotated for every annotation.
+     *
+     * @param variantInformationArray The information on the variants.
+     *
+     * @return The annotated variants, one bit set per annotation indexed by
+     * variant.
+     */
+    public BitSet[] getAnnotated(
+            VariantInformation[] variantInformationArray
+    ) {
+
+        BitSet[] result = new BitSet[names.length];
+
+        for (int annotationI = 0; annotationI < names.length; annotationI++) {
+
+            result[annotationI] = new BitSet(variantInformationArray.length);
+
+            for (int variantI = 0; variantI < variantInformationArray.length; variantI++) {
+
+                VariantInformation variantInformation = variantInformationArray[variantI];
+
+                if (contains(names[annotationI], variantInformation.contig, variantInformation.position)) {
+
+                    result[annotationI].set(variantI);
+
+                }
+            }
+        }
+
+        return result;
+
+    }
+}
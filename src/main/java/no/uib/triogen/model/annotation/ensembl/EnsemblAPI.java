@@ -273,14 +273,71 @@ public class EnsemblAPI {
             int buildNumber
     ) {
 
+        return getProxies(
+                getServer(buildNumber),
+                rsId,
+                population,
+                r2Threshold
+        );
+    }
+
+    /**
+     * Returns the variants in LD with the given SNP using the given server.
+     * Queries are not synchronized, concurrency must be handled by the
+     * caller.
+     *
+     * @param server The url of the server.
+     * @param rsId The rsid of the variant.
+     * @param population The reference population to use.
+     * @param r2Threshold The r2 threshold to use.
+     *
+     * @return The variants in LD with the given SNP.
+     */
+    public static ArrayList<ProxyCoordinates> getProxies(
+            String server,
+            String rsId,
+            String population,
+            double r2Threshold
+    ) {
+
+        return getProxies(
+                server,
+                rsId,
+                population,
+                r2Threshold,
+                N_ATTEMPTS
+        );
+    }
+
+    /**
+     * Returns the variants in LD with the given SNP using the given server,
+     * making at most the given number of attempts. Queries are not
+     * synchronized, concurrency must be handled by the caller.
+     *
+     * @param server The url of the server.
+     * @param rsId The rsid of the variant.
+     * @param population The reference population to use.
+     * @param r2Threshold The r2 threshold to use.
+     * @param nAttempts The maximal number of attempts.
+     *
+     * @return The variants in LD with the given SNP.
+     */
+    public static ArrayList<ProxyCoordinates> getProxies(
+            String server,
+            String rsId,
+            String population,
+            double r2Threshold,
+            int nAttempts
+    ) {
+
         Throwable throwable = null;
 
-        for (int attempt = 0; attempt < N_ATTEMPTS; attempt++) {
+        for (int attempt = 0; attempt < nAttempts; attempt++) {
 
             String ext = String.join("",
                     "/ld/homo_sapiens/", rsId, "/", population, "?r2=", Double.toString(r2Threshold), ";attribs=T"
             );
-            GetRequest request = Unirest.get(getServer(buildNumber) + ext);
+            GetRequest request = Unirest.get(server + ext);
             request.header("Content-Type", "application/json");
 
             try {
@@ -334,14 +391,17 @@ public class EnsemblAPI {
 
             } catch (Throwable t) {
 
-                try {
+                if (attempt < nAttempts - 1) {
 
-                    WAITER.delay(DELAY);
+                    try {
 
-                } catch (InterruptedException e) {
+                        WAITER.delay(DELAY);
 
-                    throw new RuntimeException(e);
+                    } catch (InterruptedException e) {
 
+                        throw new RuntimeException(e);
+
+                    }
                 }
 
                 throwable = t;
@@ -71,14 +71,83 @@ public class LDproxy {
             String token
     ) {
 
+        return getProxy(
+                REST_URL,
+                rsId,
+                pop,
+                r2d,
+                window,
+                token
+        );
+    }
+
+    /**
+     * Returns the proxies for the given variant according to LDproxy at the
+     * given url. Queries are not synchronized, concurrency must be handled by
+     * the caller.
+     *
+     * @param url The url of the LDproxy endpoint.
+     * @param rsId The id of the variant.
+     * @param pop The population to use.
+     * @param r2d A string indicating whether r2 or d should be used.
+     * @param window The window to use.
+     * @param token The token to use.
+     *
+     * @return The proxies to use.
+     */
+    public static ArrayList<ProxyCoordinates> getProxy(
+            String url,
+            String rsId,
+            String pop,
+            String r2d,
+            String window,
+            String token
+    ) {
+
+        return getProxy(
+                url,
+                rsId,
+                pop,
+                r2d,
+                window,
+                token,
+                N_ATTEMPTS
+        );
+    }
+
+    /**
+     * Returns the proxies for the given variant according to LDproxy at the
+     * given url, making at most the given number of attempts. Queries are not
+     * synchronized, concurrency must be handled by the caller.
+     *
+     * @param url The url of the LDproxy endpoint.
+     * @param rsId The id of the variant.
+     * @param pop The population to use.
+     * @param r2d A string indicating whether r2 or d should be used.
+     * @param window The window to use.
+     * @param token The token to use.
+     * @param nAttempts The maximal number of attempts.
+     *
+     * @return The proxies to use.
+     */
+    public static ArrayList<ProxyCoordinates> getProxy(
+            String url,
+            String rsId,
+            String pop,
+            String r2d,
+            String window,
+            String token,
+            int nAttempts
+    ) {
+
         Throwable throwable = null;
 
-        for (int attempt = 0; attempt < N_ATTEMPTS; attempt++) {
+        for (int attempt = 0; attempt < nAttempts; attempt++) {
 
             try {
 
                 String requestUrl = String.join("",
-                        REST_URL, "?var=", rsId, "&pop=", pop, "&r2_d=", r2d, "&window=", window, "&token=", token
+                        url, "?var=", rsId, "&pop=", pop, "&r2_d=", r2d, "&window=", window, "&token=", token
                 );
                 GetRequest request = Unirest.get(requestUrl);
 
@@ -173,14 +242,17 @@ public class LDproxy {
 
             } catch (Throwable t) {
 
-                try {
-                    
-                    WAITER.delay(DELAY);
+                if (attempt < nAttempts - 1) {
+
+                    try {
 
-                } catch (InterruptedException e) {
+                        WAITER.delay(DELAY);
 
-                    throw new RuntimeException(e);
+                    } catch (InterruptedException e) {
 
+                        throw new RuntimeException(e);
+
+                    }
                 }
 
                 throwable = t;
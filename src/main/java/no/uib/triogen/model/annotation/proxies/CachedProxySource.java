@@ -0,0 +1,216 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import java.util.ArrayList;
+import no.uib.triogen.model.annotation.ProxyCoordinates;
+import no.uib.triogen.utils.SimpleSemaphore;
+
+/**
+ * Proxy source querying another source through an on-disk cache. Queries to
+ * the source are bounded in number of concurrent queries and rate limited by
+ * a minimal delay between the start of two queries. Failed queries are
+ * retried a limited number of times, waiting without holding a query permit
+ * between attempts.
+ *
+ * @author Marc Vaudel
+ */
+public class CachedProxySource implements ProxySource {
+
+    /**
+     * The default maximal number of concurrent queries.
+     */
+    public static final int DEFAULT_N_QUERIES = 4;
+    /**
+     * The default minimal delay between the start of two queries in
+     * milliseconds.
+     */
+    public static final long DEFAULT_DELAY = 100;
+    /**
+     * The maximal number of attempts per query.
+     */
+    public static final int N_ATTEMPTS = 5;
+    /**
+     * The source to query.
+     */
+    private final ProxySource source;
+    /**
+     * The cache, ignored if null.
+     */
+    private final ProxyCache cache;
+    /**
+     * Semaphore bounding the number of concurrent queries.
+     */
+    private final SimpleSemaphore queryPermits;
+    /**
+     * The minimal delay between the start of two queries in milliseconds.
+     */
+    private final long delay;
+    /**
+     * Mutex for the scheduling of the queries.
+     */
+    private final SimpleSemaphore scheduleMutex = new SimpleSemaphore(1);
+    /**
+     * The earliest time for the next query in milliseconds.
+     */
+    private long nextQueryTime = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param source The source to query.
+     * @param cache The cache, ignored if null.
+     * @param nQueries The maximal number of concurrent queries.
+     * @param delay The minimal delay between the start of two queries in
+     * milliseconds.
+     */
+    public CachedProxySource(
+            ProxySource source,
+            ProxyCache cache,
+            int nQueries,
+            long delay
+    ) {
+
+        this.source = source;
+        this.cache = cache;
+        this.queryPermits = new SimpleSemaphore(nQueries);
+        this.delay = delay;
+
+    }
+
+    @Override
+    public ArrayList<ProxyCoordinates> getProxies(
+            String rsid
+    ) {
+
+        if (cache != null) {
+
+            ArrayList<ProxyCoordinates> proxies = cache.get(source, rsid);
+
+            if (proxies != null) {
+
+                return proxies;
+
+            }
+        }
+
+        ArrayList<ProxyCoordinates> proxies = query(rsid);
+
+        if (cache != null) {
+
+            cache.put(source, rsid, proxies);
+
+        }
+
+        return proxies;
+
+    }
+
+    /**
+     * Queries the source for the proxies of the given variant. Each attempt
+     * holds a query permit, failed attempts are followed by a back-off
+     * without permit, starting at the delay between queries and doubling at
+     * every attempt.
+     *
+     * @param rsid The rsid of the variant.
+     *
+     * @return The proxies of the variant.
+     */
+    private ArrayList<ProxyCoordinates> query(
+            String rsid
+    ) {
+
+        RuntimeException exception = null;
+
+        for (int attempt = 0; attempt < N_ATTEMPTS; attempt++) {
+
+            if (attempt > 0) {
+
+                try {
+
+                    Thread.sleep(delay << (attempt - 1));
+
+                } catch (InterruptedException e) {
+
+                    throw new RuntimeException(e);
+
+                }
+            }
+
+            queryPermits.acquire();
+
+            try {
+
+                waitForSchedule();
+
+                return source.getProxies(rsid);
+
+            } catch (RuntimeException e) {
+
+                exception = e;
+
+            } finally {
+
+                queryPermits.release();
+
+            }
+        }
+
+        throw new RuntimeException("Failed to query " + source.getName() + " for the proxies of " + rsid + " after " + N_ATTEMPTS + " attempts.", exception);
+
+    }
+
+    /**
+     * Waits until the minimal delay since the start of the previous query has
+     * passed.
+     */
+    private void waitForSchedule() {
+
+        scheduleMutex.acquire();
+
+        long now = System.currentTimeMillis();
+        long queryTime = Math.max(now, nextQueryTime);
+        nextQueryTime = queryTime + delay;
+
+        scheduleMutex.release();
+
+        if (queryTime > now) {
+
+            try {
+
+                Thread.sleep(queryTime - now);
+
+            } catch (InterruptedException e) {
+
+                throw new RuntimeException(e);
+
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+
+        return source.getName();
+
+    }
+
+    @Override
+    public String getPopulation() {
+
+        return source.getPopulation();
+
+    }
+
+    @Override
+    public int getBuildNumber() {
+
+        return source.getBuildNumber();
+
+    }
+
+    @Override
+    public double getR2Threshold() {
+
+        return source.getR2Threshold();
+
+    }
+}
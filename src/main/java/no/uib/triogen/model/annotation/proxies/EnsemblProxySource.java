@@ -0,0 +1,120 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import java.util.ArrayList;
+import no.uib.triogen.model.annotation.ProxyCoordinates;
+import no.uib.triogen.model.annotation.ensembl.EnsemblAPI;
+
+/**
+ * Proxies from the LD endpoint of the Ensembl API. A single attempt is made
+ * per query, failed queries can be retried using a CachedProxySource.
+ *
+ * @author Marc Vaudel
+ */
+public class EnsemblProxySource implements ProxySource {
+
+    /**
+     * The name of the source.
+     */
+    public static final String NAME = "Ensembl";
+    /**
+     * The url of the server.
+     */
+    private final String server;
+    /**
+     * The reference population.
+     */
+    private final String population;
+    /**
+     * The minimal r2 of the proxies.
+     */
+    private final double r2Threshold;
+    /**
+     * The number of the build.
+     */
+    private final int buildNumber;
+
+    /**
+     * Constructor.
+     *
+     * @param server The url of the server.
+     * @param population The reference population.
+     * @param r2Threshold The minimal r2 of the proxies.
+     * @param buildNumber The number of the build, e.g. 38 for GRCh38.
+     */
+    public EnsemblProxySource(
+            String server,
+            String population,
+            double r2Threshold,
+            int buildNumber
+    ) {
+
+        this.server = server;
+        this.population = population;
+        this.r2Threshold = r2Threshold;
+        this.buildNumber = buildNumber;
+
+    }
+
+    /**
+     * Constructor using the Ensembl server of the given build.
+     *
+     * @param population The reference population.
+     * @param r2Threshold The minimal r2 of the proxies.
+     * @param buildNumber The number of the build, e.g. 38 for GRCh38.
+     */
+    public EnsemblProxySource(
+            String population,
+            double r2Threshold,
+            int buildNumber
+    ) {
+
+        this(
+                EnsemblAPI.getServer(buildNumber),
+                population,
+                r2Threshold,
+                buildNumber
+        );
+    }
+
+    @Override
+    public ArrayList<ProxyCoordinates> getProxies(
+            String rsid
+    ) {
+
+        return EnsemblAPI.getProxies(
+                server,
+                rsid,
+                population,
+                r2Threshold,
+                1
+        );
+    }
+
+    @Override
+    public String getName() {
+
+        return NAME;
+
+    }
+
+    @Override
+    public String getPopulation() {
+
+        return population;
+
+    }
+
+    @Override
+    public int getBuildNumber() {
+
+        return buildNumber;
+
+    }
+
+    @Override
+    public double getR2Threshold() {
+
+        return r2Threshold;
+
+    }
+}
@@ -0,0 +1,135 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+import no.uib.triogen.model.annotation.ProxyCoordinates;
+import no.uib.triogen.model.annotation.ld_link.LDproxy;
+
+/**
+ * Proxies from the LDproxy endpoint of LDlink. LDlink is queried on GRCh37.
+ * A single attempt is made per query, failed queries can be retried using a
+ * CachedProxySource.
+ *
+ * @author Marc Vaudel
+ */
+public class LdLinkProxySource implements ProxySource {
+
+    /**
+     * The name of the source.
+     */
+    public static final String NAME = "LDlink";
+    /**
+     * The build used by LDlink.
+     */
+    public static final int BUILD_NUMBER = 37;
+    /**
+     * The url of the LDproxy endpoint.
+     */
+    private final String url;
+    /**
+     * The reference population.
+     */
+    private final String population;
+    /**
+     * The minimal r2 of the proxies.
+     */
+    private final double r2Threshold;
+    /**
+     * The token to use.
+     */
+    private final String token;
+
+    /**
+     * Constructor.
+     *
+     * @param url The url of the LDproxy endpoint.
+     * @param population The reference population.
+     * @param r2Threshold The minimal r2 of the proxies.
+     * @param token The token to use.
+     */
+    public LdLinkProxySource(
+            String url,
+            String population,
+            double r2Threshold,
+            String token
+    ) {
+
+        this.url = url;
+        this.population = population;
+        this.r2Threshold = r2Threshold;
+        this.token = token;
+
+    }
+
+    /**
+     * Constructor using the LDlink server.
+     *
+     * @param population The reference population.
+     * @param r2Threshold The minimal r2 of the proxies.
+     * @param token The token to use.
+     */
+    public LdLinkProxySource(
+            String population,
+            double r2Threshold,
+            String token
+    ) {
+
+        this(
+                LDproxy.REST_URL,
+                population,
+                r2Threshold,
+                token
+        );
+    }
+
+    @Override
+    public ArrayList<ProxyCoordinates> getProxies(
+            String rsid
+    ) {
+
+        return LDproxy.getProxy(
+                url,
+                rsid,
+                population,
+                LDproxy.R2,
+                LDproxy.WINDOW,
+                token,
+                1
+        )
+                .stream()
+                .filter(
+                        proxyCoordinates -> proxyCoordinates.r2 >= r2Threshold
+                )
+                .collect(
+                        Collectors.toCollection(ArrayList::new)
+                );
+    }
+
+    @Override
+    public String getName() {
+
+        return NAME;
+
+    }
+
+    @Override
+    public String getPopulation() {
+
+        return population;
+
+    }
+
+    @Override
+    public int getBuildNumber() {
+
+        return BUILD_NUMBER;
+
+    }
+
+    @Override
+    public double getR2Threshold() {
+
+        return r2Threshold;
+
+    }
+}
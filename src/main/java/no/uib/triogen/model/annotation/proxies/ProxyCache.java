@@ -0,0 +1,336 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import no.uib.triogen.model.annotation.ProxyCoordinates;
+import no.uib.triogen.utils.SimpleSemaphore;
+
+/**
+ * On-disk cache of proxies stored in an SQLite database. Entries are indexed
+ * by source, rsid, population, build, and r2 threshold, and expire after a
+ * given time. Entries without proxy expire after at most a day, they might
+ * stem from a transient issue of the source.
+ *
+ * @author Marc Vaudel
+ */
+public class ProxyCache implements AutoCloseable {
+
+    /**
+     * The default time to live of the entries in days.
+     */
+    public static final int DEFAULT_TTL_DAYS = 30;
+    /**
+     * The maximal time to live of the entries without proxy in days.
+     */
+    public static final int EMPTY_TTL_DAYS = 1;
+    /**
+     * The number of seconds in a day.
+     */
+    private static final long SECONDS_PER_DAY = 24 * 3600;
+    /**
+     * The connection to the database.
+     */
+    private final Connection connection;
+    /**
+     * The statement used to select entries.
+     */
+    private final PreparedStatement selectStatement;
+    /**
+     * The statement used to insert entries.
+     */
+    private final PreparedStatement insertStatement;
+    /**
+     * Mutex for the access to the database.
+     */
+    private final SimpleSemaphore mutex = new SimpleSemaphore(1);
+    /**
+     * The time to live of the entries in seconds, entries never expire if 0.
+     */
+    private final long ttl;
+    /**
+     * The time to live of the entries without proxy in seconds.
+     */
+    private final long emptyTtl;
+    /**
+     * The number of queries.
+     */
+    private final AtomicLong nQueries = new AtomicLong();
+    /**
+     * The number of queries found in the cache.
+     */
+    private final AtomicLong nHits = new AtomicLong();
+
+    /**
+     * Constructor. The database is created if it does not exist.
+     *
+     * @param dbFile The file of the database.
+     * @param ttlDays The time to live of the entries in days, entries with
+     * proxies never expire if 0.
+     */
+    public ProxyCache(
+            File dbFile,
+            int ttlDays
+    ) {
+
+        this.ttl = ttlDays * SECONDS_PER_DAY;
+        this.emptyTtl = ttl == 0 ? EMPTY_TTL_DAYS * SECONDS_PER_DAY : Math.min(ttl, EMPTY_TTL_DAYS * SECONDS_PER_DAY);
+
+        try {
+
+            connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+
+            try (Statement statement = connection.createStatement()) {
+
+                statement.execute("PRAGMA journal_mode=WAL;");
+                statement.execute(
+                        "CREATE TABLE IF NOT EXISTS `proxies` ("
+                        + "`source` TEXT, `rsid` TEXT, `population` TEXT, `build` INTEGER, `r2` REAL, `timestamp` INTEGER, `proxies` TEXT, "
+                        + "PRIMARY KEY(`source`, `rsid`, `population`, `build`, `r2`));"
+                );
+            }
+
+            selectStatement = connection.prepareStatement(
+                    "SELECT `timestamp`, `proxies` FROM `proxies` WHERE `source` = ? AND `rsid` = ? AND `population` = ? AND `build` = ? AND `r2` = ?;"
+            );
+            insertStatement = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO `proxies` (`source`, `rsid`, `population`, `build`, `r2`, `timestamp`, `proxies`) VALUES (?, ?, ?, ?, ?, ?, ?);"
+            );
+
+        } catch (SQLException e) {
+
+            throw new RuntimeException("An error occurred while opening the proxy cache " + dbFile + ".", e);
+
+        }
+    }
+
+    /**
+     * Returns the proxies of the given variant from the given source, null if
+     * not in the cache or expired.
+     *
+     * @param source The source of the proxies.
+     * @param rsid The rsid of the variant.
+     *
+     * @return The proxies of the variant.
+     */
+    public ArrayList<ProxyCoordinates> get(
+            ProxySource source,
+            String rsid
+    ) {
+
+        nQueries.incrementAndGet();
+
+        String proxies = null;
+
+        mutex.acquire();
+
+        try {
+
+            setKey(selectStatement, source, rsid);
+
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+
+                if (resultSet.next()) {
+
+                    long timestamp = resultSet.getLong(1);
+                    String entryProxies = resultSet.getString(2);
+                    long entryTtl = entryProxies.isEmpty() ? emptyTtl : ttl;
+
+                    if (entryTtl == 0 || Instant.now().getEpochSecond() - timestamp <= entryTtl) {
+
+                        proxies = entryProxies;
+
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+
+            throw new RuntimeException(e);
+
+        } finally {
+
+            mutex.release();
+
+        }
+
+        if (proxies == null) {
+
+            return null;
+
+        }
+
+        nHits.incrementAndGet();
+
+        return decode(proxies);
+
+    }
+
+    /**
+     * Stores the proxies of the given variant from the given source.
+     *
+     * @param source The source of the proxies.
+     * @param rsid The rsid of the variant.
+     * @param proxies The proxies of the variant.
+     */
+    public void put(
+            ProxySource source,
+            String rsid,
+            ArrayList<ProxyCoordinates> proxies
+    ) {
+
+        String encodedProxies = encode(proxies);
+
+        mutex.acquire();
+
+        try {
+
+            setKey(insertStatement, source, rsid);
+            insertStatement.setLong(6, Instant.now().getEpochSecond());
+            insertStatement.setString(7, encodedProxies);
+            insertStatement.executeUpdate();
+
+        } catch (SQLException e) {
+
+            throw new RuntimeException(e);
+
+        } finally {
+
+            mutex.release();
+
+        }
+    }
+
+    /**
+     * Sets the key of an entry as the first five parameters of the given
+     * statement.
+     *
+     * @param statement The statement.
+     * @param source The source of the proxies.
+     * @param rsid The rsid of the variant.
+     *
+     * @throws SQLException Exception thrown if an error occurred while
+     * setting the parameters.
+     */
+    private static void setKey(
+            PreparedStatement statement,
+            ProxySource source,
+            String rsid
+    ) throws SQLException {
+
+        statement.setString(1, source.getName());
+        statement.setString(2, rsid);
+        statement.setString(3, source.getPopulation());
+        statement.setInt(4, source.getBuildNumber());
+        statement.setDouble(5, source.getR2Threshold());
+
+    }
+
+    /**
+     * Encodes proxies as text, one proxy per line.
+     *
+     * @param proxies The proxies.
+     *
+     * @return The proxies as text.
+     */
+    private static String encode(
+            ArrayList<ProxyCoordinates> proxies
+    ) {
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (ProxyCoordinates proxyCoordinates : proxies) {
+
+            stringBuilder.append(proxyCoordinates.proxySnp)
+                    .append('\t')
+                    .append(proxyCoordinates.contig)
+                    .append('\t')
+                    .append(proxyCoordinates.start)
+                    .append('\t')
+                    .append(proxyCoordinates.end)
+                    .append('\t')
+                    .append(proxyCoordinates.alleleMapping == null ? "" : proxyCoordinates.alleleMapping)
+                    .append('\t')
+                    .append(proxyCoordinates.r2)
+                    .append('\n');
+
+        }
+
+        return stringBuilder.toString();
+
+    }
+
+    /**
+     * Decodes proxies encoded as text.
+     *
+     * @param encodedProxies The proxies as text.
+     *
+     * @return The proxies.
+     */
+    private static ArrayList<ProxyCoordinates> decode(
+            String encodedProxies
+    ) {
+
+        ArrayList<ProxyCoordinates> proxies = new ArrayList<>();
+
+        for (String line : encodedProxies.split("\n")) {
+
+            if (line.length() > 0) {
+
+                String[] lineSplit = line.split("\t", -1);
+
+                proxies.add(
+                        new ProxyCoordinates(
+                                lineSplit[0],
+                                lineSplit[1],
+                                Integer.parseInt(lineSplit[2]),
+                                Integer.parseInt(lineSplit[3]),
+                                lineSplit[4].length() == 0 ? null : lineSplit[4],
+                                Double.parseDouble(lineSplit[5])
+                        )
+                );
+            }
+        }
+
+        return proxies;
+
+    }
+
+    /**
+     * Returns a report on the usage of the cache.
+     *
+     * @return A report on the usage of the cache.
+     */
+    public String getReport() {
+
+        long hits = nHits.get();
+        long queries = nQueries.get();
+        double hitRate = queries == 0 ? 0.0 : ((double) Math.round(1000.0 * hits / queries)) / 10;
+
+        return "Proxy cache: " + hits + " hits of " + queries + " queries (" + hitRate + "%).";
+
+    }
+
+    @Override
+    public void close() {
+
+        try {
+
+            selectStatement.close();
+            insertStatement.close();
+            connection.close();
+
+        } catch (SQLException e) {
+
+            throw new RuntimeException(e);
+
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import java.util.ArrayList;
+import no.uib.triogen.model.annotation.ProxyCoordinates;
+
+/**
+ * Interface for the sources of proxies of a variant.
+ *
+ * @author Marc Vaudel
+ */
+public interface ProxySource {
+
+    /**
+     * Returns the proxies of the given variant with an r2 higher or equal to
+     * the threshold of the source.
+     *
+     * @param rsid The rsid of the variant.
+     *
+     * @return The proxies of the variant.
+     */
+    public ArrayList<ProxyCoordinates> getProxies(
+            String rsid
+    );
+
+    /**
+     * Returns the name of the source.
+     *
+     * @return The name of the source.
+     */
+    public String getName();
+
+    /**
+     * Returns the reference population used by the source.
+     *
+     * @return The reference population used by the source.
+     */
+    public String getPopulation();
+
+    /**
+     * Returns the number of the build used by the source, e.g. 38 for GRCh38.
+     *
+     * @return The number of the build used by the source.
+     */
+    public int getBuildNumber();
+
+    /**
+     * Returns the minimal r2 of the proxies returned by the source.
+     *
+     * @return The minimal r2 of the proxies returned by the source.
+     */
+    public double getR2Threshold();
+
+}
@@ -1,11 +1,13 @@
 package no.uib.triogen.model.family;
 
 import java.io.File;
+import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import no.uib.triogen.io.IoUtils;
 import no.uib.triogen.io.flat.SimpleFileReader;
 
@@ -167,4 +169,39 @@ public class ChildToParentMap {
 
     }
 
+    /**
+     * Returns a fingerprint of the trios, allowing to verify that files
+     * derived from the trios are up to date.
+     *
+     * @return A fingerprint of the trios.
+     */
+    public String getFingerprint() {
+
+        CRC32 crc = new CRC32();
+
+        try {
+
+            for (String childId : children) {
+
+                String trio = String.join(IoUtils.SEPARATOR,
+                        childId,
+                        String.valueOf(getMother(childId)),
+                        String.valueOf(getFather(childId))
+                ) + "\n";
+
+                crc.update(trio.getBytes(IoUtils.ENCODING));
+
+            }
+
+        } catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException(e);
+
+        }
+
+        return String.join(IoUtils.SEPARATOR,
+                Integer.toString(children.length),
+                Long.toHexString(crc.getValue())
+        );
+    }
 }
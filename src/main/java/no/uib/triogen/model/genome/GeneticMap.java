@@ -0,0 +1,209 @@
+package no.uib.triogen.model.genome;
+
+import java.io.File;
+import java.util.Arrays;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+
+/**
+ * Genetic map of a chromosome, parsed from the genetic maps provided in the
+ * 'resources/recombination_rates' folder.
+ *
+ * @author Marc Vaudel
+ */
+public class GeneticMap {
+
+    /**
+     * The positions of the markers of the map in bp, sorted.
+     */
+    private final int[] positions;
+    /**
+     * The genetic positions of the markers of the map in cM.
+     */
+    private final double[] geneticPositions;
+
+    /**
+     * Constructor.
+     *
+     * @param positions The positions of the markers of the map in bp, sorted.
+     * @param geneticPositions The genetic positions of the markers of the map
+     * in cM.
+     */
+    private GeneticMap(
+            int[] positions,
+            double[] geneticPositions
+    ) {
+
+        this.positions = positions;
+        this.geneticPositions = geneticPositions;
+
+    }
+
+    /**
+     * Parses the genetic map of the given chromosome from a tab-separated file
+     * with header: chromosome, position (bp), rate (cM/Mb), and genetic
+     * position (cM). The 'chr' prefix is ignored when matching chromosome
+     * names.
+     *
+     * @param file The file to parse.
+     * @param chromosome The chromosome to load.
+     *
+     * @return The genetic map of the chromosome.
+     */
+    public static GeneticMap parse(
+            File file,
+            String chromosome
+    ) {
+
+        String contig = stripPrefix(chromosome);
+
+        int[] positions = new int[1024];
+        double[] geneticPositions = new double[1024];
+        int nMarkers = 0;
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(file)) {
+
+            String line = reader.readLine();
+            int lineNumber = 1;
+
+            while ((line = reader.readLine()) != null) {
+
+                lineNumber++;
+
+                String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                if (lineSplit.length < 4) {
+
+                    throw new IllegalArgumentException(
+                            lineSplit.length + " elements found at line " + lineNumber + " of " + file + " where 4 expected. Please make sure that the file is tab-separated.\n" + line
+                    );
+                }
+
+                if (!stripPrefix(lineSplit[0]).equals(contig)) {
+
+                    continue;
+
+                }
+
+                int position;
+                double geneticPosition;
+
+                try {
+
+                    position = Integer.parseInt(lineSplit[1]);
+                    geneticPosition = Double.parseDouble(lineSplit[3]);
+
+                } catch (Exception e) {
+
+                    throw new IllegalArgumentException("Position (" + lineSplit[1] + ") or genetic position (" + lineSplit[3] + ") could not be parsed as a number at line " + lineNumber + " of " + file + ".");
+
+                }
+
+                if (nMarkers > 0 && (position < positions[nMarkers - 1] || geneticPosition < geneticPositions[nMarkers - 1])) {
+
+                    throw new IllegalArgumentException("Markers of " + file + " are not sorted by position, see line " + lineNumber + ".");
+
+                }
+
+                if (nMarkers == positions.length) {
+
+                    positions = Arrays.copyOf(positions, 2 * nMarkers);
+                    geneticPositions = Arrays.copyOf(geneticPositions, 2 * nMarkers);
+
+                }
+
+                positions[nMarkers] = position;
+                geneticPositions[nMarkers] = geneticPosition;
+                nMarkers++;
+
+            }
+        }
+
+        if (nMarkers == 0) {
+
+            throw new IllegalArgumentException("No marker found for chromosome " + chromosome + " in " + file + ".");
+
+        }
+
+        return new GeneticMap(
+                Arrays.copyOf(positions, nMarkers),
+                Arrays.copyOf(geneticPositions, nMarkers)
+        );
+    }
+
+    /**
+     * Returns the genetic position of the given position, interpolated
+     * linearly between the markers of the map. Positions outside the map get
+     * the genetic position of the closest marker.
+     *
+     * @param position The position in bp.
+     *
+     * @return The genetic position in cM.
+     */
+    public double getGeneticPosition(
+            int position
+    ) {
+
+        int i = Arrays.binarySearch(positions, position);
+
+        if (i >= 0) {
+
+            return geneticPositions[i];
+
+        }
+
+        int next = -i - 1;
+
+        if (next == 0) {
+
+            return geneticPositions[0];
+
+        }
+
+        if (next == positions.length) {
+
+            return geneticPositions[positions.length - 1];
+
+        }
+
+        int previous = next - 1;
+        double fraction = ((double) (position - positions[previous])) / (positions[next] - positions[previous]);
+
+        return geneticPositions[previous] + fraction * (geneticPositions[next] - geneticPositions[previous]);
+
+    }
+
+    /**
+     * Returns the genetic positions of the given positions.
+     *
+     * @param positions The positions in bp.
+     *
+     * @return The genetic positions in cM.
+     */
+    public double[] getGeneticPositions(
+            int[] positions
+    ) {
+
+        return Arrays.stream(positions)
+                .mapToDouble(
+                        position -> getGeneticPosition(position)
+                )
+                .toArray();
+
+    }
+
+    /**
+     * Returns the chromosome name without 'chr' prefix.
+     *
+     * @param chromosome The chromosome name.
+     *
+     * @return The chromosome name without prefix.
+     */
+    private static String stripPrefix(
+            String chromosome
+    ) {
+
+        return chromosome.startsWith("chr") ? chromosome.substring(3) : chromosome;
+
+    }
+}
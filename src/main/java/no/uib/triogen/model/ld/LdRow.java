@@ -0,0 +1,150 @@
+package no.uib.triogen.model.ld;
+
+import java.util.ArrayList;
+
+/**
+ * This class contains the r2 values between the alleles of a variant A and the
+ * variants in LD as primitive arrays.
+ *
+ * @author Marc Vaudel
+ */
+public class LdRow {
+
+    /**
+     * The indexes of the variants B in the LD matrix.
+     */
+    public final int[] variantB;
+    /**
+     * The correlated alleles for variant A.
+     */
+    public final short[] alleleA;
+    /**
+     * The correlated alleles for the variants B.
+     */
+    public final short[] alleleB;
+    /**
+     * The r2 values of the correlations.
+     */
+    public final float[] r2Values;
+
+    /**
+     * Constructor.
+     *
+     * @param variantB The indexes of the variants B in the LD matrix.
+     * @param alleleA The correlated alleles for variant A.
+     * @param alleleB The correlated alleles for the variants B.
+     * @param r2Values The r2 values of the correlations.
+     */
+    public LdRow(
+            int[] variantB,
+            short[] alleleA,
+            short[] alleleB,
+            float[] r2Values
+    ) {
+
+        this.variantB = variantB;
+        this.alleleA = alleleA;
+        this.alleleB = alleleB;
+        this.r2Values = r2Values;
+
+    }
+
+    /**
+     * Constructor for an empty row.
+     */
+    public LdRow() {
+
+        this(new int[0], new short[0], new short[0], new float[0]);
+
+    }
+
+    /**
+     * Returns the number of r2 values in the row.
+     *
+     * @return The number of r2 values in the row.
+     */
+    public int size() {
+
+        return variantB.length;
+
+    }
+
+    /**
+     * Returns the r2 at the given index as a new R2 object.
+     *
+     * @param i The index in the row.
+     *
+     * @return The r2 at the given index.
+     */
+    public R2 getR2(
+            int i
+    ) {
+
+        return new R2(variantB[i], alleleA[i], alleleB[i], r2Values[i]);
+
+    }
+
+    /**
+     * Returns the r2 values of the row as a list of new R2 objects.
+     *
+     * @return The r2 values of the row.
+     */
+    public ArrayList<R2> getR2s() {
+
+        ArrayList<R2> r2s = new ArrayList<>(size());
+
+        for (int i = 0; i < size(); i++) {
+
+            r2s.add(getR2(i));
+
+        }
+
+        return r2s;
+
+    }
+
+    /**
+     * Returns an estimate of the memory used by the row in bytes.
+     *
+     * @return An estimate of the memory used by the row in bytes.
+     */
+    public long getSizeInBytes() {
+
+        return 96 + size() * (Integer.BYTES + 2 * Short.BYTES + Float.BYTES);
+
+    }
+
+    /**
+     * Returns a row containing the r2 values of the given rows.
+     *
+     * @param rows The rows to concatenate.
+     *
+     * @return A row containing the r2 values of the given rows.
+     */
+    public static LdRow concatenate(
+            ArrayList<LdRow> rows
+    ) {
+
+        int size = rows.stream()
+                .mapToInt(LdRow::size)
+                .sum();
+
+        LdRow result = new LdRow(new int[size], new short[size], new short[size], new float[size]);
+
+        int offset = 0;
+
+        for (LdRow row : rows) {
+
+            System.arraycopy(row.variantB, 0, result.variantB, offset, row.size());
+            System.arraycopy(row.alleleA, 0, result.alleleA, offset, row.size());
+            System.arraycopy(row.alleleB, 0, result.alleleB, offset, row.size());
+            System.arraycopy(row.r2Values, 0, result.r2Values, offset, row.size());
+
+            offset += row.size();
+
+        }
+
+        return result;
+
+    }
+}
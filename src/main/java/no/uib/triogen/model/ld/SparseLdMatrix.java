@@ -0,0 +1,125 @@
+package no.uib.triogen.model.ld;
+
+/**
+ * The r2 values stored between the variants of a region as a sparse matrix in
+ * compressed row storage using primitive arrays.
+ *
+ * @author Marc Vaudel
+ */
+public class SparseLdMatrix {
+
+    /**
+     * The ids of the variants of the region, sorted by position.
+     */
+    public final String[] variantIds;
+    /**
+     * The positions of the variants of the region.
+     */
+    public final int[] positions;
+    /**
+     * The index of the first pair of every variant in the arrays of pairs, the
+     * last element is the number of pairs.
+     */
+    public final int[] rowStarts;
+    /**
+     * The index of the variant B of every pair in the variants of the region.
+     */
+    public final int[] columns;
+    /**
+     * The correlated alleles for the variants A.
+     */
+    public final short[] alleleA;
+    /**
+     * The correlated alleles for the variants B.
+     */
+    public final short[] alleleB;
+    /**
+     * The r2 values of the correlations.
+     */
+    public final float[] r2Values;
+
+    /**
+     * Constructor.
+     *
+     * @param variantIds The ids of the variants of the region, sorted by
+     * position.
+     * @param positions The positions of the variants of the region.
+     * @param rowStarts The index of the first pair of every variant in the
+     * arrays of pairs, the last element is the number of pairs.
+     * @param columns The index of the variant B of every pair in the variants
+     * of the region.
+     * @param alleleA The correlated alleles for the variants A.
+     * @param alleleB The correlated alleles for the variants B.
+     * @param r2Values The r2 values of the correlations.
+     */
+    public SparseLdMatrix(
+            String[] variantIds,
+            int[] positions,
+            int[] rowStarts,
+            int[] columns,
+            short[] alleleA,
+            short[] alleleB,
+            float[] r2Values
+    ) {
+
+        this.variantIds = variantIds;
+        this.positions = positions;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.alleleA = alleleA;
+        this.alleleB = alleleB;
+        this.r2Values = r2Values;
+
+    }
+
+    /**
+     * Returns the number of variants in the region.
+     *
+     * @return The number of variants in the region.
+     */
+    public int getNVariants() {
+
+        return variantIds.length;
+
+    }
+
+    /**
+     * Returns the number of pairs stored.
+     *
+     * @return The number of pairs stored.
+     */
+    public int getNPairs() {
+
+        return r2Values.length;
+
+    }
+
+    /**
+     * Returns the highest r2 stored between the alleles of the given variants,
+     * 0 if none.
+     *
+     * @param i The index of variant A in the region.
+     * @param j The index of variant B in the region.
+     *
+     * @return The highest r2 stored between the alleles of the given variants.
+     */
+    public float getMaxR2(
+            int i,
+            int j
+    ) {
+
+        float result = 0f;
+
+        for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+
+            if (columns[k] == j) {
+
+                result = Math.max(result, r2Values[k]);
+
+            }
+        }
+
+        return result;
+
+    }
+}
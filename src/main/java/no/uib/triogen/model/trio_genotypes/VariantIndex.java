@@ -1,6 +1,7 @@
 package no.uib.triogen.model.trio_genotypes;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import no.uib.triogen.utils.SimpleSemaphore;
 
@@ -23,6 +24,18 @@ public class VariantIndex {
      * List of added rsIds.
      */
     private final ArrayList<String> rsidList = new ArrayList<>();
+    /**
+     * The contigs of the variants, null for variants without location.
+     */
+    private String[] contigs = new String[0];
+    /**
+     * The positions of the variants.
+     */
+    private int[] positions = new int[0];
+    /**
+     * The number of variants with location set.
+     */
+    private int nLocations = 0;
     /**
      * Semaphore for the edition of the index.
      */
@@ -104,7 +117,13 @@ public class VariantIndex {
      */
     public String[] getVariantIds() {
 
-        return idList.toArray(new String[idList.size()]);
+        semaphore.acquire();
+
+        String[] result = idList.toArray(new String[idList.size()]);
+
+        semaphore.release();
+
+        return result;
 
     }
 
@@ -117,8 +136,91 @@ public class VariantIndex {
      */
     public String[] getRsIds() {
 
-        return rsidList.toArray(new String[rsidList.size()]);
+        semaphore.acquire();
+
+        String[] result = rsidList.toArray(new String[rsidList.size()]);
+
+        semaphore.release();
+
+        return result;
+
+    }
+
+    /**
+     * Sets the location of the given variant. Ignored if the variant is not
+     * in the index.
+     *
+     * @param variantId The id of the variant.
+     * @param contig The contig of the variant.
+     * @param position The position of the variant.
+     */
+    public void setLocation(
+            String variantId,
+            String contig,
+            int position
+    ) {
+
+        semaphore.acquire();
+
+        Integer index = indexMap.get(variantId);
+
+        if (index != null) {
+
+            if (index >= contigs.length) {
+
+                contigs = Arrays.copyOf(contigs, idList.size());
+                positions = Arrays.copyOf(positions, idList.size());
+
+            }
+
+            if (contigs[index] == null) {
+
+                nLocations++;
+
+            }
+
+            contigs[index] = contig;
+            positions[index] = position;
+
+        }
+
+        semaphore.release();
 
     }
 
+    /**
+     * Returns the contigs of the variants as array indexed according to the
+     * mapping, null if the location is not set for all variants.
+     *
+     * @return The contigs of the variants.
+     */
+    public String[] getContigs() {
+
+        semaphore.acquire();
+
+        String[] result = nLocations == idList.size() ? Arrays.copyOf(contigs, nLocations) : null;
+
+        semaphore.release();
+
+        return result;
+
+    }
+
+    /**
+     * Returns the positions of the variants as array indexed according to the
+     * mapping, null if the location is not set for all variants.
+     *
+     * @return The positions of the variants.
+     */
+    public int[] getPositions() {
+
+        semaphore.acquire();
+
+        int[] result = nLocations == idList.size() ? Arrays.copyOf(positions, nLocations) : null;
+
+        semaphore.release();
+
+        return result;
+
+    }
 }
@@ -0,0 +1,212 @@
+package no.uib.triogen.processing.haplotype_cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
+import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheReader;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheWriter;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+
+/**
+ * This class iterates through genotypes and writes the haplotypes of the
+ * trios to a cache file next to the bgen file.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheComputer {
+
+    /**
+     * The file containing the genotypes.
+     */
+    private final File genotypesFile;
+    /**
+     * The allele inheritance map.
+     */
+    private final HashMap<Integer, char[]> inheritanceMap;
+    /**
+     * The default ploidy for mothers.
+     */
+    private final int defaultMotherPloidy;
+    /**
+     * The default ploidy for fathers.
+     */
+    private final int defaultFatherPloidy;
+    /**
+     * The map of trios.
+     */
+    private final ChildToParentMap childToParentMap;
+    /**
+     * The number of variants to process in parallel.
+     */
+    private final int nVariants;
+    /**
+     * The logger.
+     */
+    private final SimpleCliLogger logger;
+
+    /**
+     * Constructor.
+     *
+     * @param genotypesFile The file containing the genotypes.
+     * @param inheritanceMap The inheritance map for the given file.
+     * @param defaultMotherPloidy The default ploidy for mothers.
+     * @param defaultFatherPloidy The default ploidy for fathers.
+     * @param childToParentMap The map of trios.
+     * @param nVariants The number of variants to process in parallel.
+     * @param logger The logger.
+     */
+    public HaplotypeCacheComputer(
+            File genotypesFile,
+            HashMap<Integer, char[]> inheritanceMap,
+            int defaultMotherPloidy,
+            int defaultFatherPloidy,
+            ChildToParentMap childToParentMap,
+            int nVariants,
+            SimpleCliLogger logger
+    ) {
+
+        this.genotypesFile = genotypesFile;
+        this.inheritanceMap = inheritanceMap;
+        this.defaultMotherPloidy = defaultMotherPloidy;
+        this.defaultFatherPloidy = defaultFatherPloidy;
+        this.childToParentMap = childToParentMap;
+        this.nVariants = nVariants;
+        this.logger = logger;
+
+    }
+
+    /**
+     * Writes the cache.
+     *
+     * @param timeOutDays The time out time in days.
+     *
+     * @throws InterruptedException exception thrown if the process was
+     * interrupted
+     * @throws TimeoutException exception thrown if the process timed out
+     * @throws IOException exception thrown if an i/o error occurred
+     */
+    public void run(
+            int timeOutDays
+    ) throws InterruptedException, TimeoutException, IOException {
+
+        logger.logMessage("Parsing " + genotypesFile.getAbsolutePath());
+
+        long start = Instant.now().getEpochSecond();
+
+        BgenIndex bgenIndex = BgenIndex.getBgenIndex(genotypesFile);
+        BgenFileReader bgenFileReader = new BgenFileReader(
+                genotypesFile,
+                bgenIndex,
+                inheritanceMap,
+                defaultMotherPloidy,
+                defaultFatherPloidy
+        );
+
+        BgenSummary bgenSummary = BgenSummary.getBgenSummary(
+                genotypesFile,
+                bgenIndex,
+                childToParentMap
+        );
+
+        long end = Instant.now().getEpochSecond();
+        long duration = end - start;
+
+        logger.logMessage("Parsing " + genotypesFile + " done (" + duration + " seconds)");
+
+        File cacheFile = HaplotypeCacheUtils.getDefaultCacheFile(genotypesFile);
+        File tempFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+
+        logger.logMessage("Writing haplotypes of " + childToParentMap.children.length + " trios to " + cacheFile + " using " + nVariants + " threads.");
+
+        start = Instant.now().getEpochSecond();
+
+        VariantIterator iterator = new VariantIterator(
+                bgenIndex,
+                logger,
+                "Haplotype cache for " + genotypesFile.getAbsolutePath(),
+                true
+        );
+
+        try (HaplotypeCacheWriter writer = new HaplotypeCacheWriter(
+                tempFile,
+                bgenIndex.variantIdArray.length,
+                childToParentMap,
+                HaplotypeCacheReader.getFingerprint(
+                        genotypesFile,
+                        childToParentMap,
+                        inheritanceMap,
+                        defaultMotherPloidy,
+                        defaultFatherPloidy
+                )
+        )) {
+
+            ExecutorService pool = Executors.newFixedThreadPool(nVariants);
+
+            IntStream.range(0, nVariants)
+                    .mapToObj(
+                            i -> new HaplotypeCacheRunnable(
+                                    writer,
+                                    iterator,
+                                    bgenIndex,
+                                    bgenFileReader,
+                                    bgenSummary,
+                                    childToParentMap,
+                                    logger
+                            )
+                    )
+                    .forEach(
+                            worker -> pool.submit(worker)
+                    );
+
+            pool.shutdown();
+
+            if (!pool.awaitTermination(timeOutDays, TimeUnit.DAYS)) {
+
+                throw new TimeoutException("Analysis timed out (time out: " + timeOutDays + " days)");
+
+            }
+
+            bgenSummary.save();
+
+        }
+
+        try {
+
+            bgenFileReader.close();
+
+        } catch (Exception e) {
+
+            throw new IOException(e);
+
+        }
+
+        if (cacheFile.exists() && !cacheFile.delete()) {
+
+            throw new IOException("Failed to delete previous cache " + cacheFile + ".");
+
+        }
+        if (!tempFile.renameTo(cacheFile)) {
+
+            throw new IOException("Failed to move " + tempFile + " to " + cacheFile + ".");
+
+        }
+
+        end = Instant.now().getEpochSecond();
+        duration = end - start;
+
+        logger.logMessage("Haplotype cache for " + genotypesFile.getName() + " done (" + bgenIndex.variantInformationArray.length + " variants processed in " + duration + " seconds)");
+
+    }
+}
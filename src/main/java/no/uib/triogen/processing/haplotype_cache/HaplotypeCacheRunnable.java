@@ -0,0 +1,136 @@
+package no.uib.triogen.processing.haplotype_cache;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
+import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheWriter;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+
+/**
+ * Runnable for the haplotype cache writer.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheRunnable implements Runnable {
+
+    /**
+     * The iterator.
+     */
+    private final VariantIterator iterator;
+    /**
+     * The index of the bgen file to process.
+     */
+    private final BgenIndex bgenIndex;
+    /**
+     * The reader for the bgen file to process.
+     */
+    private final BgenFileReader bgenFileReader;
+    /**
+     * The summary of the variants of the bgen file.
+     */
+    private final BgenSummary bgenSummary;
+    /**
+     * The map of trios.
+     */
+    private final ChildToParentMap childToParentMap;
+    /**
+     * The writer for the cache.
+     */
+    private final HaplotypeCacheWriter writer;
+    /**
+     * The logger.
+     */
+    private final SimpleCliLogger logger;
+    /**
+     * Boolean indicating whether the runnable has been canceled.
+     */
+    private static boolean canceled = false;
+    /**
+     * The decompressor to use.
+     */
+    private final ZstdDecompressor decompressor = new ZstdDecompressor();
+    /**
+     * The compressor to use.
+     */
+    private final ZstdCompressor compressor = new ZstdCompressor();
+
+    /**
+     * Constructor.
+     *
+     * @param writer The writer for the cache.
+     * @param iterator The variant iterator.
+     * @param bgenIndex The index of the bgen file.
+     * @param bgenFileReader The reader for the bgen file.
+     * @param bgenSummary The summary of the variants of the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param logger The logger.
+     */
+    public HaplotypeCacheRunnable(
+            HaplotypeCacheWriter writer,
+            VariantIterator iterator,
+            BgenIndex bgenIndex,
+            BgenFileReader bgenFileReader,
+            BgenSummary bgenSummary,
+            ChildToParentMap childToParentMap,
+            SimpleCliLogger logger
+    ) {
+
+        this.writer = writer;
+        this.iterator = iterator;
+        this.bgenIndex = bgenIndex;
+        this.bgenFileReader = bgenFileReader;
+        this.bgenSummary = bgenSummary;
+        this.childToParentMap = childToParentMap;
+        this.logger = logger;
+
+    }
+
+    @Override
+    public void run() {
+
+        try {
+
+            Integer tempIndex;
+            while ((tempIndex = iterator.next()) != null && !canceled) {
+
+                int variantIndex = tempIndex;
+
+                if (bgenIndex.variantInformationArray[variantIndex].alleles.length > 1) {
+
+                    BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
+                    variantData.parse(
+                            childToParentMap,
+                            decompressor
+                    );
+
+                    bgenSummary.register(variantIndex, variantData);
+
+                    writer.addVariant(variantIndex, variantData, compressor);
+
+                }
+            }
+
+        } catch (Throwable t) {
+
+            canceled = true;
+
+            logger.logError(
+                    Arrays.stream(t.getStackTrace())
+                            .map(
+                                    element -> element.toString()
+                            )
+                            .collect(Collectors.joining(" "))
+            );
+
+            t.printStackTrace();
+
+        }
+    }
+}
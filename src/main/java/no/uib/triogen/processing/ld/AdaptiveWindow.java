@@ -0,0 +1,160 @@
+package no.uib.triogen.processing.ld;
+
+/**
+ * Windows of the blocked engine bounded in genetic distance. The LD of a
+ * variant is computed with the following variants in order until a run of
+ * consecutive pairs below the minimal r2 is found beyond a given genetic
+ * distance.
+ *
+ * @author Marc Vaudel
+ */
+public class AdaptiveWindow {
+
+    /**
+     * The default maximal genetic distance between variants in cM.
+     */
+    public static final double DEFAULT_MAX_CM = 1.0;
+    /**
+     * The default genetic distance in cM beyond which the scan of a variant
+     * can stop.
+     */
+    public static final double DEFAULT_EXIT_CM = 0.1;
+    /**
+     * The default number of consecutive pairs below the minimal r2 after which
+     * the scan of a variant stops.
+     */
+    public static final int DEFAULT_EXIT_RUN = 50;
+    /**
+     * The genetic positions of the variants in the bgen file in cM.
+     */
+    private final double[] geneticPositions;
+    /**
+     * The maximal genetic distance between variants in cM.
+     */
+    public final double maxCm;
+    /**
+     * The genetic distance in cM beyond which the scan of a variant can stop.
+     */
+    public final double exitCm;
+    /**
+     * The number of consecutive pairs below the minimal r2 after which the
+     * scan of a variant stops.
+     */
+    public final int exitRun;
+
+    /**
+     * Constructor.
+     *
+     * @param geneticPositions The genetic positions of the variants in the
+     * bgen file in cM, sorted in ascending order.
+     * @param maxCm The maximal genetic distance between variants in cM.
+     * @param exitCm The genetic distance in cM beyond which the scan of a
+     * variant can stop.
+     * @param exitRun The number of consecutive pairs below the minimal r2
+     * after which the scan of a variant stops.
+     */
+    public AdaptiveWindow(
+            double[] geneticPositions,
+            double maxCm,
+            double exitCm,
+            int exitRun
+    ) {
+
+        this.geneticPositions = geneticPositions;
+        this.maxCm = maxCm;
+        this.exitCm = exitCm;
+        this.exitRun = exitRun;
+
+    }
+
+    /**
+     * Returns the index of the first variant within the maximal genetic
+     * distance of the given variant.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The index of the first variant in the window.
+     */
+    public int getWindowStart(
+            int variantIndex
+    ) {
+
+        double start = geneticPositions[variantIndex] - maxCm;
+
+        int low = 0;
+        int high = variantIndex;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (geneticPositions[mid] < start) {
+
+                low = mid + 1;
+
+            } else {
+
+                high = mid;
+
+            }
+        }
+
+        return low;
+
+    }
+
+    /**
+     * Returns the index of the last variant within the maximal genetic
+     * distance of the given variant.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The index of the last variant in the window.
+     */
+    public int getWindowEnd(
+            int variantIndex
+    ) {
+
+        double end = geneticPositions[variantIndex] + maxCm;
+
+        int low = variantIndex + 1;
+        int high = geneticPositions.length;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (geneticPositions[mid] <= end) {
+
+                low = mid + 1;
+
+            } else {
+
+                high = mid;
+
+            }
+        }
+
+        return low - 1;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the second variant is far enough
+     * from the first variant for the scan of the first variant to stop.
+     *
+     * @param variantIndexA The index of the first variant in the bgen file.
+     * @param variantIndexB The index of the second variant in the bgen file.
+     *
+     * @return A boolean indicating whether the scan can stop at the second
+     * variant.
+     */
+    public boolean canExit(
+            int variantIndexA,
+            int variantIndexB
+    ) {
+
+        return geneticPositions[variantIndexB] - geneticPositions[variantIndexA] >= exitCm;
+
+    }
+}
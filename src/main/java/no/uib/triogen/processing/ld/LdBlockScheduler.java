@@ -0,0 +1,478 @@
+package no.uib.triogen.processing.ld;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.ld.R2;
+
+/**
+ * Hands out blocks of consecutive variants to the threads computing LD using
+ * the blocked engine. Every pair of variants is computed once by the block of
+ * the first variant, the results of the second variant are kept here until
+ * its block is written.
+ *
+ * @author Marc Vaudel
+ */
+public class LdBlockScheduler {
+
+    /**
+     * The number of variants to process before showing progress.
+     */
+    private static final int N_PROGRESS = 100000;
+    /**
+     * The positions of the variants in the bgen file.
+     */
+    private final int[] positions;
+    /**
+     * The maximal bp distance between variants.
+     */
+    private final int maxDistance;
+    /**
+     * The index of the first variant to process.
+     */
+    private final int rangeStart;
+    /**
+     * The index after the last variant to process.
+     */
+    private final int rangeEnd;
+    /**
+     * The number of variants per block.
+     */
+    private final int blockSize;
+    /**
+     * The variants to skip, ignored if null.
+     */
+    private final BitSet skipped;
+    /**
+     * The windows bounded in genetic distance, null if the windows are only
+     * bounded in bp.
+     */
+    private final AdaptiveWindow adaptiveWindow;
+    /**
+     * The index of the next block to hand out.
+     */
+    private final AtomicInteger nextBlock = new AtomicInteger(0);
+    /**
+     * Flags indicating whether a block has variants to write.
+     */
+    private final boolean[] toCompute;
+    /**
+     * Flags indicating whether the LD of a block has been computed: 1 if
+     * computed or not to compute, 0 otherwise.
+     */
+    private final AtomicIntegerArray computed;
+    /**
+     * The number of variants written.
+     */
+    private final AtomicInteger nWritten = new AtomicInteger(0);
+    /**
+     * The results computed by previous blocks for every variant.
+     */
+    private final ConcurrentHashMap<Integer, ArrayList<IndexedR2>> pending = new ConcurrentHashMap<>();
+    /**
+     * The logger to use. Ignored if null.
+     */
+    private final SimpleCliLogger logger;
+    /**
+     * The prefix to use for the log.
+     */
+    private final String logPrefix;
+
+    /**
+     * Constructor.
+     *
+     * @param positions The positions of the variants in the bgen file, sorted
+     * in ascending order.
+     * @param maxDistance The maximal bp distance between variants.
+     * @param rangeStart The index of the first variant to process.
+     * @param rangeEnd The index after the last variant to process.
+     * @param blockSize The number of variants per block.
+     * @param skipped The variants to skip, ignored if null.
+     * @param adaptiveWindow The windows bounded in genetic distance, null to
+     * bound windows in bp only.
+     * @param logger The logger to use. Ignored if null.
+     * @param logPrefix The prefix to use for the log.
+     */
+    public LdBlockScheduler(
+            int[] positions,
+            int maxDistance,
+            int rangeStart,
+            int rangeEnd,
+            int blockSize,
+            BitSet skipped,
+            AdaptiveWindow adaptiveWindow,
+            SimpleCliLogger logger,
+            String logPrefix
+    ) {
+
+        this.positions = positions;
+        this.maxDistance = maxDistance;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.blockSize = blockSize;
+        this.skipped = skipped;
+        this.adaptiveWindow = adaptiveWindow;
+        this.logger = logger;
+        this.logPrefix = logPrefix;
+
+        int nBlocks = Math.max(rangeEnd - rangeStart + blockSize - 1, 0) / blockSize;
+
+        toCompute = new boolean[nBlocks];
+        computed = new AtomicIntegerArray(nBlocks);
+
+        for (int block = 0; block < nBlocks; block++) {
+
+            toCompute[block] = hasVariantsToWrite(block);
+
+            if (!toCompute[block]) {
+
+                computed.set(block, 1);
+
+            }
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the given block has variants to
+     * write.
+     *
+     * @param block The index of the block.
+     *
+     * @return A boolean indicating whether the given block has variants to
+     * write.
+     */
+    private boolean hasVariantsToWrite(
+            int block
+    ) {
+
+        for (int i = getBlockStart(block); i < getBlockEnd(block); i++) {
+
+            if (isWritten(i)) {
+
+                return true;
+
+            }
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Returns the index of the next block to process, -1 if none.
+     *
+     * @return The index of the next block to process.
+     */
+    public int nextBlock() {
+
+        int block;
+
+        while ((block = nextBlock.getAndIncrement()) < computed.length()) {
+
+            if (computed.get(block) == 0) {
+
+                return block;
+
+            }
+        }
+
+        return -1;
+
+    }
+
+    /**
+     * Returns the index of the first variant of the given block.
+     *
+     * @param block The index of the block.
+     *
+     * @return The index of the first variant of the given block.
+     */
+    public int getBlockStart(
+            int block
+    ) {
+
+        return rangeStart + block * blockSize;
+
+    }
+
+    /**
+     * Returns the index after the last variant of the given block.
+     *
+     * @param block The index of the block.
+     *
+     * @return The index after the last variant of the given block.
+     */
+    public int getBlockEnd(
+            int block
+    ) {
+
+        return Math.min(getBlockStart(block) + blockSize, rangeEnd);
+
+    }
+
+    /**
+     * Returns the index of the first variant in the window of the given
+     * variant.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The index of the first variant in the window.
+     */
+    public int getWindowStart(
+            int variantIndex
+    ) {
+
+        int windowStart = P0Cache.getFirstIndex(positions, positions[variantIndex] - maxDistance);
+
+        return adaptiveWindow == null ? windowStart : Math.max(windowStart, adaptiveWindow.getWindowStart(variantIndex));
+
+    }
+
+    /**
+     * Returns the index of the last variant in the window of the given
+     * variant.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The index of the last variant in the window.
+     */
+    public int getWindowEnd(
+            int variantIndex
+    ) {
+
+        int windowEnd = P0Cache.getLastIndex(positions, positions[variantIndex] + maxDistance);
+
+        return adaptiveWindow == null ? windowEnd : Math.min(windowEnd, adaptiveWindow.getWindowEnd(variantIndex));
+
+    }
+
+    /**
+     * Returns the windows bounded in genetic distance.
+     *
+     * @return The windows bounded in genetic distance, null if the windows
+     * are only bounded in bp.
+     */
+    public AdaptiveWindow getAdaptiveWindow() {
+
+        return adaptiveWindow;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the results of the given variant
+     * need to be written.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the results of the given variant
+     * need to be written.
+     */
+    public boolean isWritten(
+            int variantIndex
+    ) {
+
+        return variantIndex >= rangeStart && variantIndex < rangeEnd
+                && (skipped == null || !skipped.get(variantIndex));
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the LD of the given variant with
+     * the following variants is computed by its block.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the LD of the given variant is
+     * computed by its block.
+     */
+    public boolean isCovered(
+            int variantIndex
+    ) {
+
+        if (variantIndex < rangeStart || variantIndex >= rangeEnd) {
+
+            return false;
+
+        }
+
+        int block = (variantIndex - rangeStart) / blockSize;
+
+        return toCompute[block];
+
+    }
+
+    /**
+     * Returns the index of the first variant that can be needed by a block
+     * starting at or after the given variant.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The index of the first variant that can be needed.
+     */
+    public int getFirstNeeded(
+            int variantIndex
+    ) {
+
+        if (variantIndex >= positions.length) {
+
+            return variantIndex;
+
+        }
+
+        for (int i = getWindowStart(variantIndex); i < variantIndex; i++) {
+
+            if (!isCovered(i)) {
+
+                return i;
+
+            }
+        }
+
+        return variantIndex;
+
+    }
+
+    /**
+     * Marks the LD of the given block as computed.
+     *
+     * @param block The index of the block.
+     */
+    public void setComputed(
+            int block
+    ) {
+
+        computed.set(block, 1);
+
+    }
+
+    /**
+     * Returns a boolean indicating whether all the blocks that can contribute
+     * results to the given block have been computed.
+     *
+     * @param block The index of the block.
+     *
+     * @return A boolean indicating whether the results of the given block are
+     * complete.
+     */
+    public boolean isComplete(
+            int block
+    ) {
+
+        int windowStart = getWindowStart(getBlockStart(block));
+        int firstBlock = Math.max(windowStart - rangeStart, 0) / blockSize;
+
+        for (int previousBlock = firstBlock; previousBlock < block; previousBlock++) {
+
+            if (computed.get(previousBlock) == 0) {
+
+                return false;
+
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Adds results for a variant of a following block.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param r2s The results to add.
+     */
+    public void addPending(
+            int variantIndex,
+            ArrayList<IndexedR2> r2s
+    ) {
+
+        pending.merge(
+                variantIndex,
+                r2s,
+                (list1, list2) -> {
+                    list1.addAll(list2);
+                    return list1;
+                }
+        );
+    }
+
+    /**
+     * Returns and removes the results computed by previous blocks for the
+     * given variant.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The results computed by previous blocks, null if none.
+     */
+    public ArrayList<IndexedR2> removePending(
+            int variantIndex
+    ) {
+
+        return pending.remove(variantIndex);
+
+    }
+
+    /**
+     * Registers that the variants of a block have been written and logs
+     * progress.
+     *
+     * @param nVariants The number of variants written.
+     */
+    public void registerWritten(
+            int nVariants
+    ) {
+
+        int before = nWritten.getAndAdd(nVariants);
+        int after = before + nVariants;
+
+        if (logger != null && after / N_PROGRESS > before / N_PROGRESS) {
+
+            int total = rangeEnd - rangeStart;
+            double progress = ((double) Math.round(1000.0 * after / total)) / 10;
+
+            logger.logMessage(logPrefix + "    " + after + " processed of " + total + " (" + progress + "%)");
+
+        }
+    }
+
+    /**
+     * An r2 with a key allowing to sort the results of a variant in the same
+     * order as the pairwise engine: by index of the second variant, then rank
+     * of the allele of the first variant, then rank of the allele of the
+     * second variant.
+     */
+    public static class IndexedR2 {
+
+        /**
+         * The sorting key.
+         */
+        public final long key;
+        /**
+         * The r2.
+         */
+        public final R2 r2;
+
+        /**
+         * Constructor.
+         *
+         * @param variantIndexB The index of the second variant in the bgen
+         * file.
+         * @param alleleRankA The rank of the allele of the first variant.
+         * @param alleleRankB The rank of the allele of the second variant.
+         * @param r2 The r2.
+         */
+        public IndexedR2(
+                int variantIndexB,
+                int alleleRankA,
+                int alleleRankB,
+                R2 r2
+        ) {
+
+            this.key = ((long) variantIndexB << 32) | ((long) alleleRankA << 16) | alleleRankB;
+            this.r2 = r2;
+
+        }
+    }
+}
@@ -0,0 +1,1000 @@
+package no.uib.triogen.processing.ld;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
+import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.io.ld.LdMatrixWriter;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.model.genome.VariantInformation;
+import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.trio_genotypes.VariantIndex;
+import no.uib.triogen.processing.ld.LdBlockScheduler.IndexedR2;
+
+/**
+ * Runnable for the LD matrix writer computing the LD of blocks of consecutive
+ * variants with the variants of their windows. For every block, the sums of
+ * products between the alleles of the block and the alleles of the window are
+ * computed as a matrix product, tiled over parents so that the rows of the
+ * block stay in cache. Every pair of variants is computed once and written in
+ * both directions.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixBlockedRunnable implements Runnable {
+
+    /**
+     * The number of variants per block.
+     */
+    public static final int BLOCK_SIZE = 64;
+    /**
+     * The number of parents per tile.
+     */
+    private static final int PARENT_TILE = 1024;
+    /**
+     * The number of variants of the window per chunk when the windows are
+     * adaptive.
+     */
+    private static final int CHUNK_SIZE = 64;
+    /**
+     * The time in nanoseconds to wait before checking again whether the
+     * results of a block are complete.
+     */
+    private static final long WAIT_NANOS = 100000l;
+    /**
+     * The writer, null if the matrix is not written.
+     */
+    private final LdMatrixWriter writer;
+    /**
+     * The LD scores to accumulate, null if not computed.
+     */
+    private final LdScores ldScores;
+    /**
+     * The index of the bgen file to process.
+     */
+    private final BgenIndex bgenIndex;
+    /**
+     * The reader for the bgen file to process.
+     */
+    private final BgenFileReader bgenFileReader;
+    /**
+     * The summary of the variants of the bgen file.
+     */
+    private final BgenSummary bgenSummary;
+    /**
+     * The scheduler handing out blocks.
+     */
+    private final LdBlockScheduler scheduler;
+    /**
+     * Cache for the probability of homozygocity.
+     */
+    private final P0Cache p0Cache;
+    /**
+     * The map of trios.
+     */
+    private final ChildToParentMap childToParentMap;
+    /**
+     * Index for the variants.
+     */
+    private final VariantIndex variantIndex;
+    /**
+     * Index of the thread of this runnable.
+     */
+    private final int threadIndex;
+    /**
+     * The logger.
+     */
+    private final SimpleCliLogger logger;
+    /**
+     * Boolean indicating whether the runnable has been canceled.
+     */
+    private static boolean canceled = false;
+    /**
+     * The minimal ld r2 to report (inclusive).
+     */
+    private final double minR2;
+    /**
+     * The compressor to use.
+     */
+    private final ZstdCompressor compressor = new ZstdCompressor();
+    /**
+     * The decompressor to use.
+     */
+    private final ZstdDecompressor decompressor = new ZstdDecompressor();
+    /**
+     * The allele frequency threshold to use.
+     */
+    private final double alleleFrequencyThreshold;
+    /**
+     * Counter for the number of variant pairs processed.
+     */
+    private final AtomicLong pairCounter;
+
+    /**
+     * Constructor.
+     *
+     * @param writer The writer to use, null if the matrix is not written.
+     * @param ldScores The LD scores to accumulate, null if not computed.
+     * @param scheduler The scheduler handing out blocks.
+     * @param bgenIndex The index of the bgen file.
+     * @param bgenFileReader The reader for the bgen file.
+     * @param bgenSummary The summary of the variants of the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param minR2 The minimal ld r2 to report (inclusive).
+     * @param alleleFrequencyThreshold The allele frequency threshold to use.
+     * Only variants having at least two alleles passing the threshold will be
+     * considered.
+     * @param variantIndex The index to use for the variants.
+     * @param p0Cache The cache for the probability of homozygocity.
+     * @param pairCounter Counter for the number of variant pairs processed.
+     * @param threadIndex The index of the thread.
+     * @param logger The logger.
+     */
+    public LdMatrixBlockedRunnable(
+            LdMatrixWriter writer,
+            LdScores ldScores,
+            LdBlockScheduler scheduler,
+            BgenIndex bgenIndex,
+            BgenFileReader bgenFileReader,
+            BgenSummary bgenSummary,
+            ChildToParentMap childToParentMap,
+            double minR2,
+            double alleleFrequencyThreshold,
+            VariantIndex variantIndex,
+            P0Cache p0Cache,
+            AtomicLong pairCounter,
+            int threadIndex,
+            SimpleCliLogger logger
+    ) {
+
+        this.writer = writer;
+        this.ldScores = ldScores;
+        this.scheduler = scheduler;
+        this.bgenIndex = bgenIndex;
+        this.bgenFileReader = bgenFileReader;
+        this.bgenSummary = bgenSummary;
+        this.childToParentMap = childToParentMap;
+        this.minR2 = minR2;
+        this.alleleFrequencyThreshold = alleleFrequencyThreshold;
+        this.variantIndex = variantIndex;
+        this.p0Cache = p0Cache;
+        this.pairCounter = pairCounter;
+        this.threadIndex = threadIndex;
+        this.logger = logger;
+
+    }
+
+    @Override
+    public void run() {
+
+        long nPairs = 0;
+
+        try {
+
+            int block;
+            while ((block = scheduler.nextBlock()) != -1 && !canceled) {
+
+                nPairs += processBlock(block);
+
+            }
+
+        } catch (Throwable t) {
+
+            canceled = true;
+
+            logger.logError(
+                    Arrays.stream(t.getStackTrace())
+                            .map(
+                                    element -> element.toString()
+                            )
+                            .collect(Collectors.joining(" "))
+            );
+
+            t.printStackTrace();
+
+        } finally {
+
+            p0Cache.release(threadIndex);
+            pairCounter.addAndGet(nPairs);
+
+        }
+    }
+
+    /**
+     * Computes the LD of the variants of the given block with the variants of
+     * their window, and writes the results when the previous blocks are
+     * computed.
+     *
+     * @param block The index of the block.
+     *
+     * @return The number of variant pairs processed.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the results.
+     */
+    private long processBlock(
+            int block
+    ) throws IOException {
+
+        int blockStart = scheduler.getBlockStart(block);
+        int blockEnd = scheduler.getBlockEnd(block);
+        int windowStart = scheduler.getWindowStart(blockStart);
+        int windowEnd = scheduler.getWindowEnd(blockEnd - 1);
+
+        p0Cache.setWindowStart(threadIndex, scheduler.getFirstNeeded(blockStart));
+
+        // The variants of the window: the variants before the block that are not computed by their own block, then the variants of the block and after
+        int[] indexes = new int[windowEnd - windowStart + 1];
+        P0Cache.P0[] p0s = new P0Cache.P0[indexes.length];
+        int nVariants = 0;
+
+        for (int i = windowStart; i <= windowEnd; i++) {
+
+            if (i < blockStart && scheduler.isCovered(i)) {
+
+                continue;
+
+            }
+
+            P0Cache.P0 p0 = isExcluded(i) ? null : p0Cache.get(i, this::parse);
+
+            if (p0 != null) {
+
+                indexes[nVariants] = i;
+                p0s[nVariants] = p0;
+                nVariants++;
+
+            }
+        }
+
+        int firstA = lowerBound(indexes, 0, nVariants, blockStart);
+        int endA = lowerBound(indexes, firstA, nVariants, blockEnd);
+
+        // The rows of the alleles of every variant
+        int[] rowOffsets = new int[nVariants + 1];
+
+        for (int j = 0; j < nVariants; j++) {
+
+            rowOffsets[j + 1] = rowOffsets[j] + p0s[j].orderedAlleles.length - 1;
+
+        }
+
+        // The variants of the block to compute against every variant of the window
+        int[] fromA = new int[nVariants];
+        int[] toA = new int[nVariants];
+
+        for (int j = 0; j < nVariants; j++) {
+
+            int indexB = indexes[j];
+
+            if (indexB >= blockStart) {
+
+                fromA[j] = lowerBound(indexes, firstA, endA, scheduler.getWindowStart(indexB));
+                toA[j] = lowerBound(indexes, firstA, endA, indexB + 1);
+
+            } else {
+
+                fromA[j] = firstA;
+                toA[j] = lowerBound(indexes, firstA, endA, scheduler.getWindowEnd(indexB) + 1);
+
+            }
+        }
+
+        // The rows of the alleles of all variants
+        long[][] hardCallRows = null;
+        float[][] rows = null;
+
+        if (p0Cache.isHardCalls()) {
+
+            hardCallRows = new long[rowOffsets[nVariants]][];
+
+            for (int j = 0; j < nVariants; j++) {
+
+                System.arraycopy(p0s[j].homozygous, 0, hardCallRows, rowOffsets[j], rowOffsets[j + 1] - rowOffsets[j]);
+
+            }
+
+        } else {
+
+            rows = new float[rowOffsets[nVariants]][];
+
+            for (int j = 0; j < nVariants; j++) {
+
+                System.arraycopy(p0s[j].pHomozygous, 0, rows, rowOffsets[j], rowOffsets[j + 1] - rowOffsets[j]);
+
+            }
+        }
+
+        double[][] products = new double[rowOffsets[endA] - rowOffsets[firstA]][rowOffsets[nVariants]];
+
+        // Gather the results, by chunks of the window with adaptive windows so that the scan of a variant can stop early
+        AdaptiveWindow adaptiveWindow = scheduler.getAdaptiveWindow();
+        int chunkSize = adaptiveWindow == null ? Math.max(nVariants, 1) : CHUNK_SIZE;
+
+        long nPairs = 0;
+
+        ArrayList<IndexedR2>[] blockResults = new ArrayList[blockEnd - blockStart];
+        HashMap<Integer, ArrayList<IndexedR2>> nextResults = new HashMap<>();
+        int[] variantIds = new int[nVariants];
+        Arrays.fill(variantIds, -1);
+
+        // The number of consecutive pairs below the minimal r2 beyond the exit distance for every variant of the block, -1 when its scan has stopped
+        int[] lowRuns = new int[endA - firstA];
+        int activeStart = firstA;
+        int activeEnd = endA;
+
+        for (int chunkStart = 0; chunkStart < nVariants && activeStart < activeEnd; chunkStart += chunkSize) {
+
+            int chunkEnd = Math.min(chunkStart + chunkSize, nVariants);
+
+            if (p0Cache.isHardCalls()) {
+
+                addHardCallProducts(hardCallRows, rowOffsets, firstA, fromA, toA, activeStart, activeEnd, chunkStart, chunkEnd, products);
+
+            } else {
+
+                addProducts(rows, rowOffsets, firstA, fromA, toA, activeStart, activeEnd, chunkStart, chunkEnd, products);
+
+            }
+
+            for (int a = activeStart; a < activeEnd; a++) {
+
+                if (lowRuns[a - firstA] == -1) {
+
+                    continue;
+
+                }
+
+                int indexA = indexes[a];
+                P0Cache.P0 p0A = p0s[a];
+                boolean writeA = scheduler.isWritten(indexA);
+
+                for (int b = chunkStart; b < chunkEnd; b++) {
+
+                    if (a < fromA[b] || a >= toA[b]) {
+
+                        continue;
+
+                    }
+
+                    int indexB = indexes[b];
+                    P0Cache.P0 p0B = p0s[b];
+                    boolean writeB = indexB != indexA && scheduler.isWritten(indexB);
+
+                    if (!writeA && !writeB) {
+
+                        continue;
+
+                    }
+
+                    boolean sameGenotyped = p0A.sameGenotyped(p0B);
+                    double n;
+                    double[] sumsA;
+                    double[] sumsB;
+
+                    if (sameGenotyped) {
+
+                        n = p0A.nGenotyped;
+                        sumsA = p0A.sums;
+                        sumsB = p0B.sums;
+
+                    } else {
+
+                        long[] genotyped = new long[p0A.genotyped.length];
+                        int tempN = 0;
+
+                        for (int wordI = 0; wordI < genotyped.length; wordI++) {
+
+                            genotyped[wordI] = p0A.genotyped[wordI] & p0B.genotyped[wordI];
+                            tempN += Long.bitCount(genotyped[wordI]);
+
+                        }
+
+                        n = tempN;
+                        sumsA = getSums(p0A, genotyped);
+                        sumsB = getSums(p0B, genotyped);
+
+                    }
+
+                    int idA = getVariantId(a, indexes, variantIds);
+                    int idB = getVariantId(b, indexes, variantIds);
+
+                    int[] allelesA = p0A.orderedAlleles;
+                    int[] allelesB = p0B.orderedAlleles;
+
+                    ArrayList<IndexedR2> resultsA = writeA && writer != null ? getList(blockResults, nextResults, indexA, blockStart, blockEnd) : null;
+                    ArrayList<IndexedR2> resultsB = writeB && writer != null ? getList(blockResults, nextResults, indexB, blockStart, blockEnd) : null;
+
+                    double maxR2A = 0.0;
+                    double maxR2B = 0.0;
+
+                    for (int alleleIA = 0; alleleIA < allelesA.length - 1; alleleIA++) {
+
+                        double[] rowProducts = products[rowOffsets[a] - rowOffsets[firstA] + alleleIA];
+
+                        for (int alleleIB = 0; alleleIB < allelesB.length - 1; alleleIB++) {
+
+                            double nAB = rowProducts[rowOffsets[b] + alleleIB];
+
+                            if (writeA) {
+
+                                double r2Value = sameGenotyped
+                                        ? LdUtils.getR2(sumsA[alleleIA], sumsB[alleleIB], nAB, n, p0A.frequencies[alleleIA], p0A.variances[alleleIA], p0B.frequencies[alleleIB])
+                                        : LdUtils.getR2(sumsA[alleleIA], sumsB[alleleIB], nAB, n);
+
+                                if (r2Value > maxR2A) {
+
+                                    maxR2A = r2Value;
+
+                                }
+
+                                if (resultsA != null && r2Value > minR2) {
+
+                                    R2 r2 = new R2(idB, (short) allelesA[alleleIA + 1], (short) allelesB[alleleIB + 1], (float) r2Value);
+                                    resultsA.add(new IndexedR2(indexB, alleleIA, alleleIB, r2));
+
+                                }
+                            }
+
+                            if (writeB) {
+
+                                double r2Value = sameGenotyped
+                                        ? LdUtils.getR2(sumsB[alleleIB], sumsA[alleleIA], nAB, n, p0B.frequencies[alleleIB], p0B.variances[alleleIB], p0A.frequencies[alleleIA])
+                                        : LdUtils.getR2(sumsB[alleleIB], sumsA[alleleIA], nAB, n);
+
+                                if (r2Value > maxR2B) {
+
+                                    maxR2B = r2Value;
+
+                                }
+
+                                if (resultsB != null && r2Value > minR2) {
+
+                                    R2 r2 = new R2(idA, (short) allelesB[alleleIB + 1], (short) allelesA[alleleIA + 1], (float) r2Value);
+                                    resultsB.add(new IndexedR2(indexA, alleleIB, alleleIA, r2));
+
+                                }
+                            }
+                        }
+                    }
+
+                    if (writeA) {
+
+                        nPairs++;
+
+                    }
+
+                    if (writeB) {
+
+                        nPairs++;
+
+                    }
+
+                    if (ldScores != null) {
+
+                        if (writeA) {
+
+                            ldScores.add(threadIndex, indexA, indexB, maxR2A);
+
+                        }
+
+                        if (writeB) {
+
+                            ldScores.add(threadIndex, indexB, indexA, maxR2B);
+
+                        }
+                    }
+
+                    if (adaptiveWindow != null && indexB > indexA && adaptiveWindow.canExit(indexA, indexB)) {
+
+                        if (Math.max(maxR2A, maxR2B) > minR2) {
+
+                            lowRuns[a - firstA] = 0;
+
+                        } else if (++lowRuns[a - firstA] >= adaptiveWindow.exitRun) {
+
+                            lowRuns[a - firstA] = -1;
+
+                            break;
+
+                        }
+                    }
+                }
+            }
+
+            // Skip the variants whose scan has stopped at the edges of the block
+            while (activeStart < activeEnd && lowRuns[activeStart - firstA] == -1) {
+
+                activeStart++;
+
+            }
+
+            while (activeEnd > activeStart && lowRuns[activeEnd - 1 - firstA] == -1) {
+
+                activeEnd--;
+
+            }
+        }
+
+        for (int indexB : nextResults.keySet()) {
+
+            scheduler.addPending(indexB, nextResults.get(indexB));
+
+        }
+
+        scheduler.setComputed(block);
+
+        p0Cache.setWindowStart(threadIndex, scheduler.getFirstNeeded(blockEnd));
+
+        // Wait for the previous blocks to be computed and write
+        while (!scheduler.isComplete(block)) {
+
+            if (canceled) {
+
+                return nPairs;
+
+            }
+
+            LockSupport.parkNanos(WAIT_NANOS);
+
+        }
+
+        int nWritten = 0;
+
+        for (int indexA = blockStart; indexA < blockEnd; indexA++) {
+
+            if (!scheduler.isWritten(indexA)) {
+
+                continue;
+
+            }
+
+            nWritten++;
+
+            ArrayList<IndexedR2> results = blockResults[indexA - blockStart];
+            ArrayList<IndexedR2> previousResults = scheduler.removePending(indexA);
+
+            if (results == null) {
+
+                results = previousResults;
+
+            } else if (previousResults != null) {
+
+                results.addAll(previousResults);
+
+            }
+
+            if (writer == null) {
+
+                continue;
+
+            }
+
+            if (results != null && !results.isEmpty()) {
+
+                results.sort((r1, r2) -> Long.compare(r1.key, r2.key));
+
+                ArrayList<R2> r2s = results.stream()
+                        .map(
+                                indexedR2 -> indexedR2.r2
+                        )
+                        .collect(Collectors.toCollection(ArrayList::new));
+
+                VariantInformation variantInformationA = bgenIndex.variantInformationArray[indexA];
+                int variantIdA = variantIndex.getIndex(variantInformationA.id, variantInformationA.rsid);
+
+                writer.addVariant(
+                        variantIdA,
+                        r2s,
+                        compressor,
+                        indexA
+                );
+
+            } else {
+
+                writer.complete(indexA);
+
+            }
+        }
+
+        scheduler.registerWritten(nWritten);
+
+        return nPairs;
+
+    }
+
+    /**
+     * Adds the sums of the products between the rows of the block and the
+     * rows of the given chunk of the window. The products are accumulated in
+     * the order of the parents, tiles of parents are iterated in the outer
+     * loop so that the rows of the block are reused from cache, and four rows
+     * of the block are computed at once against every row of the window.
+     *
+     * @param rows The rows of all variants.
+     * @param rowOffsets The index of the first row of every variant.
+     * @param firstA The index of the first variant of the block.
+     * @param fromA The first variant of the block to compute against every
+     * variant.
+     * @param toA The index after the last variant of the block to compute
+     * against every variant.
+     * @param activeStart The index of the first variant of the block to
+     * compute.
+     * @param activeEnd The index after the last variant of the block to
+     * compute.
+     * @param chunkStart The index of the first variant of the chunk.
+     * @param chunkEnd The index after the last variant of the chunk.
+     * @param products The sums of products, row of the block and row of the
+     * window.
+     */
+    private void addProducts(
+            float[][] rows,
+            int[] rowOffsets,
+            int firstA,
+            int[] fromA,
+            int[] toA,
+            int activeStart,
+            int activeEnd,
+            int chunkStart,
+            int chunkEnd,
+            double[][] products
+    ) {
+
+        int firstRowA = rowOffsets[firstA];
+        int nParents = 2 * childToParentMap.children.length;
+
+        for (int tileStart = 0; tileStart < nParents; tileStart += PARENT_TILE) {
+
+            int tileEnd = Math.min(tileStart + PARENT_TILE, nParents);
+
+            for (int b = chunkStart; b < chunkEnd; b++) {
+
+                int from = Math.max(fromA[b], activeStart);
+                int to = Math.max(Math.min(toA[b], activeEnd), from);
+
+                int rowFrom = rowOffsets[from] - firstRowA;
+                int rowTo = rowOffsets[to] - firstRowA;
+
+                for (int rowB = rowOffsets[b]; rowB < rowOffsets[b + 1]; rowB++) {
+
+                    float[] valuesB = rows[rowB];
+
+                    int rowA = rowFrom;
+
+                    for (; rowA + 4 <= rowTo; rowA += 4) {
+
+                        float[] values0 = rows[firstRowA + rowA];
+                        float[] values1 = rows[firstRowA + rowA + 1];
+                        float[] values2 = rows[firstRowA + rowA + 2];
+                        float[] values3 = rows[firstRowA + rowA + 3];
+
+                        double sum0 = products[rowA][rowB];
+                        double sum1 = products[rowA + 1][rowB];
+                        double sum2 = products[rowA + 2][rowB];
+                        double sum3 = products[rowA + 3][rowB];
+
+                        for (int parentI = tileStart; parentI < tileEnd; parentI++) {
+
+                            float valueB = valuesB[parentI];
+
+                            sum0 += values0[parentI] * valueB;
+                            sum1 += values1[parentI] * valueB;
+                            sum2 += values2[parentI] * valueB;
+                            sum3 += values3[parentI] * valueB;
+
+                        }
+
+                        products[rowA][rowB] = sum0;
+                        products[rowA + 1][rowB] = sum1;
+                        products[rowA + 2][rowB] = sum2;
+                        products[rowA + 3][rowB] = sum3;
+
+                    }
+
+                    for (; rowA < rowTo; rowA++) {
+
+                        float[] valuesA = rows[firstRowA + rowA];
+
+                        double sum = products[rowA][rowB];
+
+                        for (int parentI = tileStart; parentI < tileEnd; parentI++) {
+
+                            sum += valuesA[parentI] * valuesB[parentI];
+
+                        }
+
+                        products[rowA][rowB] = sum;
+
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the number of parents with homozygous hard calls shared between
+     * the rows of the block and the rows of the given chunk of the window.
+     *
+     * @param rows The bit sets of all variants.
+     * @param rowOffsets The index of the first row of every variant.
+     * @param firstA The index of the first variant of the block.
+     * @param fromA The first variant of the block to compute against every
+     * variant.
+     * @param toA The index after the last variant of the block to compute
+     * against every variant.
+     * @param activeStart The index of the first variant of the block to
+     * compute.
+     * @param activeEnd The index after the last variant of the block to
+     * compute.
+     * @param chunkStart The index of the first variant of the chunk.
+     * @param chunkEnd The index after the last variant of the chunk.
+     * @param products The number of parents, row of the block and row of the
+     * window.
+     */
+    private void addHardCallProducts(
+            long[][] rows,
+            int[] rowOffsets,
+            int firstA,
+            int[] fromA,
+            int[] toA,
+            int activeStart,
+            int activeEnd,
+            int chunkStart,
+            int chunkEnd,
+            double[][] products
+    ) {
+
+        int firstRowA = rowOffsets[firstA];
+
+        for (int b = chunkStart; b < chunkEnd; b++) {
+
+            int from = Math.max(fromA[b], activeStart);
+            int to = Math.max(Math.min(toA[b], activeEnd), from);
+
+            int rowFrom = rowOffsets[from] - firstRowA;
+            int rowTo = rowOffsets[to] - firstRowA;
+
+            for (int rowB = rowOffsets[b]; rowB < rowOffsets[b + 1]; rowB++) {
+
+                for (int rowA = rowFrom; rowA < rowTo; rowA++) {
+
+                    products[rowA][rowB] = LdUtils.countAnd(rows[firstRowA + rowA], rows[rowB]);
+
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sums of the rows of the given variant over the given
+     * parents.
+     *
+     * @param p0 The p0 values of the variant.
+     * @param genotyped The mask of the parents to sum.
+     *
+     * @return The sums of the rows.
+     */
+    private static double[] getSums(
+            P0Cache.P0 p0,
+            long[] genotyped
+    ) {
+
+        if (p0.homozygous != null) {
+
+            double[] sums = new double[p0.homozygous.length];
+
+            for (int alleleI = 0; alleleI < p0.homozygous.length; alleleI++) {
+
+                sums[alleleI] = LdUtils.countAnd(p0.homozygous[alleleI], genotyped);
+
+            }
+
+            return sums;
+
+        }
+
+        float[][] pHomozygous = p0.pHomozygous;
+        double[] sums = new double[pHomozygous.length];
+
+        for (int alleleI = 0; alleleI < pHomozygous.length; alleleI++) {
+
+            float[] allelePHomozygous = pHomozygous[alleleI];
+            double sum = 0.0;
+
+            for (int parentI = 0; parentI < allelePHomozygous.length; parentI++) {
+
+                if (P0Cache.P0.isGenotyped(genotyped, parentI)) {
+
+                    sum += allelePHomozygous[parentI];
+
+                }
+            }
+
+            sums[alleleI] = sum;
+
+        }
+
+        return sums;
+
+    }
+
+    /**
+     * Returns the list where to store the results of the given variant.
+     *
+     * @param blockResults The results of the variants of the block.
+     * @param nextResults The results of the variants of the next blocks.
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param blockStart The index of the first variant of the block.
+     * @param blockEnd The index after the last variant of the block.
+     *
+     * @return The list where to store the results.
+     */
+    private static ArrayList<IndexedR2> getList(
+            ArrayList<IndexedR2>[] blockResults,
+            HashMap<Integer, ArrayList<IndexedR2>> nextResults,
+            int variantIndex,
+            int blockStart,
+            int blockEnd
+    ) {
+
+        if (variantIndex < blockEnd) {
+
+            int i = variantIndex - blockStart;
+
+            if (blockResults[i] == null) {
+
+                blockResults[i] = new ArrayList<>(2);
+
+            }
+
+            return blockResults[i];
+
+        }
+
+        return nextResults.computeIfAbsent(variantIndex, k -> new ArrayList<>(2));
+
+    }
+
+    /**
+     * Returns the id of the given variant in the variant index.
+     *
+     * @param i The index of the variant in the window.
+     * @param indexes The indexes of the variants of the window in the bgen
+     * file.
+     * @param variantIds The ids of the variants of the window, -1 if not set.
+     *
+     * @return The id of the variant in the variant index.
+     */
+    private int getVariantId(
+            int i,
+            int[] indexes,
+            int[] variantIds
+    ) {
+
+        if (variantIds[i] == -1) {
+
+            VariantInformation variantInformation = bgenIndex.variantInformationArray[indexes[i]];
+            variantIds[i] = variantIndex.getIndex(variantInformation.id, variantInformation.rsid);
+
+        }
+
+        return variantIds[i];
+
+    }
+
+    /**
+     * Returns the first position in the given range of the sorted array where
+     * the value is greater or equal to the given value.
+     *
+     * @param array The sorted array.
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (exclusive).
+     * @param value The value.
+     *
+     * @return The first position with a value greater or equal to the given
+     * value, to if none.
+     */
+    private static int lowerBound(
+            int[] array,
+            int from,
+            int to,
+            int value
+    ) {
+
+        while (from < to) {
+
+            int middle = (from + to) >>> 1;
+
+            if (array[middle] < value) {
+
+                from = middle + 1;
+
+            } else {
+
+                to = middle;
+
+            }
+        }
+
+        return from;
+
+    }
+
+    /**
+     * Parses the given variant and registers it in the summary of the bgen
+     * file.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return The data of the variant, null if the variant does not have two
+     * alleles passing the allele frequency threshold.
+     */
+    private BgenVariantTrioData parse(
+            int variantIndex
+    ) {
+
+        BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
+        variantData.parse(
+                childToParentMap,
+                decompressor
+        );
+
+        bgenSummary.register(variantIndex, variantData);
+
+        return LdUtils.hasAlleles(variantData.getAlleleFrequency(), alleleFrequencyThreshold) ? variantData : null;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the given variant is known from the
+     * cache or from the summary of the bgen file not to have two alleles
+     * passing the allele frequency.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the variant can be excluded without
+     * parsing.
+     */
+    private boolean isExcluded(
+            int variantIndex
+    ) {
+
+        if (p0Cache.isExcluded(variantIndex)) {
+
+            return true;
+
+        }
+
+        if (bgenSummary.contains(variantIndex) && !LdUtils.hasAlleles(bgenSummary.getAlleleFrequencies(variantIndex), alleleFrequencyThreshold)) {
+
+            p0Cache.exclude(variantIndex);
+
+            return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the runnables have been canceled,
+     * typically due to an error.
+     *
+     * @return A boolean indicating whether the runnables have been canceled.
+     */
+    public static boolean isCanceled() {
+
+        return canceled;
+
+    }
+}
@@ -3,19 +3,30 @@ package no.uib.triogen.processing.ld;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
+import no.uib.triogen.io.checkpoint.Checkpoint;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantShard;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
 import no.uib.triogen.io.ld.LdMatrixWriter;
 import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.annotation.RegionAnnotation;
 import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.model.genome.GeneticMap;
+import no.uib.triogen.model.genome.VariantInformation;
 import no.uib.triogen.model.trio_genotypes.VariantIndex;
+import no.uib.triogen.model.trio_genotypes.VariantList;
+import no.uib.triogen.processing.ld.LdUtils.LdEngine;
 
 /**
  * This class iterates through genotypes and writes a matrix of ld between
@@ -62,6 +73,14 @@ public class LdMatrixComputer {
      * The number of variants to process in parallel.
      */
     private final int nVariants;
+    /**
+     * The shard of variants to process, null to process all variants.
+     */
+    private final VariantShard shard;
+    /**
+     * The target variants, null to process all variants.
+     */
+    private final VariantList targets;
     /**
      * The minimal ld r2 to report (inclusive).
      */
@@ -70,6 +89,58 @@ public class LdMatrixComputer {
      * The allele frequency threshold to use.
      */
     private final double alleleFrequencyThreshold;
+    /**
+     * The interval between checkpoints in minutes, 0 disables checkpoints.
+     */
+    private final int checkpointInterval;
+    /**
+     * Boolean indicating whether an interrupted run should be resumed from
+     * the last checkpoint.
+     */
+    private final boolean resume;
+    /**
+     * The engine to use to compute LD.
+     */
+    private final LdEngine engine;
+    /**
+     * Boolean indicating whether LD should be computed on hard calls.
+     */
+    private final boolean hardCalls;
+    /**
+     * The number of bits to use to store r2 values.
+     */
+    private final int r2Bits;
+    /**
+     * Boolean indicating whether the LD scores of the variants should be
+     * computed.
+     */
+    private final boolean computeLdScores;
+    /**
+     * The annotations to use to partition the LD scores, null if none.
+     */
+    private final RegionAnnotation annotation;
+    /**
+     * Boolean indicating whether the matrix should be written.
+     */
+    private final boolean writeMatrix;
+    /**
+     * The genetic map to use to bound windows in genetic distance, null to
+     * bound windows in bp only.
+     */
+    private final GeneticMap geneticMap;
+    /**
+     * The maximal genetic distance between variants in cM.
+     */
+    private final double maxCm;
+    /**
+     * The genetic distance in cM beyond which the scan of a variant can stop.
+     */
+    private final double exitCm;
+    /**
+     * The number of consecutive pairs below the minimal r2 after which the
+     * scan of a variant stops.
+     */
+    private final int exitRun;
     /**
      * The logger.
      */
@@ -91,6 +162,33 @@ public class LdMatrixComputer {
      * Only variants having at least two alleles passing the threshold will be
      * considered.
      * @param nVariants The number of variants to process in parallel.
+     * @param shard The shard of variants to process, null to process all
+     * variants.
+     * @param targets The target variants, LD is computed only between these
+     * and the variants in their window. Null to process all variants.
+     * @param checkpointInterval The interval between checkpoints in minutes,
+     * 0 disables checkpoints.
+     * @param resume Boolean indicating whether an interrupted run should be
+     * resumed from the last checkpoint.
+     * @param engine The engine to use to compute LD.
+     * @param hardCalls Boolean indicating whether LD should be computed on
+     * hard calls.
+     * @param r2Bits The number of bits to use to store r2 values: 8, 16, or 32
+     * for lossless.
+     * @param computeLdScores Boolean indicating whether the LD scores of the
+     * variants should be computed.
+     * @param annotation The annotations to use to partition the LD scores,
+     * null if none.
+     * @param writeMatrix Boolean indicating whether the matrix should be
+     * written.
+     * @param geneticMap The genetic map to use to bound windows in genetic
+     * distance, null to bound windows in bp only. Requires the blocked engine.
+     * @param maxCm The maximal genetic distance between variants in cM.
+     * Ignored if geneticMap is null.
+     * @param exitCm The genetic distance in cM beyond which the scan of a
+     * variant can stop. Ignored if geneticMap is null.
+     * @param exitRun The number of consecutive pairs below the minimal r2
+     * after which the scan of a variant stops. Ignored if geneticMap is null.
      * @param logger The logger.
      */
     public LdMatrixComputer(
@@ -104,6 +202,20 @@ public class LdMatrixComputer {
             double minR2,
             double alleleFrequencyThreshold,
             int nVariants,
+            VariantShard shard,
+            VariantList targets,
+            int checkpointInterval,
+            boolean resume,
+            LdEngine engine,
+            boolean hardCalls,
+            int r2Bits,
+            boolean computeLdScores,
+            RegionAnnotation annotation,
+            boolean writeMatrix,
+            GeneticMap geneticMap,
+            double maxCm,
+            double exitCm,
+            int exitRun,
             SimpleCliLogger logger
     ) {
 
@@ -117,6 +229,20 @@ public class LdMatrixComputer {
         this.minR2 = minR2;
         this.alleleFrequencyThreshold = alleleFrequencyThreshold;
         this.nVariants = nVariants;
+        this.shard = shard;
+        this.targets = targets;
+        this.checkpointInterval = checkpointInterval;
+        this.resume = resume;
+        this.engine = engine;
+        this.hardCalls = hardCalls;
+        this.r2Bits = r2Bits;
+        this.computeLdScores = computeLdScores;
+        this.annotation = annotation;
+        this.writeMatrix = writeMatrix;
+        this.geneticMap = geneticMap;
+        this.maxCm = maxCm;
+        this.exitCm = exitCm;
+        this.exitRun = exitRun;
         this.logger = logger;
 
     }
@@ -149,54 +275,272 @@ public class LdMatrixComputer {
                 defaultFatherPloidy
         );
 
+        BgenSummary bgenSummary = BgenSummary.getBgenSummary(
+                genotypesFile,
+                bgenIndex,
+                childToParentMap
+        );
+
         long end = Instant.now().getEpochSecond();
         long duration = end - start;
 
         logger.logMessage("Parsing " + genotypesFile + " done (" + duration + " seconds)");
 
-        logger.logMessage("LD extraction in " + genotypesFile.getName() + " using " + nVariants + " threads.");
+        // The blocked engine computes all pairs of a block, targeted runs use the pairwise engine
+        LdEngine engine = targets == null ? this.engine : LdEngine.pairwise;
+
+        logger.logMessage("LD extraction in " + genotypesFile.getName() + " using " + nVariants + " threads and the " + engine + " engine" + (hardCalls ? " on hard calls." : "."));
 
         start = Instant.now().getEpochSecond();
+        long startMillis = Instant.now().toEpochMilli();
 
-        VariantIterator iterator = new VariantIterator(
-                bgenIndex,
-                logger,
-                "LD " + genotypesFile.getName() + "    ",
-                true
+        File destinationFile = new File(destinationStem + ".tld");
+        File checkpointFile = Checkpoint.getCheckpointFile(destinationFile);
+
+        Checkpoint checkpoint = null;
+
+        if (resume && checkpointFile.exists()) {
+
+            checkpoint = Checkpoint.read(checkpointFile, checkpointInterval);
+
+            logger.logMessage("Resuming from checkpoint (" + checkpoint.getCompleted().cardinality() + " variants completed)");
+
+        } else {
+
+            if (resume) {
+
+                logger.logMessage("No checkpoint found at " + checkpointFile + ", starting from the first variant.");
+
+            }
+
+            if (checkpointInterval > 0 && computeLdScores) {
+
+                // The LD scores of the variants completed before a checkpoint cannot be restored
+                logger.logMessage("Checkpoints are disabled when computing LD scores.");
+
+            } else if (checkpointInterval > 0 && geneticMap != null) {
+
+                // The scans of the variants completed before a checkpoint cannot be restored
+                logger.logMessage("Checkpoints are disabled with adaptive windows.");
+
+            } else if (checkpointInterval > 0) {
+
+                checkpoint = new Checkpoint(checkpointFile, checkpointInterval);
+
+            }
+        }
+
+        BitSet skipped = null;
+        int[] range = new int[]{0, bgenIndex.variantInformationArray.length};
+
+        if (shard != null) {
+
+            range = shard.getRange(bgenIndex);
+
+            logger.logMessage("Processing shard " + shard + " (variants " + range[0] + " to " + (range[1] - 1) + ")");
+
+            skipped = shard.getSkipped(bgenIndex);
+
+        }
+
+        if (checkpoint != null) {
+
+            if (skipped == null) {
+
+                skipped = new BitSet(bgenIndex.variantInformationArray.length);
+
+            }
+
+            skipped.or(checkpoint.getCompleted());
+
+        }
+
+        if (targets != null) {
+
+            int nBgenVariants = bgenIndex.variantInformationArray.length;
+
+            BitSet notTargeted = new BitSet(nBgenVariants);
+
+            for (int i = 0; i < nBgenVariants; i++) {
+
+                VariantInformation variantInformation = bgenIndex.variantInformationArray[i];
+
+                if (!targets.contains(variantInformation.id)
+                        && (variantInformation.rsid == null || !targets.contains(variantInformation.rsid))) {
+
+                    notTargeted.set(i);
+
+                }
+            }
+
+            logger.logMessage("Computing LD for " + (nBgenVariants - notTargeted.cardinality()) + " target variants found out of " + targets.variantId.length + ".");
+
+            if (skipped == null) {
+
+                skipped = notTargeted;
+
+            } else {
+
+                skipped.or(notTargeted);
+
+            }
+        }
+
+        if (shard != null) {
+
+            // Index all variants in the order of the bgen file so that the matrices of the different shards share variant indexes and can be merged
+            for (VariantInformation variantInformation : bgenIndex.variantInformationArray) {
+
+                variantIndex.add(variantInformation.id, variantInformation.rsid);
+
+            }
+        }
+
+        int[] positions = Arrays.stream(bgenIndex.variantInformationArray)
+                .mapToInt(
+                        variantInformation -> variantInformation.position
+                )
+                .toArray();
+
+        for (int i = 1; i < positions.length; i++) {
+
+            if (positions[i] < positions[i - 1]) {
+
+                throw new IllegalArgumentException("Variants in " + genotypesFile + " are not sorted by position (" + bgenIndex.variantInformationArray[i].id + " at position " + positions[i] + " found after position " + positions[i - 1] + ").");
+
+            }
+        }
+
+        AdaptiveWindow adaptiveWindow = null;
+
+        if (geneticMap != null) {
+
+            if (engine != LdEngine.blocked || skipped != null) {
+
+                throw new IllegalArgumentException("Adaptive windows require the blocked engine and cannot be used with shards or target variants.");
+
+            }
+
+            adaptiveWindow = new AdaptiveWindow(
+                    geneticMap.getGeneticPositions(positions),
+                    maxCm,
+                    exitCm,
+                    exitRun
+            );
+
+            logger.logMessage("Adaptive windows of " + maxCm + " cM, scans stop after " + exitRun + " consecutive pairs with r2 <= " + minR2 + " beyond " + exitCm + " cM.");
+
+        }
+
+        int maxWindowSize = P0Cache.getMaxWindowSize(positions, maxDistance);
+
+        P0Cache p0Cache = new P0Cache(
+                nVariants,
+                positions.length,
+                engine == LdEngine.blocked ? LdMatrixBlockedRunnable.BLOCK_SIZE + maxWindowSize : maxWindowSize,
+                childToParentMap,
+                hardCalls
         );
 
-        P0Cache p0Cache = new P0Cache(nVariants);
+        AtomicLong pairCounter = new AtomicLong(0);
 
-        File destinationFile = new File(destinationStem + ".tld");
+        LdScores ldScores = null;
+
+        if (computeLdScores) {
+
+            String[] annotationNames = annotation == null ? new String[0] : annotation.names;
+            BitSet[] annotated = annotation == null ? new BitSet[0] : annotation.getAnnotated(bgenIndex.variantInformationArray);
+
+            ldScores = new LdScores(nVariants, range[0], range[1], annotationNames, annotated);
+
+        }
+
+        LdScores finalLdScores = ldScores;
 
         try (
-                LdMatrixWriter writer = new LdMatrixWriter(
+                LdMatrixWriter writer = writeMatrix ? new LdMatrixWriter(
                         variantIndex,
-                        destinationFile
-                )) {
+                        destinationFile,
+                        checkpoint,
+                        r2Bits
+                ) : null) {
 
             ExecutorService pool = Executors.newFixedThreadPool(nVariants);
 
-            IntStream.range(0, nVariants)
-                    .mapToObj(
-                            i -> new LdMatrixComputerRunnable(
-                                    writer,
-                                    iterator,
-                                    bgenIndex,
-                                    bgenFileReader,
-                                    childToParentMap,
-                                    maxDistance,
-                                    minR2,
-                                    alleleFrequencyThreshold,
-                                    variantIndex,
-                                    p0Cache,
-                                    i,
-                                    logger
-                            )
-                    )
-                    .forEach(
-                            worker -> pool.submit(worker)
-                    );
+            if (engine == LdEngine.blocked) {
+
+                LdBlockScheduler scheduler = new LdBlockScheduler(
+                        positions,
+                        maxDistance,
+                        range[0],
+                        range[1],
+                        LdMatrixBlockedRunnable.BLOCK_SIZE,
+                        skipped,
+                        adaptiveWindow,
+                        logger,
+                        "LD " + genotypesFile.getName() + "    "
+                );
+
+                IntStream.range(0, nVariants)
+                        .mapToObj(
+                                i -> new LdMatrixBlockedRunnable(
+                                        writer,
+                                        finalLdScores,
+                                        scheduler,
+                                        bgenIndex,
+                                        bgenFileReader,
+                                        bgenSummary,
+                                        childToParentMap,
+                                        minR2,
+                                        alleleFrequencyThreshold,
+                                        variantIndex,
+                                        p0Cache,
+                                        pairCounter,
+                                        i,
+                                        logger
+                                )
+                        )
+                        .forEach(
+                                worker -> pool.submit(worker)
+                        );
+
+            } else {
+
+                VariantIterator iterator = new VariantIterator(
+                        bgenIndex,
+                        -1,
+                        -1,
+                        logger,
+                        "LD " + genotypesFile.getName() + "    ",
+                        true,
+                        skipped
+                );
+
+                IntStream.range(0, nVariants)
+                        .mapToObj(
+                                i -> new LdMatrixComputerRunnable(
+                                        writer,
+                                        finalLdScores,
+                                        iterator,
+                                        bgenIndex,
+                                        bgenFileReader,
+                                        bgenSummary,
+                                        childToParentMap,
+                                        maxDistance,
+                                        minR2,
+                                        alleleFrequencyThreshold,
+                                        variantIndex,
+                                        p0Cache,
+                                        positions,
+                                        pairCounter,
+                                        i,
+                                        logger
+                                )
+                        )
+                        .forEach(
+                                worker -> pool.submit(worker)
+                        );
+            }
 
             pool.shutdown();
 
@@ -206,6 +550,36 @@ public class LdMatrixComputer {
 
             }
 
+            bgenSummary.save();
+
+            // Store the location of the variants in the footer to allow region queries
+            for (VariantInformation variantInformation : bgenIndex.variantInformationArray) {
+
+                variantIndex.setLocation(variantInformation.id, variantInformation.contig, variantInformation.position);
+
+            }
+
+            if (checkpoint != null && isCanceled(engine)) {
+
+                writer.saveCheckpoint();
+
+            }
+        }
+
+        if (ldScores != null && !isCanceled(engine)) {
+
+            File ldScoreFile = LdScores.getLdScoreFile(destinationStem);
+
+            ldScores.write(ldScoreFile, bgenIndex.variantInformationArray);
+
+            logger.logMessage("LD scores written to " + ldScoreFile);
+
+        }
+
+        if (checkpoint != null && !isCanceled(engine)) {
+
+            checkpoint.delete();
+
         }
 
         end = Instant.now().getEpochSecond();
@@ -213,5 +587,27 @@ public class LdMatrixComputer {
 
         logger.logMessage(genotypesFile.getName() + " Done (" + bgenIndex.variantInformationArray.length + " variants processed in " + duration + " seconds)");
 
+        long nPairs = pairCounter.get();
+        long durationMillis = Math.max(Instant.now().toEpochMilli() - startMillis, 1);
+        long pairsPerSecond = Math.round(1000.0 * nPairs / durationMillis);
+
+        logger.logMessage("LD computed for " + nPairs + " variant pairs (" + pairsPerSecond + " pairs per second)");
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the runnables have been canceled,
+     * typically due to an error.
+     *
+     * @param engine The engine used.
+     *
+     * @return A boolean indicating whether the runnables have been canceled.
+     */
+    private static boolean isCanceled(
+            LdEngine engine
+    ) {
+
+        return engine == LdEngine.blocked ? LdMatrixBlockedRunnable.isCanceled() : LdMatrixComputerRunnable.isCanceled();
+
     }
 }
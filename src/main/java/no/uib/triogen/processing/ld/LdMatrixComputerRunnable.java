@@ -4,12 +4,11 @@ import io.airlift.compress.zstd.ZstdCompressor;
 import io.airlift.compress.zstd.ZstdDecompressor;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
 import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
 import no.uib.triogen.io.ld.LdMatrixWriter;
@@ -18,19 +17,23 @@ import no.uib.triogen.model.family.ChildToParentMap;
 import no.uib.triogen.model.genome.VariantInformation;
 import no.uib.triogen.model.ld.R2;
 import no.uib.triogen.model.trio_genotypes.VariantIndex;
-import no.uib.triogen.utils.SimpleSemaphore;
 
 /**
- * Runnable for the LD matrix writer.
+ * Runnable for the LD matrix writer computing the LD of every variant with
+ * the variants of its window pair by pair.
  *
  * @author Marc Vaudel
  */
 public class LdMatrixComputerRunnable implements Runnable {
 
     /**
-     * The writer.
+     * The writer, null if the matrix is not written.
      */
     private final LdMatrixWriter writer;
+    /**
+     * The LD scores to accumulate, null if not computed.
+     */
+    private final LdScores ldScores;
     /**
      * The index of the bgen file to process.
      */
@@ -39,6 +42,10 @@ public class LdMatrixComputerRunnable implements Runnable {
      * The reader for the bgen file to process.
      */
     private final BgenFileReader bgenFileReader;
+    /**
+     * The summary of the variants of the bgen file.
+     */
+    private final BgenSummary bgenSummary;
     /**
      * The iterator.
      */
@@ -89,31 +96,23 @@ public class LdMatrixComputerRunnable implements Runnable {
      */
     private final double alleleFrequencyThreshold;
     /**
-     * Cache for the variants that have less than two alleles passing the allele
-     * frequency threshold.
+     * The positions of the variants in the bgen file.
      */
-    private static final HashSet<Integer> excludedVariants = new HashSet<>();
+    private final int[] positions;
     /**
-     * The interval at which this thread should check the cache in number of
-     * variants.
+     * Counter for the number of variant pairs processed.
      */
-    public static final int N_CACHE_FREQ = 1000;
-    /**
-     * The size of the cache for excluded variants.
-     */
-    public static final int EXCLUDED_VARIANTS_CACHE_SIZE = 1000000;
-    /**
-     * Map of semaphore to synchronize the parsing between threads.
-     */
-    private final static ConcurrentHashMap<Integer, SimpleSemaphore> parseSemaphores = new ConcurrentHashMap<>();
+    private final AtomicLong pairCounter;
 
     /**
      * Constructor.
      *
-     * @param writer The writer to use.
+     * @param writer The writer to use, null if the matrix is not written.
+     * @param ldScores The LD scores to accumulate, null if not computed.
      * @param iterator The variant iterator.
      * @param bgenIndex The index of the bgen file.
      * @param bgenFileReader The reader for the bgen file.
+     * @param bgenSummary The summary of the variants of the bgen file.
      * @param childToParentMap The map of trios.
      * @param maxDistance The maximal number of bp to allow between variants.
      * @param minR2 The minimal ld r2 to report (inclusive).
@@ -122,34 +121,44 @@ public class LdMatrixComputerRunnable implements Runnable {
      * considered.
      * @param variantIndex The index to use for the variants.
      * @param p0Cache The cache for the probability of homozygocity.
+     * @param positions The positions of the variants in the bgen file.
+     * @param pairCounter Counter for the number of variant pairs processed.
      * @param threadIndex The index of the thread.
      * @param logger The logger.
      */
     public LdMatrixComputerRunnable(
             LdMatrixWriter writer,
+            LdScores ldScores,
             VariantIterator iterator,
             BgenIndex bgenIndex,
             BgenFileReader bgenFileReader,
+            BgenSummary bgenSummary,
             ChildToParentMap childToParentMap,
             int maxDistance,
             double minR2,
             double alleleFrequencyThreshold,
             VariantIndex variantIndex,
             P0Cache p0Cache,
+            int[] positions,
+            AtomicLong pairCounter,
             int threadIndex,
             SimpleCliLogger logger
     ) {
 
         this.writer = writer;
+        this.ldScores = ldScores;
         this.iteratorA = iterator;
         this.bgenIndex = bgenIndex;
         this.bgenFileReader = bgenFileReader;
+        this.bgenSummary = bgenSummary;
         this.childToParentMap = childToParentMap;
         this.maxDistance = maxDistance;
         this.minR2 = minR2;
         this.alleleFrequencyThreshold = alleleFrequencyThreshold;
         this.variantIndex = variantIndex;
         this.p0Cache = p0Cache;
+        this.positions = positions;
+        this.pairCounter = pairCounter;
         this.threadIndex = threadIndex;
         this.logger = logger;
 
@@ -158,243 +167,179 @@ public class LdMatrixComputerRunnable implements Runnable {
     @Override
     public void run() {
 
-        try {
+        long nPairs = 0;
 
-            int cacheCounter = (new Random()).nextInt(N_CACHE_FREQ);
+        try {
 
             Integer indexA;
             while ((indexA = iteratorA.next()) != null && !canceled) {
 
-                if (!excludedVariants.contains(indexA)) {
-
-                    VariantInformation variantInformationA = bgenIndex.variantInformationArray[indexA];
-
-                    p0Cache.block(threadIndex, variantInformationA.position - maxDistance);
-
-                    float[][] pHomA = p0Cache.getPHomozygous(variantInformationA.id);
-                    int[] allelesA = p0Cache.getOrderedAlleles(variantInformationA.id);
-
-                    if (pHomA == null || allelesA == null) {
-
-                        SimpleSemaphore semaphore = parseSemaphores.get(indexA);
-
-                        if (semaphore != null) {
-
-                            semaphore.acquire();
-
-                            if (excludedVariants.contains(indexA)) {
-
-                                semaphore.release();
-
-                                continue;
-
-                            }
-
-                            pHomA = p0Cache.getPHomozygous(variantInformationA.id);
-                            allelesA = p0Cache.getOrderedAlleles(variantInformationA.id);
-
-                        } else {
-
-                            semaphore = new SimpleSemaphore(1);
-                            semaphore.acquire();
-                            parseSemaphores.put(indexA, semaphore);
+                VariantInformation variantInformationA = bgenIndex.variantInformationArray[indexA];
 
-                        }
-
-                        if (pHomA == null || allelesA == null) {
-
-                            BgenVariantTrioData variantData = bgenFileReader.getVariantData(indexA);
-                            variantData.parse(
-                                    childToParentMap,
-                                    decompressor
-                            );
-
-                            if (!hasAlleles(variantData)) {
+                int windowStart = P0Cache.getFirstIndex(positions, variantInformationA.position - maxDistance);
+                int windowEnd = P0Cache.getLastIndex(positions, variantInformationA.position + maxDistance);
 
-                                if (excludedVariants.size() > EXCLUDED_VARIANTS_CACHE_SIZE) {
-
-                                    excludedVariants.clear();
-
-                                }
+                p0Cache.setWindowStart(threadIndex, windowStart);
 
-                                excludedVariants.add(indexA);
+                P0Cache.P0 p0A = isExcluded(indexA) ? null : p0Cache.get(indexA, this::parse);
 
-                                semaphore.release();
+                if (p0A != null) {
 
-                                continue;
-
-                            }
-
-                            p0Cache.register(variantData, childToParentMap);
-
-                            pHomA = p0Cache.getPHomozygous(variantInformationA.id);
-                            allelesA = p0Cache.getOrderedAlleles(variantInformationA.id);
-
-                        }
-
-                        semaphore.release();
-
-                    }
+                    float[][] pHomA = p0A.pHomozygous;
+                    int[] allelesA = p0A.orderedAlleles;
+                    long[] genotypedA = p0A.genotyped;
 
                     int variantIdA = variantIndex.getIndex(variantInformationA.id, variantInformationA.rsid);
-                    
-//                    System.out.println(Instant.now() + " Thread " + threadIndex + " " + indexA);
 
                     ArrayList<R2> r2s = new ArrayList<>(2);
 
-                    VariantIterator iteratorB = new VariantIterator(bgenIndex, variantInformationA.position - maxDistance, variantInformationA.position + maxDistance);
+                    for (int indexB = windowStart; indexB <= windowEnd; indexB++) {
 
-                    Integer indexB;
-                    while ((indexB = iteratorB.next()) != null) {
+                        P0Cache.P0 p0B = isExcluded(indexB) ? null : p0Cache.get(indexB, this::parse);
 
-                        if (!excludedVariants.contains(indexB)) {
+                        if (p0B != null) {
 
                             VariantInformation variantInformationB = bgenIndex.variantInformationArray[indexB];
                             int variantIdB = variantIndex.getIndex(variantInformationB.id, variantInformationB.rsid);
 
-                            float[][] pHomB = p0Cache.getPHomozygous(variantInformationB.id);
-                            int[] allelesB = p0Cache.getOrderedAlleles(variantInformationB.id);
+                            float[][] pHomB = p0B.pHomozygous;
+                            int[] allelesB = p0B.orderedAlleles;
+                            long[] genotypedB = p0B.genotyped;
 
-                            if (pHomB == null || allelesB == null) {
+                            nPairs++;
 
-                                SimpleSemaphore semaphore = parseSemaphores.get(indexB);
+                            boolean sameGenotyped = p0A.sameGenotyped(p0B);
 
-                                if (semaphore != null) {
+                            double maxR2 = 0.0;
 
-                                    semaphore.acquire();
+                            for (int alleleIA = 0; alleleIA < allelesA.length - 1; alleleIA++) {
 
-                                    if (excludedVariants.contains(indexB)) {
+                                for (int alleleIB = 0; alleleIB < allelesB.length - 1; alleleIB++) {
 
-                                        semaphore.release();
+                                    double r2Value;
 
-                                        continue;
+                                    if (sameGenotyped) {
 
-                                    }
+                                        // Same parents for both variants: only the sum of products depends on the pair
+                                        double nAB = 0.0;
 
-                                    pHomB = p0Cache.getPHomozygous(variantInformationB.id);
-                                    allelesB = p0Cache.getOrderedAlleles(variantInformationB.id);
+                                        if (p0Cache.isHardCalls()) {
 
-                                } else {
+                                            nAB = LdUtils.countAnd(p0A.homozygous[alleleIA], p0B.homozygous[alleleIB]);
 
-                                    semaphore = new SimpleSemaphore(1);
-                                    semaphore.acquire();
-                                    parseSemaphores.put(indexB, semaphore);
+                                        } else {
 
-                                }
+                                            float[] allelePHomA = pHomA[alleleIA];
+                                            float[] allelePHomB = pHomB[alleleIB];
 
-                                if (pHomB == null || allelesB == null) {
+                                            for (int parentI = 0; parentI < allelePHomA.length; parentI++) {
 
-                                    BgenVariantTrioData variantData = bgenFileReader.getVariantData(indexB);
-                                    variantData.parse(
-                                            childToParentMap,
-                                            decompressor
-                                    );
+                                                nAB += allelePHomA[parentI] * allelePHomB[parentI];
 
-                                    if (!hasAlleles(variantData)) {
+                                            }
+                                        }
 
-                                        excludedVariants.add(indexB);
+                                        r2Value = LdUtils.getR2(
+                                                p0A.sums[alleleIA],
+                                                p0B.sums[alleleIB],
+                                                nAB,
+                                                p0A.nGenotyped,
+                                                p0A.frequencies[alleleIA],
+                                                p0A.variances[alleleIA],
+                                                p0B.frequencies[alleleIB]
+                                        );
 
-                                        semaphore.release();
+                                    } else {
 
-                                        continue;
+                                        double nA = 0.0;
+                                        double nB = 0.0;
+                                        double nAB = 0.0;
+                                        double n = 0.0;
 
-                                    }
+                                        if (p0Cache.isHardCalls()) {
 
-                                    p0Cache.register(variantData, childToParentMap);
+                                            long[] alleleHomA = p0A.homozygous[alleleIA];
+                                            long[] alleleHomB = p0B.homozygous[alleleIB];
 
-                                    pHomB = p0Cache.getPHomozygous(variantInformationB.id);
-                                    allelesB = p0Cache.getOrderedAlleles(variantInformationB.id);
+                                            n = LdUtils.countAnd(genotypedA, genotypedB);
+                                            nA = LdUtils.countAnd(alleleHomA, genotypedB);
+                                            nB = LdUtils.countAnd(alleleHomB, genotypedA);
+                                            nAB = LdUtils.countAnd(alleleHomA, alleleHomB);
 
-                                }
+                                        } else {
 
-                                semaphore.release();
+                                            float[] allelePHomA = pHomA[alleleIA];
+                                            float[] allelePHomB = pHomB[alleleIB];
 
-                            }
+                                            for (int parentI = 0; parentI < allelePHomA.length; parentI++) {
 
-                            for (int alleleIA = 0; alleleIA < allelesA.length - 1; alleleIA++) {
+                                                if (P0Cache.P0.isGenotyped(genotypedA, parentI) && P0Cache.P0.isGenotyped(genotypedB, parentI)) {
 
-                                for (int alleleIB = 0; alleleIB < allelesB.length - 1; alleleIB++) {
+                                                    float parentAllelePHomA = allelePHomA[parentI];
+                                                    float parentAllelePHomB = allelePHomB[parentI];
 
-                                    double nA = 0.0;
-                                    double nB = 0.0;
-                                    double nAB = 0.0;
-                                    double n = 0.0;
+                                                    n += 1;
 
-                                    float[] allelePHomA = pHomA[alleleIA];
-                                    float[] allelePHomB = pHomB[alleleIB];
+                                                    nA += parentAllelePHomA;
+                                                    nB += parentAllelePHomB;
+                                                    nAB += parentAllelePHomA * parentAllelePHomB;
 
-                                    for (int parentI = 0; parentI < allelePHomA.length; parentI++) {
+                                                }
+                                            }
+                                        }
 
-                                        float parentAllelePHomA = allelePHomA[parentI];
-                                        float parentAllelePHomB = allelePHomB[parentI];
+                                        r2Value = LdUtils.getR2(nA, nB, nAB, n);
 
-                                        if (!Float.isNaN(parentAllelePHomA) && !Float.isNaN(parentAllelePHomB)) {
+                                    }
 
-                                            n += 1;
+                                    if (r2Value > maxR2) {
 
-                                            nA += parentAllelePHomA;
-                                            nB += parentAllelePHomB;
-                                            nAB += parentAllelePHomA * parentAllelePHomB;
+                                        maxR2 = r2Value;
 
-                                        }
                                     }
 
-                                    if (nAB * n != nA * nB) {
+                                    if (writer != null && r2Value > minR2) {
 
-                                        double pAB = nAB / n;
-                                        double pA = nA / n;
-                                        double pB = nB / n;
+                                        R2 r2 = new R2(variantIdB, (short) allelesA[alleleIA + 1], (short) allelesB[alleleIB + 1], (float) r2Value);
+                                        r2s.add(r2);
 
-                                        double d = pAB - (pA * pB);
-
-                                        double r2Value = (d * d) / (pA * (1 - pA) * pB * (1 - pB));
+                                    }
+                                }
+                            }
 
-                                        if (r2Value > minR2) {
+                            if (ldScores != null) {
 
-                                            R2 r2 = new R2(variantIdB, (short) allelesA[alleleIA + 1], (short) allelesB[alleleIB + 1], (float) r2Value);
-                                            r2s.add(r2);
+                                ldScores.add(threadIndex, indexA, indexB, maxR2);
 
-                                        }
-                                    }
-                                }
                             }
                         }
                     }
 
-                    p0Cache.release(threadIndex);
+                    if (writer == null) {
+
+                        continue;
+
+                    }
 
                     if (!r2s.isEmpty()) {
 
                         writer.addVariant(
                                 variantIdA,
                                 r2s,
-                                compressor
+                                compressor,
+                                indexA
                         );
-                    }
-
-                    if (++cacheCounter >= N_CACHE_FREQ) {
-
-                        int[] cleanedRegion = p0Cache.cleanCache();
-
-                        if (cleanedRegion != null) {
-
-                            VariantIterator tempIterator = new VariantIterator(bgenIndex, cleanedRegion[0], cleanedRegion[1]);
 
-                            Integer indexToRemove;
-                            while ((indexToRemove = tempIterator.next()) != null) {
-
-                                parseSemaphores.remove(indexToRemove);
+                    } else {
 
-                            }
+                        writer.complete(indexA);
 
-                        }
+                    }
 
-                        cacheCounter = 0;
+                } else if (writer != null) {
 
-                    } else {
+                    writer.complete(indexA);
 
-                        // Notify other threads of progress
-                    }
                 }
             }
 
@@ -412,41 +357,80 @@ public class LdMatrixComputerRunnable implements Runnable {
 
             t.printStackTrace();
 
+        } finally {
+
+            p0Cache.release(threadIndex);
+            pairCounter.addAndGet(nPairs);
+
         }
     }
 
     /**
-     * Returns a boolean indicating whether the variant has at least two alleles
-     * passing the allele frequency.
+     * Parses the given variant and registers it in the summary of the bgen
+     * file.
      *
-     * @param variantData The data on the variant to process.
+     * @param variantIndex The index of the variant in the bgen file.
      *
-     * @return A boolean indicating whether the variant has at least two alleles
-     * passing the allele frequency.
+     * @return The data of the variant, null if the variant does not have two
+     * alleles passing the allele frequency threshold.
      */
-    private boolean hasAlleles(
-            BgenVariantTrioData variantData
+    private BgenVariantTrioData parse(
+            int variantIndex
     ) {
 
-        int nAlleles = 0;
-        int[] orderedAlleles = variantData.getOrderedAlleles();
+        BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
+        variantData.parse(
+                childToParentMap,
+                decompressor
+        );
 
-        for (int i = 1; i < orderedAlleles.length; i++) {
+        bgenSummary.register(variantIndex, variantData);
 
-            double frequency = variantData.getAlleleFrequency(orderedAlleles[i]);
+        return LdUtils.hasAlleles(variantData.getAlleleFrequency(), alleleFrequencyThreshold) ? variantData : null;
 
-            if (frequency >= alleleFrequencyThreshold) {
+    }
 
-                nAlleles++;
+    /**
+     * Returns a boolean indicating whether the given variant is known from the
+     * cache or from the summary of the bgen file not to have two alleles
+     * passing the allele frequency.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the variant can be excluded without
+     * parsing.
+     */
+    private boolean isExcluded(
+            int variantIndex
+    ) {
 
-            } else {
+        if (p0Cache.isExcluded(variantIndex)) {
 
-                break;
+            return true;
 
-            }
         }
 
-        return nAlleles > 0;
+        if (bgenSummary.contains(variantIndex) && !LdUtils.hasAlleles(bgenSummary.getAlleleFrequencies(variantIndex), alleleFrequencyThreshold)) {
+
+            p0Cache.exclude(variantIndex);
+
+            return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the runnables have been canceled,
+     * typically due to an error.
+     *
+     * @return A boolean indicating whether the runnables have been canceled.
+     */
+    public static boolean isCanceled() {
+
+        return canceled;
 
     }
 }
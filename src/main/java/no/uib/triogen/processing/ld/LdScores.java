@@ -0,0 +1,302 @@
+package no.uib.triogen.processing.ld;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import no.uib.triogen.TrioGen;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.flat.indexed.IndexedGzCoordinates;
+import no.uib.triogen.io.flat.indexed.IndexedGzWriter;
+import no.uib.triogen.model.genome.VariantInformation;
+
+/**
+ * Accumulates the LD scores of the variants, i.e. the sum of the r2 with the
+ * variants of their window, overall and per annotation. Every thread
+ * accumulates in its own arrays that are merged at the end.
+ *
+ * @author Marc Vaudel
+ */
+public class LdScores {
+
+    /**
+     * The number of variants per block of the table.
+     */
+    public static final int BLOCK_SIZE = 1024;
+    /**
+     * The index of the first variant to score.
+     */
+    private final int rangeStart;
+    /**
+     * The number of variants after the first variant that can be scored.
+     */
+    private final int rangeLength;
+    /**
+     * The names of the annotations.
+     */
+    private final String[] annotationNames;
+    /**
+     * The variants in every annotation indexed by variant.
+     */
+    private final BitSet[] annotated;
+    /**
+     * The scores of every thread: thread, overall score then score per
+     * annotation, variant relative to the range start.
+     */
+    private final double[][][] scores;
+    /**
+     * The variants scored by every thread relative to the range start.
+     */
+    private final BitSet[] scored;
+
+    /**
+     * Constructor.
+     *
+     * @param nThreads The number of threads.
+     * @param rangeStart The index of the first variant to score.
+     * @param rangeEnd The index after the last variant to score.
+     * @param annotationNames The names of the annotations.
+     * @param annotated The variants in every annotation indexed by variant.
+     */
+    public LdScores(
+            int nThreads,
+            int rangeStart,
+            int rangeEnd,
+            String[] annotationNames,
+            BitSet[] annotated
+    ) {
+
+        this.rangeStart = rangeStart;
+        this.rangeLength = rangeEnd - rangeStart;
+        this.annotationNames = annotationNames;
+        this.annotated = annotated;
+        this.scores = new double[nThreads][][];
+        this.scored = new BitSet[nThreads];
+
+    }
+
+    /**
+     * Adds the r2 between two variants to the scores of the first variant.
+     * Only the thread of the given index must call this method with this
+     * index.
+     *
+     * @param threadIndex The index of the thread.
+     * @param indexA The index of the variant to score.
+     * @param indexB The index of the variant in its window.
+     * @param r2 The r2 between the two variants.
+     */
+    public void add(
+            int threadIndex,
+            int indexA,
+            int indexB,
+            double r2
+    ) {
+
+        double[][] threadScores = scores[threadIndex];
+
+        if (threadScores == null) {
+
+            threadScores = new double[annotated.length + 1][rangeLength];
+            scores[threadIndex] = threadScores;
+            scored[threadIndex] = new BitSet(rangeLength);
+
+        }
+
+        int i = indexA - rangeStart;
+
+        scored[threadIndex].set(i);
+
+        if (!(r2 > 0.0)) {
+
+            return;
+
+        }
+
+        threadScores[0][i] += r2;
+
+        for (int annotationI = 0; annotationI < annotated.length; annotationI++) {
+
+            if (annotated[annotationI].get(indexB)) {
+
+                threadScores[annotationI + 1][i] += r2;
+
+            }
+        }
+    }
+
+    /**
+     * Merges the scores of all threads and writes them as an indexed table
+     * along with its index. The table is written in blocks of consecutive
+     * variants on the same contig, the index lists the contig, the positions
+     * of the first and last variants, and the coordinates of every block.
+     *
+     * @param destinationFile The file where to write the table.
+     * @param variantInformationArray The information on the variants.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the file.
+     */
+    public void write(
+            File destinationFile,
+            VariantInformation[] variantInformationArray
+    ) throws IOException {
+
+        double[][] mergedScores = new double[annotated.length + 1][rangeLength];
+        BitSet mergedScored = new BitSet(rangeLength);
+
+        for (int threadI = 0; threadI < scores.length; threadI++) {
+
+            if (scores[threadI] != null) {
+
+                for (int scoreI = 0; scoreI < mergedScores.length; scoreI++) {
+
+                    for (int i = 0; i < rangeLength; i++) {
+
+                        mergedScores[scoreI][i] += scores[threadI][scoreI][i];
+
+                    }
+                }
+
+                mergedScored.or(scored[threadI]);
+
+            }
+        }
+
+        try (
+                IndexedGzWriter outputWriter = new IndexedGzWriter(destinationFile);
+                SimpleFileWriter index = new SimpleFileWriter(IoUtils.getIndexFile(destinationFile), true)) {
+
+            index.writeLine(
+                    "contig",
+                    "start",
+                    "end",
+                    "compressedLength",
+                    "uncompressedLength"
+            );
+
+            IndexedGzCoordinates coordinates = outputWriter.append("# TrioGen version: " + TrioGen.getVersion() + IoUtils.LINE_SEPARATOR);
+            index.writeLine(
+                    "Header",
+                    "Header",
+                    "Comment",
+                    Integer.toString(coordinates.compressedLength),
+                    Integer.toString(coordinates.uncompressedLength)
+            );
+
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(String.join(IoUtils.SEPARATOR, "contig", "position", "variantId", "rsid", "ldScore"));
+
+            for (String annotationName : annotationNames) {
+
+                stringBuilder.append(IoUtils.SEPARATOR).append("ldScore.").append(annotationName);
+
+            }
+
+            stringBuilder.append(IoUtils.LINE_SEPARATOR);
+
+            coordinates = outputWriter.append(stringBuilder.toString());
+            index.writeLine(
+                    "Header",
+                    "Header",
+                    "Header",
+                    Integer.toString(coordinates.compressedLength),
+                    Integer.toString(coordinates.uncompressedLength)
+            );
+
+            stringBuilder = new StringBuilder();
+            VariantInformation firstVariant = null;
+            VariantInformation lastVariant = null;
+            int nVariants = 0;
+
+            for (int i = mergedScored.nextSetBit(0); i >= 0; i = mergedScored.nextSetBit(i + 1)) {
+
+                VariantInformation variantInformation = variantInformationArray[rangeStart + i];
+
+                if (nVariants == BLOCK_SIZE || firstVariant != null && !firstVariant.contig.equals(variantInformation.contig)) {
+
+                    writeBlock(outputWriter, index, stringBuilder, firstVariant, lastVariant);
+
+                    stringBuilder = new StringBuilder();
+                    firstVariant = null;
+                    nVariants = 0;
+
+                }
+
+                if (firstVariant == null) {
+
+                    firstVariant = variantInformation;
+
+                }
+
+                lastVariant = variantInformation;
+                nVariants++;
+
+                stringBuilder.append(
+                        String.join(IoUtils.SEPARATOR,
+                                variantInformation.contig,
+                                Integer.toString(variantInformation.position),
+                                variantInformation.id,
+                                variantInformation.rsid == null ? "" : variantInformation.rsid
+                        )
+                );
+
+                for (double[] scoreValues : mergedScores) {
+
+                    stringBuilder.append(IoUtils.SEPARATOR).append(scoreValues[i]);
+
+                }
+
+                stringBuilder.append(IoUtils.LINE_SEPARATOR);
+
+            }
+
+            if (nVariants > 0) {
+
+                writeBlock(outputWriter, index, stringBuilder, firstVariant, lastVariant);
+
+            }
+        }
+    }
+
+    /**
+     * Writes a block of the table and its line in the index.
+     *
+     * @param outputWriter The writer for the table.
+     * @param index The writer for the index.
+     * @param stringBuilder The lines of the block.
+     * @param firstVariant The first variant of the block.
+     * @param lastVariant The last variant of the block.
+     */
+    private static void writeBlock(
+            IndexedGzWriter outputWriter,
+            SimpleFileWriter index,
+            StringBuilder stringBuilder,
+            VariantInformation firstVariant,
+            VariantInformation lastVariant
+    ) {
+
+        IndexedGzCoordinates coordinates = outputWriter.append(stringBuilder.toString());
+        index.writeLine(
+                firstVariant.contig,
+                Integer.toString(firstVariant.position),
+                Integer.toString(lastVariant.position),
+                Integer.toString(coordinates.compressedLength),
+                Integer.toString(coordinates.uncompressedLength)
+        );
+    }
+
+    /**
+     * Returns the file where to write the LD scores for the given stem.
+     *
+     * @param destinationStem The stem of the path of the results.
+     *
+     * @return The file where to write the LD scores.
+     */
+    public static File getLdScoreFile(
+            String destinationStem
+    ) {
+
+        return new File(destinationStem + ".ldscore.gz");
+
+    }
+}
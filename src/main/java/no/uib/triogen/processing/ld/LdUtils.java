@@ -0,0 +1,173 @@
+package no.uib.triogen.processing.ld;
+
+import java.util.Arrays;
+
+/**
+ * Utils for the computation of LD.
+ *
+ * @author Marc Vaudel
+ */
+public class LdUtils {
+
+    /**
+     * The engines available to compute LD matrices.
+     */
+    public enum LdEngine {
+
+        pairwise(0),
+        blocked(1);
+
+        private LdEngine(int index) {
+
+            this.index = index;
+
+        }
+
+        public final int index;
+
+    }
+
+    /**
+     * Returns the r2 between two alleles from the sums over the parents
+     * genotyped for both variants of the probabilities of being homozygous.
+     *
+     * @param nA The sum for the allele of variant A.
+     * @param nB The sum for the allele of variant B.
+     * @param nAB The sum of the products.
+     * @param n The number of parents.
+     *
+     * @return The r2, NaN if the alleles are independent.
+     */
+    public static double getR2(
+            double nA,
+            double nB,
+            double nAB,
+            double n
+    ) {
+
+        double pA = nA / n;
+        double pB = nB / n;
+
+        return getR2(nA, nB, nAB, n, pA, pA * (1 - pA), pB);
+
+    }
+
+    /**
+     * Returns the r2 between two alleles from the sums over the parents
+     * genotyped for both variants of the probabilities of being homozygous,
+     * using precomputed moments for the alleles.
+     *
+     * @param nA The sum for the allele of variant A.
+     * @param nB The sum for the allele of variant B.
+     * @param nAB The sum of the products.
+     * @param n The number of parents.
+     * @param pA The frequency for the allele of variant A.
+     * @param varianceA The variance for the allele of variant A.
+     * @param pB The frequency for the allele of variant B.
+     *
+     * @return The r2, NaN if the alleles are independent.
+     */
+    public static double getR2(
+            double nA,
+            double nB,
+            double nAB,
+            double n,
+            double pA,
+            double varianceA,
+            double pB
+    ) {
+
+        if (nAB * n == nA * nB) {
+
+            return Double.NaN;
+
+        }
+
+        double pAB = nAB / n;
+
+        double d = pAB - (pA * pB);
+
+        return (d * d) / (varianceA * pB * (1 - pB));
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the variant has at least two alleles
+     * passing the allele frequency.
+     *
+     * @param alleleFrequencies The frequencies of the alleles of the variant.
+     * @param alleleFrequencyThreshold The allele frequency threshold.
+     *
+     * @return A boolean indicating whether the variant has at least two alleles
+     * passing the allele frequency.
+     */
+    public static boolean hasAlleles(
+            double[] alleleFrequencies,
+            double alleleFrequencyThreshold
+    ) {
+
+        if (alleleFrequencies == null || alleleFrequencies.length < 2) {
+
+            return false;
+
+        }
+
+        double[] sortedFrequencies = Arrays.copyOf(alleleFrequencies, alleleFrequencies.length);
+        Arrays.sort(sortedFrequencies);
+
+        return sortedFrequencies[sortedFrequencies.length - 2] >= alleleFrequencyThreshold;
+
+    }
+
+    /**
+     * Returns the number of bits set in both bit sets.
+     *
+     * @param bits1 The first bit set.
+     * @param bits2 The second bit set.
+     *
+     * @return The number of bits set in both bit sets.
+     */
+    public static int countAnd(
+            long[] bits1,
+            long[] bits2
+    ) {
+
+        int count = 0;
+
+        for (int wordI = 0; wordI < bits1.length; wordI++) {
+
+            count += Long.bitCount(bits1[wordI] & bits2[wordI]);
+
+        }
+
+        return count;
+
+    }
+
+    /**
+     * Returns the number of bits set in the three bit sets.
+     *
+     * @param bits1 The first bit set.
+     * @param bits2 The second bit set.
+     * @param bits3 The third bit set.
+     *
+     * @return The number of bits set in the three bit sets.
+     */
+    public static int countAnd(
+            long[] bits1,
+            long[] bits2,
+            long[] bits3
+    ) {
+
+        int count = 0;
+
+        for (int wordI = 0; wordI < bits1.length; wordI++) {
+
+            count += Long.bitCount(bits1[wordI] & bits2[wordI] & bits3[wordI]);
+
+        }
+
+        return count;
+
+    }
+}
@@ -1,204 +1,585 @@
 package no.uib.triogen.processing.ld;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
 import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
 import no.uib.triogen.model.family.ChildToParentMap;
-import no.uib.triogen.model.genome.VariantInformation;
-import no.uib.triogen.utils.SimpleSemaphore;
 
 /**
- * Cache for p0 values.
+ * Sliding window cache for p0 values indexed by the index of the variants in
+ * the bgen file. Values are stored in a ring buffer where every variant is
+ * loaded once by the first thread requesting it, other threads requesting the
+ * variant in the meantime wait for the value to be loaded. Every thread
+ * registers the index of the first variant of its current window, slots of
+ * variants before the smallest window start are reused. Threads loading
+ * variants too far ahead of the smallest window start wait for the slowest
+ * thread to progress, keeping the memory bounded by the size of the buffer.
+ * Reading loaded variants is lock free. Probabilities are stored with 0 for
+ * parents not genotyped, the genotyped parents being given by a bit mask.
  *
  * @author Marc Vaudel
  */
 public class P0Cache {
 
     /**
-     * The current blocking position for each thread.
+     * The time in nanoseconds to wait before checking again for the
+     * availability of a slot.
      */
-    private final int[] blockPosition;
+    private static final long WAIT_NANOS = 100000l;
     /**
-     * Map of the position of each variant.
+     * The map of trios.
      */
-    private final TreeMap<Integer, ArrayList<String>> positionMap = new TreeMap<>();
+    private final ChildToParentMap childToParentMap;
     /**
-     * Semaphore for the edition of the map.
+     * Boolean indicating whether the values should be computed on hard calls.
      */
-    private final SimpleSemaphore positionMapSemaphore = new SimpleSemaphore(1);
+    private final boolean hardCalls;
     /**
-     * Map of the probability of being homozygous for each variant.
+     * The number of slots in the buffer.
      */
-    private final ConcurrentHashMap<String, float[][]> pHomozygous = new ConcurrentHashMap<>();
+    private final int capacity;
     /**
-     * The ordered alleles for each variant.
+     * The slots of the buffer.
      */
-    private final ConcurrentHashMap<String, int[]> alleles = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Slot> slots;
+    /**
+     * The index of the first variant of the current window of each thread,
+     * Integer.MAX_VALUE for threads that are done.
+     */
+    private final AtomicIntegerArray windowStarts;
+    /**
+     * Bit set of the variants that do not have two alleles passing the allele
+     * frequency threshold.
+     */
+    private final AtomicLongArray excluded;
+    /**
+     * The mask of genotyped parents of the last variant loaded.
+     */
+    private volatile long[] lastGenotyped = null;
 
     /**
      * Constructor.
      *
-     * @param nThreads the number of threads using the cache.
+     * @param nThreads The number of threads using the cache.
+     * @param nVariants The number of variants in the bgen file.
+     * @param maxWindowSize The maximal number of variants in a window.
+     * @param childToParentMap The map of trios.
+     * @param hardCalls Boolean indicating whether the values should be
+     * computed on hard calls.
      */
     public P0Cache(
-            int nThreads
+            int nThreads,
+            int nVariants,
+            int maxWindowSize,
+            ChildToParentMap childToParentMap,
+            boolean hardCalls
+    ) {
+
+        this.childToParentMap = childToParentMap;
+        this.hardCalls = hardCalls;
+
+        capacity = Math.max(2 * maxWindowSize, 1);
+        slots = new AtomicReferenceArray<>(capacity);
+
+        windowStarts = new AtomicIntegerArray(nThreads);
+
+        excluded = new AtomicLongArray(nVariants / Long.SIZE + 1);
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the values are computed on hard
+     * calls.
+     *
+     * @return A boolean indicating whether the values are computed on hard
+     * calls.
+     */
+    public boolean isHardCalls() {
+
+        return hardCalls;
+
+    }
+
+    /**
+     * Returns the maximal number of variants in a window spanning the given
+     * distance on either side of a variant.
+     *
+     * @param positions The positions of the variants, sorted in ascending
+     * order.
+     * @param maxDistance The maximal distance in bp between variants.
+     *
+     * @return The maximal number of variants in a window.
+     */
+    public static int getMaxWindowSize(
+            int[] positions,
+            int maxDistance
     ) {
 
-        this.blockPosition = new int[nThreads];
+        int maxWindowSize = 0;
+        int first = 0;
+        int last = 0;
+
+        for (int i = 0; i < positions.length; i++) {
+
+            while (positions[first] < positions[i] - maxDistance) {
+
+                first++;
+
+            }
+            while (last + 1 < positions.length && positions[last + 1] <= positions[i] + maxDistance) {
+
+                last++;
+
+            }
+
+            maxWindowSize = Math.max(maxWindowSize, last - first + 1);
+
+        }
+
+        return maxWindowSize;
 
     }
 
     /**
-     * Returns the probability of being homozygous for the given variant.
+     * Returns the index of the first variant at or after the given position.
      *
-     * @param id The id of the variant.
+     * @param positions The positions of the variants, sorted in ascending
+     * order.
+     * @param position The position.
      *
-     * @return A map of the probability of being homozygous per allele and per
-     * sample.
+     * @return The index of the first variant at or after the given position.
      */
-    public float[][] getPHomozygous(
-            String id
+    public static int getFirstIndex(
+            int[] positions,
+            int position
     ) {
 
-        return pHomozygous.get(id);
+        int index = Arrays.binarySearch(positions, position);
+
+        if (index < 0) {
+
+            return -index - 1;
+
+        }
+
+        while (index > 0 && positions[index - 1] == position) {
+
+            index--;
+
+        }
+
+        return index;
 
     }
 
     /**
-     * Returns the alleles ordered by allele frequency for the given variant.
+     * Returns the index of the last variant at or before the given position.
      *
-     * @param id The id of the variant.
+     * @param positions The positions of the variants, sorted in ascending
+     * order.
+     * @param position The position.
      *
-     * @return The alleles orderd by allele freqyency for the given variant.
+     * @return The index of the last variant at or before the given position.
      */
-    public int[] getOrderedAlleles(
-            String id
+    public static int getLastIndex(
+            int[] positions,
+            int position
     ) {
 
-        return alleles.get(id);
+        int index = Arrays.binarySearch(positions, position);
+
+        if (index < 0) {
+
+            return -index - 2;
+
+        }
+
+        while (index < positions.length - 1 && positions[index + 1] == position) {
+
+            index++;
+
+        }
+
+        return index;
 
     }
 
     /**
-     * Releases the given position for the given thread.
+     * Sets the index of the first variant of the window of the given thread.
+     * The windows of a thread must be processed in ascending order.
      *
-     * @param thread The thread number.
-     * @param pos The position on the chromosome.
+     * @param thread The index of the thread.
+     * @param windowStart The index of the first variant of the window.
      */
-    public void block(
+    public void setWindowStart(
             int thread,
-            int pos
+            int windowStart
     ) {
 
-        blockPosition[thread] = pos;
+        windowStarts.set(thread, windowStart);
 
     }
 
     /**
-     * Releases the given position for the given thread.
+     * Indicates that the given thread is done and does not need the cache
+     * anymore.
      *
-     * @param thread The thread number.
+     * @param thread The index of the thread.
      */
     public void release(
             int thread
     ) {
 
-        blockPosition[thread] = -1;
+        windowStarts.set(thread, Integer.MAX_VALUE);
 
     }
 
     /**
-     * Clear information from the cache.
+     * Returns the smallest window start of the threads.
      *
-     * @return Returns the position of the first and last values removed from cache. Null if no value was removed.
+     * @return The smallest window start of the threads.
      */
-    public int[] cleanCache() {
-        
-        int lastLock = -1;
+    private int getMinWindowStart() {
 
-        for (int threadPosition : blockPosition) {
+        int minWindowStart = Integer.MAX_VALUE;
 
-            if (threadPosition > -1 && 
-                    (threadPosition < lastLock || lastLock == -1)) {
-                
-                        lastLock = threadPosition;
+        for (int i = 0; i < windowStarts.length(); i++) {
+
+            minWindowStart = Math.min(minWindowStart, windowStarts.get(i));
 
-            }
         }
-        
-        if (lastLock == -1) {
-            
-            return null;
-            
+
+        return minWindowStart;
+
+    }
+
+    /**
+     * Returns a boolean indicating whether the given variant is excluded.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     *
+     * @return A boolean indicating whether the given variant is excluded.
+     */
+    public boolean isExcluded(
+            int variantIndex
+    ) {
+
+        return (excluded.get(variantIndex / Long.SIZE) & (1l << (variantIndex % Long.SIZE))) != 0;
+
+    }
+
+    /**
+     * Marks the given variant as excluded.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     */
+    public void exclude(
+            int variantIndex
+    ) {
+
+        int wordIndex = variantIndex / Long.SIZE;
+        long mask = 1l << (variantIndex % Long.SIZE);
+
+        long word;
+        while (((word = excluded.get(wordIndex)) & mask) == 0
+                && !excluded.compareAndSet(wordIndex, word, word | mask)) {
         }
+    }
 
-        positionMapSemaphore.acquire();
+    /**
+     * Returns the p0 values of the given variant, loading it if not in cache.
+     * The variant must be in the window registered by the calling thread.
+     *
+     * @param variantIndex The index of the variant in the bgen file.
+     * @param parser The function to use to parse the variant, returns null if
+     * the variant should be excluded.
+     *
+     * @return The p0 values of the variant, null if the variant is excluded.
+     */
+    public P0 get(
+            int variantIndex,
+            IntFunction<BgenVariantTrioData> parser
+    ) {
 
-        HashSet<Integer> positionToRemove = new HashSet<>();
+        int slotIndex = variantIndex % capacity;
 
-        int firstPosition = -1;
+        while (true) {
 
-        for (Entry<Integer, ArrayList<String>> entry : positionMap.entrySet()) {
+            Slot slot = slots.get(slotIndex);
 
-            int position = entry.getKey();
+            if (slot != null && slot.variantIndex == variantIndex) {
 
-            if (position >= lastLock) {
+                return slot.value.join();
 
-                break;
+            }
+
+            if (slot != null && slot.variantIndex > variantIndex) {
+
+                throw new IllegalStateException("Variant " + variantIndex + " requested after eviction from the LD cache.");
 
             }
 
-            if (firstPosition == -1) {
+            int minWindowStart = getMinWindowStart();
+
+            if ((slot == null || slot.variantIndex < minWindowStart)
+                    && variantIndex - minWindowStart < capacity) {
+
+                Slot newSlot = new Slot(variantIndex);
+
+                if (slots.compareAndSet(slotIndex, slot, newSlot)) {
+
+                    try {
+
+                        BgenVariantTrioData variantData = parser.apply(variantIndex);
 
-                firstPosition = position;
+                        if (variantData == null) {
+
+                            exclude(variantIndex);
+                            newSlot.value.complete(null);
+
+                        } else {
+
+                            newSlot.value.complete(getP0(variantData));
+                        }
+
+                    } catch (Throwable t) {
+
+                        newSlot.value.completeExceptionally(t);
+
+                        throw t;
+
+                    }
+
+                    return newSlot.value.join();
+
+                }
+
+            } else {
+
+                // The slot is used by a variant still needed by another thread
+                LockSupport.parkNanos(WAIT_NANOS);
 
             }
+        }
+    }
+
+    /**
+     * Returns the p0 values of the given variant.
+     *
+     * @param variantData The genotyping data on this variant.
+     *
+     * @return The p0 values of the given variant.
+     */
+    private P0 getP0(
+            BgenVariantTrioData variantData
+    ) {
+
+        int nParents = 2 * childToParentMap.children.length;
+        long[] genotyped = new long[(nParents + Long.SIZE - 1) / Long.SIZE];
+
+        float[][] pHomozygous = null;
+        long[][] homozygous = null;
+
+        if (hardCalls) {
+
+            homozygous = getHomozygous(variantData, childToParentMap, genotyped);
+
+        } else {
+
+            pHomozygous = getPHomozygous(variantData, childToParentMap);
+
+            for (int parentI = 0; parentI < nParents; parentI++) {
+
+                boolean parentGenotyped = true;
 
-            positionToRemove.add(position);
+                for (float[] values : pHomozygous) {
 
-            for (String id : entry.getValue()) {
+                    if (Float.isNaN(values[parentI])) {
 
-                pHomozygous.remove(id);
-                alleles.remove(id);
+                        parentGenotyped = false;
+                        break;
 
+                    }
+                }
+
+                if (parentGenotyped) {
+
+                    genotyped[parentI >>> 6] |= 1l << parentI;
+
+                } else {
+
+                    for (float[] values : pHomozygous) {
+
+                        values[parentI] = 0.0f;
+
+                    }
+                }
             }
         }
 
-        for (int position : positionToRemove) {
+        // Share the mask with the previous variant if identical, allowing comparing masks by reference
+        long[] previous = lastGenotyped;
+
+        if (previous != null && Arrays.equals(previous, genotyped)) {
 
-            positionMap.remove(position);
+            genotyped = previous;
+
+        } else {
+
+            lastGenotyped = genotyped;
 
         }
-        
-//        System.out.println("Cache emptied between " + firstPosition + " and " + lastLock);
-//        System.out.println("pHomozygous size " + pHomozygous.size());
-//        System.out.println("alleles size " + alleles.size());
-//        System.out.println("positionMap size " + positionMap.size());
 
-        positionMapSemaphore.release();
+        return hardCalls
+                ? new P0(
+                        homozygous,
+                        variantData.getOrderedAlleles(),
+                        genotyped
+                )
+                : new P0(
+                        pHomozygous,
+                        variantData.getOrderedAlleles(),
+                        genotyped
+                );
+    }
+
+    /**
+     * Returns bit sets indicating whether the best-guess genotypes of the
+     * mothers then fathers of the given trios are homozygous for the tested
+     * alleles of the given variant, and sets the bits of the genotyped
+     * parents in the given mask. The best-guess allele of every haplotype is
+     * the allele with the highest probability, parents with missing
+     * probabilities are considered not genotyped.
+     *
+     * @param variantData The genotyping data on this variant.
+     * @param childToParentMap The child to parent map.
+     * @param genotyped The mask where to set the genotyped parents.
+     *
+     * @return The bit sets of homozygous parents per tested allele.
+     */
+    public static long[][] getHomozygous(
+            BgenVariantTrioData variantData,
+            ChildToParentMap childToParentMap,
+            long[] genotyped
+    ) {
+
+        int[] orderedAlleles = variantData.getOrderedAlleles();
+        int nChildren = childToParentMap.children.length;
+
+        long[][] homozygous = new long[orderedAlleles.length - 1][genotyped.length];
+
+        for (int childI = 0; childI < nChildren; childI++) {
+
+            String childId = childToParentMap.children[childI];
+
+            setHomozygous(variantData, childToParentMap.getMother(childId), childI, orderedAlleles, homozygous, genotyped);
+            setHomozygous(variantData, childToParentMap.getFather(childId), childI + nChildren, orderedAlleles, homozygous, genotyped);
 
-        return new int[]{firstPosition, lastLock};
+        }
+
+        return homozygous;
 
     }
 
     /**
-     * Saves the information needed for LD calculation in cache.
+     * Sets the bits of the given parent in the given bit sets.
+     *
+     * @param variantData The genotyping data on this variant.
+     * @param parentId The id of the parent.
+     * @param parentI The index of the parent in the bit sets.
+     * @param orderedAlleles The alleles ordered by frequency.
+     * @param homozygous The bit sets of homozygous parents per tested allele.
+     * @param genotyped The mask of genotyped parents.
+     */
+    private static void setHomozygous(
+            BgenVariantTrioData variantData,
+            String parentId,
+            int parentI,
+            int[] orderedAlleles,
+            long[][] homozygous,
+            long[] genotyped
+    ) {
+
+        if (!variantData.contains(parentId)) {
+
+            return;
+
+        }
+
+        int homozygousAllele = -1;
+
+        for (int z = 0; z < variantData.getPloidy(parentId); z++) {
+
+            int bestAllele = -1;
+            double bestProbability = -1.0;
+
+            for (int allele : orderedAlleles) {
+
+                double probability = variantData.getProbability(parentId, z, allele);
+
+                if (Double.isNaN(probability)) {
+
+                    return;
+
+                }
+
+                if (probability > bestProbability) {
+
+                    bestAllele = allele;
+                    bestProbability = probability;
+
+                }
+            }
+
+            if (z == 0) {
+
+                homozygousAllele = bestAllele;
+
+            } else if (bestAllele != homozygousAllele) {
+
+                homozygousAllele = -1;
+
+            }
+        }
+
+        long bit = 1l << parentI;
+        int wordI = parentI >>> 6;
+
+        genotyped[wordI] |= bit;
+
+        for (int alleleI = 1; alleleI < orderedAlleles.length; alleleI++) {
+
+            if (orderedAlleles[alleleI] == homozygousAllele) {
+
+                homozygous[alleleI - 1][wordI] |= bit;
+
+            }
+        }
+    }
+
+    /**
+     * Returns the probability of being homozygous for the tested alleles of
+     * the given variant in the mothers then fathers of the given trios. NaN if
+     * the parent is not genotyped.
      *
      * @param variantData The genotyping data on this variant.
      * @param childToParentMap The child to parent map.
+     *
+     * @return The probability of being homozygous per allele and per parent.
      */
-    public void register(
+    public static float[][] getPHomozygous(
             BgenVariantTrioData variantData,
             ChildToParentMap childToParentMap
     ) {
 
-        VariantInformation variantInformation = variantData.getVariantInformation();
         int[] orderedAlleles = variantData.getOrderedAlleles();
 
-        float[][] variantPHomozygous = new float[variantInformation.alleles.length - 1][2 * childToParentMap.children.length];
+        float[][] variantPHomozygous = new float[orderedAlleles.length - 1][2 * childToParentMap.children.length];
 
         for (int alleleI = 1; alleleI < orderedAlleles.length; alleleI++) {
 
@@ -250,36 +631,243 @@ public class P0Cache {
             }
         }
 
-        pHomozygous.put(variantInformation.id, variantPHomozygous);
-        alleles.put(variantInformation.id, orderedAlleles);
-
-        savePosition(variantInformation);
+        return variantPHomozygous;
 
     }
 
     /**
-     * Saves the variant information sorted by position.
-     *
-     * @param variantInformation
+     * The p0 values of a variant.
      */
-    private void savePosition(
-            VariantInformation variantInformation
-    ) {
+    public static class P0 {
+
+        /**
+         * The probability of being homozygous per tested allele and per
+         * parent, 0 for parents not genotyped. Null when using hard calls.
+         */
+        public final float[][] pHomozygous;
+        /**
+         * Bit sets of the parents with homozygous hard calls per tested
+         * allele. Null when using probabilities.
+         */
+        public final long[][] homozygous;
+        /**
+         * The alleles ordered by allele frequency.
+         */
+        public final int[] orderedAlleles;
+        /**
+         * Bit mask of the genotyped parents.
+         */
+        public final long[] genotyped;
+        /**
+         * The number of genotyped parents.
+         */
+        public final int nGenotyped;
+        /**
+         * The sum of the probability of being homozygous per tested allele
+         * over the genotyped parents.
+         */
+        public final double[] sums;
+        /**
+         * The frequency of homozygous parents per tested allele among the
+         * genotyped parents.
+         */
+        public final double[] frequencies;
+        /**
+         * The variance of the homozygosity per tested allele among the
+         * genotyped parents.
+         */
+        public final double[] variances;
+
+        /**
+         * Constructor.
+         *
+         * @param pHomozygous The probability of being homozygous per tested
+         * allele and per parent, 0 for parents not genotyped.
+         * @param orderedAlleles The alleles ordered by allele frequency.
+         * @param genotyped Bit mask of the genotyped parents.
+         */
+        public P0(
+                float[][] pHomozygous,
+                int[] orderedAlleles,
+                long[] genotyped
+        ) {
+
+            this.pHomozygous = pHomozygous;
+            this.homozygous = null;
+            this.orderedAlleles = orderedAlleles;
+            this.genotyped = genotyped;
+
+            nGenotyped = LdUtils.countAnd(genotyped, genotyped);
+
+            sums = new double[pHomozygous.length];
+
+            for (int alleleI = 0; alleleI < pHomozygous.length; alleleI++) {
+
+                float[] allelePHomozygous = pHomozygous[alleleI];
+                double sum = 0.0;
+
+                for (int parentI = 0; parentI < allelePHomozygous.length; parentI++) {
+
+                    if (isGenotyped(genotyped, parentI)) {
+
+                        sum += allelePHomozygous[parentI];
 
-        positionMapSemaphore.acquire();
+                    }
+                }
 
-        ArrayList<String> idsAtPosition = positionMap.get(variantInformation.position);
+                sums[alleleI] = sum;
 
-        if (idsAtPosition == null) {
+            }
 
-            idsAtPosition = new ArrayList<>(1);
-            positionMap.put(variantInformation.position, idsAtPosition);
+            frequencies = getFrequencies(sums, nGenotyped);
+            variances = getVariances(frequencies);
 
         }
 
-        idsAtPosition.add(variantInformation.id);
+        /**
+         * Constructor for hard calls.
+         *
+         * @param homozygous Bit sets of the parents with homozygous hard calls
+         * per tested allele.
+         * @param orderedAlleles The alleles ordered by allele frequency.
+         * @param genotyped Bit mask of the genotyped parents.
+         */
+        public P0(
+                long[][] homozygous,
+                int[] orderedAlleles,
+                long[] genotyped
+        ) {
+
+            this.pHomozygous = null;
+            this.homozygous = homozygous;
+            this.orderedAlleles = orderedAlleles;
+            this.genotyped = genotyped;
+
+            nGenotyped = LdUtils.countAnd(genotyped, genotyped);
 
-        positionMapSemaphore.release();
+            sums = new double[homozygous.length];
+
+            for (int alleleI = 0; alleleI < homozygous.length; alleleI++) {
+
+                sums[alleleI] = LdUtils.countAnd(homozygous[alleleI], genotyped);
+
+            }
+
+            frequencies = getFrequencies(sums, nGenotyped);
+            variances = getVariances(frequencies);
+
+        }
 
+        /**
+         * Returns the frequencies corresponding to the given sums.
+         *
+         * @param sums The sums per tested allele.
+         * @param n The number of genotyped parents.
+         *
+         * @return The frequencies per tested allele.
+         */
+        private static double[] getFrequencies(
+                double[] sums,
+                int n
+        ) {
+
+            double[] frequencies = new double[sums.length];
+
+            for (int alleleI = 0; alleleI < sums.length; alleleI++) {
+
+                frequencies[alleleI] = sums[alleleI] / n;
+
+            }
+
+            return frequencies;
+
+        }
+
+        /**
+         * Returns the variances corresponding to the given frequencies.
+         *
+         * @param frequencies The frequencies per tested allele.
+         *
+         * @return The variances per tested allele.
+         */
+        private static double[] getVariances(
+                double[] frequencies
+        ) {
+
+            double[] variances = new double[frequencies.length];
+
+            for (int alleleI = 0; alleleI < frequencies.length; alleleI++) {
+
+                double p = frequencies[alleleI];
+                variances[alleleI] = p * (1 - p);
+
+            }
+
+            return variances;
+
+        }
+
+        /**
+         * Returns a boolean indicating whether the given variant has the same
+         * genotyped parents as this variant.
+         *
+         * @param other The p0 values of the other variant.
+         *
+         * @return A boolean indicating whether the two variants have the
+         * same genotyped parents.
+         */
+        public boolean sameGenotyped(
+                P0 other
+        ) {
+
+            return genotyped == other.genotyped || Arrays.equals(genotyped, other.genotyped);
+
+        }
+
+        /**
+         * Returns a boolean indicating whether the given parent is genotyped in
+         * the given mask.
+         *
+         * @param genotyped The mask of genotyped parents.
+         * @param parentI The index of the parent.
+         *
+         * @return A boolean indicating whether the given parent is genotyped.
+         */
+        public static boolean isGenotyped(
+                long[] genotyped,
+                int parentI
+        ) {
+
+            return (genotyped[parentI >>> 6] & (1l << parentI)) != 0;
+
+        }
+    }
+
+    /**
+     * A slot of the buffer.
+     */
+    private static class Slot {
+
+        /**
+         * The index of the variant in the bgen file.
+         */
+        private final int variantIndex;
+        /**
+         * The p0 values of the variant, null if excluded.
+         */
+        private final CompletableFuture<P0> value = new CompletableFuture<>();
+
+        /**
+         * Constructor.
+         *
+         * @param variantIndex The index of the variant in the bgen file.
+         */
+        private Slot(
+                int variantIndex
+        ) {
+
+            this.variantIndex = variantIndex;
+
+        }
     }
 }
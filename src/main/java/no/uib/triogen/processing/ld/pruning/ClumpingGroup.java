@@ -0,0 +1,233 @@
+package no.uib.triogen.processing.ld.pruning;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * The variants of a phenotype on a contig to clump, stored as primitive
+ * arrays: the index of the variant in the LD matrix, its p-value, and the
+ * index of its line in the results file.
+ *
+ * @author Marc Vaudel
+ */
+public class ClumpingGroup {
+
+    /**
+     * The indexes of the variants in the LD matrix, -1 if not found.
+     */
+    private int[] variantIndexes = new int[16];
+    /**
+     * The p-values of the variants.
+     */
+    private double[] pValues = new double[16];
+    /**
+     * The indexes of the lines of the variants in the results file.
+     */
+    private int[] lineIndexes = new int[16];
+    /**
+     * The rsids of the variants, null if not needed.
+     */
+    private String[] rsids;
+    /**
+     * The number of variants in the group.
+     */
+    private int size = 0;
+    /**
+     * The indexes of the lines of the lead variants, sorted by p-value, null
+     * until clumped.
+     */
+    private int[] leadLineIndexes = null;
+
+    /**
+     * Constructor.
+     *
+     * @param storeRsids Boolean indicating whether the rsids of the variants
+     * should be stored.
+     */
+    public ClumpingGroup(
+            boolean storeRsids
+    ) {
+
+        rsids = storeRsids ? new String[16] : null;
+
+    }
+
+    /**
+     * Adds a variant to the group.
+     *
+     * @param variantIndex The index of the variant in the LD matrix, -1 if
+     * not found.
+     * @param pValue The p-value of the variant.
+     * @param lineIndex The index of the line of the variant in the results
+     * file.
+     * @param rsid The rsid of the variant, ignored if rsids are not stored.
+     */
+    public void add(
+            int variantIndex,
+            double pValue,
+            int lineIndex,
+            String rsid
+    ) {
+
+        if (size == variantIndexes.length) {
+
+            int newLength = 2 * size;
+
+            variantIndexes = Arrays.copyOf(variantIndexes, newLength);
+            pValues = Arrays.copyOf(pValues, newLength);
+            lineIndexes = Arrays.copyOf(lineIndexes, newLength);
+
+            if (rsids != null) {
+
+                rsids = Arrays.copyOf(rsids, newLength);
+
+            }
+        }
+
+        variantIndexes[size] = variantIndex;
+        pValues[size] = pValue;
+        lineIndexes[size] = lineIndex;
+
+        if (rsids != null) {
+
+            rsids[size] = rsid;
+
+        }
+
+        size++;
+
+    }
+
+    /**
+     * Sorts the variants by p-value, ties are kept in the order of the
+     * results file, and trims the arrays.
+     */
+    public void sort() {
+
+        int[] order = IntStream.range(0, size)
+                .boxed()
+                .sorted(
+                        Comparator.<Integer>comparingDouble(i -> pValues[i])
+                                .thenComparingInt(i -> lineIndexes[i])
+                )
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        int[] sortedVariantIndexes = new int[size];
+        double[] sortedPValues = new double[size];
+        int[] sortedLineIndexes = new int[size];
+        String[] sortedRsids = rsids == null ? null : new String[size];
+
+        for (int i = 0; i < size; i++) {
+
+            int j = order[i];
+
+            sortedVariantIndexes[i] = variantIndexes[j];
+            sortedPValues[i] = pValues[j];
+            sortedLineIndexes[i] = lineIndexes[j];
+
+            if (rsids != null) {
+
+                sortedRsids[i] = rsids[j];
+
+            }
+        }
+
+        variantIndexes = sortedVariantIndexes;
+        pValues = sortedPValues;
+        lineIndexes = sortedLineIndexes;
+        rsids = sortedRsids;
+
+    }
+
+    /**
+     * Returns the number of variants in the group.
+     *
+     * @return The number of variants in the group.
+     */
+    public int size() {
+
+        return size;
+
+    }
+
+    /**
+     * Returns the index of the i-th variant in the LD matrix, -1 if not
+     * found.
+     *
+     * @param i The index of the variant in the group.
+     *
+     * @return The index of the variant in the LD matrix.
+     */
+    public int getVariantIndex(
+            int i
+    ) {
+
+        return variantIndexes[i];
+
+    }
+
+    /**
+     * Returns the index of the line of the i-th variant in the results file.
+     *
+     * @param i The index of the variant in the group.
+     *
+     * @return The index of the line in the results file.
+     */
+    public int getLineIndex(
+            int i
+    ) {
+
+        return lineIndexes[i];
+
+    }
+
+    /**
+     * Returns the rsid of the i-th variant, null if rsids are not stored.
+     *
+     * @param i The index of the variant in the group.
+     *
+     * @return The rsid of the variant.
+     */
+    public String getRsid(
+            int i
+    ) {
+
+        return rsids == null ? null : rsids[i];
+
+    }
+
+    /**
+     * Returns the indexes of the lines of the lead variants, sorted by
+     * p-value, null until clumped.
+     *
+     * @return The indexes of the lines of the lead variants.
+     */
+    public int[] getLeadLineIndexes() {
+
+        return leadLineIndexes;
+
+    }
+
+    /**
+     * Sets the indexes of the lines of the lead variants and releases the
+     * arrays of the variants.
+     *
+     * @param leadLineIndexes The indexes of the lines of the lead variants,
+     * sorted by p-value.
+     */
+    public void setLeadLineIndexes(
+            int[] leadLineIndexes
+    ) {
+
+        this.leadLineIndexes = leadLineIndexes;
+
+        variantIndexes = null;
+        pValues = null;
+        lineIndexes = null;
+        rsids = null;
+        size = 0;
+
+    }
+}
@@ -3,18 +3,20 @@ package no.uib.triogen.processing.ld.pruning;
 import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import no.uib.triogen.io.flat.SimpleFileReader;
 import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.ld.LdMatrixBundle;
 import no.uib.triogen.io.ld.LdMatrixReader;
+import no.uib.triogen.io.ld.LdRowCache;
 import no.uib.triogen.model.annotation.ProxyCoordinates;
-import no.uib.triogen.model.annotation.ensembl.EnsemblAPI;
-import no.uib.triogen.model.annotation.ld_link.LDproxy;
-import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.annotation.proxies.ProxySource;
+import no.uib.triogen.model.ld.LdRow;
 import no.uib.triogen.utils.Utils;
 
 /**
@@ -73,21 +75,13 @@ public class SimpleLdPruner {
      */
     private LdMatrixReader defaultLdMatrixReader;
     /**
-     * The build number to use when querying Ensembl.
+     * The external sources of proxies, queried for every selected variant.
      */
-    private final int buildNumber;
+    private final ProxySource[] proxySources;
     /**
-     * The reference population to use for Ensembl.
+     * The cache of decoded LD rows, ignored if null.
      */
-    private final String ensemblPopulation;
-    /**
-     * The reference population to use for LDlink.
-     */
-    private final String ldLinkPopulation;
-    /**
-     * The token to use for LDlink.
-     */
-    private final String ldLinkToken;
+    private final LdRowCache ldRowCache;
 
     /**
      * Constructor.
@@ -104,10 +98,9 @@ public class SimpleLdPruner {
      * @param phenoColName The phenotype column name.
      * @param contigColName The contig column name.
      * @param separator The separator for the columns.
-     * @param buildNumber The build number to use when querying Ensembl.
-     * @param ensemblPopulation The reference population to use for Ensembl.
-     * @param ldLinkPopulation The reference population to use for LDlink.
-     * @param ldLinkToken The token to use for LDlink.
+     * @param proxySources The external sources of proxies, queried for every
+     * selected variant.
+     * @param ldRowCache The cache of decoded LD rows, ignored if null.
      */
     public SimpleLdPruner(
             String ldMatrixFilePath,
@@ -121,10 +114,8 @@ public class SimpleLdPruner {
             String phenoColName,
             String contigColName,
             String separator,
-            int buildNumber,
-            String ensemblPopulation,
-            String ldLinkPopulation,
-            String ldLinkToken
+            ProxySource[] proxySources,
+            LdRowCache ldRowCache
     ) {
 
         this.ldMatrixFilePath = ldMatrixFilePath;
@@ -138,10 +129,8 @@ public class SimpleLdPruner {
         this.phenoColName = phenoColName;
         this.contigColName = contigColName;
         this.separator = separator;
-        this.buildNumber = buildNumber;
-        this.ensemblPopulation = ensemblPopulation;
-        this.ldLinkPopulation = ldLinkPopulation;
-        this.ldLinkToken = ldLinkToken;
+        this.proxySources = proxySources;
+        this.ldRowCache = ldRowCache;
 
     }
 
@@ -184,8 +173,10 @@ public class SimpleLdPruner {
 
         System.out.println("Getting p-values from " + resultsFile.getAbsolutePath() + ".");
 
-        HashMap<String, HashMap<String, TreeMap<Double, TreeMap<String, String>>>> contigPhenoPvalueVariantLineMap = new HashMap<>();
-        HashMap<String, String> variantToRsidMap = new HashMap<>();
+        boolean storeRsids = proxySources.length > 0;
+
+        TreeMap<String, TreeMap<String, ClumpingGroup>> contigPhenoGroupMap = new TreeMap<>();
+        HashMap<String, LdMatrixReader> ldMatrixReaders = new HashMap<>();
 
         int lineNumber = 0;
 
@@ -239,7 +230,7 @@ public class SimpleLdPruner {
                 throw new IllegalArgumentException("Variant id column '" + variantIdColName + "' not found in " + resultsFile + ".\n" + headerLine);
 
             }
-            if ((ensemblPopulation != null || ldLinkPopulation != null) && rsidColIndex == -1) {
+            if (storeRsids && rsidColIndex == -1) {
 
                 throw new IllegalArgumentException("Rsid column '" + rsidColName + "' not found in " + resultsFile + ".\n" + headerLine);
 
@@ -287,113 +278,145 @@ public class SimpleLdPruner {
 
                 if (pValue <= maxP) {
 
-                    variantToRsidMap.put(variantId, rsid);
+                    LdMatrixReader ldMatrixReader = null;
 
-                    HashMap<String, TreeMap<Double, TreeMap<String, String>>> phenoPvalueVariantLineMap = contigPhenoPvalueVariantLineMap.get(contig);
+                    if (ldMatrixFilePath != null) {
 
-                    if (phenoPvalueVariantLineMap == null) {
+                        if (!ldMatrixReaders.containsKey(contig)) {
 
-                        phenoPvalueVariantLineMap = new HashMap<>();
-                        contigPhenoPvalueVariantLineMap.put(contig, phenoPvalueVariantLineMap);
+                            ldMatrixReaders.put(contig, getLdMatrixReader(contig));
+
+                        }
+
+                        ldMatrixReader = ldMatrixReaders.get(contig);
 
                     }
 
-                    TreeMap<Double, TreeMap<String, String>> pvalueVariantLineMap = phenoPvalueVariantLineMap.get(pheno);
+                    TreeMap<String, ClumpingGroup> phenoGroupMap = contigPhenoGroupMap.get(contig);
 
-                    if (pvalueVariantLineMap == null) {
+                    if (phenoGroupMap == null) {
 
-                        pvalueVariantLineMap = new TreeMap<>();
-                        phenoPvalueVariantLineMap.put(pheno, pvalueVariantLineMap);
+                        phenoGroupMap = new TreeMap<>();
+                        contigPhenoGroupMap.put(contig, phenoGroupMap);
 
                     }
 
-                    TreeMap<String, String> variantLineMap = pvalueVariantLineMap.get(pValue);
+                    ClumpingGroup group = phenoGroupMap.get(pheno);
 
-                    if (variantLineMap == null) {
+                    if (group == null) {
 
-                        variantLineMap = new TreeMap<>();
-                        pvalueVariantLineMap.put(pValue, variantLineMap);
+                        group = new ClumpingGroup(storeRsids);
+                        phenoGroupMap.put(pheno, group);
 
                     }
 
-                    variantLineMap.put(variantId, line);
-
+                    group.add(
+                            getVariantIndex(ldMatrixReader, variantId, rsid),
+                            pValue,
+                            lineNumber - 1,
+                            rsid
+                    );
                 }
 
                 lineNumber++;
 
             }
+        }
+
+        Instant end = Instant.now();
 
-            Instant end = Instant.now();
+        long timeInSec = end.getEpochSecond() - begin.getEpochSecond();
 
-            long timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+        System.out.println("Getting p-values finished (" + lineNumber + " variants loaded in " + timeInSec + " s)");
 
-            System.out.println("Getting p-values finished (" + lineNumber + " variants loaded in " + timeInSec + " s)");
+        begin = Instant.now();
 
-            begin = Instant.now();
+        System.out.println("LD pruning.");
 
-            System.out.println("LD pruning.");
+        ArrayList<ClumpingGroup> groups = new ArrayList<>();
+        ArrayList<LdMatrixReader> groupReaders = new ArrayList<>();
 
-            TreeMap<String, TreeMap<String, ArrayList<String>>> prunedLines = prune(contigPhenoPvalueVariantLineMap, variantToRsidMap);
+        for (Entry<String, TreeMap<String, ClumpingGroup>> entry : contigPhenoGroupMap.entrySet()) {
 
-            end = Instant.now();
+            for (ClumpingGroup group : entry.getValue().values()) {
 
-            timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+                groups.add(group);
+                groupReaders.add(ldMatrixReaders.get(entry.getKey()));
 
-            System.out.println("Pruning finished (" + timeInSec + " s)");
+            }
+        }
+
+        IntStream.range(0, groups.size())
+                .parallel()
+                .forEach(
+                        i -> clump(groups.get(i), groupReaders.get(i))
+                );
+
+        end = Instant.now();
+
+        timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+
+        System.out.println("Pruning finished (" + timeInSec + " s)");
+
+        if (ldRowCache != null) {
+
+            System.out.println(ldRowCache.getReport());
+
+        }
 
-            begin = Instant.now();
+        begin = Instant.now();
 
-            System.out.println("Exporting to " + destinationFile + ".");
+        System.out.println("Exporting to " + destinationFile + ".");
 
-            try (SimpleFileWriter writer = new SimpleFileWriter(destinationFile, true)) {
+        int[] leadLineIndexes = groups.stream()
+                .flatMapToInt(
+                        group -> Arrays.stream(group.getLeadLineIndexes())
+                )
+                .sorted()
+                .toArray();
 
-                writer.writeLine(headerLine);
+        String[] leadLines = new String[leadLineIndexes.length];
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(resultsFile)) {
+
+            reader.readLine();
+
+            String line;
+            int lineIndex = 0;
+            int leadI = 0;
+
+            while (leadI < leadLineIndexes.length && (line = reader.readLine()) != null) {
+
+                while (leadI < leadLineIndexes.length && leadLineIndexes[leadI] == lineIndex) {
+
+                    leadLines[leadI++] = line;
+
+                }
+
+                lineIndex++;
 
-                prunedLines.values().stream()
-                        .flatMap(
-                                submap -> submap.values().stream()
-                        )
-                        .flatMap(
-                                lines -> lines.stream()
-                        )
-                        .forEach(
-                                prunedLine -> writer.writeLine(prunedLine)
-                        );
             }
+        }
+
+        try (SimpleFileWriter writer = new SimpleFileWriter(destinationFile, true)) {
+
+            writer.writeLine(headerLine);
 
-            end = Instant.now();
+            for (ClumpingGroup group : groups) {
 
-            timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+                for (int lineIndex : group.getLeadLineIndexes()) {
 
-            System.out.println("Export finished (" + timeInSec + " s)");
+                    writer.writeLine(leadLines[Arrays.binarySearch(leadLineIndexes, lineIndex)]);
 
+                }
+            }
         }
-    }
 
-    /**
-     * Prunes a map of p-values.
-     *
-     * @param contigMap The map of p-values per contig.
-     * @param variantToRsidMap The variant id to rsid map.
-     *
-     * @return The pruned map.
-     */
-    private TreeMap<String, TreeMap<String, ArrayList<String>>> prune(
-            HashMap<String, HashMap<String, TreeMap<Double, TreeMap<String, String>>>> contigMap,
-            HashMap<String, String> variantToRsidMap
-    ) {
+        end = Instant.now();
 
-        return contigMap.entrySet()
-                .parallelStream()
-                .collect(
-                        Collectors.toMap(
-                                Entry::getKey,
-                                entry -> prune(entry.getValue(), variantToRsidMap, entry.getKey()),
-                                (a, b) -> a,
-                                TreeMap::new
-                        )
-                );
+        timeInSec = end.getEpochSecond() - begin.getEpochSecond();
+
+        System.out.println("Export finished (" + timeInSec + " s)");
 
     }
 
@@ -408,6 +431,14 @@ public class SimpleLdPruner {
             String contig
     ) {
 
+        File ldMatrixFile = new File(ldMatrixFilePath);
+
+        if (LdMatrixBundle.isBundle(ldMatrixFile)) {
+
+            return LdMatrixBundle.getBundle(ldMatrixFile).getReader(contig, ldRowCache);
+
+        }
+
         if (contigColName != null) {
 
             String contigLdMatrixFilePath = ldMatrixFilePath.replace(Utils.CHROMOSOME_WILDCARD, contig);
@@ -422,7 +453,7 @@ public class SimpleLdPruner {
 
             try {
 
-                return new LdMatrixReader(contigLdFile);
+                return new LdMatrixReader(contigLdFile, ldRowCache);
 
             } catch (Exception e) {
 
@@ -438,141 +469,114 @@ public class SimpleLdPruner {
     }
 
     /**
-     * Prunes the p-values for a phenotype.
-     *
-     * @param phenoMap The map of p-values for a given phenotype.
-     * @param variantToRsidMap The variant id to rsid map.
-     * @param contig The contig.
-     *
-     * @return The pruned values for this phenotype.
-     */
-    private TreeMap<String, ArrayList<String>> prune(
-            HashMap<String, TreeMap<Double, TreeMap<String, String>>> phenoMap,
-            HashMap<String, String> variantToRsidMap,
-            String contig
-    ) {
-        
-        LdMatrixReader ldMatrixReader = ldMatrixFilePath == null ? null : getLdMatrixReader(contig);
-
-        return phenoMap.entrySet()
-                .parallelStream()
-                .collect(
-                        Collectors.toMap(
-                                Entry::getKey,
-                                entry -> prune(entry.getValue(), variantToRsidMap, ldMatrixReader),
-                                (a, b) -> a,
-                                TreeMap::new
-                        )
-                );
-
-    }
-
-    /**
-     * Prunes a p-value map.
+     * Returns the index of the given variant in the LD matrix, looking up the
+     * rsid if the variant id is not found.
      *
-     * @param pValuesMap The p-values.
-     * @param variantToRsidMap The variant id to rsid map.
-     * @param ldMatrixReader The LD matrix reader.
+     * @param ldMatrixReader The LD matrix reader, can be null.
+     * @param variantId The id of the variant.
+     * @param rsid The rsid of the variant.
      *
-     * @return The pruned p-values.
+     * @return The index of the variant in the LD matrix, -1 if not found.
      */
-    private ArrayList<String> prune(
-            TreeMap<Double, TreeMap<String, String>> pValuesMap,
-            HashMap<String, String> variantToRsidMap,
-            LdMatrixReader ldMatrixReader
+    private static int getVariantIndex(
+            LdMatrixReader ldMatrixReader,
+            String variantId,
+            String rsid
     ) {
 
-        try {
+        if (ldMatrixReader == null) {
 
-            ArrayList<String> result = new ArrayList<>();
+            return -1;
 
-            HashSet<String> inspectedSnp = new HashSet<>();
+        }
 
-            for (Entry<Double, TreeMap<String, String>> entry1 : pValuesMap.entrySet()) {
+        int variantIndex = ldMatrixReader.getIndex(variantId);
 
-                for (Entry<String, String> entry2 : entry1.getValue().entrySet()) {
+        if (variantIndex == -1 && rsid != null && !rsid.equals(variantId)) {
 
-                    String variantId = entry2.getKey();
-                    String rsid = variantToRsidMap.get(variantId);
+            ArrayList<String> variantIds = ldMatrixReader.getVariantIds(rsid);
 
-                    if (!inspectedSnp.contains(variantId) && !inspectedSnp.contains(rsid)) {
+            if (variantIds != null && !variantIds.isEmpty()) {
 
-                        result.add(entry2.getValue());
-                        inspectedSnp.add(variantId);
+                variantIndex = ldMatrixReader.getIndex(variantIds.get(0));
 
-                    }
-
-                    if (ldMatrixReader != null) {
+            }
+        }
 
-                        ArrayList<R2> r2s = ldMatrixReader.getR2(variantId);
+        return variantIndex;
 
-                        if (r2s != null && r2s.size() > 0) {
+    }
 
-                            for (R2 r2 : r2s) {
+    /**
+     * Clumps the variants of a group: variants are selected from the lowest
+     * p-value, excluding variants in LD with an already selected variant. The
+     * LD of excluded variants is not looked up.
+     *
+     * @param group The group to clump.
+     * @param ldMatrixReader The LD matrix reader, can be null.
+     */
+    private void clump(
+            ClumpingGroup group,
+            LdMatrixReader ldMatrixReader
+    ) {
 
-                                if (r2.r2Value >= minR2) {
+        group.sort();
 
-                                    String variantBId = ldMatrixReader.variantIds[r2.variantB];
-                                    String variantBRsid = ldMatrixReader.getRsId(variantBId);
+        boolean[] clumped = ldMatrixReader == null ? null : new boolean[ldMatrixReader.variantIds.length];
+        HashSet<String> clumpedRsids = proxySources.length > 0 ? new HashSet<>() : null;
 
-                                    inspectedSnp.add(variantBId);
-                                    inspectedSnp.add(variantBRsid);
+        int[] leadLineIndexes = new int[group.size()];
+        int nLeads = 0;
 
-                                }
-                            }
-                        }
-                    }
+        for (int i = 0; i < group.size(); i++) {
 
-                    if (ensemblPopulation != null) {
+            int variantIndex = group.getVariantIndex(i);
+            String rsid = group.getRsid(i);
 
-                        if (rsid != null && rsid.startsWith("rs")) {
+            if (variantIndex != -1 && clumped[variantIndex]
+                    || clumpedRsids != null && clumpedRsids.contains(rsid)) {
 
-                            ArrayList<ProxyCoordinates> ensemblProxies = EnsemblAPI.getProxies(
-                                    rsid,
-                                    ensemblPopulation,
-                                    minR2,
-                                    buildNumber
-                            );
+                continue;
 
-                            for (ProxyCoordinates proxyCoordinates : ensemblProxies) {
+            }
 
-                                inspectedSnp.add(proxyCoordinates.proxySnp);
+            leadLineIndexes[nLeads++] = group.getLineIndex(i);
 
-                            }
-                        }
-                    }
+            if (variantIndex != -1) {
 
-                    if (ldLinkPopulation != null) {
+                clumped[variantIndex] = true;
 
-                        if (rsid != null && rsid.startsWith("rs")) {
+                LdRow row = ldMatrixReader.getVariantRow(variantIndex);
 
-                            ArrayList<ProxyCoordinates> ldlinkProxies = LDproxy.getProxy(
-                                    rsid,
-                                    ldLinkPopulation,
-                                    LDproxy.R2,
-                                    LDproxy.WINDOW,
-                                    ldLinkToken
-                            );
+                if (row != null) {
 
-                            for (ProxyCoordinates proxyCoordinates : ldlinkProxies) {
+                    for (int j = 0; j < row.size(); j++) {
 
-                                if (proxyCoordinates.r2 >= minR2) {
+                        if (row.r2Values[j] >= minR2) {
 
-                                    inspectedSnp.add(proxyCoordinates.proxySnp);
+                            clumped[row.variantB[j]] = true;
 
-                                }
-                            }
                         }
                     }
                 }
             }
 
-            return result;
+            if (clumpedRsids != null && rsid != null && rsid.startsWith("rs")) {
+
+                clumpedRsids.add(rsid);
+
+                for (ProxySource proxySource : proxySources) {
 
-        } catch (Exception e) {
+                    for (ProxyCoordinates proxyCoordinates : proxySource.getProxies(rsid)) {
 
-            throw new RuntimeException(e);
+                        clumpedRsids.add(proxyCoordinates.proxySnp);
 
+                    }
+                }
+            }
         }
+
+        group.setLeadLineIndexes(Arrays.copyOf(leadLineIndexes, nLeads));
+
     }
 }
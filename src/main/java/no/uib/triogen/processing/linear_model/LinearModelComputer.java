@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.TreeSet;
@@ -11,18 +12,25 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.Deflater;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import no.uib.triogen.TrioGen;
 import no.uib.triogen.io.IoUtils;
 import static no.uib.triogen.io.IoUtils.getIndexFile;
+import no.uib.triogen.io.checkpoint.Checkpoint;
+import no.uib.triogen.io.flat.SimpleFileReader;
 import no.uib.triogen.io.flat.SimpleFileWriter;
 import no.uib.triogen.io.flat.indexed.IndexedGzCoordinates;
 import no.uib.triogen.io.flat.indexed.IndexedGzWriter;
+import no.uib.triogen.io.flat.readers.SimpleGzReader;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantShard;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheReader;
 import no.uib.triogen.log.SimpleCliLogger;
 import no.uib.triogen.model.covariates.CovariatesHandler;
 import no.uib.triogen.model.family.ChildToParentMap;
@@ -94,6 +102,24 @@ public class LinearModelComputer {
      * The number of variants to process in parallel.
      */
     private final int nVariants;
+    /**
+     * The shard of variants to process, null to process all variants.
+     */
+    private final VariantShard shard;
+    /**
+     * The p-value threshold of the score test used to screen variants before
+     * running the models. Ignored if NaN.
+     */
+    private final double scoreTestThreshold;
+    /**
+     * The interval between checkpoints in minutes, 0 disables checkpoints.
+     */
+    private final int checkpointInterval;
+    /**
+     * Boolean indicating whether an interrupted run should be resumed from
+     * the last checkpoint.
+     */
+    private final boolean resume;
     /**
      * The logger.
      */
@@ -118,6 +144,14 @@ public class LinearModelComputer {
      * @param models The models to use.
      * @param destinationFile The file to export the result to.
      * @param nVariants The number of variants to process in parallel.
+     * @param shard The shard of variants to process, null to process all
+     * variants.
+     * @param scoreTestThreshold The p-value threshold of the score test used
+     * to screen variants before running the models. Ignored if NaN.
+     * @param checkpointInterval The interval between checkpoints in minutes,
+     * 0 disables checkpoints.
+     * @param resume Boolean indicating whether an interrupted run should be
+     * resumed from the last checkpoint.
      * @param logger The logger.
      */
     public LinearModelComputer(
@@ -135,6 +169,10 @@ public class LinearModelComputer {
             Model[] models,
             File destinationFile,
             int nVariants,
+            VariantShard shard,
+            double scoreTestThreshold,
+            int checkpointInterval,
+            boolean resume,
             SimpleCliLogger logger
     ) {
 
@@ -152,6 +190,10 @@ public class LinearModelComputer {
         this.models = models;
         this.destinationFile = destinationFile;
         this.nVariants = nVariants;
+        this.shard = shard;
+        this.scoreTestThreshold = scoreTestThreshold;
+        this.checkpointInterval = checkpointInterval;
+        this.resume = resume;
         this.logger = logger;
 
     }
@@ -183,6 +225,22 @@ public class LinearModelComputer {
                 defaultFatherPloidy
         );
 
+        BgenSummary bgenSummary = BgenSummary.getBgenSummary(
+                genotypesFile,
+                bgenIndex,
+                childToParentMap
+        );
+
+        HaplotypeCacheReader haplotypeCacheReader = HaplotypeCacheReader.getHaplotypeCacheReader(
+                genotypesFile,
+                bgenIndex,
+                childToParentMap,
+                inheritanceMap,
+                defaultMotherPloidy,
+                defaultFatherPloidy,
+                logger
+        );
+
         long end = Instant.now().getEpochSecond();
         long duration = end - start;
 
@@ -253,18 +311,279 @@ public class LinearModelComputer {
 
         start = Instant.now().getEpochSecond();
 
+        File checkpointFile = Checkpoint.getCheckpointFile(destinationFile);
+        File indexFile = getIndexFile(destinationFile);
+        File screenFile = getScreenFile(destinationFile);
+
+        Checkpoint checkpoint = null;
+        IndexedGzWriter outputWriter;
+        SimpleFileWriter index;
+        SimpleFileWriter screenWriter = null;
+
+        if (resume && checkpointFile.exists()) {
+
+            checkpoint = Checkpoint.read(checkpointFile, checkpointInterval);
+
+            logger.logMessage("Resuming from checkpoint (" + checkpoint.getCompleted().cardinality() + " variants completed)");
+
+            outputWriter = new IndexedGzWriter(
+                    destinationFile,
+                    Deflater.DEFAULT_COMPRESSION,
+                    checkpoint.getOutputLength()
+            );
+            index = resumeLines(
+                    indexFile,
+                    checkpoint.getnRecords()
+            );
+
+            if (!Double.isNaN(scoreTestThreshold)) {
+
+                screenWriter = resumeLines(
+                        screenFile,
+                        checkpoint.getnSummaryRecords()
+                );
+            }
+
+        } else {
+
+            if (resume) {
+
+                logger.logMessage("No checkpoint found at " + checkpointFile + ", starting from the first variant.");
+
+            }
+
+            if (checkpointInterval > 0) {
+
+                checkpoint = new Checkpoint(checkpointFile, checkpointInterval);
+
+            }
+
+            outputWriter = new IndexedGzWriter(
+                    destinationFile
+            );
+            index = new SimpleFileWriter(indexFile, true);
+
+            writeHeaders(outputWriter, index);
+
+            if (checkpoint != null) {
+
+                checkpoint.addRecords(3);
+
+            }
+
+            if (!Double.isNaN(scoreTestThreshold)) {
+
+                screenWriter = new SimpleFileWriter(screenFile, true);
+                screenWriter.writeLine(
+                        "phenotype",
+                        "contig",
+                        "position",
+                        "variantId",
+                        "rsid",
+                        "testedAllele",
+                        "otherAllele",
+                        "n",
+                        "score.chi2",
+                        "score.df",
+                        "score.p"
+                );
+
+                if (checkpoint != null) {
+
+                    checkpoint.addSummaryRecords(1);
+
+                }
+            }
+        }
+
+        BitSet skipped = null;
+
+        if (shard != null) {
+
+            int[] range = shard.getRange(bgenIndex);
+
+            logger.logMessage("Processing shard " + shard + " (variants " + range[0] + " to " + (range[1] - 1) + ")");
+
+            skipped = shard.getSkipped(bgenIndex);
+
+        }
+
+        if (checkpoint != null) {
+
+            if (skipped == null) {
+
+                skipped = new BitSet(bgenIndex.variantInformationArray.length);
+
+            }
+
+            skipped.or(checkpoint.getCompleted());
+
+        }
+
         VariantIterator iterator = new VariantIterator(
                 bgenIndex,
-                logger, 
+                -1,
+                -1,
+                logger,
                 "Linear association in " + genotypesFile.getAbsolutePath(),
-                variantList == null
-        );
-        IndexedGzWriter outputWriter = new IndexedGzWriter(
-                destinationFile
+                variantList == null,
+                skipped
         );
 
-        File indexFile = getIndexFile(destinationFile);
-        SimpleFileWriter index = new SimpleFileWriter(indexFile, true);
+        LinearModelRunnable.resetCanceled();
+
+        SimpleSemaphore gzIndexMutex = new SimpleSemaphore(1);
+        Checkpoint finalCheckpoint = checkpoint;
+        SimpleFileWriter finalScreenWriter = screenWriter;
+        boolean completed = false;
+
+        try {
+
+            ExecutorService pool = Executors.newFixedThreadPool(nVariants);
+
+            IntStream.range(0, nVariants)
+                    .mapToObj(
+                            i -> new LinearModelRunnable(
+                                    iterator,
+                                    bgenIndex,
+                                    bgenFileReader,
+                                    bgenSummary,
+                                    haplotypeCacheReader,
+                                    variantList,
+                                    alleleFrequencyThreshold,
+                                    childToParentMap,
+                                    models,
+                                    phenotypesHandler,
+                                    covariatesHandler,
+                                    outputWriter,
+                                    index,
+                                    gzIndexMutex,
+                                    finalCheckpoint,
+                                    scoreTestThreshold,
+                                    finalScreenWriter,
+                                    logger
+                            )
+                    )
+                    .forEach(
+                            worker -> pool.submit(worker)
+                    );
+
+            pool.shutdown();
+
+            if (!pool.awaitTermination(timeOutDays, TimeUnit.DAYS)) {
+
+                throw new TimeoutException("Analysis timed out (time out: " + timeOutDays + " days)");
+
+            }
+
+            bgenSummary.save();
+
+            completed = !LinearModelRunnable.isCanceled();
+
+        } finally {
+
+            if (completed) {
+
+                outputWriter.close();
+                index.close();
+
+                if (screenWriter != null) {
+
+                    screenWriter.close();
+
+                }
+
+                if (checkpoint != null) {
+
+                    checkpoint.delete();
+
+                }
+
+            } else if (checkpoint != null) {
+
+                // Save a last checkpoint, the content written after the checkpoint is discarded when resuming
+                gzIndexMutex.acquire();
+                index.flush();
+
+                if (screenWriter != null) {
+
+                    screenWriter.flush();
+
+                }
+
+                checkpoint.save(outputWriter.getLength());
+                gzIndexMutex.release();
+
+                outputWriter.close();
+                index.close();
+
+                if (screenWriter != null) {
+
+                    screenWriter.close();
+
+                }
+
+            } else {
+
+                outputWriter.close();
+                index.close();
+
+                if (screenWriter != null) {
+
+                    screenWriter.close();
+
+                }
+            }
+        }
+
+        if (haplotypeCacheReader != null) {
+
+            haplotypeCacheReader.close();
+
+        }
+
+        end = Instant.now().getEpochSecond();
+        duration = end - start;
+
+        logger.logMessage("Done (Linear model for " + genotypesFile.getName() + ", " + bgenIndex.variantInformationArray.length + " variants and " + phenoNames.length + " phenoptyes processed in " + duration + " seconds)");
+
+    }
+
+    /**
+     * Returns the file where to write the summary of the variants not passing
+     * the score test for the given results file.
+     *
+     * @param resultsFile The results file.
+     *
+     * @return The file where to write the summary.
+     */
+    public static File getScreenFile(
+            File resultsFile
+    ) {
+
+        String stem = resultsFile.getAbsolutePath();
+
+        if (stem.endsWith(".gz")) {
+
+            stem = stem.substring(0, stem.length() - 3);
+
+        }
+
+        return new File(stem + ".screen.gz");
+
+    }
+
+    /**
+     * Writes the headers of the results file and its index.
+     *
+     * @param outputWriter The writer for the results file.
+     * @param index The writer for the index.
+     */
+    private void writeHeaders(
+            IndexedGzWriter outputWriter,
+            SimpleFileWriter index
+    ) {
+
         index.writeLine(
                 "contig",
                 "position",
@@ -318,54 +637,59 @@ public class LinearModelComputer {
                 Integer.toString(coordinates.compressedLength),
                 Integer.toString(coordinates.uncompressedLength)
         );
+    }
 
-        SimpleSemaphore gzIndexMutex = new SimpleSemaphore(1);
+    /**
+     * Rewrites a gzipped text file of an interrupted run, e.g. the index, with
+     * the lines present at the last checkpoint, and returns a writer to
+     * continue writing it.
+     *
+     * @param file The file to rewrite.
+     * @param nRecords The number of lines at the last checkpoint.
+     *
+     * @return A writer to continue writing the file.
+     */
+    private SimpleFileWriter resumeLines(
+            File file,
+            int nRecords
+    ) {
 
-        try {
+        File previousFile = new File(file.getAbsolutePath() + ".previous.gz");
 
-            ExecutorService pool = Executors.newFixedThreadPool(nVariants);
+        if (previousFile.exists()) {
 
-            IntStream.range(0, nVariants)
-                    .mapToObj(
-                            i -> new LinearModelRunnable(
-                                    iterator,
-                                    bgenIndex,
-                                    bgenFileReader,
-                                    variantList,
-                                    alleleFrequencyThreshold,
-                                    childToParentMap,
-                                    models,
-                                    phenotypesHandler,
-                                    covariatesHandler,
-                                    outputWriter,
-                                    index,
-                                    gzIndexMutex,
-                                    logger
-                            )
-                    )
-                    .forEach(
-                            worker -> pool.submit(worker)
-                    );
+            // A previous attempt to resume was interrupted while rewriting the file
+            file.delete();
 
-            pool.shutdown();
+        } else if (!file.renameTo(previousFile)) {
 
-            if (!pool.awaitTermination(timeOutDays, TimeUnit.DAYS)) {
+            throw new IllegalArgumentException("File " + file + " could not be renamed to " + previousFile + ".");
 
-                throw new TimeoutException("Analysis timed out (time out: " + timeOutDays + " days)");
+        }
 
-            }
+        SimpleFileWriter writer = new SimpleFileWriter(file, true);
 
-        } finally {
+        // The file might not have been closed if the process was killed, read it until the last content flushed
+        try (SimpleFileReader reader = new SimpleGzReader(previousFile, false, true)) {
+
+            for (int i = 0; i < nRecords; i++) {
+
+                String line = reader.readLine();
+
+                if (line == null) {
 
-            outputWriter.close();
-            index.close();
+                    throw new IllegalArgumentException("File " + file + " contains fewer records than the checkpoint (" + i + " of " + nRecords + ").");
 
+                }
+
+                writer.writeLine(line);
+
+            }
         }
 
-        end = Instant.now().getEpochSecond();
-        duration = end - start;
+        previousFile.delete();
 
-        logger.logMessage("Done (Linear model for " + genotypesFile.getName() + ", " + bgenIndex.variantInformationArray.length + " variants and " + phenoNames.length + " phenoptyes processed in " + duration + " seconds)");
+        return writer;
 
     }
 }
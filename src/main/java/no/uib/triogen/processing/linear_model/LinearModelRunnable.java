@@ -5,17 +5,23 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.checkpoint.Checkpoint;
 import no.uib.triogen.io.flat.SimpleFileWriter;
 import no.uib.triogen.io.flat.indexed.IndexedGzCoordinates;
 import no.uib.triogen.io.flat.indexed.IndexedGzWriter;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
-import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.io.genotypes.TrioVariantData;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheReader;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils;
 import no.uib.triogen.log.SimpleCliLogger;
 import no.uib.triogen.model.covariates.CovariatesHandler;
 import no.uib.triogen.model.family.ChildToParentMap;
@@ -52,6 +58,14 @@ public class LinearModelRunnable implements Runnable {
      * The reader for the bgen file to process.
      */
     private final BgenFileReader bgenFileReader;
+    /**
+     * The summary of the variants of the bgen file.
+     */
+    private final BgenSummary bgenSummary;
+    /**
+     * The reader for the haplotype cache. Ignored if null.
+     */
+    private final HaplotypeCacheReader haplotypeCacheReader;
     /**
      * The variants iterator.
      */
@@ -106,6 +120,21 @@ public class LinearModelRunnable implements Runnable {
      * The decompressor to use.
      */
     private final ZstdDecompressor decompressor = new ZstdDecompressor();
+    /**
+     * The checkpoint where to register the variants completed. Ignored if
+     * null.
+     */
+    private final Checkpoint checkpoint;
+    /**
+     * The p-value threshold of the score test used to screen variants before
+     * running the models. Ignored if NaN.
+     */
+    private final double scoreTestThreshold;
+    /**
+     * Writer for the summary of the variants not passing the score test.
+     * Ignored if null.
+     */
+    private final SimpleFileWriter screenWriter;
 
     /**
      * Constructor.
@@ -113,6 +142,9 @@ public class LinearModelRunnable implements Runnable {
      * @param iterator The variants iterator.
      * @param bgenIndex The index of the bgen file.
      * @param bgenFileReader The reader for the bgen file.
+     * @param bgenSummary The summary of the variants of the bgen file.
+     * @param haplotypeCacheReader The reader for the haplotype cache. Ignored
+     * if null.
      * @param variantList The variants to process.
      * @param frequencyThreshold The maf threshold. maf is computed in parents
      * for trios where a phenotype is available and values lower than threshold
@@ -125,12 +157,20 @@ public class LinearModelRunnable implements Runnable {
      * @param resultsIndex The writer for the index of the results file.
      * @param gzIndexSemaphore The semaphore to keep gz file and index
      * synchronized.
+     * @param checkpoint The checkpoint where to register the variants
+     * completed. Ignored if null.
+     * @param scoreTestThreshold The p-value threshold of the score test used
+     * to screen variants before running the models. Ignored if NaN.
+     * @param screenWriter The writer for the summary of the variants not
+     * passing the score test. Ignored if null.
      * @param logger The logger.
      */
     public LinearModelRunnable(
             VariantIterator iterator,
             BgenIndex bgenIndex,
             BgenFileReader bgenFileReader,
+            BgenSummary bgenSummary,
+            HaplotypeCacheReader haplotypeCacheReader,
             VariantList variantList,
             double frequencyThreshold,
             ChildToParentMap childToParentMap,
@@ -140,12 +180,17 @@ public class LinearModelRunnable implements Runnable {
             IndexedGzWriter outputWriter,
             SimpleFileWriter resultsIndex,
             SimpleSemaphore gzIndexSemaphore,
+            Checkpoint checkpoint,
+            double scoreTestThreshold,
+            SimpleFileWriter screenWriter,
             SimpleCliLogger logger
     ) {
 
         this.iterator = iterator;
         this.bgenIndex = bgenIndex;
         this.bgenFileReader = bgenFileReader;
+        this.bgenSummary = bgenSummary;
+        this.haplotypeCacheReader = haplotypeCacheReader;
         this.variantList = variantList;
         this.childToParentMap = childToParentMap;
         this.models = models;
@@ -155,6 +200,9 @@ public class LinearModelRunnable implements Runnable {
         this.outputWriter = outputWriter;
         this.resultsIndex = resultsIndex;
         this.gzIndexMutex = gzIndexSemaphore;
+        this.checkpoint = checkpoint;
+        this.scoreTestThreshold = scoreTestThreshold;
+        this.screenWriter = screenWriter;
         this.logger = logger;
 
     }
@@ -170,18 +218,28 @@ public class LinearModelRunnable implements Runnable {
                 int variantIndex = tempIndex;
                 VariantInformation variantInformation = bgenIndex.variantInformationArray[variantIndex];
 
+                List<String[]> results = new ArrayList<>(0);
+                ConcurrentLinkedQueue<String> screened = new ConcurrentLinkedQueue<>();
+
                 if (variantInformation.alleles.length > 1) {
 
-                    if (variantList == null || variantList.include(variantInformation.contig, variantInformation.position)) {
+                    boolean targeted = variantList != null && (variantList.contains(variantInformation.id) || variantList.contains(variantInformation.rsid));
+
+                    // Skip variants known not to pass the frequency threshold without decoding the genotypes
+                    if ((variantList == null || variantList.include(variantInformation.contig, variantInformation.position))
+                            && (targeted || !bgenSummary.contains(variantIndex) || bgenSummary.passesFrequencyThreshold(variantIndex, alleleFrequencyThreshold))) {
 
-                        BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
-                        variantData.parse(
+                        TrioVariantData variantData = HaplotypeCacheUtils.getVariantData(
+                                variantIndex,
+                                haplotypeCacheReader,
+                                bgenFileReader,
+                                bgenSummary,
                                 childToParentMap,
                                 decompressor
                         );
 
                         // Get the alleles passing the frequency threshold, test all alleles if the variant is targeted
-                        int[] testedAlleleIndexes = variantList == null || !variantList.contains(variantInformation.id) && !variantList.contains(variantInformation.rsid)
+                        int[] testedAlleleIndexes = !targeted
                                 ? IntStream.range(1, variantData.getOrderedAlleles().length)
                                         .filter(
                                                 alleleIndex -> variantData.getAlleleFrequency(alleleIndex) > alleleFrequencyThreshold
@@ -203,20 +261,31 @@ public class LinearModelRunnable implements Runnable {
                             }
 
                             // Run linear model
-                            phenotypesHandler.phenoMap.entrySet()
+                            results = phenotypesHandler.phenoMap.entrySet()
                                     .parallelStream()
-                                    .forEach(
+                                    .flatMap(
                                             entry -> runLinearModel(
                                                     variantIndex,
                                                     testedAlleleIndexes,
                                                     variantData,
                                                     entry.getKey(),
-                                                    entry.getValue()
-                                            )
+                                                    entry.getValue(),
+                                                    !targeted && !Double.isNaN(scoreTestThreshold),
+                                                    screened
+                                            ).stream()
+                                    )
+                                    .collect(
+                                            Collectors.toList()
                                     );
                         }
                     }
                 }
+
+                writeResults(
+                        variantIndex,
+                        results,
+                        screened
+                );
             }
 
         } catch (Throwable t) {
@@ -244,18 +313,27 @@ public class LinearModelRunnable implements Runnable {
      * @param variantData The bgen data on this variant.
      * @param phenoName The phenotype name.
      * @param phenotypes The phenotype values.
-     * @param nValidValues The number of phenotypes that are finite and not NA.
+     * @param screen Boolean indicating whether the alleles should be screened
+     * using a score test before running the models.
+     * @param screened The queue where to add the summary lines of the alleles
+     * not passing the score test.
+     *
+     * @return The results as {phenoName, line} arrays, one per allele tested.
      */
-    private void runLinearModel(
+    private ArrayList<String[]> runLinearModel(
             int variantIndex,
             int[] testedAlleleIndexes,
-            BgenVariantTrioData variantData,
+            TrioVariantData variantData,
             String phenoName,
-            double[] phenotypes
+            double[] phenotypes,
+            boolean screen,
+            ConcurrentLinkedQueue<String> screened
     ) {
 
         VariantInformation variantInformation = bgenIndex.variantInformationArray[variantIndex];
 
+        ArrayList<String[]> results = new ArrayList<>(testedAlleleIndexes.length);
+
         for (int alleleI : testedAlleleIndexes) {
 
             int[] childIndexes = covariatesHandler.originalIndexMap.get(phenoName);
@@ -325,6 +403,38 @@ public class LinearModelRunnable implements Runnable {
 
             if (!x0 || cMax - cMin > 0.5 || mMax - mMin > 0.5 || fMax - fMin > 0.5) {
 
+                if (screen) {
+
+                    ScoreTest scoreTest = runScoreTest(
+                            childIndexes,
+                            variantData,
+                            phenoName,
+                            alleleI
+                    );
+
+                    if (!(scoreTest.pValue <= scoreTestThreshold)) {
+
+                        screened.add(
+                                String.join(IoUtils.SEPARATOR,
+                                        phenoName,
+                                        variantInformation.contig,
+                                        Integer.toString(variantInformation.position),
+                                        variantInformation.id,
+                                        variantInformation.rsid,
+                                        variantInformation.alleles[alleleI],
+                                        variantInformation.getOtherAllele(alleleI),
+                                        Integer.toString(childIndexes.length),
+                                        Double.toString(scoreTest.statistic),
+                                        Integer.toString(scoreTest.degreesOfFreedom),
+                                        Double.toString(scoreTest.pValue)
+                                )
+                        );
+
+                        continue;
+
+                    }
+                }
+
                 // Prepare the objects to use for the models, gather values for the histograms
                 double[] phenoValues = phenotypesHandler.phenoMap.get(phenoName);
                 double phenoMean = phenotypesHandler.phenoMeanMap.get(phenoName);
@@ -709,28 +819,163 @@ public class LinearModelRunnable implements Runnable {
                         .append(IoUtils.LINE_SEPARATOR)
                         .toString();
 
-                gzIndexMutex.acquire();
+                results.add(
+                        new String[]{phenoName, line}
+                );
+
+            } else {
+
+                logger.logVariant(
+                        variantInformation.id,
+                        "Same alleles in all individuals."
+                );
+            }
+        }
+
+        return results;
+
+    }
+
+    /**
+     * Runs a score test of the genotypes against the phenotypes, both adjusted
+     * for covariates. The four haplotypes are tested together with the child,
+     * mother, and father genotypes, so that the screen spans the columns of
+     * all models, including parent-of-origin effects. The genotypes of
+     * individuals are only redundant with the haplotypes when the child is
+     * genotyped, collinear columns are handled by the test.
+     *
+     * @param childIndexes The indexes of the children with phenotypes.
+     * @param variantData The bgen data on this variant.
+     * @param phenoName The phenotype name.
+     * @param alleleI The index of the allele to test.
+     *
+     * @return The result of the test.
+     */
+    private ScoreTest runScoreTest(
+            int[] childIndexes,
+            TrioVariantData variantData,
+            String phenoName,
+            int alleleI
+    ) {
+
+        double[][] x = new double[childIndexes.length][7];
+
+        for (int i = 0; i < childIndexes.length; i++) {
+
+            String childId = childToParentMap.children[childIndexes[i]];
+            String motherId = childToParentMap.getMother(childId);
+            String fatherId = childToParentMap.getFather(childId);
+
+            if (variantData.contains(childId)) {
+
+                double[] haplotypes = variantData.getHaplotypes(
+                        childId,
+                        motherId,
+                        fatherId,
+                        alleleI
+                );
+                x[i][0] = haplotypes[0];
+                x[i][1] = haplotypes[1];
+                x[i][2] = haplotypes[2];
+                x[i][3] = haplotypes[3];
+
+                x[i][4] = variantData.getSummedProbability(childId, alleleI);
+
+            }
+            if (variantData.contains(motherId)) {
+
+                x[i][5] = variantData.getSummedProbability(motherId, alleleI);
+
+            }
+            if (variantData.contains(fatherId)) {
+
+                x[i][6] = variantData.getSummedProbability(fatherId, alleleI);
+
+            }
+        }
+
+        return ScoreTest.test(
+                phenotypesHandler.phenoMap.get(phenoName),
+                phenotypesHandler.phenoMeanMap.get(phenoName),
+                covariatesHandler.getAdjustedValues(phenoName, x),
+                covariatesHandler.covariatesMap.get(phenoName).length
+        );
+    }
+
+    /**
+     * Writes the results of a variant to the output and its index, and marks
+     * the variant as completed in the checkpoint. All lines of a variant are
+     * written at once so that the output is consistent with the checkpoint.
+     *
+     * @param variantIndex The index of this variant in the bgen file.
+     * @param results The results as {phenoName, line} arrays.
+     * @param screened The summary lines of the alleles not passing the score
+     * test.
+     */
+    private void writeResults(
+            int variantIndex,
+            List<String[]> results,
+            ConcurrentLinkedQueue<String> screened
+    ) {
+
+        VariantInformation variantInformation = bgenIndex.variantInformationArray[variantIndex];
+
+        gzIndexMutex.acquire();
+
+        try {
+
+            for (String[] result : results) {
 
-                IndexedGzCoordinates coordinates = outputWriter.append(line);
+                IndexedGzCoordinates coordinates = outputWriter.append(result[1]);
 
                 resultsIndex.writeLine(variantInformation.contig,
                         Integer.toString(variantInformation.position),
                         variantInformation.id,
                         variantInformation.rsid,
-                        phenoName,
+                        result[0],
                         Integer.toString(coordinates.compressedLength),
                         Integer.toString(coordinates.uncompressedLength)
                 );
+            }
 
-                gzIndexMutex.release();
+            if (screenWriter != null) {
 
-            } else {
+                // Sort the lines of the phenotypes processed in parallel to keep the output reproducible
+                String[] screenedLines = screened.toArray(new String[screened.size()]);
+                Arrays.sort(screenedLines);
 
-                logger.logVariant(
-                        variantInformation.id,
-                        "Same alleles in all individuals."
-                );
+                for (String line : screenedLines) {
+
+                    screenWriter.writeLine(line);
+
+                }
             }
+
+            if (checkpoint != null) {
+
+                checkpoint.addRecords(results.size());
+                checkpoint.addSummaryRecords(screened.size());
+                checkpoint.complete(variantIndex);
+
+                if (checkpoint.isDue()) {
+
+                    resultsIndex.flush();
+
+                    if (screenWriter != null) {
+
+                        screenWriter.flush();
+
+                    }
+
+                    checkpoint.save(outputWriter.getLength());
+
+                }
+            }
+
+        } finally {
+
+            gzIndexMutex.release();
+
         }
     }
 
@@ -813,4 +1058,25 @@ public class LinearModelRunnable implements Runnable {
             }
         }
     }
+
+    /**
+     * Returns a boolean indicating whether the runnables have been canceled,
+     * typically due to an error.
+     *
+     * @return A boolean indicating whether the runnables have been canceled.
+     */
+    public static boolean isCanceled() {
+
+        return canceled;
+
+    }
+
+    /**
+     * Resets the canceled status of the runnables before a new run.
+     */
+    public static void resetCanceled() {
+
+        canceled = false;
+
+    }
 }
@@ -0,0 +1,158 @@
+package no.uib.triogen.processing.linear_model;
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+/**
+ * Score test for the joint association of genotypes with a phenotype under
+ * the null hypothesis of no association. The test only requires the
+ * phenotypes and genotypes adjusted for covariates, no regression is fitted,
+ * making it suitable to screen variants before running the full models.
+ *
+ * @author Marc Vaudel
+ */
+public class ScoreTest {
+
+    /**
+     * The score statistic, chi2 distributed under the null.
+     */
+    public final double statistic;
+    /**
+     * The degrees of freedom of the test.
+     */
+    public final int degreesOfFreedom;
+    /**
+     * The p-value of the test.
+     */
+    public final double pValue;
+
+    /**
+     * Constructor.
+     *
+     * @param statistic The score statistic.
+     * @param degreesOfFreedom The degrees of freedom of the test.
+     * @param pValue The p-value of the test.
+     */
+    private ScoreTest(
+            double statistic,
+            int degreesOfFreedom,
+            double pValue
+    ) {
+
+        this.statistic = statistic;
+        this.degreesOfFreedom = degreesOfFreedom;
+        this.pValue = pValue;
+
+    }
+
+    /**
+     * Runs the score test of the given genotypes against the given phenotypes.
+     * Both are expected to be adjusted for covariates. Values are centered
+     * prior to testing. Collinear genotypes are handled using the
+     * pseudo-inverse of their covariance, the degrees of freedom being the
+     * rank of the covariance. The residual variance under the null accounts
+     * for the degrees of freedom used by the intercept and the covariates.
+     *
+     * @param y The phenotypes adjusted for covariates.
+     * @param yMean The mean of the phenotypes.
+     * @param x The genotypes adjusted for covariates, one column per genotype
+     * to test.
+     * @param nCovariates The number of covariates the values were adjusted
+     * for.
+     *
+     * @return The result of the test.
+     */
+    public static ScoreTest test(
+            double[] y,
+            double yMean,
+            double[][] x,
+            int nCovariates
+    ) {
+
+        int n = y.length;
+        int nX = x[0].length;
+
+        double[] xMeans = new double[nX];
+
+        for (int i = 0; i < n; i++) {
+
+            for (int j = 0; j < nX; j++) {
+
+                xMeans[j] += x[i][j];
+
+            }
+        }
+
+        for (int j = 0; j < nX; j++) {
+
+            xMeans[j] /= n;
+
+        }
+
+        double[] u = new double[nX];
+        double[][] xtx = new double[nX][nX];
+        double yy = 0.0;
+
+        for (int i = 0; i < n; i++) {
+
+            double yI = y[i] - yMean;
+
+            yy += yI * yI;
+
+            for (int j = 0; j < nX; j++) {
+
+                double xIJ = x[i][j] - xMeans[j];
+
+                u[j] += xIJ * yI;
+
+                for (int k = j; k < nX; k++) {
+
+                    xtx[j][k] += xIJ * (x[i][k] - xMeans[k]);
+
+                }
+            }
+        }
+
+        for (int j = 0; j < nX; j++) {
+
+            for (int k = 0; k < j; k++) {
+
+                xtx[j][k] = xtx[k][j];
+
+            }
+        }
+
+        int residualDegreesOfFreedom = n - 1 - nCovariates;
+        double sigma2 = yy / residualDegreesOfFreedom;
+
+        SingularValueDecomposition svd = new SingularValueDecomposition(new Array2DRowRealMatrix(xtx, false));
+        int rank = svd.getRank();
+
+        if (rank == 0 || residualDegreesOfFreedom <= 0 || sigma2 <= 0.0) {
+
+            return new ScoreTest(Double.NaN, 0, Double.NaN);
+
+        }
+
+        RealMatrix inverse = svd.getSolver().getInverse();
+        double[] inverseU = inverse.operate(u);
+
+        double statistic = 0.0;
+
+        for (int j = 0; j < nX; j++) {
+
+            statistic += u[j] * inverseU[j];
+
+        }
+
+        statistic /= sigma2;
+
+        ChiSquaredDistribution chiSquaredDistribution = new ChiSquaredDistribution(rank);
+        double pValue = 1.0 - chiSquaredDistribution.cumulativeProbability(statistic);
+
+        return new ScoreTest(statistic, rank, pValue);
+
+    }
+}
@@ -13,6 +13,7 @@ import no.uib.triogen.TrioGen;
 import no.uib.triogen.io.flat.SimpleFileWriter;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
 import no.uib.triogen.log.SimpleCliLogger;
 import no.uib.triogen.model.family.ChildToParentMap;
@@ -135,6 +136,12 @@ public class MendelianCheckComputer {
                 defaultFatherPloidy
         );
 
+        BgenSummary bgenSummary = BgenSummary.getBgenSummary(
+                genotypesFile,
+                bgenIndex,
+                childToParentMap
+        );
+
         long end = Instant.now().getEpochSecond();
         long duration = end - start;
 
@@ -166,6 +173,7 @@ public class MendelianCheckComputer {
                                         iterator,
                                         bgenIndex,
                                         bgenFileReader,
+                                        bgenSummary,
                                         childToParentMap,
                                         alleleFrequencyThreshold,
                                         logger
@@ -183,6 +191,8 @@ public class MendelianCheckComputer {
 
                 }
 
+                bgenSummary.save();
+
             }
 
             end = Instant.now().getEpochSecond();
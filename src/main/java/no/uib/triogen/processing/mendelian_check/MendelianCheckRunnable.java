@@ -7,6 +7,7 @@ import java.util.stream.IntStream;
 import no.uib.triogen.io.flat.SimpleFileWriter;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.index.BgenSummary;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
 import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
 import no.uib.triogen.log.SimpleCliLogger;
@@ -33,6 +34,10 @@ public class MendelianCheckRunnable implements Runnable {
      * The reader for the bgen file to process.
      */
     private final BgenFileReader bgenFileReader;
+    /**
+     * The summary of the variants of the bgen file.
+     */
+    private final BgenSummary bgenSummary;
     /**
      * The map of trios.
      */
@@ -65,6 +70,7 @@ public class MendelianCheckRunnable implements Runnable {
      * @param iterator The variant iterator.
      * @param bgenIndex The index of the bgen file.
      * @param bgenFileReader The reader for the bgen file.
+     * @param bgenSummary The summary of the variants of the bgen file.
      * @param childToParentMap The map of trios.
      * @param alleleFrequencyThreshold The allele frequency threshold.
      * values lower than threshold are not included (inclusive).
@@ -75,6 +81,7 @@ public class MendelianCheckRunnable implements Runnable {
             VariantIterator iterator,
             BgenIndex bgenIndex,
             BgenFileReader bgenFileReader,
+            BgenSummary bgenSummary,
             ChildToParentMap childToParentMap,
             double alleleFrequencyThreshold,
             SimpleCliLogger logger
@@ -84,6 +91,7 @@ public class MendelianCheckRunnable implements Runnable {
         this.iterator = iterator;
         this.bgenIndex = bgenIndex;
         this.bgenFileReader = bgenFileReader;
+        this.bgenSummary = bgenSummary;
         this.childToParentMap = childToParentMap;
         this.alleleFrequencyThreshold = alleleFrequencyThreshold;
         this.logger = logger;
@@ -101,7 +109,8 @@ public class MendelianCheckRunnable implements Runnable {
                 int variantIndex = tempIndex;
                 VariantInformation variantInformation = bgenIndex.variantInformationArray[variantIndex];
 
-                if (variantInformation.alleles.length > 1) {
+                if (variantInformation.alleles.length > 1
+                        && (!bgenSummary.contains(variantIndex) || bgenSummary.passesFrequencyThreshold(variantIndex, alleleFrequencyThreshold))) {
 
                     BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
                     variantData.parse(
@@ -109,6 +118,8 @@ public class MendelianCheckRunnable implements Runnable {
                             decompressor
                     );
 
+                    bgenSummary.register(variantIndex, variantData);
+
                     // Check if any allele passes the frequency threshold
                     int[] testedAlleleIndexes = IntStream.range(1, variantData.getOrderedAlleles().length)
                             .filter(
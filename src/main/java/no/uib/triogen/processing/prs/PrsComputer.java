@@ -5,18 +5,23 @@ import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
 import no.uib.triogen.io.genotypes.InheritanceUtils;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
-import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.io.genotypes.TrioVariantData;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheReader;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils;
 import no.uib.triogen.log.SimpleCliLogger;
 import no.uib.triogen.model.family.ChildToParentMap;
 import no.uib.triogen.model.genome.VariantInformation;
 import no.uib.triogen.model.trio_genotypes.Model;
-import no.uib.triogen.utils.SimpleSemaphore;
 import static no.uib.triogen.utils.Utils.CHROMOSOME_WILDCARD;
 
 /**
@@ -26,6 +31,11 @@ import static no.uib.triogen.utils.Utils.CHROMOSOME_WILDCARD;
  */
 public class PrsComputer {
 
+    /**
+     * The number of scoring variants per chunk of variants scored by a thread.
+     */
+    public static final int CHUNK_SIZE = 32;
+
     /**
      * Returns the scores for the given trios.
      * 
@@ -36,7 +46,6 @@ public class PrsComputer {
      * @param variableNames The name of the variables.
      * @param seScaling The se scaling factor.
      * @param bgenIndexFolder The folder where to store the bgen index files.
-     * @param semaphore The semaphore to use for the edition of the score map.
      * @param logger The logger to use to display feedback and errors.
      * 
      * @return The scores for this model variables indexed by child id.
@@ -49,54 +58,207 @@ public class PrsComputer {
             String[] variableNames,
             double seScaling,
             File bgenIndexFolder,
-            SimpleSemaphore semaphore,
             SimpleCliLogger logger
     ) {
 
+        double[][] trioScores = getScores(
+                genotypesFilePath,
+                scoringData,
+                childToParentMap,
+                model,
+                variableNames.length,
+                (leadVariant, scoringVariant, scoringDetails, nScoringVariants) -> {
+
+                    double weight = 1.0 / nScoringVariants;
+                    double[][] coefficients = new double[variableNames.length][variableNames.length];
+
+                    boolean nonNull = false;
+
+                    for (int variableI = 0; variableI < variableNames.length; variableI++) {
+
+                        double betaEstimate = getBetaEstimate(
+                                scoringDetails[variableI],
+                                scoringDetails[variableI + variableNames.length],
+                                seScaling
+                        );
+
+                        if (betaEstimate != 0.0) {
+
+                            coefficients[variableI][variableI] = betaEstimate * weight;
+                            nonNull = true;
+
+                        }
+                    }
+
+                    return nonNull ? coefficients : null;
+
+                },
+                bgenIndexFolder,
+                logger
+        );
+
         HashMap<String, double[]> scores = new HashMap<>(childToParentMap.children.length);
 
-        for (String childId : childToParentMap.children) {
+        for (int childI = 0; childI < childToParentMap.children.length; childI++) {
 
-            scores.put(childId, new double[variableNames.length]);
+            scores.put(childToParentMap.children[childI], trioScores[childI]);
 
         }
 
-        scoringData.entrySet()
-                .stream()
-                .parallel()
-                .forEach(
-                        entry -> processChromosome(
-                                childToParentMap,
-                                entry.getKey(),
-                                genotypesFilePath,
-                                model,
-                                variableNames,
-                                seScaling,
-                                entry.getValue(),
-                                scores,
-                                bgenIndexFolder,
-                                semaphore,
-                                logger
-                        )
-                );
+        return scores;
+
+    }
+
+    /**
+     * Returns the scores of the given trios for a set of scores sharing the
+     * same scoring variants. The genotypes of every scoring variant are
+     * decoded once and its contribution to all scores is computed as the
+     * product of the model design columns with the matrix of coefficients.
+     * Chromosomes are processed one after the other, and the scoring variants
+     * of a chromosome are scored in parallel by chunks of CHUNK_SIZE variants
+     * in file order. Every chunk is scored in its own accumulator and the
+     * accumulators are added to the scores in the order of the chunks, the
+     * scores are therefore independent of the number of threads.
+     *
+     * @param genotypesFilePath The path to the genotype files.
+     * @param scoringData The scoring data.
+     * @param childToParentMap The child to parent map.
+     * @param model The model to use.
+     * @param nScores The number of scores to compute.
+     * @param coefficientsProvider The provider for the coefficients of the
+     * scoring variants.
+     * @param bgenIndexFolder The folder where to store the bgen index files.
+     * @param logger The logger to use to display feedback and errors.
+     *
+     * @return The scores indexed by child index in the child to parent map and
+     * score index.
+     */
+    public static double[][] getScores(
+            String genotypesFilePath,
+            HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData,
+            ChildToParentMap childToParentMap,
+            Model model,
+            int nScores,
+            CoefficientsProvider coefficientsProvider,
+            File bgenIndexFolder,
+            SimpleCliLogger logger
+    ) {
+
+        return getScores(
+                genotypesFilePath,
+                scoringData,
+                childToParentMap,
+                model,
+                nScores,
+                coefficientsProvider,
+                Runtime.getRuntime().availableProcessors(),
+                bgenIndexFolder,
+                logger
+        );
+    }
+
+    /**
+     * Returns the scores of the given trios for a set of scores sharing the
+     * same scoring variants, scoring at most the given number of chunks in
+     * parallel. The scores do not depend on the number of threads.
+     *
+     * @param genotypesFilePath The path to the genotype files.
+     * @param scoringData The scoring data.
+     * @param childToParentMap The child to parent map.
+     * @param model The model to use.
+     * @param nScores The number of scores to compute.
+     * @param coefficientsProvider The provider for the coefficients of the
+     * scoring variants.
+     * @param nThreads The maximal number of chunks scored in parallel.
+     * @param bgenIndexFolder The folder where to store the bgen index files.
+     * @param logger The logger to use to display feedback and errors.
+     *
+     * @return The scores indexed by child index in the child to parent map and
+     * score index.
+     */
+    public static double[][] getScores(
+            String genotypesFilePath,
+            HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData,
+            ChildToParentMap childToParentMap,
+            Model model,
+            int nScores,
+            CoefficientsProvider coefficientsProvider,
+            int nThreads,
+            File bgenIndexFolder,
+            SimpleCliLogger logger
+    ) {
+
+        double[][] scores = new double[childToParentMap.children.length][nScores];
+
+        for (String chromosome : new TreeSet<>(scoringData.keySet())) {
+
+            processChromosome(
+                    childToParentMap,
+                    chromosome,
+                    genotypesFilePath,
+                    model,
+                    coefficientsProvider,
+                    scoringData.get(chromosome),
+                    nScores,
+                    scores,
+                    nThreads,
+                    bgenIndexFolder,
+                    logger
+            );
+        }
 
         return scores;
 
     }
 
+    /**
+     * Returns the effect size estimate of a variable at the given quantile of
+     * its distribution, zero if the estimate crosses zero.
+     *
+     * @param beta The effect size.
+     * @param se The standard error.
+     * @param seScaling The se scaling factor.
+     *
+     * @return The effect size estimate.
+     */
+    public static double getBetaEstimate(
+            double beta,
+            double se,
+            double seScaling
+    ) {
+
+        if (beta > 0.0) {
+
+            double betaEstimate = beta + seScaling * se;
+
+            return betaEstimate > 0.0 ? betaEstimate : 0.0;
+
+        } else if (beta < 0.0) {
+
+            double betaEstimate = beta - seScaling * se;
+
+            return betaEstimate < 0.0 ? betaEstimate : 0.0;
+
+        }
+
+        return 0.0;
+
+    }
+
     /**
      * Processes the given chromosome.
      * 
      * @param genotypesFilePath The path to the genotype files.
      * @param chromosome The chromosome to process.
      * @param chromosomeScoringData The scoring data for this chromosome.
-     * @param scores The map where to store the scores.
+     * @param nScores The number of scores to compute.
+     * @param scores The array where to store the scores.
      * @param childToParentMap The child to parent map.
      * @param model The model to use.
-     * @param variableNames The name of the variables.
-     * @param seScaling The se scaling factor.
+     * @param coefficientsProvider The provider for the coefficients of the
+     * scoring variants.
+     * @param nThreads The maximal number of chunks scored in parallel.
      * @param bgenIndexFolder The folder where to store the bgen index files.
-     * @param semaphore The semaphore to use for the edition of the score map.
      * @param logger The logger to use to display feedback and errors.
      */
     private static void processChromosome(
@@ -104,12 +266,12 @@ public class PrsComputer {
             String chromosome,
             String genotypesFilePath,
             Model model,
-            String[] variableNames,
-            double seScaling,
+            CoefficientsProvider coefficientsProvider,
             HashMap<String, HashMap<String, HashMap<String, double[]>>> chromosomeScoringData,
-            HashMap<String, double[]> scores,
+            int nScores,
+            double[][] scores,
+            int nThreads,
             File bgenIndexFolder,
-            SimpleSemaphore semaphore,
             SimpleCliLogger logger
     ) {
 
@@ -147,6 +309,16 @@ public class PrsComputer {
                     defaultFatherPloidy
             );
 
+            HaplotypeCacheReader haplotypeCacheReader = HaplotypeCacheReader.getHaplotypeCacheReader(
+                    genotypesFile,
+                    bgenIndex,
+                    childToParentMap,
+                    inheritanceMap,
+                    defaultMotherPloidy,
+                    defaultFatherPloidy,
+                    logger
+            );
+
             long end = Instant.now().getEpochSecond();
             long duration = end - start;
 
@@ -227,90 +399,119 @@ public class PrsComputer {
 
             start = Instant.now().getEpochSecond();
 
-            leadToScoringVariantIndexMap.entrySet()
-                    .stream()
-                    .parallel()
-                    .forEach(
-                            entry -> {
+            ArrayList<ScoringAllele> scoringAlleles = new ArrayList<>();
+
+            for (Map.Entry<String, HashMap<String, Integer>> entry : leadToScoringVariantIndexMap.entrySet()) {
+
+                String leadVariant = entry.getKey();
+                HashMap<String, Integer> indexMap = entry.getValue();
 
-                                String leadVariant = entry.getKey();
-                                HashMap<String, Integer> indexMap = entry.getValue();
-                                double weight = 1.0 / ((double) indexMap.size());
+                for (Map.Entry<String, Integer> variantEntry : indexMap.entrySet()) {
 
-                                for (Map.Entry<String, Integer> variantEntry : indexMap.entrySet()) {
+                    String scoringVariant = variantEntry.getKey();
+                    int bgenVariantIndex = variantEntry.getValue();
 
-                                    String scoringVariant = variantEntry.getKey();
-                                    int bgenVariantIndex = variantEntry.getValue();
+                    HashMap<String, double[]> alleles = chromosomeScoringData.get(leadVariant).get(scoringVariant);
 
-                                    HashMap<String, double[]> alleles = chromosomeScoringData.get(leadVariant).get(scoringVariant);
+                    for (Map.Entry<String, double[]> allelesEntry : alleles.entrySet()) {
 
-                                    for (Map.Entry<String, double[]> allelesEntry : alleles.entrySet()) {
+                        String allele = allelesEntry.getKey();
+                        double[] scoringDetails = allelesEntry.getValue();
 
-                                        String allele = allelesEntry.getKey();
-                                        double[] scoringDetails = allelesEntry.getValue();
+                        double[][] coefficients = coefficientsProvider.getCoefficients(
+                                leadVariant,
+                                scoringVariant,
+                                scoringDetails,
+                                indexMap.size()
+                        );
 
-                                        double[] betaContributions = new double[variableNames.length];
+                        if (coefficients != null) {
 
-                                        boolean nonNull = false;
+                            scoringAlleles.add(
+                                    new ScoringAllele(
+                                            bgenVariantIndex,
+                                            leadVariant,
+                                            allele,
+                                            coefficients
+                                    )
+                            );
+                        }
+                    }
+                }
+            }
 
-                                        for (int variableI = 0; variableI < variableNames.length; variableI++) {
+            scoringAlleles.sort(
+                    Comparator.<ScoringAllele>comparingInt(scoringAllele -> scoringAllele.bgenVariantIndex)
+                            .thenComparing(scoringAllele -> scoringAllele.leadVariant)
+                            .thenComparing(scoringAllele -> scoringAllele.allele)
+            );
 
-                                            double beta = scoringDetails[variableI];
-                                            double se = scoringDetails[variableI + variableNames.length];
+            ArrayList<ScoringVariant> scoringVariants = ScoringVariant.getScoringVariants(scoringAlleles);
 
-                                            double betaEstimate = 0.0;
+            logger.logMessage("Scoring " + scoringAlleles.size() + " alleles of " + scoringVariants.size() + " variants on chromosome " + chromosome);
 
-                                            if (beta > 0.0) {
+            // Score chunks of variants in parallel, each in its own accumulator, and add the accumulators to the scores in the order of the chunks
+            int nChunks = (scoringVariants.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            int nAccumulators = Math.min(nChunks, nThreads);
+            double[][][] accumulators = new double[nAccumulators][childToParentMap.children.length][nScores];
 
-                                                betaEstimate = beta + seScaling * se;
+            for (int firstChunk = 0; firstChunk < nChunks; firstChunk += nAccumulators) {
 
-                                                if (betaEstimate <= 0.0) {
+                int waveStart = firstChunk;
+                int nChunksWave = Math.min(nAccumulators, nChunks - firstChunk);
 
-                                                    betaEstimate = 0.0;
+                IntStream.range(0, nChunksWave)
+                        .parallel()
+                        .forEach(
+                                accumulatorI -> {
 
-                                                } else {
+                                    int chunkStart = (waveStart + accumulatorI) * CHUNK_SIZE;
+                                    int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, scoringVariants.size());
 
-                                                    nonNull = true;
+                                    ZstdDecompressor decompressor = new ZstdDecompressor();
 
-                                                }
-                                            } else if (beta < 0.0) {
+                                    for (int i = chunkStart; i < chunkEnd; i++) {
 
-                                                betaEstimate = beta - seScaling * se;
+                                        score(
+                                                childToParentMap,
+                                                model,
+                                                scoringVariants.get(i),
+                                                bgenFileReader,
+                                                haplotypeCacheReader,
+                                                bgenIndex,
+                                                decompressor,
+                                                accumulators[accumulatorI]
+                                        );
+                                    }
+                                }
+                        );
 
-                                                if (betaEstimate >= 0.0) {
+                for (int accumulatorI = 0; accumulatorI < nChunksWave; accumulatorI++) {
 
-                                                    betaEstimate = 0.0;
+                    double[][] accumulator = accumulators[accumulatorI];
 
-                                                } else {
+                    for (int childI = 0; childI < accumulator.length; childI++) {
 
-                                                    nonNull = true;
+                        double[] childScores = scores[childI];
+                        double[] childAccumulator = accumulator[childI];
 
-                                                }
-                                            }
+                        for (int scoreI = 0; scoreI < nScores; scoreI++) {
 
-                                            betaContributions[variableI] = betaEstimate;
+                            childScores[scoreI] += childAccumulator[scoreI];
 
-                                        }
+                        }
 
-                                        if (nonNull) {
+                        Arrays.fill(childAccumulator, 0.0);
 
-                                            score(
-                                                    childToParentMap,
-                                                    model,
-                                                    bgenVariantIndex,
-                                                    allele,
-                                                    weight,
-                                                    betaContributions,
-                                                    bgenFileReader,
-                                                    bgenIndex,
-                                                    semaphore,
-                                                    scores
-                                            );
-                                        }
-                                    }
-                                }
-                            }
-                    );
+                    }
+                }
+            }
+
+            if (haplotypeCacheReader != null) {
+
+                haplotypeCacheReader.close();
+
+            }
 
             end = Instant.now().getEpochSecond();
             duration = end - start;
@@ -326,67 +527,77 @@ public class PrsComputer {
 
 
     /**
-     * Computes the score contribution for the given variant.
+     * Computes the score contributions of the given variant. The genotypes are
+     * decoded once and the contributions of all effect alleles are added in
+     * one pass over the trios.
      * 
-     * @param scores The map where to store the scores.
      * @param childToParentMap The child to parent map.
      * @param model The model to use.
-     * @param bgenVariantIndex The index of the variant in the bgen file.
-     * @param effectAllele The effect allele.
-     * @param weight The weight for this variant.
-     * @param betaContributions The beta contributions for the different variables.
+     * @param scoringVariant The variant to score.
      * @param bgenFileReader The bgen file reader.
+     * @param haplotypeCacheReader The reader for the haplotype cache. Ignored if null.
      * @param bgenIndex The index of the bgen file.
-     * @param semaphore The semaphore to use for the edition of the score map.
+     * @param decompressor The decompressor to use.
+     * @param scores The array where to add the score contributions.
      */
     private static void score(
             ChildToParentMap childToParentMap,
             Model model,
-            int bgenVariantIndex,
-            String effectAllele,
-            double weight,
-            double[] betaContributions,
+            ScoringVariant scoringVariant,
             BgenFileReader bgenFileReader,
+            HaplotypeCacheReader haplotypeCacheReader,
             BgenIndex bgenIndex,
-            SimpleSemaphore semaphore,
-            HashMap<String, double[]> scores
+            ZstdDecompressor decompressor,
+            double[][] scores
     ) {
 
-        // Get the index of the allele to score
-        VariantInformation variantInformation = bgenIndex.variantInformationArray[bgenVariantIndex];
+        // Get the indexes of the alleles to score
+        VariantInformation variantInformation = bgenIndex.variantInformationArray[scoringVariant.bgenVariantIndex];
+
+        int[] alleleIndexes = new int[scoringVariant.alleles.length];
+
+        for (int j = 0; j < scoringVariant.alleles.length; j++) {
 
-        int alleleI = -1;
+            String effectAllele = scoringVariant.alleles[j];
 
-        for (int i = 0; i < variantInformation.alleles.length; i++) {
+            int alleleI = -1;
 
-            if (variantInformation.alleles[i].equals(effectAllele)) {
+            for (int i = 0; i < variantInformation.alleles.length; i++) {
 
-                alleleI = i;
-                break;
+                if (variantInformation.alleles[i].equals(effectAllele)) {
 
+                    alleleI = i;
+                    break;
+
+                }
             }
-        }
 
-        if (alleleI == -1) {
+            if (alleleI == -1) {
+
+                throw new IllegalArgumentException("Allele " + effectAllele + " not found for variant " + variantInformation.id);
 
-            throw new IllegalArgumentException("Allele " + effectAllele + " not found for variant " + variantInformation.id);
+            }
+
+            alleleIndexes[j] = alleleI;
 
         }
 
         // Parse genotypes
-        ZstdDecompressor decompressor = new ZstdDecompressor();
-
-        BgenVariantTrioData variantData = bgenFileReader.getVariantData(bgenVariantIndex);
-        variantData.parse(
+        TrioVariantData variantData = HaplotypeCacheUtils.getVariantData(
+                scoringVariant.bgenVariantIndex,
+                haplotypeCacheReader,
+                bgenFileReader,
+                null,
                 childToParentMap,
                 decompressor
         );
 
-        // Get matrices for haplotypes and individuals
-        double[][] haplotypeX = new double[childToParentMap.children.length][4];
-        double[][] childX = new double[childToParentMap.children.length][1];
-        double[][] motherX = new double[childToParentMap.children.length][1];
-        double[][] fatherX = new double[childToParentMap.children.length][1];
+        // Design values of the current trio
+        double[][] haplotypeX = new double[1][4];
+        double[][] childX = new double[1][1];
+        double[][] motherX = new double[1][1];
+        double[][] fatherX = new double[1][1];
+        double[] xValues = new double[model.betaNames.length];
 
         for (int childI = 0; childI < childToParentMap.children.length; childI++) {
 
@@ -394,61 +605,100 @@ public class PrsComputer {
             String motherId = childToParentMap.getMother(childId);
             String fatherId = childToParentMap.getFather(childId);
 
-            if (variantData.contains(childId)) {
+            boolean childGenotyped = variantData.contains(childId);
+            boolean motherGenotyped = variantData.contains(motherId);
+            boolean fatherGenotyped = variantData.contains(fatherId);
 
-                double[] haplotypes = variantData.getHaplotypes(
-                        childId,
-                        motherId,
-                        fatherId,
-                        alleleI
-                );
-                haplotypeX[childI][0] = haplotypes[0];
-                haplotypeX[childI][1] = haplotypes[1];
-                haplotypeX[childI][2] = haplotypes[2];
-                haplotypeX[childI][3] = haplotypes[3];
+            double[] childScores = scores[childI];
 
-                childX[childI][0] = variantData.getSummedProbability(childId, alleleI);
+            for (int j = 0; j < alleleIndexes.length; j++) {
 
-            }
+                int alleleI = alleleIndexes[j];
 
-            if (variantData.contains(motherId)) {
+                if (childGenotyped) {
 
-                motherX[childI][0] = variantData.getSummedProbability(motherId, alleleI);
+                    double[] haplotypes = variantData.getHaplotypes(
+                            childId,
+                            motherId,
+                            fatherId,
+                            alleleI
+                    );
+                    haplotypeX[0][0] = haplotypes[0];
+                    haplotypeX[0][1] = haplotypes[1];
+                    haplotypeX[0][2] = haplotypes[2];
+                    haplotypeX[0][3] = haplotypes[3];
 
-            }
+                    childX[0][0] = variantData.getSummedProbability(childId, alleleI);
 
-            if (variantData.contains(fatherId)) {
+                } else {
 
-                fatherX[childI][0] = variantData.getSummedProbability(fatherId, alleleI);
+                    Arrays.fill(haplotypeX[0], 0.0);
+                    childX[0][0] = 0.0;
 
-            }
+                }
 
-            semaphore.acquire();
+                motherX[0][0] = motherGenotyped ? variantData.getSummedProbability(motherId, alleleI) : 0.0;
+                fatherX[0][0] = fatherGenotyped ? variantData.getSummedProbability(fatherId, alleleI) : 0.0;
 
-            double[] childScores = scores.get(childId);
+                for (int variableI = 0; variableI < model.betaNames.length; variableI++) {
 
-            for (int variableI = 0; variableI < model.betaNames.length; variableI++) {
+                    xValues[variableI] = Model.getXValueAt(
+                            model,
+                            0,
+                            variableI,
+                            haplotypeX,
+                            childX,
+                            motherX,
+                            fatherX
+                    );
+                }
 
-                double xValue = Model.getXValueAt(
-                        model,
-                        childI,
-                        variableI,
-                        haplotypeX,
-                        childX,
-                        motherX,
-                        fatherX
-                );
+                double[][] coefficients = scoringVariant.coefficients[j];
 
-                double betaEstimate = betaContributions[variableI];
+                for (int scoreI = 0; scoreI < coefficients.length; scoreI++) {
 
-                double variantContribution = xValue * betaEstimate * weight;
+                    double[] scoreCoefficients = coefficients[scoreI];
+                    double variantContribution = 0.0;
 
-                childScores[variableI] = childScores[variableI] + variantContribution;
+                    for (int variableI = 0; variableI < xValues.length; variableI++) {
 
-            }
+                        variantContribution += xValues[variableI] * scoreCoefficients[variableI];
+
+                    }
 
-            semaphore.release();
+                    childScores[scoreI] += variantContribution;
 
+                }
+            }
         }
     }
+
+    /**
+     * Interface for the provision of the coefficients of a scoring variant.
+     */
+    public interface CoefficientsProvider {
+
+        /**
+         * Returns the coefficients of the model variables for the different
+         * scores, including the weight of the variant, indexed by score index
+         * and variable index. Null if the variant does not contribute to any
+         * score.
+         *
+         * @param leadVariant The id of the lead variant of the locus.
+         * @param scoringVariant The id of the scoring variant.
+         * @param scoringDetails The effect sizes and standard errors of the
+         * variables, as parsed by the PrsUtils.
+         * @param nScoringVariants The number of scoring variants of the locus
+         * found in the genotypes.
+         *
+         * @return The coefficients of the model variables for the different
+         * scores.
+         */
+        public double[][] getCoefficients(
+                String leadVariant,
+                String scoringVariant,
+                double[] scoringDetails,
+                int nScoringVariants
+        );
+    }
 }
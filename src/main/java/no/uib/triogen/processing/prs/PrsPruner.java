@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
@@ -12,8 +13,11 @@ import no.uib.triogen.io.flat.SimpleFileWriter;
 import no.uib.triogen.io.IoUtils;
 import static no.uib.triogen.io.IoUtils.SEPARATOR;
 import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.ld.LdMatrixBundle;
 import no.uib.triogen.io.ld.LdMatrixReader;
+import no.uib.triogen.io.ld.LdRowCache;
 import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.ld.LdRow;
 import no.uib.triogen.model.ld.R2;
 import no.uib.triogen.utils.SimpleSemaphore;
 import no.uib.triogen.utils.Utils;
@@ -108,6 +112,10 @@ public class PrsPruner {
      * The allele frequency column.
      */
     private final String afColumn;
+    /**
+     * The cache of decoded LD rows, ignored if null.
+     */
+    private final LdRowCache ldRowCache;
     /**
      * The logger.
      */
@@ -142,6 +150,7 @@ public class PrsPruner {
      * @param afColumn The allele frequency column to use.
      * @param nSnpPerLocusThreshold The number of variants to consider per
      * locus.
+     * @param ldRowCache The cache of decoded LD rows, ignored if null.
      * @param logger The logger.
      */
     public PrsPruner(
@@ -163,6 +172,7 @@ public class PrsPruner {
             double pValueThreshold,
             double afThreshold,
             String afColumn,
+            LdRowCache ldRowCache,
             SimpleCliLogger logger
     ) {
 
@@ -184,6 +194,7 @@ public class PrsPruner {
         this.pValueThreshold = pValueThreshold;
         this.afThreshold = afThreshold;
         this.afColumn = afColumn;
+        this.ldRowCache = ldRowCache;
         this.logger = logger;
 
     }
@@ -223,6 +234,12 @@ public class PrsPruner {
 
         logger.logMessage("Parsing training data from " + trainingFile + " done (" + duration + " seconds), " + nVariants + " from " + nPruned.size() + " loci remaining.");
 
+        if (ldRowCache != null) {
+
+            logger.logMessage(ldRowCache.getReport());
+
+        }
+
     }
 
     /**
@@ -376,9 +393,9 @@ public class PrsPruner {
 
             LdMatrixReader ldMatrixReader = getLdMatrixReader(variantDetails[0]);
 
-            ArrayList<R2> r2s = ldMatrixReader.getR2(leadVariantId);
+            LdRow row = ldMatrixReader.getRow(leadVariantId);
 
-            if (r2s != null) {
+            if (row != null) {
 
                 simpleSemaphore.acquire();
 
@@ -387,10 +404,11 @@ public class PrsPruner {
                     ArrayList<R2> r2InLocus = new ArrayList<>();
                     HashSet<String> idsInLocus = new HashSet<>();
 
-                    for (R2 r2 : r2s) {
+                    for (int i = 0; i < row.size(); i++) {
 
-                        if (r2.r2Value >= ldLocusThreshold) {
+                        if (row.r2Values[i] >= ldLocusThreshold) {
 
+                            R2 r2 = row.getR2(i);
                             r2.setVariantBId(ldMatrixReader.getId(r2.variantB));
                             r2.setVariantBRsid(ldMatrixReader.getRsId(r2.getVariantBId()));
 
@@ -449,6 +467,8 @@ public class PrsPruner {
                         HashMap<String, String> topHits = new HashMap<>();
                         HashMap<String, String> hitsIds = new HashMap<>();
 
+                        HashMap<String, LdRow> topHitRows = ldMatrixReader.getRows(Arrays.asList(bestSnps));
+
                         for (int variableI = 0; variableI < variableNames.length; variableI++) {
 
                             String topHitId = bestSnps[variableI];
@@ -456,26 +476,26 @@ public class PrsPruner {
 
                             topHits.put(topHitId, topHitRsId);
 
-                            r2s = ldMatrixReader.getR2(topHitId);
+                            LdRow topHitRow = topHitRows.get(topHitId);
 
-                            if (r2s != null) {
+                            if (topHitRow != null) {
 
-                                for (R2 r2 : r2s) {
+                                for (int i = 0; i < topHitRow.size(); i++) {
 
-                                    if (r2.r2Value >= ldTopHitThreshold) {
+                                    if (topHitRow.r2Values[i] >= ldTopHitThreshold) {
 
-                                        r2.setVariantBId(ldMatrixReader.getId(r2.variantB));
-                                        r2.setVariantBRsid(ldMatrixReader.getRsId(r2.getVariantBId()));
+                                        String variantBId = ldMatrixReader.getId(topHitRow.variantB[i]);
+                                        String variantBRsid = ldMatrixReader.getRsId(variantBId);
 
-                                        if (trainingData.variantToDetailsMap.containsKey(r2.getVariantBId())) {
+                                        if (trainingData.variantToDetailsMap.containsKey(variantBId)) {
 
-                                            topHits.put(r2.getVariantBId(), r2.getVariantBRsid());
-                                            hitsIds.put(r2.getVariantBId(), r2.getVariantBId());
+                                            topHits.put(variantBId, variantBRsid);
+                                            hitsIds.put(variantBId, variantBId);
 
-                                        } else if (trainingData.variantToDetailsMap.containsKey(r2.getVariantBRsid())) {
+                                        } else if (trainingData.variantToDetailsMap.containsKey(variantBRsid)) {
 
-                                            topHits.put(r2.getVariantBId(), r2.getVariantBRsid());
-                                            hitsIds.put(r2.getVariantBId(), r2.getVariantBRsid());
+                                            topHits.put(variantBId, variantBRsid);
+                                            hitsIds.put(variantBId, variantBRsid);
 
                                         }
                                     }
@@ -576,6 +596,32 @@ public class PrsPruner {
 
         LdMatrixReader ldMatrixReader = ldMatrixReadersMap.get(contig);
 
+        if (ldMatrixReader == null && LdMatrixBundle.isBundle(new File(ldMatrixFilePath))) {
+
+            LdMatrixBundle ldMatrixBundle = LdMatrixBundle.getBundle(new File(ldMatrixFilePath));
+
+            ldMatrixReader = ldMatrixBundle.getReader(contig, ldRowCache);
+
+            if (ldMatrixReader == null && contig.equals("X")) {
+
+                ldMatrixReader = ldMatrixBundle.getReader("23", ldRowCache);
+
+            } else if (ldMatrixReader == null && contig.equals("23")) {
+
+                ldMatrixReader = ldMatrixBundle.getReader("X", ldRowCache);
+
+            }
+
+            if (ldMatrixReader == null) {
+
+                throw new IllegalArgumentException("No LD matrix found for chromosome " + contig + " in " + ldMatrixFilePath + ".");
+
+            }
+
+            ldMatrixReadersMap.put(contig, ldMatrixReader);
+
+        }
+
         if (ldMatrixReader == null) {
 
             String contigLdMatrixFilePath = ldMatrixFilePath.replace(Utils.CHROMOSOME_WILDCARD, contig);
@@ -611,7 +657,7 @@ public class PrsPruner {
 
             try {
 
-                ldMatrixReader = new LdMatrixReader(contigLdFile);
+                ldMatrixReader = new LdMatrixReader(contigLdFile, ldRowCache);
 
             } catch (Exception e) {
 
@@ -11,7 +11,6 @@ import no.uib.triogen.model.family.ChildToParentMap;
 import no.uib.triogen.model.trio_genotypes.Model;
 import no.uib.triogen.model.trio_genotypes.VariantList;
 import no.uib.triogen.processing.prs.PrsUtils.ScoringMode;
-import no.uib.triogen.utils.SimpleSemaphore;
 import org.apache.commons.math3.distribution.NormalDistribution;
 
 /**
@@ -87,10 +86,6 @@ public class PrsScorer {
      * The logger.
      */
     private final SimpleCliLogger logger;
-    /**
-     * Semaphore to synchronize the scoring threads.
-     */
-    private final SimpleSemaphore semaphore = new SimpleSemaphore(1);
 
     /**
      * Constructor.
@@ -199,7 +194,6 @@ public class PrsScorer {
                 variableNames, 
                 seScaling, 
                 bgenIndexFolder, 
-                semaphore, 
                 logger
         );
 
@@ -16,7 +16,6 @@ import no.uib.triogen.model.family.ChildToParentMap;
 import no.uib.triogen.model.phenotypes.PhenotypesHandler;
 import no.uib.triogen.model.trio_genotypes.Model;
 import no.uib.triogen.model.trio_genotypes.VariantList;
-import no.uib.triogen.utils.SimpleSemaphore;
 import no.uib.triogen.utils.Utils;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
@@ -111,10 +110,6 @@ public class PrsThresholder {
      * The logger.
      */
     private final SimpleCliLogger logger;
-    /**
-     * Semaphore to synchronize the scoring threads.
-     */
-    private final SimpleSemaphore semaphore = new SimpleSemaphore(1);
 
     /**
      * Constructor.
@@ -228,6 +223,13 @@ public class PrsThresholder {
 
         logger.logMessage("Loading phenotypes done (" + indexesWithPhenotype.length + " loaded in " + duration + " seconds).");
 
+        double[] pValueThresholds = getPValueThresholds();
+        PrsUtils.ScoringMode[] scoringModes = PrsUtils.ScoringMode.values();
+
+        double[][] scores = getGridScores(pValueThresholds);
+
+        start = Instant.now().getEpochSecond();
+
         try (SimpleFileWriter writer = new SimpleFileWriter(destinationFile, true)) {
 
             writer.writeLine(
@@ -237,70 +239,33 @@ public class PrsThresholder {
                     "bin_r2"
             );
 
-            for (PrsUtils.ScoringMode scoringMode : PrsUtils.ScoringMode.values()) {
-
-                double pValueThreshold = HIGHEST_P_VALUE;
-
-                while (pValueThreshold >= LOWEST_P_VALUE) {
-
-                    HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData = PrsUtils.parseScoringData(
-                            trainingFile,
-                            betaColumnPattern,
-                            seColumnPattern,
-                            variableNames,
-                            variantList,
-                            pValueThreshold,
-                            afThreshold,
-                            afColumn,
-                            scoringMode
-                    );
+            for (int modeI = 0; modeI < scoringModes.length; modeI++) {
 
-                    for (double betaQuantile : BETA_QUANTILES) {
+                for (int thresholdI = 0; thresholdI < pValueThresholds.length; thresholdI++) {
 
-                        logger.logMessage("Thresholding {scoringMode: " + scoringMode + ", pValueThreshold: " + pValueThreshold + ", betaQuantile: " + betaQuantile + "}");
+                    for (int quantileI = 0; quantileI < BETA_QUANTILES.length; quantileI++) {
 
-                        start = Instant.now().getEpochSecond();
+                        int scoreI = getScoreIndex(modeI, thresholdI, quantileI, pValueThresholds.length);
 
-                        NormalDistribution normalDistribution = new NormalDistribution(0, 1);
-                        double seScaling = normalDistribution.inverseCumulativeProbability(betaQuantile);
-
-                        HashMap<String, double[]> scores = PrsComputer.getScores(
-                                genotypesFilePath,
-                                scoringData,
-                                childToParentMap,
-                                model,
-                                variableNames,
-                                seScaling,
-                                bgenIndexFolder,
-                                semaphore,
-                                logger
-                        );
-
-                        double[] scoresSum = Arrays.stream(indexesWithPhenotype)
+                        double[] scoresWithPhenotype = Arrays.stream(indexesWithPhenotype)
                                 .mapToDouble(
-                                        index -> Arrays.stream(
-                                                scores.get(childToParentMap.children[index])
-                                        ).sum()
+                                        index -> scores[index][scoreI]
                                 )
                                 .toArray();
 
-                        double[] binnedScores = Utils.bin(scoresSum, nBins);
+                        double[] binnedScores = Utils.bin(scoresWithPhenotype, nBins);
 
                         PearsonsCorrelation pearsonsCorrelation = new PearsonsCorrelation();
 
                         double correlation = pearsonsCorrelation.correlation(binnedScores, binnedPhenotypes);
 
                         writer.writeLine(
-                                scoringMode.name(),
-                                Double.toString(pValueThreshold),
-                                Double.toString(betaQuantile),
+                                scoringModes[modeI].name(),
+                                Double.toString(pValueThresholds[thresholdI]),
+                                Double.toString(BETA_QUANTILES[quantileI]),
                                 Double.toString(correlation)
                         );
-
                     }
-
-                    pValueThreshold /= P_VALUE_STEP;
-
                 }
             }
         }
@@ -316,4 +281,239 @@ public class PrsThresholder {
         logger.logMessage("Computing risk score done (" + allDuration + " seconds).");
 
     }
+
+    /**
+     * Returns the scores of the grid of scoring modes, p-value thresholds, and
+     * beta quantiles. The scoring data is parsed once at the highest p-value
+     * threshold and all scores are computed in one pass over the genotypes.
+     *
+     * @param pValueThresholds The p-value thresholds, from the highest to the
+     * lowest.
+     *
+     * @return The scores indexed by child index in the child to parent map and
+     * score index.
+     */
+    double[][] getGridScores(
+            double[] pValueThresholds
+    ) {
+
+        logger.logMessage("Loading scoring data");
+
+        long start = Instant.now().getEpochSecond();
+
+        HashMap<String, Double> leadPValues = new HashMap<>();
+
+        HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData = PrsUtils.parseScoringData(
+                trainingFile,
+                betaColumnPattern,
+                seColumnPattern,
+                variableNames,
+                variantList,
+                pValueThresholds[0],
+                afThreshold,
+                afColumn,
+                PrsUtils.ScoringMode.weighted,
+                leadPValues
+        );
+
+        long end = Instant.now().getEpochSecond();
+        long duration = end - start;
+
+        logger.logMessage("Loading scoring data done (" + leadPValues.size() + " loci loaded in " + duration + " seconds).");
+
+        PrsUtils.ScoringMode[] scoringModes = PrsUtils.ScoringMode.values();
+
+        double[] seScalings = new double[BETA_QUANTILES.length];
+        NormalDistribution normalDistribution = new NormalDistribution(0, 1);
+
+        for (int quantileI = 0; quantileI < BETA_QUANTILES.length; quantileI++) {
+
+            seScalings[quantileI] = normalDistribution.inverseCumulativeProbability(BETA_QUANTILES[quantileI]);
+
+        }
+
+        int nScores = scoringModes.length * pValueThresholds.length * BETA_QUANTILES.length;
+
+        logger.logMessage("Computing " + nScores + " scores {scoringModes: " + scoringModes.length + ", pValueThresholds: " + pValueThresholds.length + ", betaQuantiles: " + BETA_QUANTILES.length + "}");
+
+        start = Instant.now().getEpochSecond();
+
+        double[][] scores = PrsComputer.getScores(
+                genotypesFilePath,
+                scoringData,
+                childToParentMap,
+                model,
+                nScores,
+                (leadVariant, scoringVariant, scoringDetails, nScoringVariants) -> getCoefficients(
+                        leadVariant,
+                        scoringVariant,
+                        scoringDetails,
+                        nScoringVariants,
+                        leadPValues.get(leadVariant),
+                        scoringModes,
+                        pValueThresholds,
+                        seScalings
+                ),
+                bgenIndexFolder,
+                logger
+        );
+
+        end = Instant.now().getEpochSecond();
+        duration = end - start;
+
+        logger.logMessage("Computing " + nScores + " scores done (" + duration + " seconds).");
+
+        return scores;
+
+    }
+
+    /**
+     * Returns the p-value thresholds to try, from the highest to the lowest.
+     *
+     * @return The p-value thresholds to try.
+     */
+    public static double[] getPValueThresholds() {
+
+        ArrayList<Double> pValueThresholds = new ArrayList<>();
+
+        double pValueThreshold = HIGHEST_P_VALUE;
+
+        while (pValueThreshold >= LOWEST_P_VALUE) {
+
+            pValueThresholds.add(pValueThreshold);
+
+            pValueThreshold /= P_VALUE_STEP;
+
+        }
+
+        return pValueThresholds.stream()
+                .mapToDouble(
+                        Double::doubleValue
+                )
+                .toArray();
+
+    }
+
+    /**
+     * Returns the index of the score of the given scoring mode, p-value
+     * threshold, and beta quantile.
+     *
+     * @param modeI The index of the scoring mode.
+     * @param thresholdI The index of the p-value threshold.
+     * @param quantileI The index of the beta quantile.
+     * @param nThresholds The number of p-value thresholds.
+     *
+     * @return The index of the score.
+     */
+    static int getScoreIndex(
+            int modeI,
+            int thresholdI,
+            int quantileI,
+            int nThresholds
+    ) {
+
+        return (modeI * nThresholds + thresholdI) * BETA_QUANTILES.length + quantileI;
+
+    }
+
+    /**
+     * Returns the coefficients of a scoring variant for all the scores of the
+     * grid, null if the variant does not contribute to any score.
+     *
+     * @param leadVariant The id of the lead variant of the locus.
+     * @param scoringVariant The id of the scoring variant.
+     * @param scoringDetails The effect sizes and standard errors of the
+     * variables.
+     * @param nScoringVariants The number of scoring variants of the locus
+     * found in the genotypes.
+     * @param leadP The p-value of the lead variant.
+     * @param scoringModes The scoring modes.
+     * @param pValueThresholds The p-value thresholds.
+     * @param seScalings The se scaling factors of the beta quantiles.
+     *
+     * @return The coefficients of the scoring variant indexed by score index
+     * and variable index.
+     */
+    private double[][] getCoefficients(
+            String leadVariant,
+            String scoringVariant,
+            double[] scoringDetails,
+            int nScoringVariants,
+            double leadP,
+            PrsUtils.ScoringMode[] scoringModes,
+            double[] pValueThresholds,
+            double[] seScalings
+    ) {
+
+        double[][] betaEstimates = new double[seScalings.length][variableNames.length];
+        boolean nonNull = false;
+
+        for (int quantileI = 0; quantileI < seScalings.length; quantileI++) {
+
+            for (int variableI = 0; variableI < variableNames.length; variableI++) {
+
+                double betaEstimate = PrsComputer.getBetaEstimate(
+                        scoringDetails[variableI],
+                        scoringDetails[variableI + variableNames.length],
+                        seScalings[quantileI]
+                );
+
+                betaEstimates[quantileI][variableI] = betaEstimate;
+
+                if (betaEstimate != 0.0) {
+
+                    nonNull = true;
+
+                }
+            }
+        }
+
+        if (!nonNull) {
+
+            return null;
+
+        }
+
+        double[][] coefficients = new double[scoringModes.length * pValueThresholds.length * seScalings.length][variableNames.length];
+        nonNull = false;
+
+        for (int modeI = 0; modeI < scoringModes.length; modeI++) {
+
+            PrsUtils.ScoringMode scoringMode = scoringModes[modeI];
+
+            if (scoringMode == PrsUtils.ScoringMode.lead && !leadVariant.equals(scoringVariant)) {
+
+                continue;
+
+            }
+
+            double weight = scoringMode == PrsUtils.ScoringMode.lead ? 1.0 : 1.0 / nScoringVariants;
+
+            for (int thresholdI = 0; thresholdI < pValueThresholds.length; thresholdI++) {
+
+                if (variantList == null && leadP > pValueThresholds[thresholdI]) {
+
+                    continue;
+
+                }
+
+                for (int quantileI = 0; quantileI < seScalings.length; quantileI++) {
+
+                    double[] scoreCoefficients = coefficients[getScoreIndex(modeI, thresholdI, quantileI, pValueThresholds.length)];
+
+                    for (int variableI = 0; variableI < variableNames.length; variableI++) {
+
+                        scoreCoefficients[variableI] = betaEstimates[quantileI][variableI] * weight;
+
+                    }
+
+                    nonNull = true;
+
+                }
+            }
+        }
+
+        return nonNull ? coefficients : null;
+
+    }
 }
@@ -63,6 +63,54 @@ public class PrsUtils {
             ScoringMode scoringMode
     ) {
 
+        return parseScoringData(
+                trainingFile,
+                betaColumnPattern,
+                seColumnPattern,
+                variableNames,
+                variantList,
+                pValueThreshold,
+                afThreshold,
+                afColumn,
+                scoringMode,
+                null
+        );
+    }
+
+    /**
+     * For each variant, parses the weight and effect size, and stores the
+     * p-value of the lead variants in the given map.
+     *
+     * @param trainingFile The file to parse the scoring data from.
+     * @param betaColumnPattern The pattern of the column names containing the
+     * effect size.
+     * @param seColumnPattern The pattern of the column names containing the
+     * standard error.
+     * @param variableNames The names of the variables.
+     * @param variantList The list of variants to use for scoring.
+     * @param pValueThreshold The p-value threshold to use.
+     * @param afThreshold The allele frequency threshold to use.
+     * @param afColumn The name of the column containing the allele frequency.
+     * @param scoringMode The scoring mode to use.
+     * @param leadPValues The map where to store the p-value of the lead
+     * variants retained, ignored if null.
+     *
+     * @return The scoring data in a map, chromosome to lead variant to scoring
+     * variant to effect allele to weight and effect size.
+     */
+    public static HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> parseScoringData(
+            File trainingFile,
+            String betaColumnPattern,
+            String seColumnPattern,
+            String[] variableNames,
+            VariantList variantList,
+            double pValueThreshold,
+            double afThreshold,
+            String afColumn,
+            ScoringMode scoringMode,
+            HashMap<String, Double> leadPValues
+    ) {
+
         HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData = new HashMap<>();
 
         int[] betaColumnIndexes = new int[variableNames.length];
@@ -216,6 +264,12 @@ public class PrsUtils {
 
                         variantValues.put(ea, result);
 
+                        if (leadPValues != null) {
+
+                            leadPValues.put(leadVariantId, leadP);
+
+                        }
+
                     }
                 }
             }
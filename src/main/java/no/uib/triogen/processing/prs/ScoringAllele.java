@@ -0,0 +1,51 @@
+package no.uib.triogen.processing.prs;
+
+/**
+ * An allele contributing to the scores along with its coefficients.
+ *
+ * @author Marc Vaudel
+ */
+public class ScoringAllele {
+
+    /**
+     * The index of the variant in the bgen file.
+     */
+    public final int bgenVariantIndex;
+    /**
+     * The id of the lead variant of the locus.
+     */
+    public final String leadVariant;
+    /**
+     * The effect allele.
+     */
+    public final String allele;
+    /**
+     * The coefficients of the model variables for the different scores,
+     * including the weight of the variant, indexed by score index and variable
+     * index.
+     */
+    public final double[][] coefficients;
+
+    /**
+     * Constructor.
+     *
+     * @param bgenVariantIndex The index of the variant in the bgen file.
+     * @param leadVariant The id of the lead variant of the locus.
+     * @param allele The effect allele.
+     * @param coefficients The coefficients of the model variables for the
+     * different scores, including the weight of the variant.
+     */
+    public ScoringAllele(
+            int bgenVariantIndex,
+            String leadVariant,
+            String allele,
+            double[][] coefficients
+    ) {
+
+        this.bgenVariantIndex = bgenVariantIndex;
+        this.leadVariant = leadVariant;
+        this.allele = allele;
+        this.coefficients = coefficients;
+
+    }
+}
@@ -0,0 +1,145 @@
+package no.uib.triogen.processing.prs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A variant contributing to the scores, with the coefficients of its effect
+ * alleles summed over the loci it is scored in.
+ *
+ * @author Marc Vaudel
+ */
+public class ScoringVariant {
+
+    /**
+     * The index of the variant in the bgen file.
+     */
+    public final int bgenVariantIndex;
+    /**
+     * The effect alleles.
+     */
+    public final String[] alleles;
+    /**
+     * The coefficients of the model variables for the different scores,
+     * including the weight of the variant, summed over the loci, indexed by
+     * allele index, score index, and variable index.
+     */
+    public final double[][][] coefficients;
+
+    /**
+     * Constructor.
+     *
+     * @param bgenVariantIndex The index of the variant in the bgen file.
+     * @param alleles The effect alleles.
+     * @param coefficients The coefficients of the model variables for the
+     * different scores, summed over the loci, indexed by allele index.
+     */
+    public ScoringVariant(
+            int bgenVariantIndex,
+            String[] alleles,
+            double[][][] coefficients
+    ) {
+
+        this.bgenVariantIndex = bgenVariantIndex;
+        this.alleles = alleles;
+        this.coefficients = coefficients;
+
+    }
+
+    /**
+     * Groups the scoring alleles by variant. The coefficients of an allele
+     * scored in several loci are summed in the order of the list.
+     *
+     * @param scoringAlleles The scoring alleles sorted by index in the bgen
+     * file.
+     *
+     * @return The scoring variants in the order of the bgen file.
+     */
+    public static ArrayList<ScoringVariant> getScoringVariants(
+            List<ScoringAllele> scoringAlleles
+    ) {
+
+        ArrayList<ScoringVariant> scoringVariants = new ArrayList<>();
+
+        int groupStart = 0;
+
+        while (groupStart < scoringAlleles.size()) {
+
+            int bgenVariantIndex = scoringAlleles.get(groupStart).bgenVariantIndex;
+
+            int groupEnd = groupStart + 1;
+
+            while (groupEnd < scoringAlleles.size() && scoringAlleles.get(groupEnd).bgenVariantIndex == bgenVariantIndex) {
+
+                groupEnd++;
+
+            }
+
+            ArrayList<String> alleles = new ArrayList<>(1);
+            ArrayList<double[][]> coefficients = new ArrayList<>(1);
+
+            for (int i = groupStart; i < groupEnd; i++) {
+
+                ScoringAllele scoringAllele = scoringAlleles.get(i);
+
+                int alleleI = alleles.indexOf(scoringAllele.allele);
+
+                if (alleleI == -1) {
+
+                    alleles.add(scoringAllele.allele);
+                    coefficients.add(copy(scoringAllele.coefficients));
+
+                } else {
+
+                    double[][] alleleCoefficients = coefficients.get(alleleI);
+
+                    for (int scoreI = 0; scoreI < alleleCoefficients.length; scoreI++) {
+
+                        for (int variableI = 0; variableI < alleleCoefficients[scoreI].length; variableI++) {
+
+                            alleleCoefficients[scoreI][variableI] += scoringAllele.coefficients[scoreI][variableI];
+
+                        }
+                    }
+                }
+            }
+
+            scoringVariants.add(
+                    new ScoringVariant(
+                            bgenVariantIndex,
+                            alleles.toArray(new String[alleles.size()]),
+                            coefficients.toArray(new double[coefficients.size()][][])
+                    )
+            );
+
+            groupStart = groupEnd;
+
+        }
+
+        return scoringVariants;
+
+    }
+
+    /**
+     * Returns a deep copy of the given matrix.
+     *
+     * @param matrix The matrix to copy.
+     *
+     * @return A copy of the matrix.
+     */
+    private static double[][] copy(
+            double[][] matrix
+    ) {
+
+        double[][] result = new double[matrix.length][];
+
+        for (int i = 0; i < matrix.length; i++) {
+
+            result[i] = matrix[i].clone();
+
+        }
+
+        return result;
+
+    }
+}
@@ -13,7 +13,9 @@ import no.uib.triogen.io.flat.SimpleFileWriter;
 import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
 import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
 import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
-import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.io.genotypes.TrioVariantData;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheReader;
+import no.uib.triogen.io.genotypes.cache.HaplotypeCacheUtils;
 import no.uib.triogen.log.SimpleCliLogger;
 import no.uib.triogen.model.family.ChildToParentMap;
 import no.uib.triogen.model.genome.VariantInformation;
@@ -113,6 +115,16 @@ public class SimpleScoreComputer {
                 defaultFatherPloidy
         );
 
+        HaplotypeCacheReader haplotypeCacheReader = HaplotypeCacheReader.getHaplotypeCacheReader(
+                genotypesFile,
+                bgenIndex,
+                childToParentMap,
+                inheritanceMap,
+                defaultMotherPloidy,
+                defaultFatherPloidy,
+                logger
+        );
+
         long end = Instant.now().getEpochSecond();
         long duration = end - start;
 
@@ -159,8 +171,11 @@ public class SimpleScoreComputer {
 
             if (variantInformation.alleles.length > 1) {
 
-                BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantIndex);
-                variantData.parse(
+                TrioVariantData variantData = HaplotypeCacheUtils.getVariantData(
+                        variantIndex,
+                        haplotypeCacheReader,
+                        bgenFileReader,
+                        null,
                         childToParentMap,
                         decompressor
                 );
@@ -218,6 +233,12 @@ public class SimpleScoreComputer {
             }
         }
 
+        if (haplotypeCacheReader != null) {
+
+            haplotypeCacheReader.close();
+
+        }
+
         end = Instant.now().getEpochSecond();
         duration = end - start;
 
@@ -144,7 +144,8 @@ public class ComputeTargetedLD {
 
         File output = new File("/mnt/work/marc/moba/mobaRun/docs/ld", rsid + "_ld.gz");
 
-        P0Cache p0Cache = new P0Cache(1);
+        HashMap<String, float[][]> pHomozygousMap = new HashMap<>();
+        HashMap<String, int[]> allelesMap = new HashMap<>();
 
         HashMap<String, double[]> afCache = new HashMap<>();
 
@@ -178,7 +179,7 @@ public class ComputeTargetedLD {
 
         }
 
-        float[][] pHomA = p0Cache.getPHomozygous(variantInformationA.id);
+        float[][] pHomA = pHomozygousMap.get(variantInformationA.id);
 
         if (pHomA == null) {
 
@@ -200,14 +201,15 @@ public class ComputeTargetedLD {
 
             }
 
-            p0Cache.register(variantData, childToParentMap);
+            pHomozygousMap.put(variantData.getVariantInformation().id, P0Cache.getPHomozygous(variantData, childToParentMap));
+            allelesMap.put(variantData.getVariantInformation().id, variantData.getOrderedAlleles());
 
             afCache.put(variantInformationA.id, variantData.getAlleleFrequency());
 
         }
 
-        pHomA = p0Cache.getPHomozygous(variantInformationA.id);
-        int[] allelesA = p0Cache.getOrderedAlleles(variantInformationA.id);
+        pHomA = pHomozygousMap.get(variantInformationA.id);
+        int[] allelesA = allelesMap.get(variantInformationA.id);
         double[] afA = afCache.get(variantInformationA.id);
 
         try (SimpleFileWriter writer = new SimpleFileWriter(output, true)) {
@@ -231,7 +233,7 @@ public class ComputeTargetedLD {
 
                 VariantInformation variantInformationB = bgenIndex.variantInformationArray[indexB];
 
-                float[][] pHomB = p0Cache.getPHomozygous(variantInformationB.id);
+                float[][] pHomB = pHomozygousMap.get(variantInformationB.id);
 
                 if (pHomB == null) {
 
@@ -247,14 +249,15 @@ public class ComputeTargetedLD {
 
                     }
 
-                    p0Cache.register(variantData, childToParentMap);
+                    pHomozygousMap.put(variantData.getVariantInformation().id, P0Cache.getPHomozygous(variantData, childToParentMap));
+                    allelesMap.put(variantData.getVariantInformation().id, variantData.getOrderedAlleles());
 
                     afCache.put(variantInformationB.id, variantData.getAlleleFrequency());
 
                 }
 
-                pHomB = p0Cache.getPHomozygous(variantInformationB.id);
-                int[] allelesB = p0Cache.getOrderedAlleles(variantInformationB.id);
+                pHomB = pHomozygousMap.get(variantInformationB.id);
+                int[] allelesB = allelesMap.get(variantInformationB.id);
                 double[] afB = afCache.get(variantInformationB.id);
 
                 for (int iA = 0; iA < variantInformationA.alleles.length - 1; iA++) {
@@ -59,7 +59,8 @@ public class DebugLd {
 
             int maxDistance = 500000;
 
-            P0Cache p0Cache = new P0Cache(1);
+            HashMap<String, float[][]> pHomozygousMap = new HashMap<>();
+            HashMap<String, int[]> allelesMap = new HashMap<>();
 
             System.out.println("Parsing " + bgenFile.getAbsolutePath() + ".");
 
@@ -134,7 +135,7 @@ public class DebugLd {
 
                 }
 
-                float[][] pHomA = p0Cache.getPHomozygous(variantInformationA.id);
+                float[][] pHomA = pHomozygousMap.get(variantInformationA.id);
 
                 if (pHomA == null) {
 
@@ -150,11 +151,12 @@ public class DebugLd {
 
                     }
 
-                    p0Cache.register(variantData, childToParentMap);
+                    pHomozygousMap.put(variantData.getVariantInformation().id, P0Cache.getPHomozygous(variantData, childToParentMap));
+                    allelesMap.put(variantData.getVariantInformation().id, variantData.getOrderedAlleles());
 
                 }
 
-                pHomA = p0Cache.getPHomozygous(variantInformationA.id);
+                pHomA = pHomozygousMap.get(variantInformationA.id);
 
                 try (SimpleFileWriter writer = new SimpleFileWriter(output1, false)) {
 
@@ -175,7 +177,7 @@ public class DebugLd {
 
                         VariantInformation variantInformationB = bgenIndex.variantInformationArray[indexB];
 
-                        float[][] pHomB = p0Cache.getPHomozygous(variantInformationB.id);
+                        float[][] pHomB = pHomozygousMap.get(variantInformationB.id);
 
                         if (pHomB == null) {
 
@@ -191,11 +193,12 @@ public class DebugLd {
 
                             }
 
-                            p0Cache.register(variantData, childToParentMap);
+                            pHomozygousMap.put(variantData.getVariantInformation().id, P0Cache.getPHomozygous(variantData, childToParentMap));
+                            allelesMap.put(variantData.getVariantInformation().id, variantData.getOrderedAlleles());
 
                         }
 
-                        pHomB = p0Cache.getPHomozygous(variantInformationB.id);
+                        pHomB = pHomozygousMap.get(variantInformationB.id);
 
                         for (short alleleIA = 0; alleleIA < variantInformationA.alleles.length - 1; alleleIA++) {
 
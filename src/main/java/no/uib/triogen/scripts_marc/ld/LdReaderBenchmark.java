@@ -0,0 +1,77 @@
+package no.uib.triogen.scripts_marc.ld;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import no.uib.triogen.io.ld.LdMatrixReader;
+import no.uib.triogen.model.ld.R2;
+
+/**
+ * Measures the throughput of concurrent queries to an ld matrix.
+ *
+ * @author Marc Vaudel
+ */
+public class LdReaderBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments: the ld matrix, the number of
+     * threads, and the number of passes over all variants.
+     */
+    public static void main(String[] args) {
+
+        try {
+
+            File ldFile = new File(args[0]);
+            int nThreads = Integer.parseInt(args[1]);
+            int nPasses = Integer.parseInt(args[2]);
+
+            try (LdMatrixReader reader = new LdMatrixReader(ldFile)) {
+
+                String[] variantIds = reader.variantIds;
+
+                ForkJoinPool pool = new ForkJoinPool(nThreads);
+
+                for (int pass = 0; pass < nPasses; pass++) {
+
+                    AtomicLong nR2s = new AtomicLong(0);
+
+                    Instant begin = Instant.now();
+
+                    pool.submit(
+                            () -> Arrays.stream(variantIds)
+                                    .parallel()
+                                    .forEach(
+                                            variantId -> {
+
+                                                ArrayList<R2> r2s = reader.getR2(variantId);
+
+                                                if (r2s != null) {
+
+                                                    nR2s.addAndGet(r2s.size());
+
+                                                }
+                                            }
+                                    )
+                    ).get();
+
+                    long durationMillis = Instant.now().toEpochMilli() - begin.toEpochMilli();
+                    double queriesPerSecond = 1000.0 * variantIds.length / Math.max(durationMillis, 1);
+
+                    System.out.println("Pass " + (pass + 1) + ": " + variantIds.length + " queries, " + nR2s.get() + " r2s, " + nThreads + " threads, " + durationMillis + " ms (" + Math.round(queriesPerSecond) + " queries per second).");
+
+                }
+
+                pool.shutdown();
+
+            }
+
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
@@ -46,6 +46,7 @@ public class TestPruning {
                     0.05,
                     Double.NaN,
                     null,
+                    null,
                     logger
             );
 
@@ -119,4 +119,134 @@ public class CompressionUtils {
 
     }
 
+    /**
+     * Returns the CRC-32 of the concatenation of two sequences of bytes from
+     * their respective CRC-32 and the length of the second sequence, without
+     * reading the bytes.
+     *
+     * Adapted from crc32_combine in zlib by Mark Adler. Copyright (C)
+     * 1995-2006, 2010, 2011, 2012, 2016 Mark Adler. No copyright infringement
+     * intended.
+     *
+     * @param crc1 The CRC-32 of the first sequence.
+     * @param crc2 The CRC-32 of the second sequence.
+     * @param length2 The length of the second sequence in bytes.
+     *
+     * @return The CRC-32 of the concatenated sequences.
+     */
+    public static long crc32Combine(
+            long crc1,
+            long crc2,
+            long length2
+    ) {
+
+        if (length2 <= 0) {
+
+            return crc1;
+
+        }
+
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // Operator for one zero bit in odd
+        odd[0] = 0xedb88320L;
+        long row = 1;
+
+        for (int n = 1; n < 32; n++) {
+
+            odd[n] = row;
+            row <<= 1;
+
+        }
+
+        // Operators for two and four zero bits
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        // Apply length2 zeros to crc1, the first square puts the operator for one zero byte in even
+        do {
+
+            gf2MatrixSquare(even, odd);
+
+            if ((length2 & 1) != 0) {
+
+                crc1 = gf2MatrixTimes(even, crc1);
+
+            }
+
+            length2 >>= 1;
+
+            if (length2 == 0) {
+
+                break;
+
+            }
+
+            gf2MatrixSquare(odd, even);
+
+            if ((length2 & 1) != 0) {
+
+                crc1 = gf2MatrixTimes(odd, crc1);
+
+            }
+
+            length2 >>= 1;
+
+        } while (length2 != 0);
+
+        return (crc1 ^ crc2) & 0xffffffffL;
+
+    }
+
+    /**
+     * Multiplies a vector by a matrix in GF(2).
+     *
+     * @param matrix The matrix.
+     * @param vector The vector.
+     *
+     * @return The product.
+     */
+    private static long gf2MatrixTimes(
+            long[] matrix,
+            long vector
+    ) {
+
+        long sum = 0;
+        int i = 0;
+
+        while (vector != 0) {
+
+            if ((vector & 1) != 0) {
+
+                sum ^= matrix[i];
+
+            }
+
+            vector >>= 1;
+            i++;
+
+        }
+
+        return sum;
+
+    }
+
+    /**
+     * Squares a matrix in GF(2).
+     *
+     * @param square The matrix where to store the result.
+     * @param matrix The matrix to square.
+     */
+    private static void gf2MatrixSquare(
+            long[] square,
+            long[] matrix
+    ) {
+
+        for (int n = 0; n < 32; n++) {
+
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+
+        }
+    }
 }
@@ -0,0 +1,217 @@
+package no.uib.triogen.io.genotypes;
+
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.vcf.VCFCodec;
+import java.io.File;
+import java.io.IOException;
+import no.uib.triogen.io.conversion.VcfToBgenConverter;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+
+/**
+ * Test fixture writing simulated phased genotypes of trios as bgen file along
+ * with the corresponding trio file. Variant i is on chromosome 1 at position
+ * 1000 * (i + 1), has rsid rs + i, and alleles A and G. Trio i consists of
+ * CHILD + i, MOTHER + i, and FATHER + i.
+ *
+ * @author Marc Vaudel
+ */
+public class SimulatedTrios {
+
+    /**
+     * The distance in bp between consecutive variants.
+     */
+    public static final int SPACING = 1000;
+
+    /**
+     * Writes the given genotypes as bgen file and the trio file.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param genotypes The phased genotypes indexed by variant, trio, and
+     * child, mother, father, e.g. 0|1.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the files.
+     */
+    public static void writeTestFiles(
+            File bgenFile,
+            File trioFile,
+            String[][][] genotypes
+    ) throws IOException {
+
+        writeTrioFile(trioFile, genotypes[0].length);
+        writeBgen(bgenFile, genotypes);
+
+    }
+
+    /**
+     * Writes the trio file for the given number of trios.
+     *
+     * @param trioFile The trio file.
+     * @param nTrios The number of trios.
+     */
+    public static void writeTrioFile(
+            File trioFile,
+            int nTrios
+    ) {
+
+        try (SimpleFileWriter trioWriter = new SimpleFileWriter(trioFile, false)) {
+
+            trioWriter.writeLine("child", "mother", "father");
+
+            for (int i = 0; i < nTrios; i++) {
+
+                trioWriter.writeLine("CHILD" + i, "MOTHER" + i, "FATHER" + i);
+
+            }
+        }
+    }
+
+    /**
+     * Writes the given genotypes as vcf file next to the bgen file, and
+     * converts it to bgen.
+     *
+     * @param bgenFile The bgen file.
+     * @param genotypes The phased genotypes indexed by variant, trio, and
+     * child, mother, father, e.g. 0|1.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the files.
+     */
+    public static void writeBgen(
+            File bgenFile,
+            String[][][] genotypes
+    ) throws IOException {
+
+        File vcfFile = new File(bgenFile.getAbsolutePath() + ".vcf");
+
+        try (SimpleFileWriter vcfWriter = new SimpleFileWriter(vcfFile, false)) {
+
+            vcfWriter.writeLine("##fileformat=VCFv4.2");
+
+            StringBuilder header = new StringBuilder("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+
+            for (int i = 0; i < genotypes[0].length; i++) {
+
+                header.append("\tCHILD").append(i).append("\tMOTHER").append(i).append("\tFATHER").append(i);
+
+            }
+
+            vcfWriter.writeLine(header.toString());
+
+            for (int variantI = 0; variantI < genotypes.length; variantI++) {
+
+                StringBuilder line = new StringBuilder();
+                line.append("1\t").append(getPosition(variantI)).append("\trs").append(variantI).append("\tA\tG\t.\tPASS\t.\tGT");
+
+                for (String[] trioGenotypes : genotypes[variantI]) {
+
+                    for (String genotype : trioGenotypes) {
+
+                        line.append('\t').append(genotype);
+
+                    }
+                }
+
+                vcfWriter.writeLine(line.toString());
+
+            }
+        }
+
+        IndexFactory.createLinearIndex(vcfFile, new VCFCodec()).write(new File(vcfFile.getAbsolutePath() + ".idx"));
+        new VcfToBgenConverter().convert(vcfFile, bgenFile);
+
+    }
+
+    /**
+     * Returns the genotypes of trios from their haplotypes: the child
+     * inherits the first haplotype of the mother and the first haplotype of
+     * the father.
+     *
+     * @param haplotypes The alleles indexed by trio, mother transmitted and
+     * non-transmitted then father transmitted and non-transmitted, variant.
+     *
+     * @return The phased genotypes indexed by variant, trio, and child,
+     * mother, father.
+     */
+    public static String[][][] getGenotypes(
+            int[][][] haplotypes
+    ) {
+
+        int nTrios = haplotypes.length;
+        int nVariants = haplotypes[0][0].length;
+
+        String[][][] genotypes = new String[nVariants][nTrios][];
+
+        for (int variantI = 0; variantI < nVariants; variantI++) {
+
+            for (int trioI = 0; trioI < nTrios; trioI++) {
+
+                int[][] trioHaplotypes = haplotypes[trioI];
+
+                genotypes[variantI][trioI] = new String[]{
+                    trioHaplotypes[0][variantI] + "|" + trioHaplotypes[2][variantI],
+                    trioHaplotypes[0][variantI] + "|" + trioHaplotypes[1][variantI],
+                    trioHaplotypes[2][variantI] + "|" + trioHaplotypes[3][variantI]
+                };
+            }
+        }
+
+        return genotypes;
+
+    }
+
+    /**
+     * Returns the position of the given variant.
+     *
+     * @param variantI The index of the variant.
+     *
+     * @return The position of the variant.
+     */
+    public static int getPosition(
+            int variantI
+    ) {
+
+        return SPACING * (variantI + 1);
+
+    }
+
+    /**
+     * Returns the id of the given variant in the bgen file.
+     *
+     * @param variantI The index of the variant.
+     *
+     * @return The id of the variant.
+     */
+    public static String getVariantId(
+            int variantI
+    ) {
+
+        return String.join("_", "1", Integer.toString(getPosition(variantI)), "A", "G");
+
+    }
+
+    /**
+     * Deletes the given file or folder.
+     *
+     * @param file The file or folder to delete.
+     */
+    public static void delete(
+            File file
+    ) {
+
+        File[] children = file.listFiles();
+
+        if (children != null) {
+
+            for (File child : children) {
+
+                delete(child);
+
+            }
+        }
+
+        file.delete();
+
+    }
+}
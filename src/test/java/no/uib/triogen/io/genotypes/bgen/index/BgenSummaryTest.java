@@ -0,0 +1,217 @@
+package no.uib.triogen.io.genotypes.bgen.index;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.genotypes.InheritanceUtils;
+import no.uib.triogen.io.genotypes.SimulatedTrios;
+import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.model.family.ChildToParentMap;
+
+/**
+ * This class tests that the summary of a bgen file is reused as long as the
+ * bgen file is unchanged, and rebuilt otherwise.
+ *
+ * @author Marc Vaudel
+ */
+public class BgenSummaryTest extends TestCase {
+
+    /**
+     * The number of trios to simulate.
+     */
+    private static final int N_TRIOS = 50;
+    /**
+     * The number of variants to simulate.
+     */
+    private static final int N_VARIANTS = 10;
+
+    public void testReuse() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_summary").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            SimulatedTrios.writeTestFiles(bgenFile, trioFile, getGenotypes(1));
+
+            ChildToParentMap childToParentMap = ChildToParentMap.fromFile(trioFile);
+            BgenIndex bgenIndex = BgenIndex.getBgenIndex(bgenFile);
+            BgenSummary bgenSummary = BgenSummary.getBgenSummary(bgenFile, bgenIndex, childToParentMap);
+
+            for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                Assert.assertTrue(!bgenSummary.contains(variantI));
+
+            }
+
+            double[][] frequencies = register(bgenFile, bgenIndex, childToParentMap, bgenSummary);
+
+            bgenSummary.save();
+
+            File summaryFile = BgenSummary.getDefaultSummaryFile(bgenFile);
+
+            Assert.assertTrue(summaryFile.exists());
+
+            // The summary of an unchanged bgen file is reused
+            BgenSummary reloadedSummary = BgenSummary.getBgenSummary(bgenFile, bgenIndex, childToParentMap);
+
+            for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                Assert.assertTrue(reloadedSummary.contains(variantI));
+                Assert.assertTrue(Arrays.equals(reloadedSummary.getAlleleFrequencies(variantI), frequencies[variantI]));
+                Assert.assertTrue(reloadedSummary.getMissingness(variantI) == bgenSummary.getMissingness(variantI));
+                Assert.assertTrue(reloadedSummary.getInfo(variantI, 1) == bgenSummary.getInfo(variantI, 1));
+
+            }
+
+            // Nothing registered, the summary file is left untouched
+            long summaryModified = summaryFile.lastModified();
+            byte[] summaryContent = Files.readAllBytes(summaryFile.toPath());
+
+            reloadedSummary.save();
+
+            Assert.assertTrue(summaryFile.lastModified() == summaryModified);
+            Assert.assertTrue(Arrays.equals(Files.readAllBytes(summaryFile.toPath()), summaryContent));
+
+            // Change the genotypes of the bgen file, the summary is rebuilt
+            long bgenModified = bgenFile.lastModified();
+
+            SimulatedTrios.writeBgen(bgenFile, getGenotypes(2));
+            bgenFile.setLastModified(bgenModified + 10000);
+            BgenIndex.getDefaultIndexFile(bgenFile).delete();
+
+            BgenIndex changedIndex = BgenIndex.getBgenIndex(bgenFile);
+            BgenSummary changedSummary = BgenSummary.getBgenSummary(bgenFile, changedIndex, childToParentMap);
+
+            for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                Assert.assertTrue(!changedSummary.contains(variantI));
+
+            }
+
+            double[][] changedFrequencies = register(bgenFile, changedIndex, childToParentMap, changedSummary);
+
+            changedSummary.save();
+
+            BgenSummary rebuiltSummary = BgenSummary.getBgenSummary(bgenFile, changedIndex, childToParentMap);
+
+            boolean changed = false;
+
+            for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                Assert.assertTrue(rebuiltSummary.contains(variantI));
+                Assert.assertTrue(Arrays.equals(rebuiltSummary.getAlleleFrequencies(variantI), changedFrequencies[variantI]));
+
+                if (!Arrays.equals(changedFrequencies[variantI], frequencies[variantI])) {
+
+                    changed = true;
+
+                }
+            }
+
+            Assert.assertTrue(changed);
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    /**
+     * Parses all variants of the given bgen file, registers them in the
+     * summary, and returns their allele frequencies.
+     *
+     * @param bgenFile The bgen file.
+     * @param bgenIndex The index of the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param bgenSummary The summary where to register the variants.
+     *
+     * @return The allele frequencies indexed by variant.
+     *
+     * @throws Exception Exception thrown if an error occurred while reading
+     * the bgen file.
+     */
+    private static double[][] register(
+            File bgenFile,
+            BgenIndex bgenIndex,
+            ChildToParentMap childToParentMap,
+            BgenSummary bgenSummary
+    ) throws Exception {
+
+        double[][] frequencies = new double[N_VARIANTS][];
+        ZstdDecompressor decompressor = new ZstdDecompressor();
+
+        BgenFileReader bgenFileReader = new BgenFileReader(
+                bgenFile,
+                bgenIndex,
+                InheritanceUtils.getDefaultInheritanceMap("1"),
+                InheritanceUtils.getDefaultMotherPloidy("1"),
+                InheritanceUtils.getDefaultFatherPloidy("1")
+        );
+
+        try {
+
+            for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantI);
+                variantData.parse(childToParentMap, decompressor);
+
+                bgenSummary.register(variantI, variantData);
+
+                frequencies[variantI] = variantData.getAlleleFrequency();
+
+            }
+
+        } finally {
+
+            bgenFileReader.close();
+
+        }
+
+        return frequencies;
+
+    }
+
+    /**
+     * Returns random phased genotypes.
+     *
+     * @param seed The seed of the random number generator.
+     *
+     * @return The genotypes indexed by variant, trio, and child, mother,
+     * father.
+     */
+    private static String[][][] getGenotypes(
+            int seed
+    ) {
+
+        Random random = new Random(seed);
+
+        String[][][] genotypes = new String[N_VARIANTS][N_TRIOS][3];
+
+        for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+            double frequency = 0.1 + 0.8 * random.nextDouble();
+
+            for (int trioI = 0; trioI < N_TRIOS; trioI++) {
+
+                for (int individualI = 0; individualI < 3; individualI++) {
+
+                    genotypes[variantI][trioI][individualI] = (random.nextDouble() < frequency ? "1|" : "0|") + (random.nextDouble() < frequency ? "1" : "0");
+
+                }
+            }
+        }
+
+        return genotypes;
+
+    }
+}
@@ -0,0 +1,50 @@
+package no.uib.triogen.io.genotypes.bgen.iterator;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * This class tests the parsing of variant shards.
+ *
+ * @author Marc Vaudel
+ */
+public class VariantShardTest extends TestCase {
+
+    public void testParsing() {
+
+        // Shards are given with 1-based index and stored 0-based
+        VariantShard shard = VariantShard.parse("2/3");
+
+        Assert.assertTrue(shard.shardIndex == 1);
+        Assert.assertTrue(shard.nShards == 3);
+        Assert.assertTrue(shard.toString().equals("2/3"));
+
+        shard = VariantShard.parse(" 1 / 1 ");
+
+        Assert.assertTrue(shard.shardIndex == 0);
+        Assert.assertTrue(shard.nShards == 1);
+
+        // Ranges are 0-based and inclusive
+        shard = VariantShard.parse("5-10");
+
+        Assert.assertTrue(shard.shardIndex == -1);
+        Assert.assertTrue(shard.nShards == -1);
+        Assert.assertTrue(shard.toString().equals("5-10"));
+
+        Assert.assertTrue(VariantShard.parse("7-7").toString().equals("7-7"));
+
+        // Invalid shards are rejected
+        for (String invalidShard : new String[]{"0/3", "4/3", "1/0", "-1/3", "10-5", "a/3", "1-b", "5", ""}) {
+
+            try {
+
+                VariantShard.parse(invalidShard);
+                Assert.assertTrue(false);
+
+            } catch (IllegalArgumentException e) {
+
+                // Expected
+            }
+        }
+    }
+}
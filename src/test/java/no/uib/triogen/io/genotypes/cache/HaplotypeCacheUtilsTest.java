@@ -0,0 +1,39 @@
+package no.uib.triogen.io.genotypes.cache;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * This class tests the quantisation of the haplotype values in the cache.
+ *
+ * @author Marc Vaudel
+ */
+public class HaplotypeCacheUtilsTest extends TestCase {
+
+    public void testQuantisation() {
+
+        double maxError = 0.5 / HaplotypeCacheUtils.QUANTISATION_SCALE;
+
+        // Values in the quantisation range are restored within half a quantisation step
+        for (int i = 0; i <= 100000; i++) {
+
+            double value = -2.0 + 5.0 * i / 100000;
+            double restored = HaplotypeCacheUtils.dequantise(HaplotypeCacheUtils.quantise(value));
+
+            Assert.assertTrue(Math.abs(restored - value) <= maxError);
+
+        }
+
+        // Integer values are restored exactly
+        for (int value = -2; value <= 3; value++) {
+
+            Assert.assertTrue(HaplotypeCacheUtils.dequantise(HaplotypeCacheUtils.quantise(value)) == value);
+
+        }
+
+        // Values outside the range are clamped to its bounds
+        Assert.assertTrue(HaplotypeCacheUtils.dequantise(HaplotypeCacheUtils.quantise(-10.0)) == -2.0);
+        Assert.assertTrue(HaplotypeCacheUtils.dequantise(HaplotypeCacheUtils.quantise(10.0)) == 3.0);
+
+    }
+}
@@ -0,0 +1,201 @@
+package no.uib.triogen.io.ld;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.trio_genotypes.VariantIndex;
+
+/**
+ * This class tests the writing and reading of the manifest of ld matrix
+ * bundles.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixBundleTest extends TestCase {
+
+    public void testManifest() throws IOException {
+
+        File directory = Files.createTempDirectory("bundle").toFile();
+        directory.deleteOnExit();
+
+        // Two contigs with locations, and one without named after the file
+        File file1 = writeMatrix(directory, "chr1", "1", 10, true);
+        File file2 = writeMatrix(directory, "chr2", "2", 5, true);
+        File fileX = writeMatrix(directory, "X", "X", 3, false);
+
+        File manifestFile = new File(directory, LdMatrixBundle.MANIFEST_FILE);
+        manifestFile.deleteOnExit();
+
+        Assert.assertTrue(!LdMatrixBundle.isBundle(directory));
+
+        String[] contigs = LdMatrixBundle.writeManifest(directory);
+
+        Assert.assertTrue(LdMatrixBundle.isBundle(directory));
+        Assert.assertTrue(contigs.length == 3);
+        Assert.assertTrue(contigs[0].equals("X"));
+        Assert.assertTrue(contigs[1].equals("1"));
+        Assert.assertTrue(contigs[2].equals("2"));
+
+        LdMatrixBundle bundle = LdMatrixBundle.getBundle(directory);
+
+        Assert.assertTrue(LdMatrixBundle.getBundle(directory) == bundle);
+
+        String[] bundleContigs = bundle.getContigs();
+
+        Assert.assertTrue(bundleContigs.length == contigs.length);
+
+        for (int i = 0; i < contigs.length; i++) {
+
+            Assert.assertTrue(bundleContigs[i].equals(contigs[i]));
+
+        }
+
+        Assert.assertTrue(bundle.getNVariants() == 18);
+
+        // The manifest returns the same variants and rows as the footers of the matrices
+        for (File file : new File[]{file1, file2, fileX}) {
+
+            LdMatrixReader fileReader = new LdMatrixReader(file);
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+                LdMatrixFooter footer = new LdMatrixFooter(file, raf);
+                String contig = footer.contigs == null ? "X" : footer.contigs[0];
+
+                LdMatrixReader bundleReader = bundle.getReader(contig);
+
+                Assert.assertTrue(bundle.getReader(contig) == bundleReader);
+                Assert.assertTrue(bundleReader.variantIds.length == fileReader.variantIds.length);
+
+                for (int i = 0; i < fileReader.variantIds.length; i++) {
+
+                    String variantId = fileReader.variantIds[i];
+                    String rsId = fileReader.getRsId(variantId);
+
+                    Assert.assertTrue(bundleReader.variantIds[i].equals(variantId));
+                    Assert.assertTrue(bundleReader.getRsId(variantId).equals(rsId));
+
+                    Assert.assertTrue(bundle.getIndex(variantId) != -1);
+                    Assert.assertTrue(bundle.getIndex(rsId) == bundle.getIndex(variantId));
+                    Assert.assertTrue(bundle.getContig(variantId).equals(contig));
+                    Assert.assertTrue(bundle.getContig(rsId).equals(contig));
+
+                    int rowI = -1;
+
+                    for (int j = 0; j < footer.rowVariantIndexes.length; j++) {
+
+                        if (footer.rowVariantIndexes[j] == i) {
+
+                            rowI = j;
+
+                        }
+                    }
+
+                    long expectedRowIndex = rowI == -1 ? -1 : footer.rowIndexesInFile[rowI];
+
+                    Assert.assertTrue(bundle.getRowIndexInFile(variantId) == expectedRowIndex);
+
+                    ArrayList<R2> fileR2s = fileReader.getR2(variantId);
+                    ArrayList<R2> bundleR2s = bundleReader.getR2(variantId);
+
+                    if (fileR2s == null) {
+
+                        Assert.assertTrue(bundleR2s == null);
+
+                    } else {
+
+                        Assert.assertTrue(bundleR2s.size() == fileR2s.size());
+
+                        for (int j = 0; j < fileR2s.size(); j++) {
+
+                            Assert.assertTrue(bundleR2s.get(j).variantB == fileR2s.get(j).variantB);
+                            Assert.assertTrue(bundleR2s.get(j).r2Value == fileR2s.get(j).r2Value);
+
+                        }
+                    }
+                }
+            }
+        }
+
+        // Regions are available for the contigs with locations
+        Assert.assertTrue(bundle.getReader("1").getR2InRegion("1", 200, 500).getNVariants() == 4);
+
+        // Missing variants and contigs are not found
+        Assert.assertTrue(bundle.getIndex("DUMMY") == -1);
+        Assert.assertTrue(bundle.getIndex("") == -1);
+        Assert.assertTrue(bundle.getIndex(null) == -1);
+        Assert.assertTrue(bundle.getContig("DUMMY") == null);
+        Assert.assertTrue(bundle.getRowIndexInFile("DUMMY") == -1);
+        Assert.assertTrue(bundle.getReader("3") == null);
+
+    }
+
+    /**
+     * Writes an ld matrix in the given directory where every other variant
+     * has a row with the variants at most one variant away.
+     *
+     * @param directory The directory.
+     * @param fileName The name of the file without extension.
+     * @param contig The contig of the variants.
+     * @param nVariants The number of variants.
+     * @param locations Boolean indicating whether the locations of the
+     * variants should be stored.
+     *
+     * @return The ld matrix file.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the file.
+     */
+    private static File writeMatrix(
+            File directory,
+            String fileName,
+            String contig,
+            int nVariants,
+            boolean locations
+    ) throws IOException {
+
+        File matrixFile = new File(directory, fileName + LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        VariantIndex variantIndex = new VariantIndex();
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        for (int i = 0; i < nVariants; i++) {
+
+            String variantId = contig + "_" + (100 * i);
+
+            variantIndex.add(variantId, "rs" + variantId);
+
+            if (locations) {
+
+                variantIndex.setLocation(variantId, contig, 100 * i);
+
+            }
+        }
+
+        for (int i = 0; i < nVariants; i += 2) {
+
+            ArrayList<R2> r2s = new ArrayList<>();
+
+            for (int j = Math.max(0, i - 1); j <= Math.min(nVariants - 1, i + 1); j++) {
+
+                r2s.add(new R2(j, (short) 1, (short) 1, 1f / (1 + i + j)));
+
+            }
+
+            writer.addVariant(i, r2s, new ZstdCompressor());
+
+        }
+
+        writer.close();
+
+        return matrixFile;
+
+    }
+}
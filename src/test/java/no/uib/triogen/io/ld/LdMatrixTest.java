@@ -3,11 +3,15 @@ package no.uib.triogen.io.ld;
 import io.airlift.compress.zstd.ZstdCompressor;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.TreeMap;
 import junit.framework.Assert;
 import junit.framework.TestCase;
+import no.uib.triogen.io.checkpoint.Checkpoint;
 import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.ld.SparseLdMatrix;
 import no.uib.triogen.model.trio_genotypes.VariantIndex;
 
 /**
@@ -21,7 +25,9 @@ public class LdMatrixTest extends TestCase {
 
             VariantIndex variantIndex = new VariantIndex();
 
-            File matrixFile = new File("src/test/resources/ld/test.tld");
+            File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+            matrixFile.deleteOnExit();
+
             LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
 
             // Create a dummy LD map and store it
@@ -91,4 +97,514 @@ public class LdMatrixTest extends TestCase {
 
     }
 
+    public void testQuantisation() throws IOException {
+
+        for (int r2Bits : new int[]{8, 16}) {
+
+            VariantIndex variantIndex = new VariantIndex();
+
+            File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+            matrixFile.deleteOnExit();
+
+            LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile, null, r2Bits);
+
+            for (int j = 0; j < 50; j++) {
+
+                variantIndex.add("variantB_" + j, "rsvariantB_" + j);
+
+            }
+
+            // Create a dummy LD map with biallelic and multiallelic rows, neighbours not sorted
+            TreeMap<String, ArrayList<R2>> ldMap = new TreeMap<>();
+
+            for (int i = 0; i < 10; i++) {
+
+                ArrayList<R2> r2s = new ArrayList<>(50);
+
+                for (int j = 49; j >= 0; j--) {
+
+                    String variantB = "variantB_" + j;
+                    int variantBI = variantIndex.add(variantB, "rs" + variantB);
+
+                    short alleleA = (short) (i % 2 == 0 ? 1 : j % 3);
+                    short alleleB = (short) (j % 2);
+
+                    r2s.add(new R2(variantBI, alleleA, alleleB, (float) Math.pow(((double) i * j) / 500, 2)));
+
+                }
+
+                String variant = "variantA_" + i;
+                ldMap.put(variant, r2s);
+
+                writer.addVariant(
+                        variantIndex.add(variant, "rs" + variant),
+                        r2s,
+                        new ZstdCompressor()
+                );
+            }
+
+            writer.close();
+
+            LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile);
+
+            double tolerance = LdMatrixUtils.getR2Scale(r2Bits) / 2 + 1e-6;
+
+            for (String variantA : ldMap.keySet()) {
+
+                ArrayList<R2> groundTruth = ldMap.get(variantA);
+
+                ArrayList<R2> r2s = ldMatrixReader.getR2(variantA);
+                Assert.assertTrue(r2s.size() == groundTruth.size());
+
+                for (int i = 0; i < r2s.size(); i++) {
+
+                    // Neighbours are sorted by variant index in the file
+                    R2 fileR2 = r2s.get(i);
+                    R2 groundTruthR2 = groundTruth.get(groundTruth.size() - i - 1);
+
+                    Assert.assertTrue(fileR2.variantB == groundTruthR2.variantB);
+                    Assert.assertTrue(fileR2.alleleA == groundTruthR2.alleleA);
+                    Assert.assertTrue(fileR2.alleleB == groundTruthR2.alleleB);
+
+                    Assert.assertTrue(Math.abs(fileR2.r2Value - groundTruthR2.r2Value) <= tolerance);
+
+                }
+            }
+        }
+    }
+
+    public void testBatchAndRegion() throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        int nVariants = 20;
+
+        for (int i = 0; i < nVariants; i++) {
+
+            variantIndex.add("variant_" + i, "rs" + i);
+            variantIndex.setLocation("variant_" + i, "1", 100 * i);
+
+        }
+
+        // Every variant in LD with the variants at most three variants away, including itself
+        for (int i = nVariants - 1; i >= 0; i--) {
+
+            ArrayList<R2> r2s = new ArrayList<>();
+
+            for (int j = Math.max(0, i - 3); j <= Math.min(nVariants - 1, i + 3); j++) {
+
+                r2s.add(new R2(j, (short) 1, (short) 1, 1f / (1 + Math.abs(i - j))));
+
+            }
+
+            writer.addVariant(i, r2s, new ZstdCompressor());
+
+        }
+
+        writer.close();
+
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile);
+
+        // Batch queries return the same as single queries
+        ArrayList<String> query = new ArrayList<>();
+        query.add("variant_3");
+        query.add("rs7");
+        query.add("DUMMY");
+
+        HashMap<String, ArrayList<R2>> batchR2s = ldMatrixReader.getR2(query);
+
+        Assert.assertTrue(batchR2s.size() == 2);
+        Assert.assertTrue(!batchR2s.containsKey("DUMMY"));
+
+        for (String variantId : batchR2s.keySet()) {
+
+            ArrayList<R2> batchR2 = batchR2s.get(variantId);
+            ArrayList<R2> singleR2 = ldMatrixReader.getR2(variantId);
+
+            Assert.assertTrue(batchR2.size() == singleR2.size());
+
+            for (int i = 0; i < batchR2.size(); i++) {
+
+                Assert.assertTrue(batchR2.get(i).variantB == singleR2.get(i).variantB);
+                Assert.assertTrue(batchR2.get(i).r2Value == singleR2.get(i).r2Value);
+
+            }
+        }
+
+        // Region queries return the pairs between the variants of the region
+        SparseLdMatrix region = ldMatrixReader.getR2InRegion("1", 500, 1000);
+
+        Assert.assertTrue(region.getNVariants() == 6);
+        Assert.assertTrue(region.variantIds[0].equals("variant_5"));
+        Assert.assertTrue(region.positions[5] == 1000);
+
+        int nPairs = 0;
+
+        for (int i = 5; i <= 10; i++) {
+
+            for (int j = 5; j <= 10; j++) {
+
+                float expected = Math.abs(i - j) <= 3 ? 1f / (1 + Math.abs(i - j)) : 0f;
+
+                Assert.assertTrue(region.getMaxR2(i - 5, j - 5) == expected);
+
+                if (expected > 0) {
+
+                    nPairs++;
+
+                }
+            }
+        }
+
+        Assert.assertTrue(region.getNPairs() == nPairs);
+        Assert.assertTrue(ldMatrixReader.getR2InRegion("2", 0, Integer.MAX_VALUE).getNVariants() == 0);
+
+    }
+
+    public void testFooterChunks() throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        // Small chunks so that ids, rows, and locations span several chunks
+        writer.setFooterChunkSize(7);
+
+        int nVariants = 100;
+
+        for (int i = 0; i < nVariants; i++) {
+
+            variantIndex.add("variant_" + i, "rs" + i);
+            variantIndex.setLocation("variant_" + i, i < 50 ? "1" : "2", 1000 + 10 * (i % 50));
+
+        }
+
+        // Rows for two thirds of the variants, added in reverse order
+        for (int i = nVariants - 1; i >= 0; i--) {
+
+            if (i % 3 != 0) {
+
+                ArrayList<R2> r2s = new ArrayList<>();
+                r2s.add(new R2((i + 1) % nVariants, (short) 1, (short) 1, 1f / (1 + i)));
+
+                writer.addVariant(i, r2s, new ZstdCompressor());
+
+            }
+        }
+
+        writer.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(matrixFile, "r")) {
+
+            LdMatrixFooter footer = new LdMatrixFooter(matrixFile, raf);
+
+            Assert.assertTrue(footer.version == 2);
+            Assert.assertTrue(footer.variantIds.length == nVariants);
+            Assert.assertTrue(footer.rowVariantIndexes.length == 66);
+
+            for (int i = 0; i < nVariants; i++) {
+
+                Assert.assertTrue(footer.variantIds[i].equals("variant_" + i));
+                Assert.assertTrue(footer.rsIds[i].equals("rs" + i));
+                Assert.assertTrue(footer.contigs[i].equals(i < 50 ? "1" : "2"));
+                Assert.assertTrue(footer.positions[i] == 1000 + 10 * (i % 50));
+
+            }
+        }
+
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile);
+
+        for (int i = 0; i < nVariants; i++) {
+
+            ArrayList<R2> r2s = ldMatrixReader.getR2("variant_" + i);
+
+            if (i % 3 == 0) {
+
+                Assert.assertTrue(r2s == null);
+
+            } else {
+
+                Assert.assertTrue(r2s.size() == 1);
+                Assert.assertTrue(r2s.get(0).variantB == (i + 1) % nVariants);
+                Assert.assertTrue(r2s.get(0).r2Value == 1f / (1 + i));
+
+            }
+        }
+
+        Assert.assertTrue(ldMatrixReader.getR2InRegion("2", 1000, 1090).getNVariants() == 10);
+
+    }
+
+    public void testNoLocations() throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        // Locations set for some variants only are not stored
+        for (int i = 0; i < 10; i++) {
+
+            variantIndex.add("variant_" + i, "rs" + i);
+
+            if (i % 2 == 0) {
+
+                variantIndex.setLocation("variant_" + i, "1", 100 * i);
+
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+
+            ArrayList<R2> r2s = new ArrayList<>();
+            r2s.add(new R2(9 - i, (short) 1, (short) 1, 0.5f));
+
+            writer.addVariant(i, r2s, new ZstdCompressor());
+
+        }
+
+        writer.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(matrixFile, "r")) {
+
+            LdMatrixFooter footer = new LdMatrixFooter(matrixFile, raf);
+
+            Assert.assertTrue(footer.variantIds.length == 10);
+            Assert.assertTrue(footer.rowVariantIndexes.length == 10);
+            Assert.assertTrue(footer.contigs == null);
+            Assert.assertTrue(footer.positions == null);
+
+        }
+
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile);
+
+        Assert.assertTrue(ldMatrixReader.getR2("rs3").get(0).variantB == 6);
+
+        try {
+
+            ldMatrixReader.getR2InRegion("1", 0, 1000);
+            Assert.assertTrue(false);
+
+        } catch (IllegalArgumentException e) {
+
+            // Regions cannot be queried without locations
+        }
+    }
+
+    public void testUpgrade() throws IOException {
+
+        // The test matrix is in the first version of the format
+        File matrixFile = new File("src/test/resources/ld/test.tld");
+
+        LdMatrixReader originalReader = new LdMatrixReader(matrixFile);
+
+        for (int r2Bits : new int[]{8, 16, 32}) {
+
+            File upgradedFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+            upgradedFile.deleteOnExit();
+
+            LdMatrixConverter.convert(matrixFile, upgradedFile, r2Bits);
+
+            LdMatrixReader upgradedReader = new LdMatrixReader(upgradedFile);
+
+            try (RandomAccessFile raf = new RandomAccessFile(upgradedFile, "r")) {
+
+                LdMatrixFooter footer = new LdMatrixFooter(upgradedFile, raf);
+
+                Assert.assertTrue(footer.version == 2);
+                Assert.assertTrue(footer.r2Bits == r2Bits);
+
+            }
+
+            double tolerance = r2Bits == LdMatrixUtils.R2_BITS_LOSSLESS ? 0.0 : LdMatrixUtils.getR2Scale(r2Bits) / 2 + 1e-6;
+
+            for (int i = 0; i < 100; i++) {
+
+                String variantA = "variantA_" + i;
+
+                ArrayList<R2> originalR2s = originalReader.getR2(variantA);
+                ArrayList<R2> upgradedR2s = upgradedReader.getR2(variantA);
+
+                Assert.assertTrue(originalR2s.size() == 100);
+                Assert.assertTrue(upgradedR2s.size() == originalR2s.size());
+
+                // Neighbours are sorted by variant index in the upgraded file
+                HashMap<Integer, R2> originalMap = new HashMap<>(originalR2s.size());
+
+                for (R2 r2 : originalR2s) {
+
+                    originalMap.put(r2.variantB, r2);
+
+                }
+
+                for (R2 upgradedR2 : upgradedR2s) {
+
+                    R2 originalR2 = originalMap.get(upgradedR2.variantB);
+
+                    Assert.assertTrue(originalR2 != null);
+                    Assert.assertTrue(upgradedR2.alleleA == originalR2.alleleA);
+                    Assert.assertTrue(upgradedR2.alleleB == originalR2.alleleB);
+                    Assert.assertTrue(Math.abs(upgradedR2.r2Value - originalR2.r2Value) <= tolerance);
+
+                }
+            }
+        }
+    }
+
+    public void testResumeR2Bits() throws IOException {
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        File checkpointFile = Checkpoint.getCheckpointFile(matrixFile);
+        checkpointFile.deleteOnExit();
+
+        VariantIndex variantIndex = new VariantIndex();
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile, new Checkpoint(checkpointFile, 60), 16);
+
+        for (int i = 0; i < 10; i++) {
+
+            ArrayList<R2> r2s = new ArrayList<>();
+            r2s.add(new R2(variantIndex.add("variant_" + i, "rs" + i), (short) 1, (short) 1, 0.1f * i));
+
+            writer.addVariant(variantIndex.getIndex("variant_" + i, "rs" + i), r2s, new ZstdCompressor());
+
+        }
+
+        writer.saveCheckpoint();
+        writer.close();
+
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile, 60);
+
+        Assert.assertTrue(checkpoint.getR2Bits() == 16);
+        Assert.assertTrue(checkpoint.getR2Scale() == LdMatrixUtils.getR2Scale(16));
+
+        // Resuming with a different number of bits is rejected
+        try {
+
+            new LdMatrixWriter(new VariantIndex(), matrixFile, checkpoint, 8);
+            Assert.assertTrue(false);
+
+        } catch (IllegalArgumentException e) {
+
+            // Expected
+        }
+
+        // Resuming with the same number of bits restores the rows
+        LdMatrixWriter resumedWriter = new LdMatrixWriter(new VariantIndex(), matrixFile, checkpoint, 16);
+        resumedWriter.close();
+
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile);
+
+        for (int i = 0; i < 10; i++) {
+
+            ArrayList<R2> r2s = ldMatrixReader.getR2("variant_" + i);
+
+            Assert.assertTrue(r2s.size() == 1);
+            Assert.assertTrue(Math.abs(r2s.get(0).r2Value - 0.1f * i) <= LdMatrixUtils.getR2Scale(16) / 2 + 1e-6);
+
+        }
+    }
+
+    public void testIdIndex() throws IOException {
+
+        // Every id and rsid of the test matrix is found at its index
+        LdMatrixReader testReader = new LdMatrixReader(new File("src/test/resources/ld/test.tld"));
+
+        for (int i = 0; i < testReader.variantIds.length; i++) {
+
+            String variantId = testReader.variantIds[i];
+
+            Assert.assertTrue(testReader.getIndex(variantId) == i);
+            Assert.assertTrue(testReader.getId(i).equals(variantId));
+            Assert.assertTrue(testReader.getRsId(variantId).equals("rs" + variantId));
+
+            ArrayList<String> rsidVariants = testReader.getVariantIds("rs" + variantId);
+
+            Assert.assertTrue(rsidVariants.size() == 1);
+            Assert.assertTrue(rsidVariants.get(0).equals(variantId));
+
+        }
+
+        // Missing ids are not found
+        Assert.assertTrue(testReader.getIndex("DUMMY") == -1);
+        Assert.assertTrue(testReader.getIndex(null) == -1);
+        Assert.assertTrue(testReader.getRsId("DUMMY") == null);
+        Assert.assertTrue(testReader.getVariantIds("DUMMY") == null);
+        Assert.assertTrue(testReader.getVariantIds(null) == null);
+
+        // Ids with the same hash code are told apart
+        String[] collidingIds = new String[]{"AaAa", "AaBB", "BBAa", "BBBB"};
+
+        for (String id : collidingIds) {
+
+            Assert.assertTrue(id.hashCode() == collidingIds[0].hashCode());
+
+        }
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        variantIndex.add("AaBB", "Aa");
+        variantIndex.add("BBBB", "BB");
+        variantIndex.add("AaAa", "Aa");
+        variantIndex.add("variant", "");
+
+        for (int i = 0; i < 4; i++) {
+
+            ArrayList<R2> r2s = new ArrayList<>(1);
+            r2s.add(new R2(i, (short) 1, (short) 1, 1f));
+
+            writer.addVariant(i, r2s, new ZstdCompressor());
+
+        }
+
+        writer.close();
+
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile);
+
+        Assert.assertTrue(ldMatrixReader.getIndex("AaBB") == 0);
+        Assert.assertTrue(ldMatrixReader.getIndex("BBBB") == 1);
+        Assert.assertTrue(ldMatrixReader.getIndex("AaAa") == 2);
+        Assert.assertTrue(ldMatrixReader.getIndex("BBAa") == -1);
+        Assert.assertTrue(ldMatrixReader.getIndex("variant") == 3);
+
+        Assert.assertTrue(ldMatrixReader.getRsId("BBBB").equals("BB"));
+        Assert.assertTrue(ldMatrixReader.getRsId("variant") == null);
+
+        ArrayList<String> aaVariants = ldMatrixReader.getVariantIds("Aa");
+
+        Assert.assertTrue(aaVariants.size() == 2);
+        Assert.assertTrue(aaVariants.contains("AaBB"));
+        Assert.assertTrue(aaVariants.contains("AaAa"));
+
+        ArrayList<String> bbVariants = ldMatrixReader.getVariantIds("BB");
+
+        Assert.assertTrue(bbVariants.size() == 1);
+        Assert.assertTrue(bbVariants.get(0).equals("BBBB"));
+
+        // Missing rsids are not found, even with the hash code of indexed rsids
+        Assert.assertTrue("C#".hashCode() == "Aa".hashCode());
+        Assert.assertTrue(ldMatrixReader.getVariantIds("C#") == null);
+        Assert.assertTrue(ldMatrixReader.getVariantIds("") == null);
+
+        // Rows are found through the index
+        Assert.assertTrue(ldMatrixReader.getR2("AaAa").get(0).variantB == 2);
+        Assert.assertTrue(ldMatrixReader.getR2("BBAa") == null);
+
+    }
 }
@@ -0,0 +1,168 @@
+package no.uib.triogen.io.ld;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.model.ld.LdRow;
+import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.trio_genotypes.VariantIndex;
+
+/**
+ * This class tests the eviction of rows from the ld row cache.
+ *
+ * @author Marc Vaudel
+ */
+public class LdRowCacheTest extends TestCase {
+
+    /**
+     * The number of variants in the test matrix.
+     */
+    private static final int N_VARIANTS = 10;
+    /**
+     * The number of variants in LD with every variant.
+     */
+    private static final int N_R2 = 5;
+
+    public void testEviction() throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        for (int i = 0; i < N_VARIANTS; i++) {
+
+            variantIndex.add("variant_" + i, "rs" + i);
+
+        }
+
+        for (int i = 0; i < N_VARIANTS; i++) {
+
+            writer.addVariant(i, getR2s(i), new ZstdCompressor());
+
+        }
+
+        writer.close();
+
+        // A cache holding three rows
+        long rowSize = new LdMatrixReader(matrixFile).getVariantRow(0).getSizeInBytes();
+
+        LdRowCache cache = new LdRowCache(3 * rowSize);
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(matrixFile, cache);
+
+        LdRow row0 = ldMatrixReader.getVariantRow(0);
+        LdRow row1 = ldMatrixReader.getVariantRow(1);
+        LdRow row2 = ldMatrixReader.getVariantRow(2);
+
+        Assert.assertTrue(cache.getMisses() == 3);
+        Assert.assertTrue(cache.getHits() == 0);
+        Assert.assertTrue(cache.getSizeInBytes() == 3 * rowSize);
+
+        // Cached rows are returned as is
+        Assert.assertTrue(ldMatrixReader.getVariantRow(0) == row0);
+        Assert.assertTrue(cache.getHits() == 1);
+
+        // Overfilling the cache evicts the least recently used row, row 1
+        LdRow row3 = ldMatrixReader.getVariantRow(3);
+
+        Assert.assertTrue(cache.getMisses() == 4);
+        Assert.assertTrue(cache.getSizeInBytes() == 3 * rowSize);
+
+        Assert.assertTrue(ldMatrixReader.getVariantRow(0) == row0);
+        Assert.assertTrue(ldMatrixReader.getVariantRow(2) == row2);
+        Assert.assertTrue(ldMatrixReader.getVariantRow(3) == row3);
+        Assert.assertTrue(cache.getHits() == 4);
+        Assert.assertTrue(cache.getMisses() == 4);
+
+        // The evicted row is read again from the file, evicting row 0
+        LdRow rereadRow1 = ldMatrixReader.getVariantRow(1);
+
+        Assert.assertTrue(rereadRow1 != row1);
+        Assert.assertTrue(cache.getMisses() == 5);
+        Assert.assertTrue(cache.getSizeInBytes() == 3 * rowSize);
+
+        checkRow(rereadRow1, 1);
+
+        LdRow rereadRow0 = ldMatrixReader.getVariantRow(0);
+
+        Assert.assertTrue(rereadRow0 != row0);
+        Assert.assertTrue(cache.getMisses() == 6);
+
+        checkRow(rereadRow0, 0);
+
+        // Reading all rows through the cache returns the content of the file
+        for (int i = 0; i < N_VARIANTS; i++) {
+
+            checkRow(ldMatrixReader.getVariantRow(i), i);
+
+            Assert.assertTrue(cache.getSizeInBytes() <= 3 * rowSize);
+
+        }
+
+        // Rows larger than the cache are not cached
+        LdRowCache smallCache = new LdRowCache(rowSize - 1);
+        LdMatrixReader smallCacheReader = new LdMatrixReader(matrixFile, smallCache);
+
+        checkRow(smallCacheReader.getVariantRow(0), 0);
+        checkRow(smallCacheReader.getVariantRow(0), 0);
+
+        Assert.assertTrue(smallCache.getHits() == 0);
+        Assert.assertTrue(smallCache.getMisses() == 2);
+        Assert.assertTrue(smallCache.getSizeInBytes() == 0);
+
+    }
+
+    /**
+     * Returns the r2s of the given variant in the test matrix.
+     *
+     * @param variantIndex The index of the variant.
+     *
+     * @return The r2s of the variant.
+     */
+    private static ArrayList<R2> getR2s(
+            int variantIndex
+    ) {
+
+        ArrayList<R2> r2s = new ArrayList<>(N_R2);
+
+        for (int j = 0; j < N_R2; j++) {
+
+            r2s.add(new R2(2 * j, (short) 1, (short) 0, (variantIndex + 1) / 100f + j / 10f));
+
+        }
+
+        return r2s;
+
+    }
+
+    /**
+     * Checks that the given row contains the r2s of the given variant.
+     *
+     * @param row The row.
+     * @param variantIndex The index of the variant.
+     */
+    private static void checkRow(
+            LdRow row,
+            int variantIndex
+    ) {
+
+        ArrayList<R2> expected = getR2s(variantIndex);
+        ArrayList<R2> r2s = row.getR2s();
+
+        Assert.assertTrue(r2s.size() == expected.size());
+
+        for (int j = 0; j < expected.size(); j++) {
+
+            Assert.assertTrue(r2s.get(j).variantB == expected.get(j).variantB);
+            Assert.assertTrue(r2s.get(j).alleleA == expected.get(j).alleleA);
+            Assert.assertTrue(r2s.get(j).alleleB == expected.get(j).alleleB);
+            Assert.assertTrue(Math.abs(r2s.get(j).r2Value - expected.get(j).r2Value) <= 1e-6);
+
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package no.uib.triogen.model.annotation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.model.annotation.ensembl.GeneCoordinates;
+
+/**
+ * This class tests the building and querying of the gene coordinates index.
+ *
+ * @author Marc Vaudel
+ */
+public class GeneCoordinatesIndexTest extends TestCase {
+
+    public void testQueries() throws IOException {
+
+        File gtfFile = File.createTempFile("genes", ".gtf");
+        gtfFile.deleteOnExit();
+
+        try (SimpleFileWriter writer = new SimpleFileWriter(gtfFile, false)) {
+
+            writer.writeLine("#!genome-build GRCh38");
+            writer.writeLine("chr1", "test", "gene", "300", "400", ".", "+", ".", "gene_id \"G3\"; gene_name \"C\"; gene_biotype \"lncRNA\";");
+            writer.writeLine("chr1", "test", "gene", "100", "200", ".", "+", ".", "gene_id \"G1\"; gene_name \"A\"; gene_biotype \"protein_coding\";");
+            writer.writeLine("chr1", "test", "transcript", "100", "200", ".", "+", ".", "gene_id \"G1\"; gene_name \"A\"; gene_biotype \"protein_coding\";");
+            writer.writeLine("chr1", "test", "gene", "150", "1000", ".", "-", ".", "gene_id \"G2\"; gene_name \"B\"; gene_biotype \"protein_coding\";");
+            writer.writeLine("chr1", "test", "gene", "1200", "1300", ".", "-", ".", "gene_id \"G4\"; gene_type \"miRNA\";");
+            writer.writeLine("chr2", "test", "gene", "10", "20", ".", "+", ".", "gene_name \"E\";");
+
+        }
+
+        File indexFile = File.createTempFile("genes", ".gz");
+        indexFile.deleteOnExit();
+
+        GeneCoordinatesIndex builtIndex = GeneCoordinatesIndex.importGtf(gtfFile, indexFile);
+        GeneCoordinatesIndex readIndex = GeneCoordinatesIndex.read(indexFile);
+
+        for (GeneCoordinatesIndex index : new GeneCoordinatesIndex[]{builtIndex, readIndex}) {
+
+            Assert.assertTrue(index.source.equals(gtfFile.getName() + "; genome-build GRCh38"));
+            Assert.assertTrue(index.getNGenes() == 5);
+
+            String[] contigs = index.getContigs();
+
+            Assert.assertTrue(contigs.length == 2);
+            Assert.assertTrue(contigs[0].equals("1"));
+            Assert.assertTrue(contigs[1].equals("2"));
+
+            // Overlapping genes are returned sorted by start
+            checkGenes(index.getGeneCoordinates("1", 180, 320), "A", "B", "C");
+
+            ArrayList<GeneCoordinates> genes = index.getGeneCoordinates("1", 1250, 1250);
+
+            Assert.assertTrue(genes.size() == 1);
+            Assert.assertTrue(genes.get(0).name.equals("G4"));
+            Assert.assertTrue(genes.get(0).biotype.equals("miRNA"));
+            Assert.assertTrue(genes.get(0).start == 1200);
+            Assert.assertTrue(genes.get(0).end == 1300);
+
+            // Boundaries are inclusive
+            checkGenes(index.getGeneCoordinates("1", 200, 200), "A", "B");
+            checkGenes(index.getGeneCoordinates("1", 201, 299), "B");
+            checkGenes(index.getGeneCoordinates("1", 1000, 1200), "B", "G4");
+            checkGenes(index.getGeneCoordinates("1", 50, 100), "A");
+            checkGenes(index.getGeneCoordinates("1", 1300, 2000), "G4");
+
+            // Regions without gene return an empty list
+            checkGenes(index.getGeneCoordinates("1", 1, 99));
+            checkGenes(index.getGeneCoordinates("1", 1001, 1199));
+            checkGenes(index.getGeneCoordinates("1", 1301, Integer.MAX_VALUE));
+
+            // The chr prefix is ignored, missing attributes are not available
+            genes = index.getGeneCoordinates("chr2", 0, 15);
+
+            Assert.assertTrue(genes.size() == 1);
+            Assert.assertTrue(genes.get(0).name.equals("E"));
+            Assert.assertTrue(genes.get(0).biotype.equals(GeneCoordinatesIndex.NOT_AVAILABLE));
+
+            // Contigs not in the index return null
+            Assert.assertTrue(index.getGeneCoordinates("3", 0, Integer.MAX_VALUE) == null);
+
+        }
+    }
+
+    /**
+     * Checks that the given genes have the given names in the given order.
+     *
+     * @param genes The genes.
+     * @param names The expected names.
+     */
+    private static void checkGenes(
+            ArrayList<GeneCoordinates> genes,
+            String... names
+    ) {
+
+        Assert.assertTrue(genes != null);
+        Assert.assertTrue(genes.size() == names.length);
+
+        for (int i = 0; i < names.length; i++) {
+
+            Assert.assertTrue(genes.get(i).name.equals(names[i]));
+
+        }
+    }
+}
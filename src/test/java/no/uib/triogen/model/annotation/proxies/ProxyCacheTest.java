@@ -0,0 +1,304 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.model.annotation.ProxyCoordinates;
+
+/**
+ * This class tests the proxy sources and their cache against a local
+ * stand-in server.
+ *
+ * @author Marc Vaudel
+ */
+public class ProxyCacheTest extends TestCase {
+
+    public void testEnsemblCache() throws IOException {
+
+        File cacheFile = getCacheFile();
+
+        try (ProxyStandInServer server = new ProxyStandInServer(0)) {
+
+            EnsemblProxySource ensemblSource = new EnsemblProxySource(server.getEnsemblUrl(), "1000GENOMES:phase_3:GBR", 0.05, 37);
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                CachedProxySource source = new CachedProxySource(ensemblSource, cache, 1, 0);
+
+                ArrayList<ProxyCoordinates> proxies = source.getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 1);
+                Assert.assertTrue(proxies.size() == 2);
+                Assert.assertTrue(proxies.get(0).proxySnp.equals("rs124"));
+                Assert.assertTrue(Math.abs(proxies.get(0).r2 - 0.92) <= 1e-9);
+                Assert.assertTrue(proxies.get(0).start == 1001);
+
+                Assert.assertTrue(source.getProxies("rs999").isEmpty());
+                Assert.assertTrue(server.getNQueries() == 2);
+
+            }
+
+            // Reopen the cache, queries should not reach the server
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                CachedProxySource source = new CachedProxySource(ensemblSource, cache, 1, 0);
+
+                ArrayList<ProxyCoordinates> proxies = source.getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 2);
+                Assert.assertTrue(proxies.size() == 2);
+                Assert.assertTrue(proxies.get(1).proxySnp.equals("rs125"));
+                Assert.assertTrue(proxies.get(1).contig.equals("1"));
+                Assert.assertTrue(Math.abs(proxies.get(1).r2 - 0.31) <= 1e-9);
+                Assert.assertTrue(proxies.get(1).alleleMapping == null);
+
+                Assert.assertTrue(source.getProxies("rs999").isEmpty());
+                Assert.assertTrue(server.getNQueries() == 2);
+
+                // Another population is another entry
+                EnsemblProxySource otherSource = new EnsemblProxySource(server.getEnsemblUrl(), "1000GENOMES:phase_3:CEU", 0.05, 37);
+                new CachedProxySource(otherSource, cache, 1, 0).getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 3);
+
+            }
+
+        } finally {
+
+            cacheFile.delete();
+
+        }
+    }
+
+    public void testExpiration() throws IOException, SQLException {
+
+        File cacheFile = getCacheFile();
+
+        try (ProxyStandInServer server = new ProxyStandInServer(0)) {
+
+            LdLinkProxySource ldLinkSource = new LdLinkProxySource(server.getLdLinkUrl(), "CEU", 0.1, "token");
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                ArrayList<ProxyCoordinates> proxies = new CachedProxySource(ldLinkSource, cache, 1, 0).getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 1);
+                Assert.assertTrue(proxies.size() == 2);
+                Assert.assertTrue(proxies.get(1).alleleMapping.equals("A=C,G=T"));
+
+            }
+
+            // Make the entry older than the time to live
+            setTimestamps(cacheFile, "0");
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, 0)) {
+
+                new CachedProxySource(ldLinkSource, cache, 1, 0).getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 1);
+
+            }
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                ArrayList<ProxyCoordinates> proxies = new CachedProxySource(ldLinkSource, cache, 1, 0).getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 2);
+                Assert.assertTrue(proxies.size() == 2);
+
+            }
+
+        } finally {
+
+            cacheFile.delete();
+
+        }
+    }
+
+    public void testEmptyExpiration() throws IOException, SQLException {
+
+        File cacheFile = getCacheFile();
+
+        try (ProxyStandInServer server = new ProxyStandInServer(0)) {
+
+            EnsemblProxySource ensemblSource = new EnsemblProxySource(server.getEnsemblUrl(), "1000GENOMES:phase_3:GBR", 0.05, 37);
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                CachedProxySource source = new CachedProxySource(ensemblSource, cache, 1, 0);
+
+                source.getProxies("rs123");
+                source.getProxies("rs999");
+
+                Assert.assertTrue(server.getNQueries() == 2);
+
+            }
+
+            // Make the entries older than the time to live of empty entries
+            setTimestamps(cacheFile, "`timestamp` - " + (2 * 24 * 3600));
+
+            // Only the entry without proxy is queried again, also when entries do not expire
+            for (int ttl : new int[]{ProxyCache.DEFAULT_TTL_DAYS, 0}) {
+
+                try (ProxyCache cache = new ProxyCache(cacheFile, ttl)) {
+
+                    CachedProxySource source = new CachedProxySource(ensemblSource, cache, 1, 0);
+
+                    int nQueries = server.getNQueries();
+
+                    Assert.assertTrue(source.getProxies("rs123").size() == 2);
+                    Assert.assertTrue(server.getNQueries() == nQueries);
+
+                    Assert.assertTrue(source.getProxies("rs999").isEmpty());
+                    Assert.assertTrue(server.getNQueries() == nQueries + 1);
+
+                }
+
+                setTimestamps(cacheFile, "`timestamp` - " + (2 * 24 * 3600));
+
+            }
+
+        } finally {
+
+            cacheFile.delete();
+
+        }
+    }
+
+    public void testRetries() throws IOException {
+
+        File cacheFile = getCacheFile();
+
+        // Failed queries are retried
+        try (ProxyStandInServer server = new ProxyStandInServer(0, 2)) {
+
+            LdLinkProxySource ldLinkSource = new LdLinkProxySource(server.getLdLinkUrl(), "CEU", 0.1, "token");
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                ArrayList<ProxyCoordinates> proxies = new CachedProxySource(ldLinkSource, cache, 1, 1).getProxies("rs123");
+
+                Assert.assertTrue(server.getNQueries() == 3);
+                Assert.assertTrue(proxies.size() == 2);
+
+            }
+        }
+
+        // Queries failing at every attempt throw an exception and are not cached
+        try (ProxyStandInServer server = new ProxyStandInServer(0, CachedProxySource.N_ATTEMPTS)) {
+
+            EnsemblProxySource ensemblSource = new EnsemblProxySource(server.getEnsemblUrl(), "1000GENOMES:phase_3:GBR", 0.05, 37);
+
+            try (ProxyCache cache = new ProxyCache(cacheFile, ProxyCache.DEFAULT_TTL_DAYS)) {
+
+                CachedProxySource source = new CachedProxySource(ensemblSource, cache, 1, 1);
+
+                boolean failed = false;
+
+                try {
+
+                    source.getProxies("rs123");
+
+                } catch (RuntimeException e) {
+
+                    failed = true;
+
+                }
+
+                Assert.assertTrue(failed);
+                Assert.assertTrue(server.getNQueries() == CachedProxySource.N_ATTEMPTS);
+                Assert.assertTrue(cache.get(ensemblSource, "rs123") == null);
+
+                Assert.assertTrue(source.getProxies("rs123").size() == 2);
+                Assert.assertTrue(server.getNQueries() == CachedProxySource.N_ATTEMPTS + 1);
+
+            }
+
+        } finally {
+
+            cacheFile.delete();
+
+        }
+    }
+
+    public void testThrottling() throws IOException {
+
+        try (ProxyStandInServer server = new ProxyStandInServer(50)) {
+
+            EnsemblProxySource ensemblSource = new EnsemblProxySource(server.getEnsemblUrl(), "1000GENOMES:phase_3:GBR", 0.05, 37);
+            CachedProxySource source = new CachedProxySource(ensemblSource, null, 2, 20);
+
+            long start = System.currentTimeMillis();
+
+            IntStream.range(0, 8)
+                    .mapToObj(
+                            i -> new Thread(() -> source.getProxies("rs" + i))
+                    )
+                    .peek(Thread::start)
+                    .forEach(
+                            thread -> {
+                                try {
+                                    thread.join();
+                                } catch (InterruptedException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            }
+                    );
+
+            long duration = System.currentTimeMillis() - start;
+
+            Assert.assertTrue(server.getNQueries() == 8);
+            Assert.assertTrue(server.getMaxOngoing() <= 2);
+            Assert.assertTrue(duration >= 7 * 20);
+
+        }
+    }
+
+    /**
+     * Sets the timestamps of all entries of the given cache.
+     *
+     * @param cacheFile The file of the cache database.
+     * @param timestamp The SQL expression of the new timestamps.
+     *
+     * @throws SQLException Exception thrown if an error occurred while
+     * updating the database.
+     */
+    private static void setTimestamps(
+            File cacheFile,
+            String timestamp
+    ) throws SQLException {
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + cacheFile.getAbsolutePath())) {
+
+            try (Statement statement = connection.createStatement()) {
+
+                statement.executeUpdate("UPDATE `proxies` SET `timestamp` = " + timestamp + ";");
+
+            }
+        }
+    }
+
+    /**
+     * Returns a new file for a cache database.
+     *
+     * @return A new file for a cache database.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * creating the file.
+     */
+    private static File getCacheFile() throws IOException {
+
+        File cacheFile = File.createTempFile("proxies", ".sqlite");
+        cacheFile.delete();
+
+        return cacheFile;
+
+    }
+}
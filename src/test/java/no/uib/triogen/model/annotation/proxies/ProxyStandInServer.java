@@ -0,0 +1,251 @@
+package no.uib.triogen.model.annotation.proxies;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the Ensembl and LDlink servers answering proxy queries
+ * with the content of the files in 'src/test/resources/proxies'. Ensembl
+ * queries are answered with 'ensembl/rsid.json' and LDlink queries with
+ * 'ldlink/rsid.txt', variants without file have no proxy. A number of
+ * queries can be made to fail before the server answers.
+ *
+ * @author Marc Vaudel
+ */
+public class ProxyStandInServer implements AutoCloseable {
+
+    /**
+     * The folder containing the answers of the server.
+     */
+    private static final File FOLDER = new File("src/test/resources/proxies");
+    /**
+     * The http server.
+     */
+    private final HttpServer server;
+    /**
+     * The executor of the server.
+     */
+    private final ExecutorService executor;
+    /**
+     * The time to wait before answering a query in milliseconds.
+     */
+    private final long latency;
+    /**
+     * The number of queries left to fail.
+     */
+    private final AtomicInteger nFailures;
+    /**
+     * The number of queries received.
+     */
+    private final AtomicInteger nQueries = new AtomicInteger();
+    /**
+     * The number of queries being answered.
+     */
+    private final AtomicInteger nOngoing = new AtomicInteger();
+    /**
+     * The maximal number of queries answered at the same time.
+     */
+    private final AtomicInteger maxOngoing = new AtomicInteger();
+
+    /**
+     * Constructor, the server is started on a free port.
+     *
+     * @param latency The time to wait before answering a query in
+     * milliseconds.
+     *
+     * @throws IOException Exception thrown if an error occurred while starting
+     * the server.
+     */
+    public ProxyStandInServer(
+            long latency
+    ) throws IOException {
+
+        this(latency, 0);
+
+    }
+
+    /**
+     * Constructor, the server is started on a free port.
+     *
+     * @param latency The time to wait before answering a query in
+     * milliseconds.
+     * @param nFailures The number of queries to fail before answering.
+     *
+     * @throws IOException Exception thrown if an error occurred while starting
+     * the server.
+     */
+    public ProxyStandInServer(
+            long latency,
+            int nFailures
+    ) throws IOException {
+
+        this.latency = latency;
+        this.nFailures = new AtomicInteger(nFailures);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ensembl/ld/homo_sapiens/", this::answerEnsembl);
+        server.createContext("/ldlink/ldproxy", this::answerLdLink);
+
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+
+    }
+
+    /**
+     * Returns the url to use as Ensembl server.
+     *
+     * @return The url to use as Ensembl server.
+     */
+    public String getEnsemblUrl() {
+
+        return "http://localhost:" + server.getAddress().getPort() + "/ensembl";
+
+    }
+
+    /**
+     * Returns the url to use as LDproxy endpoint.
+     *
+     * @return The url to use as LDproxy endpoint.
+     */
+    public String getLdLinkUrl() {
+
+        return "http://localhost:" + server.getAddress().getPort() + "/ldlink/ldproxy";
+
+    }
+
+    /**
+     * Returns the number of queries received.
+     *
+     * @return The number of queries received.
+     */
+    public int getNQueries() {
+
+        return nQueries.get();
+
+    }
+
+    /**
+     * Returns the maximal number of queries answered at the same time.
+     *
+     * @return The maximal number of queries answered at the same time.
+     */
+    public int getMaxOngoing() {
+
+        return maxOngoing.get();
+
+    }
+
+    /**
+     * Answers an Ensembl query: /ensembl/ld/homo_sapiens/rsid/population.
+     *
+     * @param exchange The http exchange.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * answering.
+     */
+    private void answerEnsembl(
+            HttpExchange exchange
+    ) throws IOException {
+
+        String[] pathSplit = exchange.getRequestURI().getPath().split("/");
+        String rsid = pathSplit[pathSplit.length - 2];
+
+        answer(exchange, new File(FOLDER, "ensembl/" + rsid + ".json"), "[]", "application/json");
+
+    }
+
+    /**
+     * Answers an LDlink query: /ldlink/ldproxy?var=rsid&amp;...
+     *
+     * @param exchange The http exchange.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * answering.
+     */
+    private void answerLdLink(
+            HttpExchange exchange
+    ) throws IOException {
+
+        String rsid = null;
+
+        for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+
+            if (parameter.startsWith("var=")) {
+
+                rsid = parameter.substring(4);
+
+            }
+        }
+
+        answer(exchange, new File(FOLDER, "ldlink/" + rsid + ".txt"), "RS_Number\tCoord\tAlleles\tMAF\tDistance\tDprime\tR2\tCorrelated_Alleles\n", "text/plain");
+
+    }
+
+    /**
+     * Answers a query with the content of the given file.
+     *
+     * @param exchange The http exchange.
+     * @param file The file to send.
+     * @param defaultContent The content to send if the file does not exist.
+     * @param contentType The content type.
+     *
+     * @throws IOException Exception thrown if an error occurred while
+     * answering.
+     */
+    private void answer(
+            HttpExchange exchange,
+            File file,
+            String defaultContent,
+            String contentType
+    ) throws IOException {
+
+        nQueries.incrementAndGet();
+        maxOngoing.accumulateAndGet(nOngoing.incrementAndGet(), Math::max);
+
+        try {
+
+            Thread.sleep(latency);
+
+            boolean fail = nFailures.getAndDecrement() > 0;
+
+            byte[] content = fail ? "Internal error".getBytes("UTF-8")
+                    : file.exists() ? Files.readAllBytes(file.toPath())
+                    : defaultContent.getBytes("UTF-8");
+
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(fail ? 500 : 200, content.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+
+                outputStream.write(content);
+
+            }
+
+        } catch (InterruptedException e) {
+
+            throw new RuntimeException(e);
+
+        } finally {
+
+            nOngoing.decrementAndGet();
+
+        }
+    }
+
+    @Override
+    public void close() {
+
+        server.stop(0);
+        executor.shutdownNow();
+
+    }
+}
@@ -0,0 +1,68 @@
+package no.uib.triogen.model.genome;
+
+import java.io.File;
+import java.io.IOException;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+
+/**
+ * This class tests the interpolation of genetic positions.
+ *
+ * @author Marc Vaudel
+ */
+public class GeneticMapTest extends TestCase {
+
+    public void testInterpolation() throws IOException {
+
+        File mapFile = File.createTempFile("triogen_map", ".txt");
+
+        try {
+
+            try (SimpleFileWriter writer = new SimpleFileWriter(mapFile, false)) {
+
+                writer.writeLine("chromosome", "position", "rate", "cM");
+                writer.writeLine("chr2", "500", "1.0", "0.0");
+                writer.writeLine("chr1", "1000", "1.0", "0.5");
+                writer.writeLine("chr1", "2000", "2.0", "1.5");
+                writer.writeLine("chr1", "4000", "1.0", "2.0");
+                writer.writeLine("chr2", "5000", "1.0", "10.0");
+
+            }
+
+            // The chr prefix is ignored and markers of other chromosomes are skipped
+            GeneticMap geneticMap = GeneticMap.parse(mapFile, "1");
+
+            // Markers
+            Assert.assertTrue(geneticMap.getGeneticPosition(1000) == 0.5);
+            Assert.assertTrue(geneticMap.getGeneticPosition(2000) == 1.5);
+            Assert.assertTrue(geneticMap.getGeneticPosition(4000) == 2.0);
+
+            // Linear interpolation between markers
+            Assert.assertTrue(Math.abs(geneticMap.getGeneticPosition(1500) - 1.0) <= 1e-12);
+            Assert.assertTrue(Math.abs(geneticMap.getGeneticPosition(1100) - 0.6) <= 1e-12);
+            Assert.assertTrue(Math.abs(geneticMap.getGeneticPosition(3000) - 1.75) <= 1e-12);
+
+            // Positions outside the map get the genetic position of the closest marker
+            Assert.assertTrue(geneticMap.getGeneticPosition(1) == 0.5);
+            Assert.assertTrue(geneticMap.getGeneticPosition(999) == 0.5);
+            Assert.assertTrue(geneticMap.getGeneticPosition(4001) == 2.0);
+            Assert.assertTrue(geneticMap.getGeneticPosition(Integer.MAX_VALUE) == 2.0);
+
+            double[] geneticPositions = geneticMap.getGeneticPositions(new int[]{500, 1500, 5000});
+
+            Assert.assertTrue(geneticPositions.length == 3);
+            Assert.assertTrue(geneticPositions[0] == 0.5);
+            Assert.assertTrue(Math.abs(geneticPositions[1] - 1.0) <= 1e-12);
+            Assert.assertTrue(geneticPositions[2] == 2.0);
+
+            // Chromosome names with prefix
+            Assert.assertTrue(GeneticMap.parse(mapFile, "chr2").getGeneticPosition(2750) == 5.0);
+
+        } finally {
+
+            mapFile.delete();
+
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package no.uib.triogen.processing.ld;
+
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * This class tests that the windows of the blocked engine are the
+ * intersection of the windows in bp and in genetic distance.
+ *
+ * @author Marc Vaudel
+ */
+public class AdaptiveWindowTest extends TestCase {
+
+    public void testIntersection() {
+
+        Random random = new Random(1);
+
+        int nVariants = 500;
+        int maxDistance = 10000;
+        double maxCm = 0.05;
+
+        // Recombination rates varying along the chromosome, with duplicated positions
+        int[] positions = new int[nVariants];
+        double[] geneticPositions = new double[nVariants];
+
+        for (int i = 1; i < nVariants; i++) {
+
+            int step = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(1000);
+            double rate = (i / 100) % 2 == 0 ? 1e-6 : 2e-5;
+
+            positions[i] = positions[i - 1] + step;
+            geneticPositions[i] = geneticPositions[i - 1] + rate * step;
+
+        }
+
+        AdaptiveWindow adaptiveWindow = new AdaptiveWindow(geneticPositions, maxCm, AdaptiveWindow.DEFAULT_EXIT_CM, AdaptiveWindow.DEFAULT_EXIT_RUN);
+        LdBlockScheduler scheduler = new LdBlockScheduler(positions, maxDistance, 0, nVariants, LdMatrixBlockedRunnable.BLOCK_SIZE, null, adaptiveWindow, null, "");
+        LdBlockScheduler bpScheduler = new LdBlockScheduler(positions, maxDistance, 0, nVariants, LdMatrixBlockedRunnable.BLOCK_SIZE, null, null, null, "");
+
+        boolean bpBound = false;
+        boolean cmBound = false;
+
+        for (int i = 0; i < nVariants; i++) {
+
+            // The variants within both the bp and the genetic distances
+            int expectedStart = -1;
+            int expectedEnd = -1;
+            double cmStart = geneticPositions[i] - maxCm;
+            double cmEnd = geneticPositions[i] + maxCm;
+
+            for (int j = 0; j < nVariants; j++) {
+
+                if (Math.abs(positions[j] - positions[i]) <= maxDistance && geneticPositions[j] >= cmStart && geneticPositions[j] <= cmEnd) {
+
+                    if (expectedStart == -1) {
+
+                        expectedStart = j;
+
+                    }
+
+                    expectedEnd = j;
+
+                }
+            }
+
+            Assert.assertTrue(scheduler.getWindowStart(i) == expectedStart);
+            Assert.assertTrue(scheduler.getWindowEnd(i) == expectedEnd);
+
+            // Windows in bp only are never smaller
+            Assert.assertTrue(bpScheduler.getWindowStart(i) <= expectedStart);
+            Assert.assertTrue(bpScheduler.getWindowEnd(i) >= expectedEnd);
+
+            if (adaptiveWindow.getWindowEnd(i) > expectedEnd) {
+
+                bpBound = true;
+
+            }
+
+            if (bpScheduler.getWindowEnd(i) > expectedEnd) {
+
+                cmBound = true;
+
+            }
+        }
+
+        // Both distances bound some windows
+        Assert.assertTrue(bpBound);
+        Assert.assertTrue(cmBound);
+
+        // The scan can stop beyond the exit distance only
+        Assert.assertTrue(!adaptiveWindow.canExit(200, 200));
+        Assert.assertTrue(adaptiveWindow.canExit(0, nVariants - 1));
+
+    }
+}
@@ -0,0 +1,683 @@
+package no.uib.triogen.processing.ld;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.genotypes.InheritanceUtils;
+import no.uib.triogen.io.genotypes.SimulatedTrios;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantShard;
+import no.uib.triogen.io.ld.LdMatrixMerger;
+import no.uib.triogen.io.ld.LdMatrixReader;
+import no.uib.triogen.io.ld.LdMatrixUtils;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.model.genome.GeneticMap;
+import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.trio_genotypes.VariantList;
+import no.uib.triogen.processing.ld.LdUtils.LdEngine;
+
+/**
+ * This class tests the computation of LD matrices on simulated trios.
+ *
+ * @author Marc Vaudel
+ */
+public class LdMatrixComputerTest extends TestCase {
+
+    /**
+     * The number of trios to simulate.
+     */
+    private static final int N_TRIOS = 100;
+    /**
+     * The number of variants to simulate.
+     */
+    private static final int N_VARIANTS = 30;
+    /**
+     * The maximal distance in bp between variants in LD.
+     */
+    private static final int MAX_DISTANCE = 5 * SimulatedTrios.SPACING;
+
+    public void testTargeted() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_ld").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            writeTestFiles(bgenFile, trioFile);
+
+            String fullStem = new File(folder, "full").getAbsolutePath();
+
+            runLdMatrix(bgenFile, trioFile, fullStem, null, null, LdEngine.pairwise, false);
+
+            // Targets by id, by rsid, and a variant absent from the genotypes
+            String[] targetIds = new String[]{SimulatedTrios.getVariantId(3), "rs12", SimulatedTrios.getVariantId(N_VARIANTS - 1), "DUMMY"};
+
+            VariantList targets = new VariantList(
+                    targetIds,
+                    new String[]{"1", "1", "1", "1"},
+                    new int[]{SimulatedTrios.getPosition(3), SimulatedTrios.getPosition(12), SimulatedTrios.getPosition(N_VARIANTS - 1), 1}
+            );
+
+            String targetedStem = new File(folder, "targeted").getAbsolutePath();
+
+            // Targeted runs always use the pairwise engine
+            runLdMatrix(bgenFile, trioFile, targetedStem, null, targets, LdEngine.pairwise, false);
+
+            LdMatrixReader fullReader = new LdMatrixReader(new File(fullStem + LdMatrixUtils.EXTENSION));
+            LdMatrixReader targetedReader = new LdMatrixReader(new File(targetedStem + LdMatrixUtils.EXTENSION));
+
+            int nTargets = 0;
+
+            for (int i = 0; i < N_VARIANTS; i++) {
+
+                String variantId = SimulatedTrios.getVariantId(i);
+                ArrayList<R2> targetedR2s = targetedReader.getR2(variantId);
+
+                if (i == 3 || i == 12 || i == N_VARIANTS - 1) {
+
+                    // Rows of targets are identical to the rows of the full matrix
+                    ArrayList<R2> fullR2s = fullReader.getR2(variantId);
+
+                    Assert.assertTrue(targetedR2s != null);
+                    Assert.assertTrue(targetedR2s.size() == fullR2s.size());
+                    Assert.assertTrue(targetedR2s.size() > 1);
+
+                    // Variant indexes differ between the matrices, r2s are compared by variant id
+                    HashMap<String, Float> fullValues = getR2Values(fullReader, fullR2s);
+                    HashMap<String, Float> targetedValues = getR2Values(targetedReader, targetedR2s);
+
+                    Assert.assertTrue(targetedValues.equals(fullValues));
+
+                    nTargets++;
+
+                } else {
+
+                    // Other variants have no row
+                    Assert.assertTrue(targetedR2s == null);
+
+                }
+            }
+
+            Assert.assertTrue(nTargets == 3);
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testEngines() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_ld").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            writeTestFiles(bgenFile, trioFile);
+
+            String pairwiseStem = new File(folder, "pairwise").getAbsolutePath();
+            String blockedStem = new File(folder, "blocked").getAbsolutePath();
+
+            runLdMatrix(bgenFile, trioFile, pairwiseStem, null, null, LdEngine.pairwise, false);
+            runLdMatrix(bgenFile, trioFile, blockedStem, null, null, LdEngine.blocked, false);
+
+            LdMatrixReader pairwiseReader = new LdMatrixReader(new File(pairwiseStem + LdMatrixUtils.EXTENSION));
+            LdMatrixReader blockedReader = new LdMatrixReader(new File(blockedStem + LdMatrixUtils.EXTENSION));
+
+            // Both engines report the same pairs with the same r2 for every variant
+            for (int i = 0; i < N_VARIANTS; i++) {
+
+                String variantId = SimulatedTrios.getVariantId(i);
+
+                ArrayList<R2> pairwiseR2s = pairwiseReader.getR2(variantId);
+                ArrayList<R2> blockedR2s = blockedReader.getR2(variantId);
+
+                Assert.assertTrue(pairwiseR2s != null);
+                Assert.assertTrue(blockedR2s != null);
+                Assert.assertTrue(pairwiseR2s.size() > 1);
+
+                HashMap<String, Float> pairwiseValues = getR2Values(pairwiseReader, pairwiseR2s);
+                HashMap<String, Float> blockedValues = getR2Values(blockedReader, blockedR2s);
+
+                Assert.assertTrue(blockedValues.equals(pairwiseValues));
+
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testHardCalls() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_ld").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            // The genotypes of the vcf are hard calls, probabilities are 0 or 1
+            writeTestFiles(bgenFile, trioFile);
+
+            for (LdEngine engine : LdEngine.values()) {
+
+                String probabilitiesStem = new File(folder, "probabilities_" + engine.name()).getAbsolutePath();
+                String hardCallsStem = new File(folder, "hard_calls_" + engine.name()).getAbsolutePath();
+
+                runLdMatrix(bgenFile, trioFile, probabilitiesStem, null, null, engine, false, false);
+                runLdMatrix(bgenFile, trioFile, hardCallsStem, null, null, engine, false, true);
+
+                LdMatrixReader probabilitiesReader = new LdMatrixReader(new File(probabilitiesStem + LdMatrixUtils.EXTENSION));
+                LdMatrixReader hardCallsReader = new LdMatrixReader(new File(hardCallsStem + LdMatrixUtils.EXTENSION));
+
+                // The bit-packed hard calls yield the r2 obtained from the probabilities
+                for (int i = 0; i < N_VARIANTS; i++) {
+
+                    String variantId = SimulatedTrios.getVariantId(i);
+
+                    ArrayList<R2> probabilitiesR2s = probabilitiesReader.getR2(variantId);
+                    ArrayList<R2> hardCallsR2s = hardCallsReader.getR2(variantId);
+
+                    Assert.assertTrue(probabilitiesR2s != null);
+                    Assert.assertTrue(hardCallsR2s != null);
+                    Assert.assertTrue(probabilitiesR2s.size() > 1);
+
+                    HashMap<String, Float> probabilitiesValues = getR2Values(probabilitiesReader, probabilitiesR2s);
+                    HashMap<String, Float> hardCallsValues = getR2Values(hardCallsReader, hardCallsR2s);
+
+                    Assert.assertTrue(hardCallsValues.keySet().equals(probabilitiesValues.keySet()));
+
+                    for (String key : probabilitiesValues.keySet()) {
+
+                        Assert.assertTrue(Math.abs(hardCallsValues.get(key) - probabilitiesValues.get(key)) <= 1e-6);
+
+                    }
+                }
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testEarlyExit() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_ld").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            writeTestFiles(bgenFile, trioFile);
+
+            // A genetic map of 0.01 cM per variant
+            File mapFile = new File(folder, "map.txt");
+
+            try (SimpleFileWriter writer = new SimpleFileWriter(mapFile, false)) {
+
+                writer.writeLine("chromosome", "position", "rate", "cM");
+                writer.writeLine("1", "0", "10", "0.0");
+                writer.writeLine("1", Integer.toString(SimulatedTrios.getPosition(N_VARIANTS)), "10", Double.toString(0.01 * (N_VARIANTS + 1)));
+
+            }
+
+            GeneticMap geneticMap = GeneticMap.parse(mapFile, "1");
+
+            // Windows spanning all variants, scans stop after three pairs below the threshold beyond two variants
+            int maxDistance = SimulatedTrios.getPosition(N_VARIANTS);
+            double minR2 = 0.1;
+
+            String fullStem = new File(folder, "full").getAbsolutePath();
+            String exitStem = new File(folder, "exit").getAbsolutePath();
+
+            runLdMatrix(bgenFile, trioFile, fullStem, null, null, LdEngine.blocked, true, false, maxDistance, minR2, null, Double.NaN, Double.NaN, 0);
+            runLdMatrix(bgenFile, trioFile, exitStem, null, null, LdEngine.blocked, true, false, maxDistance, minR2, geneticMap, 1.0, 0.02, 3);
+
+            LdMatrixReader fullReader = new LdMatrixReader(new File(fullStem + LdMatrixUtils.EXTENSION));
+            LdMatrixReader exitReader = new LdMatrixReader(new File(exitStem + LdMatrixUtils.EXTENSION));
+
+            // Every pair above the threshold is kept
+            int nPairs = 0;
+
+            for (int i = 0; i < N_VARIANTS; i++) {
+
+                String variantId = SimulatedTrios.getVariantId(i);
+
+                ArrayList<R2> fullR2s = fullReader.getR2(variantId);
+                ArrayList<R2> exitR2s = exitReader.getR2(variantId);
+
+                HashMap<String, Float> fullValues = fullR2s == null ? new HashMap<>(0) : getR2Values(fullReader, fullR2s);
+                HashMap<String, Float> exitValues = exitR2s == null ? new HashMap<>(0) : getR2Values(exitReader, exitR2s);
+
+                Assert.assertTrue(exitValues.equals(fullValues));
+
+                nPairs += fullValues.size();
+
+            }
+
+            Assert.assertTrue(nPairs > 2 * N_VARIANTS);
+
+            // The scores only sum the pairs scanned, the scans have stopped early
+            HashMap<String, Double> fullScores = getLdScores(fullStem);
+            HashMap<String, Double> exitScores = getLdScores(exitStem);
+
+            boolean stopped = false;
+
+            for (String variantId : fullScores.keySet()) {
+
+                double fullScore = fullScores.get(variantId);
+                double exitScore = exitScores.get(variantId);
+
+                Assert.assertTrue(exitScore <= fullScore + 1e-6);
+
+                if (exitScore < fullScore - 1e-4) {
+
+                    stopped = true;
+
+                }
+            }
+
+            Assert.assertTrue(stopped);
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testLdScores() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_ld").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            writeTestFiles(bgenFile, trioFile);
+
+            for (LdEngine engine : LdEngine.values()) {
+
+                String stem = new File(folder, engine.name()).getAbsolutePath();
+
+                runLdMatrix(bgenFile, trioFile, stem, null, null, engine, true);
+
+                LdMatrixReader ldMatrixReader = new LdMatrixReader(new File(stem + LdMatrixUtils.EXTENSION));
+
+                int nLines = 0;
+
+                try (SimpleFileReader reader = SimpleFileReader.getFileReader(LdScores.getLdScoreFile(stem))) {
+
+                    reader.readLine();
+
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+
+                        String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                        // The score is the sum of the highest allele r2 with every variant of the window
+                        HashMap<Integer, Float> maxR2s = new HashMap<>();
+
+                        for (R2 r2 : ldMatrixReader.getR2(lineSplit[2])) {
+
+                            maxR2s.merge(r2.variantB, r2.r2Value, Math::max);
+
+                        }
+
+                        double expected = maxR2s.values().stream()
+                                .mapToDouble(
+                                        r2Value -> r2Value
+                                )
+                                .sum();
+
+                        Assert.assertTrue(Math.abs(Double.parseDouble(lineSplit[4]) - expected) <= 1e-5);
+
+                        nLines++;
+
+                    }
+                }
+
+                Assert.assertTrue(nLines == N_VARIANTS);
+
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testShards() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_ld").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            writeTestFiles(bgenFile, trioFile);
+
+            for (LdEngine engine : LdEngine.values()) {
+
+                String fullStem = new File(folder, "full_" + engine.name()).getAbsolutePath();
+
+                runLdMatrix(bgenFile, trioFile, fullStem, null, null, engine, false);
+
+                // Shards balanced by the bgen blocks and explicit ranges splitting the windows
+                String[][] shardings = new String[][]{{"1/2", "2/2"}, {"0-11", "12-" + (N_VARIANTS - 1)}};
+
+                for (int shardingI = 0; shardingI < shardings.length; shardingI++) {
+
+                    String[] shards = shardings[shardingI];
+
+                    File[] shardFiles = new File[shards.length];
+
+                    for (int shardI = 0; shardI < shards.length; shardI++) {
+
+                        String shardStem = new File(folder, "shard_" + shardingI + "_" + shardI + "_" + engine.name()).getAbsolutePath();
+
+                        runLdMatrix(bgenFile, trioFile, shardStem, VariantShard.parse(shards[shardI]), null, engine, false);
+
+                        shardFiles[shardI] = new File(shardStem + LdMatrixUtils.EXTENSION);
+
+                    }
+
+                    File mergedFile = new File(folder, "merged_" + shardingI + "_" + engine.name() + LdMatrixUtils.EXTENSION);
+
+                    LdMatrixMerger.merge(shardFiles, mergedFile);
+
+                    // The merged matrix has the same rows as the matrix computed in a single run
+                    LdMatrixReader fullReader = new LdMatrixReader(new File(fullStem + LdMatrixUtils.EXTENSION));
+                    LdMatrixReader mergedReader = new LdMatrixReader(mergedFile);
+
+                    Assert.assertTrue(mergedReader.variantIds.length == N_VARIANTS);
+
+                    for (int i = 0; i < N_VARIANTS; i++) {
+
+                        String variantId = SimulatedTrios.getVariantId(i);
+
+                        ArrayList<R2> fullR2s = fullReader.getR2(variantId);
+                        ArrayList<R2> mergedR2s = mergedReader.getR2(variantId);
+
+                        Assert.assertTrue(fullR2s != null);
+                        Assert.assertTrue(mergedR2s != null);
+                        Assert.assertTrue(getR2Values(mergedReader, mergedR2s).equals(getR2Values(fullReader, fullR2s)));
+
+                    }
+
+                    Assert.assertTrue(mergedReader.getR2InRegion("1", SimulatedTrios.getPosition(10), SimulatedTrios.getPosition(14)).getNVariants() == 5);
+
+                }
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    /**
+     * Returns the r2 values of a row indexed by id of variant B and alleles.
+     *
+     * @param reader The reader of the matrix.
+     * @param r2s The r2s of the row.
+     *
+     * @return The r2 values of the row.
+     */
+    private static HashMap<String, Float> getR2Values(
+            LdMatrixReader reader,
+            ArrayList<R2> r2s
+    ) {
+
+        HashMap<String, Float> result = new HashMap<>(r2s.size());
+
+        for (R2 r2 : r2s) {
+
+            result.put(reader.getId(r2.variantB) + "_" + r2.alleleA + "_" + r2.alleleB, r2.r2Value);
+
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Returns the LD scores written for the given stem indexed by variant id.
+     *
+     * @param stem The stem of the path of the results.
+     *
+     * @return The LD scores indexed by variant id.
+     */
+    private static HashMap<String, Double> getLdScores(
+            String stem
+    ) {
+
+        HashMap<String, Double> result = new HashMap<>();
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(LdScores.getLdScoreFile(stem))) {
+
+            reader.readLine();
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                result.put(lineSplit[2], Double.parseDouble(lineSplit[4]));
+
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Runs the LD matrix computation with lossless r2 values, reporting all
+     * pairs, using two threads.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param destinationStem The stem of the path of the results.
+     * @param shard The shard of variants to process, null for all variants.
+     * @param targets The target variants, null for all variants.
+     * @param engine The engine to use.
+     * @param computeLdScores Boolean indicating whether LD scores should be
+     * computed.
+     *
+     * @throws Exception Exception thrown if an error occurred.
+     */
+    private void runLdMatrix(
+            File bgenFile,
+            File trioFile,
+            String destinationStem,
+            VariantShard shard,
+            VariantList targets,
+            LdEngine engine,
+            boolean computeLdScores
+    ) throws Exception {
+
+        runLdMatrix(bgenFile, trioFile, destinationStem, shard, targets, engine, computeLdScores, false);
+
+    }
+
+    /**
+     * Runs the LD matrix computation with lossless r2 values, reporting all
+     * pairs, using two threads.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param destinationStem The stem of the path of the results.
+     * @param shard The shard of variants to process, null for all variants.
+     * @param targets The target variants, null for all variants.
+     * @param engine The engine to use.
+     * @param computeLdScores Boolean indicating whether LD scores should be
+     * computed.
+     * @param hardCalls Boolean indicating whether LD should be computed on
+     * hard calls.
+     *
+     * @throws Exception Exception thrown if an error occurred.
+     */
+    private void runLdMatrix(
+            File bgenFile,
+            File trioFile,
+            String destinationStem,
+            VariantShard shard,
+            VariantList targets,
+            LdEngine engine,
+            boolean computeLdScores,
+            boolean hardCalls
+    ) throws Exception {
+
+        runLdMatrix(bgenFile, trioFile, destinationStem, shard, targets, engine, computeLdScores, hardCalls, MAX_DISTANCE, 0.0, null, Double.NaN, Double.NaN, 0);
+
+    }
+
+    /**
+     * Runs the LD matrix computation with lossless r2 values using two
+     * threads.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param destinationStem The stem of the path of the results.
+     * @param shard The shard of variants to process, null for all variants.
+     * @param targets The target variants, null for all variants.
+     * @param engine The engine to use.
+     * @param computeLdScores Boolean indicating whether LD scores should be
+     * computed.
+     * @param hardCalls Boolean indicating whether LD should be computed on
+     * hard calls.
+     * @param maxDistance The maximal number of bp to allow between variants.
+     * @param minR2 The minimal ld r2 to report.
+     * @param geneticMap The genetic map to use to bound windows in genetic
+     * distance, null to bound windows in bp only.
+     * @param maxCm The maximal genetic distance between variants in cM.
+     * @param exitCm The genetic distance in cM beyond which the scan of a
+     * variant can stop.
+     * @param exitRun The number of consecutive pairs below the minimal r2
+     * after which the scan of a variant stops.
+     *
+     * @throws Exception Exception thrown if an error occurred.
+     */
+    private void runLdMatrix(
+            File bgenFile,
+            File trioFile,
+            String destinationStem,
+            VariantShard shard,
+            VariantList targets,
+            LdEngine engine,
+            boolean computeLdScores,
+            boolean hardCalls,
+            int maxDistance,
+            double minR2,
+            GeneticMap geneticMap,
+            double maxCm,
+            double exitCm,
+            int exitRun
+    ) throws Exception {
+
+        SimpleCliLogger logger = new SimpleCliLogger(new File(destinationStem + ".log.gz"));
+
+        LdMatrixComputer computer = new LdMatrixComputer(
+                bgenFile,
+                InheritanceUtils.getDefaultInheritanceMap("1"),
+                InheritanceUtils.getDefaultMotherPloidy("1"),
+                InheritanceUtils.getDefaultFatherPloidy("1"),
+                ChildToParentMap.fromFile(trioFile),
+                destinationStem,
+                maxDistance,
+                minR2,
+                0.001,
+                2,
+                shard,
+                targets,
+                0,
+                false,
+                engine,
+                hardCalls,
+                LdMatrixUtils.R2_BITS_LOSSLESS,
+                computeLdScores,
+                null,
+                true,
+                geneticMap,
+                maxCm,
+                exitCm,
+                exitRun,
+                logger
+        );
+
+        computer.run(1);
+
+        logger.close();
+
+    }
+
+    /**
+     * Simulates the phased genotypes of trios in LD, writes them as bgen, and
+     * writes the trio file. Every parental haplotype copies the allele of the
+     * previous variant with high probability.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the files.
+     */
+    private void writeTestFiles(
+            File bgenFile,
+            File trioFile
+    ) throws IOException {
+
+        Random random = new Random(N_VARIANTS);
+
+        // Haplotypes indexed by trio, mother transmitted and non-transmitted then father transmitted and non-transmitted, variant
+        int[][][] haplotypes = new int[N_TRIOS][4][N_VARIANTS];
+        double[] frequencies = new double[N_VARIANTS];
+
+        for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+            frequencies[variantI] = 0.2 + 0.6 * random.nextDouble();
+
+        }
+
+        for (int trioI = 0; trioI < N_TRIOS; trioI++) {
+
+            for (int haplotypeI = 0; haplotypeI < 4; haplotypeI++) {
+
+                for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                    haplotypes[trioI][haplotypeI][variantI] = variantI > 0 && random.nextDouble() < 0.8
+                            ? haplotypes[trioI][haplotypeI][variantI - 1]
+                            : random.nextDouble() < frequencies[variantI] ? 1 : 0;
+
+                }
+            }
+        }
+
+        SimulatedTrios.writeTestFiles(bgenFile, trioFile, SimulatedTrios.getGenotypes(haplotypes));
+
+    }
+}
@@ -0,0 +1,139 @@
+package no.uib.triogen.processing.ld;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.ld.LdMatrixReader;
+import no.uib.triogen.model.genome.VariantInformation;
+import no.uib.triogen.model.ld.LdRow;
+
+/**
+ * This class tests the accumulation and writing of LD scores.
+ *
+ * @author Marc Vaudel
+ */
+public class LdScoresTest extends TestCase {
+
+    public void testScores() throws IOException {
+
+        LdMatrixReader ldMatrixReader = new LdMatrixReader(new File("src/test/resources/ld/test.tld"));
+
+        int nVariants = ldMatrixReader.variantIds.length;
+
+        // Two contigs, one annotation containing the variants of even index
+        VariantInformation[] variantInformationArray = new VariantInformation[nVariants];
+        BitSet even = new BitSet(nVariants);
+
+        for (int i = 0; i < nVariants; i++) {
+
+            variantInformationArray[i] = new VariantInformation(
+                    ldMatrixReader.variantIds[i],
+                    ldMatrixReader.getRsId(ldMatrixReader.variantIds[i]),
+                    i < 3 * nVariants / 4 ? "1" : "2",
+                    100 * i,
+                    new String[]{"A", "G"}
+            );
+
+            if (i % 2 == 0) {
+
+                even.set(i);
+
+            }
+        }
+
+        // Accumulate the r2s of the matrix on two threads
+        LdScores ldScores = new LdScores(2, 0, nVariants, new String[]{"even"}, new BitSet[]{even});
+
+        HashMap<String, double[]> expectedScores = new HashMap<>();
+
+        for (int i = 0; i < nVariants; i++) {
+
+            LdRow row = ldMatrixReader.getVariantRow(i);
+
+            if (row != null) {
+
+                double[] expected = new double[2];
+
+                for (int j = 0; j < row.size(); j++) {
+
+                    ldScores.add(i % 2, i, row.variantB[j], row.r2Values[j]);
+
+                    expected[0] += row.r2Values[j];
+
+                    if (row.variantB[j] % 2 == 0) {
+
+                        expected[1] += row.r2Values[j];
+
+                    }
+                }
+
+                expectedScores.put(ldMatrixReader.variantIds[i], expected);
+
+            }
+        }
+
+        Assert.assertTrue(expectedScores.size() > 2);
+
+        File ldScoreFile = File.createTempFile("test", ".ldscore.gz");
+        ldScoreFile.deleteOnExit();
+        IoUtils.getIndexFile(ldScoreFile).deleteOnExit();
+
+        ldScores.write(ldScoreFile, variantInformationArray);
+
+        // The table contains the sum of the r2s of every variant with a row
+        int nLines = 0;
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(ldScoreFile)) {
+
+            Assert.assertTrue(reader.readLine().equals(String.join(IoUtils.SEPARATOR, "contig", "position", "variantId", "rsid", "ldScore", "ldScore.even")));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                double[] expected = expectedScores.get(lineSplit[2]);
+
+                Assert.assertTrue(expected != null);
+                Assert.assertTrue(lineSplit[3].equals(ldMatrixReader.getRsId(lineSplit[2])));
+                Assert.assertTrue(Math.abs(Double.parseDouble(lineSplit[4]) - expected[0]) <= 1e-6);
+                Assert.assertTrue(Math.abs(Double.parseDouble(lineSplit[5]) - expected[1]) <= 1e-6);
+
+                nLines++;
+
+            }
+        }
+
+        Assert.assertTrue(nLines == expectedScores.size());
+
+        // The index has a block per contig after the two header blocks
+        int nBlocks = 0;
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(IoUtils.getIndexFile(ldScoreFile))) {
+
+            reader.readLine();
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String contig = line.split(IoUtils.SEPARATOR)[0];
+
+                if (!contig.equals("Header")) {
+
+                    Assert.assertTrue(contig.equals(nBlocks == 0 ? "1" : "2"));
+
+                    nBlocks++;
+
+                }
+            }
+        }
+
+        Assert.assertTrue(nBlocks == 2);
+
+    }
+}
@@ -0,0 +1,358 @@
+package no.uib.triogen.processing.ld;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.genotypes.InheritanceUtils;
+import no.uib.triogen.io.genotypes.SimulatedTrios;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.reader.BgenFileReader;
+import no.uib.triogen.io.genotypes.bgen.variant_data.BgenVariantTrioData;
+import no.uib.triogen.model.family.ChildToParentMap;
+
+/**
+ * This class tests the ring buffer of the p0 cache over several wraps against
+ * values computed directly from the genotypes.
+ *
+ * @author Marc Vaudel
+ */
+public class P0CacheTest extends TestCase {
+
+    /**
+     * The number of trios to simulate.
+     */
+    private static final int N_TRIOS = 40;
+    /**
+     * The number of variants to simulate.
+     */
+    private static final int N_VARIANTS = 30;
+    /**
+     * The number of variants in a window, the buffer has twice as many
+     * slots.
+     */
+    private static final int WINDOW_SIZE = 3;
+
+    public void testRingBuffer() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_p0").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+
+            SimulatedTrios.writeTestFiles(bgenFile, trioFile, getGenotypes());
+
+            ChildToParentMap childToParentMap = ChildToParentMap.fromFile(trioFile);
+            BgenIndex bgenIndex = BgenIndex.getBgenIndex(bgenFile);
+            BgenFileReader bgenFileReader = new BgenFileReader(
+                    bgenFile,
+                    bgenIndex,
+                    InheritanceUtils.getDefaultInheritanceMap("1"),
+                    InheritanceUtils.getDefaultMotherPloidy("1"),
+                    InheritanceUtils.getDefaultFatherPloidy("1")
+            );
+
+            try {
+
+                AtomicIntegerArray nLoads = new AtomicIntegerArray(N_VARIANTS);
+
+                IntFunction<BgenVariantTrioData> parser = variantIndex -> {
+
+                    nLoads.incrementAndGet(variantIndex);
+
+                    return isExcluded(variantIndex) ? null : parse(bgenFileReader, childToParentMap, variantIndex);
+
+                };
+
+                // Single thread, the buffer wraps several times
+                P0Cache p0Cache = new P0Cache(1, N_VARIANTS, WINDOW_SIZE, childToParentMap, false);
+
+                Assert.assertTrue(N_VARIANTS > 2 * 2 * WINDOW_SIZE);
+
+                P0Cache.P0[] p0s = scan(p0Cache, 0, parser);
+
+                for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                    // Every variant is loaded once and kept while in the window
+                    Assert.assertTrue(nLoads.get(variantI) == 1);
+                    Assert.assertTrue(p0Cache.isExcluded(variantI) == isExcluded(variantI));
+
+                    if (isExcluded(variantI)) {
+
+                        Assert.assertTrue(p0s[variantI] == null);
+
+                    } else {
+
+                        checkP0(p0s[variantI], parse(bgenFileReader, childToParentMap, variantI), childToParentMap);
+
+                    }
+                }
+
+                // The slot of the first variant has been reused
+                try {
+
+                    p0Cache.get(0, parser);
+
+                    Assert.assertTrue(false);
+
+                } catch (IllegalStateException e) {
+
+                    // Expected
+                }
+
+                // Several threads share the values loaded in the slots
+                int nThreads = 4;
+                AtomicIntegerArray nConcurrentLoads = new AtomicIntegerArray(N_VARIANTS);
+
+                IntFunction<BgenVariantTrioData> concurrentParser = variantIndex -> {
+
+                    nConcurrentLoads.incrementAndGet(variantIndex);
+
+                    // Leave time for other threads to request the variant being loaded
+                    Thread.yield();
+
+                    return isExcluded(variantIndex) ? null : parse(bgenFileReader, childToParentMap, variantIndex);
+
+                };
+
+                P0Cache concurrentCache = new P0Cache(nThreads, N_VARIANTS, WINDOW_SIZE, childToParentMap, false);
+                AtomicReferenceArray<P0Cache.P0[]> threadP0s = new AtomicReferenceArray<>(nThreads);
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                ArrayList<Thread> threads = new ArrayList<>(nThreads);
+
+                for (int threadI = 0; threadI < nThreads; threadI++) {
+
+                    int thread = threadI;
+
+                    threads.add(new Thread(() -> {
+
+                        try {
+
+                            threadP0s.set(thread, scan(concurrentCache, thread, concurrentParser));
+
+                        } catch (Throwable t) {
+
+                            error.set(t);
+
+                        } finally {
+
+                            concurrentCache.release(thread);
+
+                        }
+                    }));
+                }
+
+                for (Thread thread : threads) {
+
+                    thread.start();
+
+                }
+
+                for (Thread thread : threads) {
+
+                    thread.join();
+
+                }
+
+                Assert.assertTrue(error.get() == null);
+
+                for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+                    Assert.assertTrue(nConcurrentLoads.get(variantI) == 1);
+
+                    P0Cache.P0 p0 = threadP0s.get(0)[variantI];
+
+                    for (int threadI = 1; threadI < nThreads; threadI++) {
+
+                        Assert.assertTrue(threadP0s.get(threadI)[variantI] == p0);
+
+                    }
+
+                    if (isExcluded(variantI)) {
+
+                        Assert.assertTrue(p0 == null);
+
+                    } else {
+
+                        checkP0(p0, parse(bgenFileReader, childToParentMap, variantI), childToParentMap);
+
+                    }
+                }
+
+            } finally {
+
+                bgenFileReader.close();
+
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    /**
+     * Slides a window over all variants, requesting every variant of every
+     * window from the cache, and returns the values obtained. Values obtained
+     * for the same variant in different windows must be identical.
+     *
+     * @param p0Cache The cache.
+     * @param thread The index of the thread.
+     * @param parser The parser to use to load variants.
+     *
+     * @return The p0 values indexed by variant.
+     */
+    private static P0Cache.P0[] scan(
+            P0Cache p0Cache,
+            int thread,
+            IntFunction<BgenVariantTrioData> parser
+    ) {
+
+        P0Cache.P0[] p0s = new P0Cache.P0[N_VARIANTS];
+
+        for (int windowStart = 0; windowStart < N_VARIANTS; windowStart++) {
+
+            p0Cache.setWindowStart(thread, windowStart);
+
+            for (int variantI = windowStart; variantI < Math.min(windowStart + WINDOW_SIZE, N_VARIANTS); variantI++) {
+
+                P0Cache.P0 p0 = p0Cache.get(variantI, parser);
+
+                // Variants of the previous window are not reloaded
+                if (windowStart > 0 && variantI < windowStart + WINDOW_SIZE - 1) {
+
+                    Assert.assertTrue(p0 == p0s[variantI]);
+
+                }
+
+                p0s[variantI] = p0;
+
+            }
+        }
+
+        return p0s;
+
+    }
+
+    /**
+     * Checks the given p0 values against values computed directly from the
+     * genotypes.
+     *
+     * @param p0 The p0 values.
+     * @param variantData The genotyping data on the variant.
+     * @param childToParentMap The map of trios.
+     */
+    private static void checkP0(
+            P0Cache.P0 p0,
+            BgenVariantTrioData variantData,
+            ChildToParentMap childToParentMap
+    ) {
+
+        int nParents = 2 * childToParentMap.children.length;
+
+        Assert.assertTrue(p0 != null);
+        Assert.assertTrue(p0.nGenotyped == nParents);
+        Assert.assertTrue(Arrays.equals(p0.orderedAlleles, variantData.getOrderedAlleles()));
+
+        float[][] pHomozygous = P0Cache.getPHomozygous(variantData, childToParentMap);
+
+        for (int alleleI = 0; alleleI < pHomozygous.length; alleleI++) {
+
+            Assert.assertTrue(Arrays.equals(p0.pHomozygous[alleleI], pHomozygous[alleleI]));
+
+            double sum = 0.0;
+
+            for (float value : pHomozygous[alleleI]) {
+
+                sum += value;
+
+            }
+
+            double frequency = sum / nParents;
+
+            Assert.assertTrue(Math.abs(p0.sums[alleleI] - sum) <= 1e-9);
+            Assert.assertTrue(Math.abs(p0.frequencies[alleleI] - frequency) <= 1e-12);
+            Assert.assertTrue(Math.abs(p0.variances[alleleI] - frequency * (1 - frequency)) <= 1e-12);
+
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the given variant is excluded by
+     * the parser.
+     *
+     * @param variantI The index of the variant.
+     *
+     * @return A boolean indicating whether the variant is excluded.
+     */
+    private static boolean isExcluded(
+            int variantI
+    ) {
+
+        return variantI % 7 == 3;
+
+    }
+
+    /**
+     * Parses the given variant.
+     *
+     * @param bgenFileReader The reader of the bgen file.
+     * @param childToParentMap The map of trios.
+     * @param variantI The index of the variant.
+     *
+     * @return The parsed data of the variant.
+     */
+    private static BgenVariantTrioData parse(
+            BgenFileReader bgenFileReader,
+            ChildToParentMap childToParentMap,
+            int variantI
+    ) {
+
+        BgenVariantTrioData variantData = bgenFileReader.getVariantData(variantI);
+        variantData.parse(childToParentMap, new ZstdDecompressor());
+
+        return variantData;
+
+    }
+
+    /**
+     * Returns random phased genotypes.
+     *
+     * @return The genotypes indexed by variant, trio, and child, mother,
+     * father.
+     */
+    private static String[][][] getGenotypes() {
+
+        Random random = new Random(N_VARIANTS);
+
+        String[][][] genotypes = new String[N_VARIANTS][N_TRIOS][3];
+
+        for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+            double frequency = 0.2 + 0.6 * random.nextDouble();
+
+            for (int trioI = 0; trioI < N_TRIOS; trioI++) {
+
+                for (int individualI = 0; individualI < 3; individualI++) {
+
+                    genotypes[variantI][trioI][individualI] = (random.nextDouble() < frequency ? "1|" : "0|") + (random.nextDouble() < frequency ? "1" : "0");
+
+                }
+            }
+        }
+
+        return genotypes;
+
+    }
+}
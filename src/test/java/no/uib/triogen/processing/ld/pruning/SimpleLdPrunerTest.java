@@ -0,0 +1,151 @@
+package no.uib.triogen.processing.ld.pruning;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.ld.LdMatrixUtils;
+import no.uib.triogen.io.ld.LdMatrixWriter;
+import no.uib.triogen.model.annotation.proxies.ProxySource;
+import no.uib.triogen.model.ld.R2;
+import no.uib.triogen.model.trio_genotypes.VariantIndex;
+
+/**
+ * This class tests the clumping of the simple LD pruner on a fixed LD matrix.
+ *
+ * @author Marc Vaudel
+ */
+public class SimpleLdPrunerTest extends TestCase {
+
+    /**
+     * The r2 between the variants of the test matrix, indexed by variant
+     * index.
+     */
+    private static final float[][] R2_VALUES = new float[][]{
+        {0f, 0.8f, 0.1f, 0f, 0f, 0f},
+        {0.8f, 0f, 0.8f, 0f, 0f, 0f},
+        {0.1f, 0.8f, 0f, 0f, 0f, 0f},
+        {0f, 0f, 0f, 0f, 0.5f, 0f},
+        {0f, 0f, 0f, 0.5f, 0f, 0.05f},
+        {0f, 0f, 0f, 0f, 0.05f, 0f}
+    };
+
+    public void testClumping() throws IOException {
+
+        VariantIndex variantIndex = new VariantIndex();
+
+        File matrixFile = File.createTempFile("test", LdMatrixUtils.EXTENSION);
+        matrixFile.deleteOnExit();
+
+        LdMatrixWriter writer = new LdMatrixWriter(variantIndex, matrixFile);
+
+        for (int i = 0; i < R2_VALUES.length; i++) {
+
+            variantIndex.add("variant_" + i, "rs" + i);
+            variantIndex.setLocation("variant_" + i, "1", 100 * i);
+
+        }
+
+        for (int i = 0; i < R2_VALUES.length; i++) {
+
+            ArrayList<R2> r2s = new ArrayList<>();
+
+            for (int j = 0; j < R2_VALUES.length; j++) {
+
+                if (R2_VALUES[i][j] > 0) {
+
+                    r2s.add(new R2(j, (short) 1, (short) 1, R2_VALUES[i][j]));
+
+                }
+            }
+
+            writer.addVariant(i, r2s, new ZstdCompressor());
+
+        }
+
+        writer.close();
+
+        File resultsFile = File.createTempFile("results", ".txt");
+        resultsFile.deleteOnExit();
+
+        try (SimpleFileWriter resultsWriter = new SimpleFileWriter(resultsFile, false)) {
+
+            resultsWriter.writeLine("contig", "variantId", "pheno", "p");
+
+            // Phenotype a: variant_1 clumps variant_0 and variant_2, variant_4 clumps variant_3, variant_5 is only in weak LD with variant_4
+            resultsWriter.writeLine("1", "variant_0", "a", "1e-8");
+            resultsWriter.writeLine("1", "variant_1", "a", "1e-10");
+            resultsWriter.writeLine("1", "variant_2", "a", "1e-9");
+            resultsWriter.writeLine("1", "variant_3", "a", "1e-6");
+            resultsWriter.writeLine("1", "variant_4", "a", "1e-7");
+            resultsWriter.writeLine("1", "variant_missing", "a", "1e-5");
+            resultsWriter.writeLine("1", "variant_5", "a", "1e-5");
+            resultsWriter.writeLine("1", "variant_not_significant", "a", "0.5");
+
+            // Phenotype b: variant_0 clumps variant_1 but not variant_2
+            resultsWriter.writeLine("1", "variant_2", "b", "1e-9");
+            resultsWriter.writeLine("1", "variant_1", "b", "1e-3");
+            resultsWriter.writeLine("1", "variant_0", "b", "1e-10");
+
+        }
+
+        File destinationFile = File.createTempFile("pruned", ".gz");
+        destinationFile.deleteOnExit();
+
+        SimpleLdPruner pruner = new SimpleLdPruner(
+                matrixFile.getAbsolutePath(),
+                resultsFile,
+                destinationFile,
+                0.3,
+                0.05,
+                new String[]{"p"},
+                "variantId",
+                "variantId",
+                "pheno",
+                "contig",
+                IoUtils.SEPARATOR,
+                new ProxySource[0],
+                null
+        );
+        pruner.run();
+
+        // Leads are exported by phenotype, by increasing p-value, ties sorted by line
+        String[] expectedLeads = new String[]{
+            "variant_1\ta",
+            "variant_4\ta",
+            "variant_missing\ta",
+            "variant_5\ta",
+            "variant_0\tb",
+            "variant_2\tb"
+        };
+
+        ArrayList<String> leads = new ArrayList<>();
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(destinationFile)) {
+
+            Assert.assertTrue(reader.readLine().equals("contig\tvariantId\tpheno\tp"));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String[] lineSplit = line.split(IoUtils.SEPARATOR);
+
+                leads.add(lineSplit[1] + "\t" + lineSplit[2]);
+
+            }
+        }
+
+        Assert.assertTrue(leads.size() == expectedLeads.length);
+
+        for (int i = 0; i < expectedLeads.length; i++) {
+
+            Assert.assertTrue(leads.get(i).equals(expectedLeads[i]));
+
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package no.uib.triogen.processing.linear_model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.TreeSet;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.checkpoint.Checkpoint;
+import no.uib.triogen.io.flat.SimpleFileReader;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.flat.indexed.IndexedGzMerger;
+import no.uib.triogen.io.flat.readers.SimpleGzReader;
+import no.uib.triogen.io.genotypes.InheritanceUtils;
+import no.uib.triogen.io.genotypes.SimulatedTrios;
+import no.uib.triogen.io.genotypes.bgen.index.BgenIndex;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantIterator;
+import no.uib.triogen.io.genotypes.bgen.iterator.VariantShard;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.model.trio_genotypes.Model;
+
+/**
+ * This class tests that an interrupted linear model run resumed from its
+ * checkpoint yields the same results as an uninterrupted run.
+ *
+ * @author Marc Vaudel
+ */
+public class LinearModelCheckpointTest extends TestCase {
+
+    /**
+     * The number of trios to simulate.
+     */
+    private static final int N_TRIOS = 150;
+    /**
+     * The number of variants to simulate.
+     */
+    private static final int N_VARIANTS = 40;
+    /**
+     * The index of the variant where the interrupted run fails.
+     */
+    private static final int FAILING_VARIANT = 17;
+
+    public void testResume() throws IOException, Exception {
+
+        testResume(Double.NaN);
+
+    }
+
+    public void testResumeScreened() throws IOException, Exception {
+
+        testResume(0.5);
+
+    }
+
+    /**
+     * Compares the results of a run resumed from a checkpoint to an
+     * uninterrupted run.
+     *
+     * @param scoreTestThreshold The p-value threshold of the score test used
+     * to screen variants, ignored if NaN.
+     *
+     * @throws Exception Exception thrown if an error occurred.
+     */
+    private void testResume(
+            double scoreTestThreshold
+    ) throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_lm_checkpoint").toFile();
+
+        try {
+
+            File uninterruptedResults = runLinearModel(new File(folder, "uninterrupted"), scoreTestThreshold, false);
+            File resumedResults = runLinearModel(new File(folder, "resumed"), scoreTestThreshold, true);
+
+            Assert.assertTrue(Arrays.equals(Files.readAllBytes(uninterruptedResults.toPath()), Files.readAllBytes(resumedResults.toPath())));
+            Assert.assertTrue(getLines(IoUtils.getIndexFile(uninterruptedResults)).equals(getLines(IoUtils.getIndexFile(resumedResults))));
+
+            if (!Double.isNaN(scoreTestThreshold)) {
+
+                ArrayList<String> screenedLines = getLines(LinearModelComputer.getScreenFile(uninterruptedResults));
+
+                Assert.assertTrue(screenedLines.size() > 1);
+                Assert.assertTrue(screenedLines.equals(getLines(LinearModelComputer.getScreenFile(resumedResults))));
+
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testResumeRange() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_lm_range").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+            File phenotypesFile = new File(folder, "phenos.txt");
+
+            writeTestFiles(bgenFile, trioFile, phenotypesFile);
+
+            Checkpoint checkpoint = runInterrupted(folder, bgenFile, trioFile, phenotypesFile, new File(folder, "results.gz"), Double.NaN);
+            BgenIndex bgenIndex = BgenIndex.getBgenIndex(bgenFile);
+
+            // Completed variants reaching the end of the range leave nothing to process
+            VariantIterator iterator = new VariantIterator(bgenIndex, SimulatedTrios.getPosition(5), SimulatedTrios.getPosition(FAILING_VARIANT - 1), null, "", false, checkpoint.getCompleted());
+
+            Assert.assertTrue(iterator.next() == null);
+
+            // The remaining variants of the range are processed, and none after the range
+            iterator = new VariantIterator(bgenIndex, SimulatedTrios.getPosition(5), SimulatedTrios.getPosition(FAILING_VARIANT + 3), null, "", false, checkpoint.getCompleted());
+
+            for (int variantI = FAILING_VARIANT; variantI < FAILING_VARIANT + 4; variantI++) {
+
+                Assert.assertTrue(iterator.next() == variantI);
+
+            }
+
+            Assert.assertTrue(iterator.next() == null);
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testReadFlushedContent() throws IOException {
+
+        File file = File.createTempFile("triogen_flushed", ".gz");
+
+        try {
+
+            SimpleFileWriter writer = new SimpleFileWriter(file, true);
+
+            for (int i = 0; i < 1000; i++) {
+
+                writer.writeLine("line", Integer.toString(i));
+
+            }
+
+            // Flush without closing, as when the process is killed after a checkpoint
+            writer.flush();
+
+            ArrayList<String> lines = new ArrayList<>();
+
+            try (SimpleFileReader reader = new SimpleGzReader(file, false, true)) {
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+
+                    lines.add(line);
+
+                }
+            }
+
+            Assert.assertTrue(lines.size() == 1000);
+            Assert.assertTrue(lines.get(999).equals("line" + IoUtils.SEPARATOR + "999"));
+
+            writer.close();
+
+        } finally {
+
+            file.delete();
+
+        }
+    }
+
+    public void testShards() throws Exception {
+
+        File folder = Files.createTempDirectory("triogen_lm_shards").toFile();
+
+        try {
+
+            File bgenFile = new File(folder, "test.bgen");
+            File trioFile = new File(folder, "trio");
+            File phenotypesFile = new File(folder, "phenos.txt");
+
+            writeTestFiles(bgenFile, trioFile, phenotypesFile);
+
+            File singleResults = new File(folder, "single.gz");
+
+            SimpleCliLogger logger = new SimpleCliLogger(new File(folder, "log_single.gz"));
+            getLinearModelComputer(bgenFile, trioFile, phenotypesFile, singleResults, null, Double.NaN, false, logger).run(1);
+            logger.close();
+
+            // Shards balanced by the bgen blocks and explicit ranges
+            String[][] shardings = new String[][]{{"1/2", "2/2"}, {"0-9", "10-" + (FAILING_VARIANT - 1), FAILING_VARIANT + "-" + (N_VARIANTS - 1)}};
+
+            for (int shardingI = 0; shardingI < shardings.length; shardingI++) {
+
+                String[] shards = shardings[shardingI];
+                File[] shardResults = new File[shards.length];
+
+                for (int shardI = 0; shardI < shards.length; shardI++) {
+
+                    shardResults[shardI] = new File(folder, "shard_" + shardingI + "_" + shardI + ".gz");
+
+                    logger = new SimpleCliLogger(new File(folder, "log_" + shardingI + "_" + shardI + ".gz"));
+                    getLinearModelComputer(bgenFile, trioFile, phenotypesFile, shardResults[shardI], VariantShard.parse(shards[shardI]), Double.NaN, false, logger).run(1);
+                    logger.close();
+
+                }
+
+                File mergedResults = new File(folder, "merged_" + shardingI + ".gz");
+
+                IndexedGzMerger.merge(shardResults, mergedResults);
+
+                // The merged results are identical to the results of a single run
+                Assert.assertTrue(getLines(mergedResults).equals(getLines(singleResults)));
+                Assert.assertTrue(getLines(IoUtils.getIndexFile(mergedResults)).equals(getLines(IoUtils.getIndexFile(singleResults))));
+
+            }
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    /**
+     * Simulates genotypes and phenotypes in the given folder, runs the linear
+     * model, and returns the results file. If interrupted, the run fails at a
+     * variant, and is resumed from the checkpoint.
+     *
+     * @param folder The folder where to run the linear model.
+     * @param scoreTestThreshold The p-value threshold of the score test used
+     * to screen variants, ignored if NaN.
+     * @param interrupted Boolean indicating whether the run should be
+     * interrupted.
+     *
+     * @return The results file.
+     *
+     * @throws Exception Exception thrown if an error occurred.
+     */
+    private File runLinearModel(
+            File folder,
+            double scoreTestThreshold,
+            boolean interrupted
+    ) throws Exception {
+
+        folder.mkdirs();
+
+        File bgenFile = new File(folder, "test.bgen");
+        File trioFile = new File(folder, "trio");
+        File phenotypesFile = new File(folder, "phenos.txt");
+        File resultsFile = new File(folder, "results.gz");
+
+        writeTestFiles(bgenFile, trioFile, phenotypesFile);
+
+        if (interrupted) {
+
+            runInterrupted(folder, bgenFile, trioFile, phenotypesFile, resultsFile, scoreTestThreshold);
+
+        }
+
+        SimpleCliLogger logger = new SimpleCliLogger(new File(folder, "log_2.gz"), new File(folder, "variant_log_2.gz"));
+        getLinearModelComputer(bgenFile, trioFile, phenotypesFile, resultsFile, null, scoreTestThreshold, interrupted, logger).run(1);
+        logger.close();
+
+        Assert.assertTrue(!LinearModelRunnable.isCanceled());
+        Assert.assertTrue(!Checkpoint.getCheckpointFile(resultsFile).exists());
+
+        return resultsFile;
+
+    }
+
+    /**
+     * Runs the linear model until it fails at the failing variant, and
+     * returns the checkpoint left by the run.
+     *
+     * @param folder The folder where to write the logs.
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param phenotypesFile The phenotypes file.
+     * @param resultsFile The results file.
+     * @param scoreTestThreshold The p-value threshold of the score test used
+     * to screen variants, ignored if NaN.
+     *
+     * @return The checkpoint of the interrupted run.
+     *
+     * @throws Exception Exception thrown if an error occurred.
+     */
+    private Checkpoint runInterrupted(
+            File folder,
+            File bgenFile,
+            File trioFile,
+            File phenotypesFile,
+            File resultsFile,
+            double scoreTestThreshold
+    ) throws Exception {
+
+        String failingVariant = SimulatedTrios.getVariantId(FAILING_VARIANT);
+
+        SimpleCliLogger failingLogger = new SimpleCliLogger(new File(folder, "log_1.gz"), new File(folder, "variant_log_1.gz")) {
+
+            @Override
+            public void logVariant(
+                    String variantId,
+                    String message
+            ) {
+
+                if (variantId.equals(failingVariant)) {
+
+                    throw new IllegalArgumentException("Simulated failure at " + variantId + ".");
+
+                }
+
+                super.logVariant(variantId, message);
+
+            }
+        };
+
+        getLinearModelComputer(bgenFile, trioFile, phenotypesFile, resultsFile, null, scoreTestThreshold, false, failingLogger).run(1);
+        failingLogger.close();
+
+        Assert.assertTrue(LinearModelRunnable.isCanceled());
+        Assert.assertTrue(Checkpoint.getCheckpointFile(resultsFile).exists());
+
+        Checkpoint checkpoint = Checkpoint.read(Checkpoint.getCheckpointFile(resultsFile), 1);
+        Assert.assertTrue(checkpoint.getCompleted().cardinality() == FAILING_VARIANT);
+
+        return checkpoint;
+
+    }
+
+    /**
+     * Returns a linear model computer processing one variant at a time with
+     * checkpoints.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param phenotypesFile The phenotypes file.
+     * @param resultsFile The results file.
+     * @param shard The shard of variants to process, null for all variants.
+     * @param scoreTestThreshold The p-value threshold of the score test used
+     * to screen variants, ignored if NaN.
+     * @param resume Boolean indicating whether the run should be resumed.
+     * @param logger The logger.
+     *
+     * @return A linear model computer.
+     */
+    private LinearModelComputer getLinearModelComputer(
+            File bgenFile,
+            File trioFile,
+            File phenotypesFile,
+            File resultsFile,
+            VariantShard shard,
+            double scoreTestThreshold,
+            boolean resume,
+            SimpleCliLogger logger
+    ) {
+
+        String[] phenoNames = new String[]{"pheno1", "pheno2"};
+
+        HashMap<String, TreeSet<String>> covariatesSpecific = new HashMap<>(phenoNames.length);
+
+        for (String phenoName : phenoNames) {
+
+            covariatesSpecific.put(phenoName, new TreeSet<>());
+
+        }
+
+        HashSet<String> modelNames = new HashSet<>(Arrays.asList(Model.getDefaultOption()));
+
+        for (Model model : Model.values()) {
+
+            model.setParentModels(modelNames);
+
+        }
+
+        return new LinearModelComputer(
+                bgenFile,
+                InheritanceUtils.getDefaultInheritanceMap("1"),
+                InheritanceUtils.getDefaultMotherPloidy("1"),
+                InheritanceUtils.getDefaultFatherPloidy("1"),
+                null,
+                0.01,
+                ChildToParentMap.fromFile(trioFile),
+                phenotypesFile,
+                phenoNames,
+                new String[0],
+                covariatesSpecific,
+                Arrays.stream(Model.getDefaultOption())
+                        .map(
+                                modelName -> Model.valueOf(modelName)
+                        )
+                        .toArray(Model[]::new),
+                resultsFile,
+                1,
+                shard,
+                scoreTestThreshold,
+                60,
+                resume,
+                logger
+        );
+    }
+
+    /**
+     * Writes random phased genotypes, trios, and phenotypes. At the failing
+     * variant, the fathers are homozygous for the reference allele and the
+     * first phenotype follows the allele transmitted by the mother, so that
+     * the variant passes the score test but the models including the father
+     * are singular.
+     *
+     * @param bgenFile The bgen file.
+     * @param trioFile The trio file.
+     * @param phenotypesFile The phenotypes file.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the files.
+     */
+    private void writeTestFiles(
+            File bgenFile,
+            File trioFile,
+            File phenotypesFile
+    ) throws IOException {
+
+        Random random = new Random(N_TRIOS);
+
+        // Genotypes indexed by variant, trio, and child, mother, father
+        String[][][] genotypes = new String[N_VARIANTS][N_TRIOS][3];
+        double[] transmitted = new double[N_TRIOS];
+
+        for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+            double frequency = 0.1 + 0.8 * random.nextDouble();
+
+            for (int trioI = 0; trioI < N_TRIOS; trioI++) {
+
+                if (variantI == FAILING_VARIANT) {
+
+                    int motherTransmitted = random.nextDouble() < frequency ? 1 : 0;
+                    int motherNonTransmitted = random.nextDouble() < frequency ? 1 : 0;
+
+                    genotypes[variantI][trioI][0] = motherTransmitted + "|0";
+                    genotypes[variantI][trioI][1] = motherTransmitted + "|" + motherNonTransmitted;
+                    genotypes[variantI][trioI][2] = "0|0";
+
+                    transmitted[trioI] = motherTransmitted;
+
+                } else {
+
+                    for (int individualI = 0; individualI < 3; individualI++) {
+
+                        genotypes[variantI][trioI][individualI] = (random.nextDouble() < frequency ? "1|" : "0|") + (random.nextDouble() < frequency ? "1" : "0");
+
+                    }
+                }
+            }
+        }
+
+        try (SimpleFileWriter phenoWriter = new SimpleFileWriter(phenotypesFile, false)) {
+
+            phenoWriter.writeLine("child_SentrixID", "pheno1", "pheno2");
+
+            for (int i = 0; i < N_TRIOS; i++) {
+
+                phenoWriter.writeLine("CHILD" + i, Double.toString(transmitted[i] + random.nextGaussian()), Double.toString(random.nextGaussian()));
+
+            }
+        }
+
+        SimulatedTrios.writeTestFiles(bgenFile, trioFile, genotypes);
+
+    }
+
+    /**
+     * Returns the lines of the given file.
+     *
+     * @param file The file.
+     *
+     * @return The lines of the file.
+     */
+    private ArrayList<String> getLines(
+            File file
+    ) {
+
+        ArrayList<String> lines = new ArrayList<>();
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(file, false)) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                lines.add(line);
+
+            }
+        }
+
+        return lines;
+
+    }
+}
@@ -0,0 +1,190 @@
+package no.uib.triogen.processing.linear_model;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
+
+/**
+ * This class tests the score test against ordinary least squares regressions
+ * on a small fixed dataset.
+ *
+ * @author Marc Vaudel
+ */
+public class ScoreTestTest extends TestCase {
+
+    /**
+     * The number of samples.
+     */
+    private static final int N = 40;
+
+    public void testAgainstOls() {
+
+        Random random = new Random(N);
+
+        double[][] x = new double[N][3];
+        double[] y = new double[N];
+
+        for (int i = 0; i < N; i++) {
+
+            for (int j = 0; j < 3; j++) {
+
+                x[i][j] = random.nextInt(3);
+
+            }
+
+            y[i] = 0.8 * x[i][0] - 0.6 * x[i][2] + random.nextGaussian();
+
+        }
+
+        ScoreTest scoreTest = ScoreTest.test(y, mean(y), x, 0);
+
+        OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
+        regression.newSampleData(y, x);
+
+        double rss = regression.calculateResidualSumOfSquares();
+        double tss = regression.calculateTotalSumOfSquares();
+
+        // The score statistic is (n - 1) R2, a function of the F statistic
+        double f = ((tss - rss) / 3) / (rss / (N - 4));
+        double expectedStatistic = (N - 1) * 3 * f / (3 * f + N - 4);
+
+        Assert.assertTrue(Math.abs(scoreTest.statistic - expectedStatistic) <= 1e-9 * expectedStatistic);
+        Assert.assertTrue(Math.abs(scoreTest.statistic - (N - 1) * (tss - rss) / tss) <= 1e-9 * expectedStatistic);
+        Assert.assertTrue(scoreTest.degreesOfFreedom == 3);
+
+        double expectedP = 1.0 - new ChiSquaredDistribution(3).cumulativeProbability(expectedStatistic);
+
+        Assert.assertTrue(Math.abs(scoreTest.pValue - expectedP) <= 1e-9);
+
+        // The score statistic does not exceed the likelihood ratio statistic
+        double lr = N * Math.log(tss / rss);
+
+        Assert.assertTrue(scoreTest.statistic <= lr);
+        Assert.assertTrue(scoreTest.pValue >= 1.0 - new ChiSquaredDistribution(3).cumulativeProbability(lr));
+        Assert.assertTrue(scoreTest.pValue < 0.05);
+
+        // Collinear columns do not change the test
+        double[][] collinearX = new double[N][4];
+
+        for (int i = 0; i < N; i++) {
+
+            System.arraycopy(x[i], 0, collinearX[i], 0, 3);
+            collinearX[i][3] = x[i][0] + x[i][1];
+
+        }
+
+        ScoreTest collinearTest = ScoreTest.test(y, mean(y), collinearX, 0);
+
+        Assert.assertTrue(collinearTest.degreesOfFreedom == 3);
+        Assert.assertTrue(Math.abs(collinearTest.statistic - scoreTest.statistic) <= 1e-9 * scoreTest.statistic);
+
+        // Phenotypes without variance cannot be tested
+        double[] constant = new double[N];
+        Arrays.fill(constant, 1.0);
+
+        Assert.assertTrue(Double.isNaN(ScoreTest.test(constant, 1.0, x, 0).pValue));
+
+    }
+
+    public void testCovariates() {
+
+        Random random = new Random(2 * N);
+
+        double[][] z = new double[N][2];
+        double[][] x = new double[N][2];
+        double[] y = new double[N];
+        double[][] zx = new double[N][4];
+
+        for (int i = 0; i < N; i++) {
+
+            z[i][0] = random.nextGaussian();
+            z[i][1] = random.nextGaussian();
+            x[i][0] = random.nextInt(3) + 0.5 * z[i][0];
+            x[i][1] = random.nextInt(3);
+            y[i] = z[i][0] - 0.5 * z[i][1] + 0.3 * x[i][1] + random.nextGaussian();
+
+            zx[i] = new double[]{z[i][0], z[i][1], x[i][0], x[i][1]};
+
+        }
+
+        // Adjust the phenotypes and genotypes for the covariates
+        double[] adjustedY = getResiduals(y, z);
+        double[][] adjustedX = new double[N][2];
+
+        for (int j = 0; j < 2; j++) {
+
+            double[] column = new double[N];
+
+            for (int i = 0; i < N; i++) {
+
+                column[i] = x[i][j];
+
+            }
+
+            double[] adjustedColumn = getResiduals(column, z);
+
+            for (int i = 0; i < N; i++) {
+
+                adjustedX[i][j] = adjustedColumn[i];
+
+            }
+        }
+
+        ScoreTest scoreTest = ScoreTest.test(adjustedY, mean(adjustedY), adjustedX, 2);
+
+        // The residual variance under the null has n - 1 - nCovariates degrees of freedom
+        OLSMultipleLinearRegression nullRegression = new OLSMultipleLinearRegression();
+        nullRegression.newSampleData(y, z);
+        double nullRss = nullRegression.calculateResidualSumOfSquares();
+
+        OLSMultipleLinearRegression fullRegression = new OLSMultipleLinearRegression();
+        fullRegression.newSampleData(y, zx);
+        double fullRss = fullRegression.calculateResidualSumOfSquares();
+
+        double expectedStatistic = (N - 1 - 2) * (nullRss - fullRss) / nullRss;
+
+        Assert.assertTrue(scoreTest.degreesOfFreedom == 2);
+        Assert.assertTrue(Math.abs(scoreTest.statistic - expectedStatistic) <= 1e-9 * expectedStatistic);
+        Assert.assertTrue(Math.abs(scoreTest.pValue - (1.0 - new ChiSquaredDistribution(2).cumulativeProbability(expectedStatistic))) <= 1e-9);
+
+    }
+
+    /**
+     * Returns the residuals of the regression of the given values against the
+     * given covariates and an intercept.
+     *
+     * @param values The values.
+     * @param covariates The covariates.
+     *
+     * @return The residuals.
+     */
+    private static double[] getResiduals(
+            double[] values,
+            double[][] covariates
+    ) {
+
+        OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
+        regression.newSampleData(values, covariates);
+
+        return regression.estimateResiduals();
+
+    }
+
+    /**
+     * Returns the mean of the given values.
+     *
+     * @param values The values.
+     *
+     * @return The mean of the values.
+     */
+    private static double mean(
+            double[] values
+    ) {
+
+        return Arrays.stream(values).sum() / values.length;
+
+    }
+}
@@ -0,0 +1,501 @@
+package no.uib.triogen.processing.prs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import no.uib.triogen.io.IoUtils;
+import no.uib.triogen.io.flat.SimpleFileWriter;
+import no.uib.triogen.io.genotypes.SimulatedTrios;
+import no.uib.triogen.log.SimpleCliLogger;
+import no.uib.triogen.model.family.ChildToParentMap;
+import no.uib.triogen.model.trio_genotypes.Model;
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+/**
+ * This class tests the scoring of simulated trios against the scoring of the
+ * individual cells of the threshold grid and of the individual loci, and with
+ * different numbers of threads.
+ *
+ * @author Marc Vaudel
+ */
+public class PrsComputerTest extends TestCase {
+
+    /**
+     * The number of trios to simulate.
+     */
+    private static final int N_TRIOS = 50;
+    /**
+     * The number of variants to simulate.
+     */
+    private static final int N_VARIANTS = 120;
+    /**
+     * The number of variants between the first variants of consecutive loci.
+     */
+    private static final int LOCUS_SPACING = 10;
+    /**
+     * The number of variants of a locus, loci overlap when larger than the
+     * spacing.
+     */
+    private static final int LOCUS_WIDTH = 20;
+    /**
+     * The model to use.
+     */
+    private static final Model MODEL = Model.cmf;
+    /**
+     * The names of the variables of the model.
+     */
+    private static final String[] VARIABLE_NAMES = new String[]{"c", "m", "f"};
+    /**
+     * The pattern of the effect size columns.
+     */
+    private static final String BETA_PATTERN = PrsPruner.VARIABLE_WILDCARD + ".beta";
+    /**
+     * The pattern of the standard error columns.
+     */
+    private static final String SE_PATTERN = PrsPruner.VARIABLE_WILDCARD + ".se";
+
+    public void testGrid() throws IOException {
+
+        File folder = Files.createTempDirectory("triogen_prs").toFile();
+
+        try {
+
+            File trainingFile = writeTestFiles(folder);
+            String genotypesFilePath = new File(folder, "test.bgen").getAbsolutePath();
+            ChildToParentMap childToParentMap = ChildToParentMap.fromFile(new File(folder, "trio"));
+            SimpleCliLogger logger = new SimpleCliLogger(new File(folder, "log.gz"));
+
+            PrsThresholder thresholder = new PrsThresholder(
+                    genotypesFilePath,
+                    null,
+                    null,
+                    childToParentMap,
+                    trainingFile,
+                    null,
+                    null,
+                    BETA_PATTERN,
+                    SE_PATTERN,
+                    0.0,
+                    null,
+                    MODEL,
+                    VARIABLE_NAMES,
+                    0,
+                    folder,
+                    logger
+            );
+
+            double[] pValueThresholds = PrsThresholder.getPValueThresholds();
+            PrsUtils.ScoringMode[] scoringModes = PrsUtils.ScoringMode.values();
+
+            double[][] gridScores = thresholder.getGridScores(pValueThresholds);
+
+            // Every cell of the grid equals the sum over the variables of the scores obtained for this cell alone
+            double[][][] cellTotals = new double[scoringModes.length][pValueThresholds.length][];
+
+            for (int modeI = 0; modeI < scoringModes.length; modeI++) {
+
+                for (int thresholdI = 0; thresholdI < pValueThresholds.length; thresholdI++) {
+
+                    HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData = PrsUtils.parseScoringData(
+                            trainingFile,
+                            BETA_PATTERN,
+                            SE_PATTERN,
+                            VARIABLE_NAMES,
+                            null,
+                            pValueThresholds[thresholdI],
+                            0.0,
+                            null,
+                            scoringModes[modeI]
+                    );
+
+                    double[] totals = new double[PrsThresholder.BETA_QUANTILES.length];
+
+                    for (int quantileI = 0; quantileI < PrsThresholder.BETA_QUANTILES.length; quantileI++) {
+
+                        double seScaling = new NormalDistribution(0, 1).inverseCumulativeProbability(PrsThresholder.BETA_QUANTILES[quantileI]);
+
+                        HashMap<String, double[]> cellScores = PrsComputer.getScores(
+                                genotypesFilePath,
+                                scoringData,
+                                childToParentMap,
+                                MODEL,
+                                VARIABLE_NAMES,
+                                seScaling,
+                                folder,
+                                logger
+                        );
+
+                        int scoreI = PrsThresholder.getScoreIndex(modeI, thresholdI, quantileI, pValueThresholds.length);
+
+                        for (int childI = 0; childI < childToParentMap.children.length; childI++) {
+
+                            double expected = Arrays.stream(cellScores.get(childToParentMap.children[childI])).sum();
+                            double actual = gridScores[childI][scoreI];
+
+                            Assert.assertTrue(Math.abs(expected - actual) <= 1e-9);
+
+                            totals[quantileI] += Math.abs(actual);
+
+                        }
+                    }
+
+                    cellTotals[modeI][thresholdI] = totals;
+
+                }
+            }
+
+            // The scores are not trivially equal: the modes and the p-value gates change the scores
+            int leadI = PrsUtils.ScoringMode.lead.index;
+            int weightedI = PrsUtils.ScoringMode.weighted.index;
+            int lastThresholdI = pValueThresholds.length - 1;
+
+            for (int quantileI = 0; quantileI < PrsThresholder.BETA_QUANTILES.length; quantileI++) {
+
+                Assert.assertTrue(cellTotals[leadI][lastThresholdI][quantileI] > 0.0);
+                Assert.assertTrue(cellTotals[weightedI][lastThresholdI][quantileI] > 0.0);
+                Assert.assertTrue(cellTotals[leadI][0][quantileI] != cellTotals[weightedI][0][quantileI]);
+                Assert.assertTrue(cellTotals[leadI][0][quantileI] != cellTotals[leadI][lastThresholdI][quantileI]);
+                Assert.assertTrue(cellTotals[weightedI][0][quantileI] != cellTotals[weightedI][lastThresholdI][quantileI]);
+
+            }
+
+            logger.close();
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testOverlappingLoci() throws IOException {
+
+        File folder = Files.createTempDirectory("triogen_prs").toFile();
+
+        try {
+
+            File trainingFile = writeTestFiles(folder);
+            String genotypesFilePath = new File(folder, "test.bgen").getAbsolutePath();
+            ChildToParentMap childToParentMap = ChildToParentMap.fromFile(new File(folder, "trio"));
+            SimpleCliLogger logger = new SimpleCliLogger(new File(folder, "log.gz"));
+
+            HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData = PrsUtils.parseScoringData(
+                    trainingFile,
+                    BETA_PATTERN,
+                    SE_PATTERN,
+                    VARIABLE_NAMES,
+                    null,
+                    1.0,
+                    0.0,
+                    null,
+                    PrsUtils.ScoringMode.weighted
+            );
+
+            HashMap<String, HashMap<String, HashMap<String, double[]>>> chromosomeScoringData = scoringData.get("1");
+
+            Assert.assertTrue(chromosomeScoringData.size() == N_VARIANTS / LOCUS_SPACING);
+
+            HashMap<String, double[]> scores = PrsComputer.getScores(
+                    genotypesFilePath,
+                    scoringData,
+                    childToParentMap,
+                    MODEL,
+                    VARIABLE_NAMES,
+                    0.0,
+                    folder,
+                    logger
+            );
+
+            // The scores of the overlapping loci equal the sum of the scores of the loci scored one at a time
+            double[][] expected = new double[childToParentMap.children.length][VARIABLE_NAMES.length];
+
+            for (String leadVariant : chromosomeScoringData.keySet()) {
+
+                HashMap<String, HashMap<String, HashMap<String, double[]>>> locusData = new HashMap<>(1);
+                locusData.put(leadVariant, chromosomeScoringData.get(leadVariant));
+
+                HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> locusScoringData = new HashMap<>(1);
+                locusScoringData.put("1", locusData);
+
+                HashMap<String, double[]> locusScores = PrsComputer.getScores(
+                        genotypesFilePath,
+                        locusScoringData,
+                        childToParentMap,
+                        MODEL,
+                        VARIABLE_NAMES,
+                        0.0,
+                        folder,
+                        logger
+                );
+
+                for (int childI = 0; childI < childToParentMap.children.length; childI++) {
+
+                    double[] childScores = locusScores.get(childToParentMap.children[childI]);
+
+                    for (int variableI = 0; variableI < VARIABLE_NAMES.length; variableI++) {
+
+                        expected[childI][variableI] += childScores[variableI];
+
+                    }
+                }
+            }
+
+            for (int childI = 0; childI < childToParentMap.children.length; childI++) {
+
+                double[] childScores = scores.get(childToParentMap.children[childI]);
+
+                for (int variableI = 0; variableI < VARIABLE_NAMES.length; variableI++) {
+
+                    Assert.assertTrue(Math.abs(expected[childI][variableI] - childScores[variableI]) <= 1e-9);
+
+                }
+            }
+
+            logger.close();
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    public void testScoringVariants() {
+
+        ArrayList<ScoringAllele> scoringAlleles = new ArrayList<>();
+        scoringAlleles.add(new ScoringAllele(1, "lead_a", "A", new double[][]{{1.0, 2.0}}));
+        scoringAlleles.add(new ScoringAllele(1, "lead_b", "A", new double[][]{{0.5, -1.0}}));
+        scoringAlleles.add(new ScoringAllele(1, "lead_b", "G", new double[][]{{3.0, 0.0}}));
+        scoringAlleles.add(new ScoringAllele(4, "lead_a", "G", new double[][]{{-2.0, 1.0}}));
+
+        ArrayList<ScoringVariant> scoringVariants = ScoringVariant.getScoringVariants(scoringAlleles);
+
+        Assert.assertTrue(scoringVariants.size() == 2);
+
+        // The coefficients of an allele scored in several loci are summed
+        ScoringVariant scoringVariant = scoringVariants.get(0);
+
+        Assert.assertTrue(scoringVariant.bgenVariantIndex == 1);
+        Assert.assertTrue(scoringVariant.alleles.length == 2);
+        Assert.assertTrue(scoringVariant.alleles[0].equals("A"));
+        Assert.assertTrue(scoringVariant.alleles[1].equals("G"));
+        Assert.assertTrue(scoringVariant.coefficients[0][0][0] == 1.5);
+        Assert.assertTrue(scoringVariant.coefficients[0][0][1] == 1.0);
+        Assert.assertTrue(scoringVariant.coefficients[1][0][0] == 3.0);
+        Assert.assertTrue(scoringVariant.coefficients[1][0][1] == 0.0);
+
+        scoringVariant = scoringVariants.get(1);
+
+        Assert.assertTrue(scoringVariant.bgenVariantIndex == 4);
+        Assert.assertTrue(scoringVariant.alleles.length == 1);
+        Assert.assertTrue(scoringVariant.alleles[0].equals("G"));
+        Assert.assertTrue(scoringVariant.coefficients[0][0][0] == -2.0);
+        Assert.assertTrue(scoringVariant.coefficients[0][0][1] == 1.0);
+
+        // The scoring alleles are copied, not modified
+        Assert.assertTrue(scoringAlleles.get(0).coefficients[0][0] == 1.0);
+
+    }
+
+    public void testThreads() throws IOException {
+
+        File folder = Files.createTempDirectory("triogen_prs").toFile();
+
+        try {
+
+            File trainingFile = writeTestFiles(folder);
+            String genotypesFilePath = new File(folder, "test.bgen").getAbsolutePath();
+            ChildToParentMap childToParentMap = ChildToParentMap.fromFile(new File(folder, "trio"));
+            SimpleCliLogger logger = new SimpleCliLogger(new File(folder, "log.gz"));
+
+            HashMap<String, HashMap<String, HashMap<String, HashMap<String, double[]>>>> scoringData = PrsUtils.parseScoringData(
+                    trainingFile,
+                    BETA_PATTERN,
+                    SE_PATTERN,
+                    VARIABLE_NAMES,
+                    null,
+                    1.0,
+                    0.0,
+                    null,
+                    PrsUtils.ScoringMode.weighted
+            );
+
+            // Two scores, the weighted sum of the variables and the unweighted child score
+            PrsComputer.CoefficientsProvider coefficientsProvider = (leadVariant, scoringVariant, scoringDetails, nScoringVariants) -> {
+
+                double[][] coefficients = new double[2][VARIABLE_NAMES.length];
+
+                for (int variableI = 0; variableI < VARIABLE_NAMES.length; variableI++) {
+
+                    coefficients[0][variableI] = scoringDetails[variableI] / nScoringVariants;
+
+                }
+
+                coefficients[1][0] = scoringDetails[0];
+
+                return coefficients;
+
+            };
+
+            // More chunks than threads, the scores must be identical for any number of threads
+            Assert.assertTrue(N_VARIANTS > 3 * PrsComputer.CHUNK_SIZE);
+
+            double[][] singleThreadScores = PrsComputer.getScores(genotypesFilePath, scoringData, childToParentMap, MODEL, 2, coefficientsProvider, 1, folder, logger);
+            double[][] multiThreadScores = PrsComputer.getScores(genotypesFilePath, scoringData, childToParentMap, MODEL, 2, coefficientsProvider, 4, folder, logger);
+            double[][] defaultScores = PrsComputer.getScores(genotypesFilePath, scoringData, childToParentMap, MODEL, 2, coefficientsProvider, folder, logger);
+
+            boolean nonNull = false;
+
+            for (int childI = 0; childI < childToParentMap.children.length; childI++) {
+
+                for (int scoreI = 0; scoreI < 2; scoreI++) {
+
+                    Assert.assertTrue(multiThreadScores[childI][scoreI] == singleThreadScores[childI][scoreI]);
+                    Assert.assertTrue(defaultScores[childI][scoreI] == singleThreadScores[childI][scoreI]);
+
+                    if (singleThreadScores[childI][scoreI] != 0.0) {
+
+                        nonNull = true;
+
+                    }
+                }
+            }
+
+            Assert.assertTrue(nonNull);
+
+            logger.close();
+
+        } finally {
+
+            SimulatedTrios.delete(folder);
+
+        }
+    }
+
+    /**
+     * Simulates the phased genotypes of trios and writes them as bgen along
+     * with the trio file, and writes a training file of overlapping loci with
+     * lead p-values spanning the p-value thresholds of the grid.
+     *
+     * @param folder The folder where to write the files.
+     *
+     * @return The training file.
+     *
+     * @throws IOException Exception thrown if an error occurred while writing
+     * the files.
+     */
+    private static File writeTestFiles(
+            File folder
+    ) throws IOException {
+
+        Random random = new Random(N_VARIANTS);
+
+        // Haplotypes indexed by trio, mother transmitted and non-transmitted then father transmitted and non-transmitted, variant
+        int[][][] haplotypes = new int[N_TRIOS][4][N_VARIANTS];
+
+        for (int variantI = 0; variantI < N_VARIANTS; variantI++) {
+
+            double frequency = 0.1 + 0.8 * random.nextDouble();
+
+            for (int trioI = 0; trioI < N_TRIOS; trioI++) {
+
+                for (int haplotypeI = 0; haplotypeI < 4; haplotypeI++) {
+
+                    haplotypes[trioI][haplotypeI][variantI] = random.nextDouble() < frequency ? 1 : 0;
+
+                }
+            }
+        }
+
+        SimulatedTrios.writeTestFiles(new File(folder, "test.bgen"), new File(folder, "trio"), SimulatedTrios.getGenotypes(haplotypes));
+
+        File trainingFile = new File(folder, "training.gz");
+
+        try (SimpleFileWriter writer = new SimpleFileWriter(trainingFile, true)) {
+
+            StringBuilder header = new StringBuilder(
+                    String.join(IoUtils.SEPARATOR, "lead_id", "lead_variable", "lead_p", "variant_id", "variant_rsid", "chr", "pos", "ref_allele", "effect_allele", "effect_allele_frequency", "weight")
+            );
+
+            for (String variable : VARIABLE_NAMES) {
+
+                header.append(IoUtils.SEPARATOR)
+                        .append(BETA_PATTERN.replace(PrsPruner.VARIABLE_WILDCARD, variable))
+                        .append(IoUtils.SEPARATOR)
+                        .append(SE_PATTERN.replace(PrsPruner.VARIABLE_WILDCARD, variable));
+
+            }
+
+            writer.writeLine(header.append(IoUtils.SEPARATOR).append("p").toString());
+
+            for (int locusI = 0; locusI * LOCUS_SPACING < N_VARIANTS; locusI++) {
+
+                int firstVariant = locusI * LOCUS_SPACING;
+                int lastVariant = Math.min(firstVariant + LOCUS_WIDTH, N_VARIANTS);
+                int leadVariant = firstVariant + LOCUS_SPACING / 2;
+                String leadP = Double.toString(0.5 * Math.pow(10, -(locusI % 9)));
+
+                for (int variantI = firstVariant; variantI < lastVariant; variantI++) {
+
+                    writeTrainingLine(writer, random, SimulatedTrios.getVariantId(leadVariant), leadP, SimulatedTrios.getVariantId(variantI), "rs" + variantI, random.nextDouble() < 0.3 ? "A" : "G");
+
+                }
+
+                // A variant missing from the genotypes
+                if (locusI == 0) {
+
+                    writeTrainingLine(writer, random, SimulatedTrios.getVariantId(leadVariant), leadP, "DUMMY", "DUMMY", "G");
+
+                }
+            }
+        }
+
+        return trainingFile;
+
+    }
+
+    /**
+     * Writes a line of the training file with random effect sizes and
+     * standard errors.
+     *
+     * @param writer The writer.
+     * @param random The random number generator.
+     * @param leadId The id of the lead variant.
+     * @param leadP The p-value of the lead variant.
+     * @param variantId The id of the scoring variant.
+     * @param rsid The rsid of the scoring variant.
+     * @param effectAllele The effect allele.
+     */
+    private static void writeTrainingLine(
+            SimpleFileWriter writer,
+            Random random,
+            String leadId,
+            String leadP,
+            String variantId,
+            String rsid,
+            String effectAllele
+    ) {
+
+        StringBuilder line = new StringBuilder(
+                String.join(IoUtils.SEPARATOR, leadId, "c", leadP, variantId, rsid, "1", "0", "A", effectAllele, "0.5", "1")
+        );
+
+        for (int variableI = 0; variableI < VARIABLE_NAMES.length; variableI++) {
+
+            line.append(IoUtils.SEPARATOR)
+                    .append(0.2 * random.nextGaussian())
+                    .append(IoUtils.SEPARATOR)
+                    .append(0.01 + 0.1 * random.nextDouble());
+
+        }
+
+        writer.writeLine(line.append(IoUtils.SEPARATOR).append(leadP).toString());
+
+    }
+}
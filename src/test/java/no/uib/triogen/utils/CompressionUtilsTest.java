@@ -0,0 +1,43 @@
+package no.uib.triogen.utils;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * This class tests the compression utilities.
+ *
+ * @author Marc Vaudel
+ */
+public class CompressionUtilsTest extends TestCase {
+
+    public void testCrc32Combine() {
+
+        Random random = new Random(32);
+
+        int[] lengths = new int[]{0, 1, 2, 3, 7, 8, 100, 1023, 1024, 65537};
+
+        for (int length1 : lengths) {
+
+            for (int length2 : lengths) {
+
+                byte[] data = new byte[length1 + length2];
+                random.nextBytes(data);
+
+                CRC32 crc1 = new CRC32();
+                crc1.update(data, 0, length1);
+
+                CRC32 crc2 = new CRC32();
+                crc2.update(data, length1, length2);
+
+                CRC32 crc = new CRC32();
+                crc.update(data);
+
+                // The combined CRC equals the CRC of the concatenated data
+                Assert.assertTrue(CompressionUtils.crc32Combine(crc1.getValue(), crc2.getValue(), length2) == crc.getValue());
+
+            }
+        }
+    }
+}